@@ -0,0 +1,111 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.AsyncUserRepository;
+import com.gamesys.registrationservice.persistence.impl.ExecutorAsyncUserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to serve a burst of lookups against a backend answering in 20 ms, with the request threads
+ * waiting on the storage themselves (blocking) or handing the call to the async repository and its
+ * pool (async, 8 request threads). The live thread count is printed after each trial.
+ *
+ * Throughput is capped by the threads waiting on the backend either way, roughly threads / 20 ms;
+ * the async path only needs a handful of request threads to keep them all busy.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="AsyncRepositoryBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Benchmark)
+public class AsyncRepositoryBenchmark {
+
+    private static final int BURST = 1000;
+    private static final int REQUEST_THREADS = 8;
+    private static final long LATENCY_MILLIS = 20;
+
+    @Param({"blocking", "async"})
+    public String mode;
+
+    /**
+     * Threads allowed to wait on the backend : request threads when blocking, the async pool otherwise.
+     */
+    @Param({"8", "64", "256"})
+    public int threads;
+
+    private ExecutorService requestThreads;
+    private ExecutorService blockingExecutor;
+    private AsyncUserRepository asyncUserRepository;
+    private SlowUserRepository userRepository;
+    private int peakThreads;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        userRepository = new SlowUserRepository();
+        User user = new User("username22", "443908Rr", LocalDate.of(1986, 5, 26), "ssn110");
+        userRepository.addUser(user.getSsn(), user);
+        if (mode.equals("blocking")) {
+            requestThreads = Executors.newFixedThreadPool(threads);
+        } else {
+            requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+            blockingExecutor = Executors.newFixedThreadPool(threads);
+            asyncUserRepository = new ExecutorAsyncUserRepository(userRepository, blockingExecutor);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s with %d backend threads : %d live threads%n", mode, threads, peakThreads);
+        requestThreads.shutdownNow();
+        if (blockingExecutor != null) {
+            blockingExecutor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() throws InterruptedException {
+        CountDownLatch served = new CountDownLatch(BURST);
+        for (int i = 0; i < BURST; i++) {
+            if (asyncUserRepository == null) {
+                requestThreads.execute(() -> {
+                    userRepository.getUser("ssn110");
+                    served.countDown();
+                });
+            } else {
+                requestThreads.execute(() -> {
+                    CompletableFuture<Optional<User>> user = asyncUserRepository.getUser("ssn110");
+                    user.thenRun(served::countDown);
+                });
+            }
+        }
+        served.await();
+        peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    private static final class SlowUserRepository extends UserRepositoryImpl {
+
+        @Override
+        public Optional<User> getUser(String key) {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getUser(key);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.api.UserDTO;
+import com.gamesys.registrationservice.domain.ImportStatus;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import com.gamesys.registrationservice.service.ExclusionServiceImpl;
+import com.gamesys.registrationservice.service.UserValidator;
+import com.gamesys.registrationservice.service.importer.BulkImporter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to import a CSV file of 500k users: read line by line and registered one at a time with the
+ * validation and exclusion check of POST /register (sequential), or with the bulk importer on 1 or 4
+ * fork/join threads. Neither goes through HTTP, which the sequential path would pay on top.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="BulkImportBenchmark"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class BulkImportBenchmark {
+
+    private static final int USERS = 500_000;
+
+    @Param({"sequential", "bulk-1", "bulk-4"})
+    public String mode;
+
+    private final UserValidator userValidator = new UserValidator();
+    private final ExclusionServiceImpl exclusionService = new ExclusionServiceImpl();
+    private Path directory;
+    private Path file;
+    private UserRepositoryImpl userRepository;
+    private BulkImporter bulkImporter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("import-benchmark");
+        file = directory.resolve("users.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("username,password,dob,ssn\n");
+            for (int i = 0; i < USERS; i++) {
+                writer.write("username" + i + ",443908Rr," + LocalDate.of(1950, 1, 1).plusDays(i % 20_000) + ",ssn" + i + "\n");
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void repository() throws Exception {
+        userRepository = new UserRepositoryImpl();
+        bulkImporter = new BulkImporter();
+        set("userRepository", userRepository);
+        set("userValidator", userValidator);
+        set("exclusionService", exclusionService);
+        set("directory", directory.toString());
+        set("parallelism", mode.equals("bulk-4") ? 4 : 1);
+        set("chunkBytes", 4L << 20);
+        set("batchSize", 1000);
+        set("progressSeconds", 60L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long importFile() throws IOException {
+        if (!mode.equals("sequential")) {
+            ImportStatus status = bulkImporter.run(file);
+            return status.getImported();
+        }
+        long imported = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split(",");
+                UserDTO userDTO = new UserDTO(fields[0], fields[1], fields[2], fields[3]);
+                userValidator.validateUser(userDTO);
+                if (exclusionService.validate(userDTO.getDob(), userDTO.getSsn())) {
+                    User user = new User(fields[0], fields[1], LocalDate.parse(fields[2]), fields[3]);
+                    if (userRepository.addUser(user.getSsn(), user).isPresent()) {
+                        imported++;
+                    }
+                }
+            }
+        }
+        return imported;
+    }
+
+    private void set(String name, Object value) throws Exception {
+        Field field = BulkImporter.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(bulkImporter, value);
+    }
+}
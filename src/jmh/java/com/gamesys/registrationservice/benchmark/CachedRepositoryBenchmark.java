@@ -0,0 +1,77 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.CacheStatistics;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.cache.CachingUserRepository;
+import com.gamesys.registrationservice.persistence.impl.LsmUserRepository;
+import com.gamesys.registrationservice.persistence.lsm.LsmTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Lookups by SSN against the LSM repository with and without a 16 MB cache in front of it. Keys
+ * are drawn with an exponential bias toward the most recently registered users, mean distance
+ * from the newest user being 1% of the user set. The cache hit rate is printed on tear down.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="CachedRepositoryBenchmark"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class CachedRepositoryBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    @Param({"none", "cached"})
+    public String cache;
+
+    private Path directory;
+    private LsmUserRepository lsm;
+    private UserRepository userRepository;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        LocalDate dob = LocalDate.of(1986, 5, 26);
+        directory = Files.createTempDirectory("cache-benchmark");
+        lsm = new LsmUserRepository(directory, new LsmTree.Options(32 << 20, 4, 256 << 20, 32 << 20, 10));
+        for (int i = 0; i < USERS; i++) {
+            String ssn = String.format("%09d", i);
+            lsm.addUser(ssn, new User("username" + i, "443908Rr", dob, ssn));
+        }
+        lsm.checkpoint();
+        userRepository = cache.equals("cached") ? new CachingUserRepository(lsm, 16 << 20, 16) : lsm;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (userRepository instanceof CachingUserRepository) {
+            CacheStatistics statistics = ((CachingUserRepository) userRepository).getStatistics();
+            System.out.printf("%ncache : hit rate %.3f, %d entries, %d evictions%n",
+                    statistics.getHitRate(), statistics.getEntries(), statistics.getEvictions());
+        }
+        lsm.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Optional<User> getRecentUser() {
+        double distance = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * USERS / 100;
+        int index = USERS - 1 - (int) Math.min(USERS - 1, distance);
+        return userRepository.getUser(String.format("%09d", index));
+    }
+}
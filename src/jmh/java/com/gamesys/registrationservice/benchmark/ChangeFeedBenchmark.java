@@ -0,0 +1,80 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.ChangePage;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.changes.ChangeFeed;
+import com.gamesys.registrationservice.persistence.changes.ChangeFeedUserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one downstream sync after 100 users changed: reading every user and diffing them against
+ * the previous copy (fullList), or reading the changes following the last position (changeFeed).
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="ChangeFeedBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ChangeFeedBenchmark {
+
+    private static final int CHANGES = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    public int users;
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+    private final Map<String, User> copy = new HashMap<>();
+    private ChangeFeed changeFeed;
+    private ChangeFeedUserRepository userRepository;
+    private long since;
+    private long round;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        changeFeed = new ChangeFeed(1_000_000);
+        userRepository = new ChangeFeedUserRepository(new UserRepositoryImpl(), changeFeed);
+        for (int i = 0; i < users; i++) {
+            userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+        userRepository.getAllUser().forEach(user -> copy.put(user.getSsn(), user));
+        since = changeFeed.latestSeq();
+    }
+
+    @Setup(Level.Invocation)
+    public void change() {
+        round++;
+        for (int i = 0; i < CHANGES; i++) {
+            String ssn = "ssn" + (int) ((round * CHANGES + i) % users);
+            userRepository.replaceUser(ssn, new User("username" + ssn.substring(3), "443908Rr", dob.plusDays(round % 365), ssn));
+        }
+    }
+
+    @Benchmark
+    public int fullList() {
+        int changed = 0;
+        for (User user : userRepository.getAllUser()) {
+            User previous = copy.put(user.getSsn(), user);
+            if (previous == null || !previous.getDob().equals(user.getDob())) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    @Benchmark
+    public int changeFeed() {
+        ChangePage page = changeFeed.read(since, 1000);
+        page.getChanges().forEach(change -> copy.put(change.getSsn(), change.getUser()));
+        since = page.getNextSince();
+        return page.getChanges().size();
+    }
+}
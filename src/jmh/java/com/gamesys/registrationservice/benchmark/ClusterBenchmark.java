@@ -0,0 +1,100 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.RegistrationServiceApplication;
+import com.gamesys.registrationservice.api.UserDTO;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.cluster.ClusterUserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Lookup and registration throughput of a cluster of 1, 2 or 4 nodes started in this JVM on
+ * localhost ports, each request sent to a random node which forwards it to the SSN's owner.
+ * Forwarded requests per node are printed after each trial.
+ *
+ * All nodes share the machine's cores, so on a small machine adding nodes only adds forwarding hops;
+ * capacity grows with the nodes once each runs on its own host.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="ClusterBenchmark -t 16"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ClusterBenchmark {
+
+    private static final int USERS = 100_000;
+    private static final int FIRST_PORT = 18081;
+
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+    private final AtomicLong next = new AtomicLong(USERS);
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private final RestTemplate restTemplate = new RestTemplate();
+    private List<String> addresses;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        addresses = IntStream.range(0, nodes).mapToObj(i -> "http://localhost:" + (FIRST_PORT + i)).collect(Collectors.toList());
+        for (int i = 0; i < nodes; i++) {
+            contexts.add(new SpringApplicationBuilder(RegistrationServiceApplication.class).run(
+                    "--server.port=" + (FIRST_PORT + i),
+                    "--logging.level.root=WARN",
+                    "--registration.cluster.enabled=true",
+                    "--registration.cluster.allow-duplicate-usernames=true",
+                    "--registration.cluster.secret=benchmark",
+                    "--registration.cluster.self=" + addresses.get(i),
+                    "--registration.cluster.nodes=" + String.join(",", addresses)));
+        }
+        ClusterUserRepository cluster = contexts.get(0).getBean(ClusterUserRepository.class);
+        for (int i = 0; i < USERS; i++) {
+            cluster.addUser(ssn(i), new User("username" + i, "443908Rr", dob, ssn(i)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (ConfigurableApplicationContext context : contexts) {
+            System.out.printf("%n%s forwarded %d requests", context.getEnvironment().getProperty("registration.cluster.self"),
+                    context.getBean(ClusterUserRepository.class).getStatus().getForwardedRequests());
+            context.close();
+        }
+        System.out.println();
+    }
+
+    @Benchmark
+    public UserDTO lookup() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return restTemplate.getForObject(node(random) + "/register/{ssn}", UserDTO.class, ssn(random.nextInt(USERS)));
+    }
+
+    @Benchmark
+    public UserDTO register() {
+        long i = next.getAndIncrement();
+        UserDTO user = new UserDTO("username" + i, "443908Rr", dob.toString(), ssn(i));
+        return restTemplate.postForObject(node(ThreadLocalRandom.current()) + "/register", user, UserDTO.class);
+    }
+
+    private String node(ThreadLocalRandom random) {
+        return addresses.get(random.nextInt(addresses.size()));
+    }
+
+    private static String ssn(long i) {
+        return String.format("ssn%09d", i);
+    }
+}
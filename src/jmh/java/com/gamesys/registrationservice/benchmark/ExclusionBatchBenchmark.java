@@ -0,0 +1,88 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.service.ExclusionService;
+import com.gamesys.registrationservice.service.exclusion.BatchingExclusionService;
+import com.gamesys.registrationservice.service.exclusion.RemoteExclusionService;
+import com.gamesys.registrationservice.service.exclusion.StubExclusionServer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exclusion checks per second of concurrent registrations against a local exclusion service
+ * answering every request in 5 ms, with one GET per check (single) or the checks sent in bulk
+ * requests by the batching client (batched). The requests the service received per check are
+ * printed after each trial.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="ExclusionBatchBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dhttp.maxConnections=512"})
+@State(Scope.Benchmark)
+public class ExclusionBatchBenchmark {
+
+    private static final int BURST = 2000;
+    private static final long LATENCY_MILLIS = 5;
+
+    @Param({"single", "batched"})
+    public String mode;
+
+    /**
+     * Registrations checking at the same time.
+     */
+    @Param({"512"})
+    public int registrations;
+
+    private final AtomicLong next = new AtomicLong();
+    private StubExclusionServer server;
+    private ExecutorService requestThreads;
+    private ExclusionService exclusionService;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+        server = new StubExclusionServer(LATENCY_MILLIS, registrations);
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(10_000);
+        requestFactory.setReadTimeout(10_000);
+        RemoteExclusionService remote = new RemoteExclusionService(server.url(), new RestTemplate(requestFactory));
+        exclusionService = mode.equals("single") ? remote : new BatchingExclusionService(remote, 500, 256, 8, 20_000);
+        requestThreads = Executors.newFixedThreadPool(registrations);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s : %d checks in %d requests%n", mode, server.checks(), server.calls());
+        requestThreads.shutdownNow();
+        if (exclusionService instanceof BatchingExclusionService) {
+            ((BatchingExclusionService) exclusionService).close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() throws InterruptedException {
+        CountDownLatch checked = new CountDownLatch(BURST);
+        for (int i = 0; i < BURST; i++) {
+            String ssn = String.format("%09d", next.getAndIncrement());
+            requestThreads.execute(() -> {
+                exclusionService.validate("1986-05-26", ssn);
+                checked.countDown();
+            });
+        }
+        checked.await();
+    }
+}
@@ -0,0 +1,128 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.ExclusionStatus;
+import com.gamesys.registrationservice.service.ExclusionService;
+import com.gamesys.registrationservice.service.ExclusionServiceImpl;
+import com.gamesys.registrationservice.service.exclusion.ExclusionList;
+import com.gamesys.registrationservice.service.exclusion.FileExclusionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of one exclusion check against a list of 1M or 10M pairs loaded from a file and served
+ * from its mapped index, for users that aren't listed (clean, answered by the Bloom filter but for
+ * its false positives) and users that are (listed, Bloom filter then binary search), next to the
+ * 1998 stub. cleanKey checks clean pairs already packed against the same list built on the heap,
+ * the Bloom filter probe alone. The build and validation times and the bytes mapped are printed
+ * once per trial.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="ExclusionBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ExclusionBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000000", "10000000"})
+    public int entries;
+
+    @Param({"file", "stub"})
+    public String type;
+
+    private final String[] cleanDobs = new String[PROBES];
+    private final String[] cleanSsns = new String[PROBES];
+    private final String[] listedDobs = new String[PROBES];
+    private final String[] listedSsns = new String[PROBES];
+    private final long[] cleanKeys = new long[PROBES];
+    private Path directory;
+    private ExclusionService exclusionService;
+    private ExclusionList exclusionList;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(17);
+        directory = Files.createTempDirectory("exclusion-benchmark");
+        Path file = directory.resolve("blacklist.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            writer.write("dob,ssn\n");
+            for (int i = 0; i < entries; i++) {
+                String dob = dob(random);
+                String ssn = ssn(random);
+                writer.write(dob + "," + ssn + "\n");
+                if (i < PROBES) {
+                    listedDobs[i] = dob;
+                    listedSsns[i] = ssn;
+                }
+            }
+        }
+        for (int i = 0; i < PROBES; i++) {
+            cleanDobs[i] = dob(random);
+            cleanSsns[i] = ssn(random);
+        }
+        if (type.equals("stub")) {
+            exclusionService = new ExclusionServiceImpl();
+        } else {
+            FileExclusionService fileExclusionService = new FileExclusionService(file, directory.resolve("index"), 10, 0, 0.01, 0.5);
+            ExclusionStatus status = fileExclusionService.getStatus();
+            System.out.printf("%n%d entries built in %d ms, validated in %d ms, %d bytes mapped%n", status.getEntries(),
+                    status.getBuildMillis(), status.getValidateMillis(), status.getBytes());
+            exclusionService = fileExclusionService;
+            exclusionList = ExclusionList.load(file, 10);
+            for (int i = 0; i < PROBES; i++) {
+                cleanKeys[i] = ExclusionList.pack(cleanDobs[i], cleanSsns[i]);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (exclusionService instanceof FileExclusionService) {
+            ((FileExclusionService) exclusionService).close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean clean() {
+        int i = next++ & PROBES - 1;
+        return exclusionService.validate(cleanDobs[i], cleanSsns[i]);
+    }
+
+    @Benchmark
+    public boolean cleanKey() {
+        return exclusionList == null || !exclusionList.contains(cleanKeys[next++ & PROBES - 1]);
+    }
+
+    @Benchmark
+    public boolean listed() {
+        int i = next++ & PROBES - 1;
+        return exclusionService.validate(listedDobs[i], listedSsns[i]);
+    }
+
+    private static String dob(Random random) {
+        return LocalDate.of(1930, 1, 1).plusDays(random.nextInt(28_000)).toString();
+    }
+
+    private static String ssn(Random random) {
+        int ssn = random.nextInt(1_000_000_000);
+        return String.format("%03d-%02d-%04d", ssn / 1_000_000, ssn / 10_000 % 100, ssn % 10_000);
+    }
+}
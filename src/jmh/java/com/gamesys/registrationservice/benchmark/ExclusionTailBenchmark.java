@@ -0,0 +1,74 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.ExclusionClientStatus;
+import com.gamesys.registrationservice.service.ExclusionService;
+import com.gamesys.registrationservice.service.exclusion.RemoteExclusionService;
+import com.gamesys.registrationservice.service.exclusion.ResilientExclusionService;
+import com.gamesys.registrationservice.service.exclusion.StubExclusionServer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exclusion check latency percentiles against a local exclusion service answering in 5 ms, except
+ * for 3% of the requests taking 400 ms, with the plain remote client (plain) or behind the resilient
+ * client hedging calls slower than the recent p95 (resilient). The client counters are printed after
+ * each trial.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="ExclusionTailBenchmark -t 16"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512m", "-Xmx512m", "-Dhttp.maxConnections=128"})
+@State(Scope.Benchmark)
+public class ExclusionTailBenchmark {
+
+    @Param({"plain", "resilient"})
+    public String client;
+
+    private final AtomicLong next = new AtomicLong();
+    private StubExclusionServer server;
+    private ExclusionService exclusionService;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+        server = new StubExclusionServer(5, 128);
+        server.setSlow(0.03, 400);
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(2_000);
+        requestFactory.setReadTimeout(2_000);
+        RemoteExclusionService remote = new RemoteExclusionService(server.url(), new RestTemplate(requestFactory));
+        exclusionService = client.equals("plain") ? remote
+                : new ResilientExclusionService(remote, 500, 64, 64, true, 5, 50, 20, 0.5, 5_000,
+                ResilientExclusionService.Fallback.FAIL_CLOSED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (exclusionService instanceof ResilientExclusionService) {
+            ExclusionClientStatus status = ((ResilientExclusionService) exclusionService).getStatus();
+            System.out.printf("%n%d calls, %d hedged, %d won by the hedge, hedge delay %d us, %d timeouts%n",
+                    status.getCalls(), status.getHedged(), status.getHedgeWins(), status.getHedgeDelayMicros(),
+                    status.getTimeouts());
+        }
+        System.out.printf("%d requests for %d checks%n", server.calls(), next.get());
+        if (exclusionService instanceof ResilientExclusionService) {
+            ((ResilientExclusionService) exclusionService).close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return exclusionService.validate("1986-05-26", String.format("%09d", next.getAndIncrement()));
+    }
+}
@@ -0,0 +1,107 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.gamesys.registrationservice.api.UserDTO;
+import com.gamesys.registrationservice.domain.ExportStatus;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import com.gamesys.registrationservice.service.exporter.BulkExporter;
+import com.gamesys.registrationservice.service.exporter.ExportFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Time to export 1M users into files of 250k users: with the bulk exporter in either format, or
+ * serialized with Jackson into gzip streams (jackson) like the NDJSON export of GET /register. Run
+ * with -prof gc to compare the allocation rate per user.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="ExportBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    private static final int USERS = 1_000_000;
+    private static final int SEGMENT_USERS = 250_000;
+
+    @Param({"GZIP", "BINARY", "jackson"})
+    public String format;
+
+    private final ObjectWriter writer = new ObjectMapper().writerFor(UserDTO.class).withRootValueSeparator("\n");
+    private Path directory;
+    private UserRepositoryImpl userRepository;
+    private BulkExporter bulkExporter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("export-benchmark");
+        userRepository = new UserRepositoryImpl();
+        for (int i = 0; i < USERS; i++) {
+            String ssn = "ssn" + i;
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", LocalDate.of(1950, 1, 1).plusDays(i % 20_000), ssn));
+        }
+        if (!format.equals("jackson")) {
+            bulkExporter = new BulkExporter();
+            set("userRepository", userRepository);
+            set("directory", directory.toString());
+            set("format", ExportFormat.valueOf(format));
+            set("segmentUsers", (long) SEGMENT_USERS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        if (bulkExporter != null) {
+            ExportStatus status = bulkExporter.run();
+            return status.getBytes();
+        }
+        Path export = Files.createDirectories(directory.resolve(String.valueOf(System.nanoTime())));
+        long bytes = 0;
+        try (Stream<User> users = userRepository.streamAllUser()) {
+            Iterator<User> it = users.iterator();
+            for (int segment = 0; it.hasNext(); segment++) {
+                Path file = export.resolve("users-" + segment + ".ndjson.gz");
+                try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16), 1 << 16);
+                     JsonGenerator generator = writer.getFactory().createGenerator(out)) {
+                    for (int i = 0; i < SEGMENT_USERS && it.hasNext(); i++) {
+                        User user = it.next();
+                        writer.writeValue(generator, new UserDTO(user.getUsername(), user.getPassword(), user.getDob().toString(), user.getSsn()));
+                    }
+                }
+                bytes += Files.size(file);
+            }
+        }
+        return bytes;
+    }
+
+    private void set(String name, Object value) throws Exception {
+        Field field = BulkExporter.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(bulkExporter, value);
+    }
+}
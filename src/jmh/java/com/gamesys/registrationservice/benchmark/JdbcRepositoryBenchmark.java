@@ -0,0 +1,82 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.JdbcUserRepository;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Registration throughput of the jdbc repository against an embedded H2 file database, with writes
+ * coalesced into batches or each executed and committed on its own (max-batch 1). Run with many
+ * threads, batching only helps when writers are concurrent.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="JdbcRepositoryBenchmark -t 32"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class JdbcRepositoryBenchmark {
+
+    @Param({"batched", "unbatched"})
+    public String writes;
+
+    @Param({"16"})
+    public int poolSize;
+
+    @Param({"500"})
+    public long windowMicros;
+
+    /**
+     * WRITE_DELAY=0 writes every commit to the file, as a server database would log it.
+     */
+    @Param({"", ";WRITE_DELAY=0"})
+    public String urlOptions;
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+    private final AtomicLong next = new AtomicLong();
+    private Path directory;
+    private HikariDataSource dataSource;
+    private JdbcUserRepository userRepository;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("jdbc-benchmark");
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:file:" + directory.resolve("users").toAbsolutePath() + urlOptions);
+        config.setMaximumPoolSize(poolSize);
+        dataSource = new HikariDataSource(config);
+        userRepository = new JdbcUserRepository(dataSource, windowMicros, writes.equals("batched") ? 256 : 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (userRepository.batches() > 0) {
+            System.out.printf("%n%d writes in %d batches%n", userRepository.batchedWrites(), userRepository.batches());
+        }
+        userRepository.close();
+        dataSource.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Optional<User> addUser() {
+        String ssn = String.format("%09d", next.getAndIncrement());
+        return userRepository.addUser(ssn, new User("username" + ssn, "443908Rr", dob, ssn));
+    }
+}
@@ -0,0 +1,90 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.LsmUserRepository;
+import com.gamesys.registrationservice.persistence.lsm.LsmStatistics;
+import com.gamesys.registrationservice.persistence.lsm.LsmTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Latency distribution of the LSM repository once it holds a given number of users : lookups of
+ * registered users, rejected duplicate registrations and new registrations, whose duplicate and
+ * username checks are answered by the Bloom filters. Read and write amplification are printed on
+ * tear down. Heap stays small whatever the user count, the data set lives in a temporary directory.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="LsmRepositoryBenchmark -p users=10000000"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class LsmRepositoryBenchmark {
+
+    @Param({"1000000"})
+    public int users;
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+    private final AtomicLong next = new AtomicLong();
+    private Path directory;
+    private LsmUserRepository userRepository;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("lsm-benchmark");
+        userRepository = new LsmUserRepository(directory, new LsmTree.Options(32 << 20, 4, 256 << 20, 32 << 20, 10));
+        for (int i = 0; i < users; i++) {
+            String ssn = String.format("%09d", i);
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob, ssn));
+        }
+        next.set(users);
+        print("loaded", userRepository.statistics());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        print("finished", userRepository.statistics());
+        userRepository.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Optional<User> getUser() {
+        return userRepository.getUser(String.format("%09d", ThreadLocalRandom.current().nextInt(users)));
+    }
+
+    @Benchmark
+    public Optional<User> addDuplicateUser() {
+        String ssn = String.format("%09d", ThreadLocalRandom.current().nextInt(users));
+        return userRepository.addUser(ssn, new User("other" + ssn, "443908Rr", dob, ssn));
+    }
+
+    @Benchmark
+    public Optional<User> addNewUser() {
+        String ssn = String.format("%09d", next.getAndIncrement());
+        return userRepository.addUser(ssn, new User("username" + ssn, "443908Rr", dob, ssn));
+    }
+
+    private static void print(String phase, LsmStatistics statistics) {
+        System.out.printf("%n%s : tables per level %s, %d MB on disk, read amplification %.2f blocks per get, "
+                        + "write amplification %.2f, Bloom filter skips %d, write stalls %d%n", phase,
+                Arrays.toString(statistics.getTablesPerLevel()), statistics.getDiskBytes() >> 20,
+                statistics.getReadAmplification(), statistics.getWriteAmplification(), statistics.getBloomSkips(),
+                statistics.getWriteStalls());
+    }
+}
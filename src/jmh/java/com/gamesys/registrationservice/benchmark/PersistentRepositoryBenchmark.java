@@ -0,0 +1,60 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.impl.PersistentUserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write cost and snapshot cost of the persistent trie repository against the memory repository.
+ * The memory repository's only point in time view is a copy through getAllUser, the persistent
+ * repository returns its current version.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="PersistentRepositoryBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class PersistentRepositoryBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    @Param({"memory", "persistent"})
+    public String repository;
+
+    private UserRepository userRepository;
+    private User[] users;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LocalDate dob = LocalDate.of(1986, 5, 26);
+        userRepository = repository.equals("persistent") ? new PersistentUserRepository() : new UserRepositoryImpl();
+        users = new User[USERS];
+        for (int i = 0; i < USERS; i++) {
+            String ssn = String.format("%09d", i);
+            users[i] = new User("username" + i, "443908Rr", dob, ssn);
+            userRepository.addUser(ssn, users[i]);
+        }
+    }
+
+    @Benchmark
+    public Optional<User> replaceUser() {
+        User user = users[ThreadLocalRandom.current().nextInt(USERS)];
+        return userRepository.replaceUser(user.getSsn(), user);
+    }
+
+    @Benchmark
+    public Object snapshot() {
+        return userRepository instanceof PersistentUserRepository
+                ? ((PersistentUserRepository) userRepository).snapshot() : userRepository.getAllUser();
+    }
+}
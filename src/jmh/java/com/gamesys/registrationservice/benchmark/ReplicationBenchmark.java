@@ -0,0 +1,92 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import com.gamesys.registrationservice.persistence.replication.ReplicationFollower;
+import com.gamesys.registrationservice.persistence.replication.ReplicationLeader;
+import com.gamesys.registrationservice.persistence.replication.ReplicationLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registration throughput of a leader replicating over localhost to in process followers, with
+ * asynchronous or synchronous acknowledgement. The highest follower lag seen while sampling every
+ * 10 ms is printed after each trial.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="ReplicationBenchmark -t 8"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ReplicationBenchmark {
+
+    @Param({"ASYNC", "SYNC"})
+    public ReplicationLog.AckMode ack;
+
+    @Param({"0", "1", "2"})
+    public int followers;
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+    private final AtomicLong next = new AtomicLong();
+    private final List<ReplicationFollower> replicas = new ArrayList<>();
+    private ReplicationLog log;
+    private ReplicationLeader leader;
+    private UserRepositoryImpl userRepository;
+    private Thread sampler;
+    private volatile long maxLag;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        log = new ReplicationLog(MutationLog.NONE, ack, 1, 1000);
+        userRepository = new UserRepositoryImpl(log);
+        leader = new ReplicationLeader(0, log, userRepository, 100, 1_000_000);
+        for (int i = 0; i < followers; i++) {
+            ReplicationFollower follower = new ReplicationFollower("localhost", leader.getPort(),
+                    new UserRepositoryImpl(ReplicationFollower.READ_ONLY), 100, 100);
+            replicas.add(follower);
+            while (!follower.isCaughtUp(0)) {
+                Thread.sleep(10);
+            }
+        }
+        sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long lsn = log.lastLsn();
+                for (ReplicationFollower follower : replicas) {
+                    maxLag = Math.max(maxLag, lsn - follower.getStatus().getLsn());
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sampler.interrupt();
+        System.out.printf("%nmax follower lag %d mutations, %d sync timeouts%n", maxLag, log.syncTimeouts());
+        replicas.forEach(ReplicationFollower::close);
+        leader.close();
+    }
+
+    @Benchmark
+    public Optional<User> addUser() {
+        String ssn = String.format("%09d", next.getAndIncrement());
+        return userRepository.addUser(ssn, new User("username" + ssn, "443908Rr", dob, ssn));
+    }
+}
@@ -0,0 +1,99 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.impl.OffHeapUserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap, direct memory and GC cost of holding N users in the on heap and off heap repositories,
+ * printed once the repository is populated, followed by random lookup throughput. Run with -prof gc
+ * to see the allocation rate of the lookups.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="RepositoryFootprintBenchmark -prof gc"
+ *
+ * The default runs fit in an 8 GB heap. 50 million users need about 24 GB, run them on their own with
+ * a heap sized for them (direct memory defaults to the heap size):
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="RepositoryFootprintBenchmark -p users=50000000 -jvmArgsAppend -Xmx24g"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-XX:MaxDirectMemorySize=8g", "-XX:+UseG1GC"})
+@Threads(8)
+@State(Scope.Benchmark)
+public class RepositoryFootprintBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int users;
+
+    @Param({"memory", "offheap"})
+    public String repository;
+
+    private UserRepository userRepository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long start = System.nanoTime();
+
+        userRepository = "offheap".equals(repository) ? new OffHeapUserRepository() : new UserRepositoryImpl();
+        LocalDate dob = LocalDate.of(1986, 5, 26);
+        for (int i = 0; i < users; i++) {
+            String ssn = ssn(i);
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr" + i, dob.plusDays(i % 20000), ssn));
+        }
+
+        long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%n%s users=%d load=%d ms heap=%d MB (%d bytes/user) direct=%d MB gc=%d collections %d ms%n",
+                repository, users, loadMillis, heap >> 20, heap / users, directBytes() >> 20,
+                gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+    }
+
+    @Benchmark
+    public Object getUser() {
+        return userRepository.getUser(ssn(ThreadLocalRandom.current().nextInt(users)));
+    }
+
+    private static String ssn(int i) {
+        return String.format("%09d", i);
+    }
+
+    private static long directBytes() {
+        long bytes = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            bytes += pool.getMemoryUsed();
+        }
+        return bytes;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += gc.getCollectionTime();
+        }
+        return millis;
+    }
+}
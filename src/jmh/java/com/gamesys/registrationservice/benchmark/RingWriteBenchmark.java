@@ -0,0 +1,71 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import com.gamesys.registrationservice.persistence.log.FsyncPolicy;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import com.gamesys.registrationservice.persistence.log.WriteAheadLog;
+import com.gamesys.registrationservice.persistence.snapshot.SnapshotStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Registration latency percentiles of the memory repository writing under the key's lock on the
+ * caller's thread (locking) or through the single writer ring (ring), without a log or with a write
+ * ahead log synced on every write. Run once per producer count.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="RingWriteBenchmark -t 8"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class RingWriteBenchmark {
+
+    @Param({"locking", "ring"})
+    public String writeMode;
+
+    @Param({"NONE", "PER_WRITE"})
+    public String log;
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+    private final AtomicLong next = new AtomicLong();
+    private Path directory;
+    private MutationLog mutationLog;
+    private UserRepositoryImpl userRepository;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("ring-benchmark");
+        mutationLog = log.equals("NONE") ? MutationLog.NONE : new WriteAheadLog(directory, FsyncPolicy.valueOf(log), 20);
+        userRepository = new UserRepositoryImpl(mutationLog, SnapshotStore.NONE, writeMode.equals("ring") ? 65536 : 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        userRepository.getWriteRing().ifPresent(ring ->
+                System.out.printf("%n%d writes in %d batches%n", ring.writes(), ring.batches()));
+        userRepository.close();
+        mutationLog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Optional<User> addUser() {
+        String ssn = String.format("%09d", next.getAndIncrement());
+        return userRepository.addUser(ssn, new User("username" + ssn, "443908Rr", dob, ssn));
+    }
+}
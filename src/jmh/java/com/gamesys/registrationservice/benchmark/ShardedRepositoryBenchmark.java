@@ -0,0 +1,59 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.impl.ShardedUserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed read/write throughput of the in memory repositories, one quarter of the operations replacing
+ * a user. Run once per thread count to see how each repository scales with writers:
+ *
+ * for t in 1 2 4 8 16 32 64; do
+ *   mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="ShardedRepositoryBenchmark -t $t"
+ * done
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ShardedRepositoryBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    @Param({"memory", "sharded"})
+    public String repository;
+
+    private UserRepository userRepository;
+    private User[] users;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LocalDate dob = LocalDate.of(1986, 5, 26);
+        userRepository = repository.equals("sharded") ? new ShardedUserRepository(64) : new UserRepositoryImpl();
+        users = new User[USERS];
+        for (int i = 0; i < USERS; i++) {
+            String ssn = String.format("%09d", i);
+            users[i] = new User("username" + i, "443908Rr", dob, ssn);
+            userRepository.addUser(ssn, users[i]);
+        }
+    }
+
+    @Benchmark
+    public Optional<User> mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        User user = users[random.nextInt(USERS)];
+        if (random.nextInt(4) == 0) {
+            return userRepository.replaceUser(user.getSsn(), user);
+        }
+        return userRepository.getUser(user.getSsn());
+    }
+}
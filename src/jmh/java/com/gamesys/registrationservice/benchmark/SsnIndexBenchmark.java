@@ -0,0 +1,85 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.index.ConcurrentLongObjectMap;
+import com.gamesys.registrationservice.persistence.index.SsnCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup and duplicate insert cost of the packed SSN index against the String keyed
+ * ConcurrentHashMap it replaced. Each operation builds a fresh String key, as a decoded request
+ * does, so its hash is never cached and the key is hot in cache for both maps.
+ * Run with -prof gc to compare allocation per operation.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="SsnIndexBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SsnIndexBenchmark {
+
+    @Param({"1000000"})
+    public int users;
+
+    private Map<String, User> stringMap;
+    private ConcurrentLongObjectMap<User> longMap;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LocalDate dob = LocalDate.of(1986, 5, 26);
+        stringMap = new ConcurrentHashMap<>();
+        longMap = new ConcurrentLongObjectMap<>();
+        for (int i = 0; i < users; i++) {
+            String ssn = ssn(i);
+            User user = new User("username" + i, "443908Rr", dob, ssn);
+            stringMap.put(ssn, user);
+            longMap.put(SsnCodec.encode(ssn), user);
+        }
+    }
+
+    private String key() {
+        return ssn(ThreadLocalRandom.current().nextInt(users));
+    }
+
+    private static String ssn(int value) {
+        char[] ssn = "000-00-0000".toCharArray();
+        for (int i = ssn.length - 1; value > 0; i--) {
+            if (ssn[i] != '-') {
+                ssn[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+        return new String(ssn);
+    }
+
+    @Benchmark
+    public User stringMapGet() {
+        return stringMap.get(key());
+    }
+
+    @Benchmark
+    public User longMapGet() {
+        return longMap.get(SsnCodec.encode(key()));
+    }
+
+    @Benchmark
+    public User stringMapDuplicateInsert() {
+        String key = key();
+        return stringMap.putIfAbsent(key, stringMap.get(key));
+    }
+
+    @Benchmark
+    public User longMapDuplicateInsert() {
+        long ssn = SsnCodec.encode(key());
+        return longMap.putIfAbsent(ssn, longMap.get(ssn));
+    }
+}
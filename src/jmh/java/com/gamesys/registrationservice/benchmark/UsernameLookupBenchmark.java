@@ -0,0 +1,46 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of GET /register/by-username through the username index. Lookup cost should not
+ * depend on the number of users; 10M users need a heap of about 6 GB.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark="UsernameLookupBenchmark -p users=10000000"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class UsernameLookupBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int users;
+
+    private UserRepository userRepository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LocalDate dob = LocalDate.of(1986, 5, 26);
+        userRepository = new UserRepositoryImpl();
+        for (int i = 0; i < users; i++) {
+            String ssn = String.format("%09d", i);
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob, ssn));
+        }
+    }
+
+    @Benchmark
+    public Optional<User> getUserByUsername() {
+        return userRepository.getUserByUsername("UserName" + ThreadLocalRandom.current().nextInt(users));
+    }
+}
@@ -0,0 +1,66 @@
+package com.gamesys.registrationservice.benchmark;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import com.gamesys.registrationservice.persistence.log.FsyncPolicy;
+import com.gamesys.registrationservice.persistence.log.WriteAheadLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mutation throughput of the durable repository for every fsync policy. Every operation logs one
+ * full user record; a bounded key space keeps the heap flat so the numbers reflect the log only.
+ *
+ * mvn -Pbenchmark clean test-compile exec:exec -Dbenchmark=WriteAheadLogBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class WriteAheadLogBenchmark {
+
+    @Param({"PER_WRITE", "INTERVAL", "NONE"})
+    public FsyncPolicy fsyncPolicy;
+
+    private static final int KEYS = 100_000;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    private Path directory;
+    private WriteAheadLog log;
+    private UserRepository userRepository;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("wal-benchmark");
+        log = new WriteAheadLog(directory, fsyncPolicy, 20);
+        userRepository = new UserRepositoryImpl(log);
+        for (int i = 0; i < KEYS; i++) {
+            userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        Files.deleteIfExists(directory.resolve("users.wal"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Object replaceUser() {
+        long i = sequence.incrementAndGet() % KEYS;
+        return userRepository.replaceUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+    }
+}
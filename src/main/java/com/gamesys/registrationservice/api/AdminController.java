@@ -0,0 +1,204 @@
+package com.gamesys.registrationservice.api;
+
+import com.gamesys.registrationservice.api.exception.ForbiddenException;
+import com.gamesys.registrationservice.domain.CacheStatistics;
+import com.gamesys.registrationservice.domain.ClusterStatus;
+import com.gamesys.registrationservice.domain.ExclusionCacheStatistics;
+import com.gamesys.registrationservice.domain.ExclusionClientStatus;
+import com.gamesys.registrationservice.domain.ExclusionStatus;
+import com.gamesys.registrationservice.domain.ExportStatus;
+import com.gamesys.registrationservice.domain.ImportStatus;
+import com.gamesys.registrationservice.domain.ReplicationStatus;
+import com.gamesys.registrationservice.domain.ShardStatistics;
+import com.gamesys.registrationservice.persistence.cluster.RemoteClusterMember;
+import com.gamesys.registrationservice.service.AdminService;
+import com.gamesys.registrationservice.service.exporter.ExportFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+
+
+/**
+ * Operational endpoints of the node, kept apart from the registration API : statistics and status
+ * of the optional features, bulk imports and exports, and cluster membership.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Inject
+    protected AdminService adminService;
+
+    @Value("${registration.cluster.secret:}")
+    protected String clusterSecret;
+
+    /**
+     * Operation, size and lock contention counters of each repository shard, not found unless
+     * registration.repository.type=sharded.
+     */
+    @GetMapping("/shards")
+    public List<ShardStatistics> showShardStatistics() {
+        log.info("GET : SHOW SHARD STATISTICS");
+        return adminService.getShardStatistics();
+    }
+
+    /**
+     * Hit, miss and eviction counters of the user cache, not found unless registration.cache.enabled=true.
+     */
+    @GetMapping("/cache")
+    public CacheStatistics showCacheStatistics() {
+        log.info("GET : SHOW CACHE STATISTICS");
+        return adminService.getCacheStatistics();
+    }
+
+    /**
+     * Role, lsn and lag of this node, not found unless registration.replication.role is leader or follower.
+     */
+    @GetMapping("/replication")
+    public ReplicationStatus showReplicationStatus() {
+        log.info("GET : SHOW REPLICATION STATUS");
+        return adminService.getReplicationStatus();
+    }
+
+    /**
+     * Starts importing a CSV or NDJSON file of registration.import.dir, answering at once; progress
+     * is followed at GET /admin/imports.
+     */
+    @PostMapping("/imports")
+    public ResponseEntity<ImportStatus> startImport(@RequestParam String file) {
+        log.info("POST : START IMPORT OF " + file);
+        return new ResponseEntity<>(adminService.startImport(file), HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Progress and throughput of the running import, or the result of the last one.
+     */
+    @GetMapping("/imports")
+    public ImportStatus showImportStatus() {
+        log.info("GET : SHOW IMPORT STATUS");
+        return adminService.getImportStatus();
+    }
+
+    /**
+     * Starts exporting every user into segment files of registration.export.dir, answering at once;
+     * progress and the segments written so far are listed at GET /admin/exports.
+     */
+    @PostMapping("/exports")
+    public ResponseEntity<ExportStatus> startExport() {
+        log.info("POST : START EXPORT");
+        return new ResponseEntity<>(adminService.startExport(), HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Progress of the running export, or the segments of the last one.
+     */
+    @GetMapping("/exports")
+    public ExportStatus showExportStatus() {
+        log.info("GET : SHOW EXPORT STATUS");
+        return adminService.getExportStatus();
+    }
+
+    /**
+     * Downloads a segment of the current or previous export. The file never goes through the heap :
+     * Tomcat sends it with sendfile when the connector supports it, otherwise the file channel
+     * transfers it to the response.
+     */
+    @GetMapping("/exports/{id}/{name:.+}")
+    public void downloadExportSegment(@PathVariable String id, @PathVariable String name,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("GET : DOWNLOAD EXPORT SEGMENT " + id + "/" + name);
+        Path segment = adminService.getExportSegment(id, name);
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = file.size();
+            response.setContentType(ExportFormat.contentTypeOf(name));
+            response.setContentLengthLong(size);
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + name + "\"");
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, segment.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, size);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += file.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * Size and load time of the exclusion list, not found unless registration.exclusion.type=file.
+     */
+    @GetMapping("/exclusions")
+    public ExclusionStatus showExclusionStatus() {
+        log.info("GET : SHOW EXCLUSION STATUS");
+        return adminService.getExclusionStatus();
+    }
+
+    /**
+     * Hits and misses of the exclusion check cache, not found unless registration.exclusion.cache.enabled=true.
+     */
+    @GetMapping("/exclusions/cache")
+    public ExclusionCacheStatistics showExclusionCacheStatistics() {
+        log.info("GET : SHOW EXCLUSION CACHE STATISTICS");
+        return adminService.getExclusionCacheStatistics();
+    }
+
+    /**
+     * Breaker state, timeouts and hedges of the remote exclusion client, not found unless
+     * registration.exclusion.resilience.enabled=true.
+     */
+    @GetMapping("/exclusions/client")
+    public ExclusionClientStatus showExclusionClientStatus() {
+        log.info("GET : SHOW EXCLUSION CLIENT STATUS");
+        return adminService.getExclusionClientStatus();
+    }
+
+    /**
+     * Nodes and migration progress of the cluster, not found unless registration.cluster.enabled=true.
+     */
+    @GetMapping("/cluster")
+    public ClusterStatus showClusterStatus() {
+        log.info("GET : SHOW CLUSTER STATUS");
+        return adminService.getClusterStatus();
+    }
+
+    /**
+     * Adds the node at address, e.g. http://localhost:8084, to the cluster. Its share of the users
+     * moves to it in the background while every user stays readable. The request must carry
+     * registration.cluster.secret in the X-Cluster-Secret header, or is refused with 403.
+     */
+    @PostMapping("/cluster/nodes")
+    public ClusterStatus addClusterNode(@RequestParam String address,
+                                        @RequestHeader(value = RemoteClusterMember.SECRET_HEADER, required = false) String secret) {
+        log.info("POST : ADD CLUSTER NODE " + address);
+        if (clusterSecret.isEmpty() || secret == null
+                || !MessageDigest.isEqual(clusterSecret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8))) {
+            throw new ForbiddenException("Cluster node added without the cluster secret", ErrorEnum.FORBIDDEN_EXCEPTION);
+        }
+        return adminService.addClusterNode(address);
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.gamesys.registrationservice.api;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Gives an async request the timeout its handler left in the {@link #TIMEOUT} request attribute,
+ * in milliseconds, before the request goes async. Every other async request keeps the default.
+ */
+public class AsyncTimeoutInterceptor implements CallableProcessingInterceptor {
+
+    public static final String TIMEOUT = AsyncTimeoutInterceptor.class.getName() + ".TIMEOUT";
+
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+        Object timeout = request.getAttribute(TIMEOUT, RequestAttributes.SCOPE_REQUEST);
+        if (timeout instanceof Long && request instanceof AsyncWebRequest) {
+            ((AsyncWebRequest) request).setTimeout((Long) timeout);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.gamesys.registrationservice.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * One change of the feed, type being ADD, REPLACE or REMOVE. user is the user after the change and
+ * is null for a REMOVE, so applying a change twice leaves the same result.
+ */
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class ChangeDTO {
+    private long seq;
+    private String type;
+    private String ssn;
+    private UserDTO user;
+}
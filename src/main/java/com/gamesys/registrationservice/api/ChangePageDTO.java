@@ -0,0 +1,23 @@
+package com.gamesys.registrationservice.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Changes following a feed position. nextSince is passed back as the since parameter, latestSeq is
+ * the last change recorded. resyncRequired means the changes following since are gone: every user
+ * has to be reloaded before following the feed again from nextSince.
+ */
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class ChangePageDTO {
+    private List<ChangeDTO> changes;
+    private long nextSince;
+    private long latestSeq;
+    private boolean resyncRequired;
+}
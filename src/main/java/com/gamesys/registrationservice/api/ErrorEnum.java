@@ -9,6 +9,8 @@ public enum ErrorEnum {
     BAD_REQUEST_EXCEPTION               ("M0003","BAD REQUEST EXCEPTION"),
     FORBIDDEN_EXCEPTION                 ("M0004","FORBIDDEN EXCEPTION"),
     SERVER_EXCEPTION                    ("M0005","SERVER EXCEPTION"),
+    STORAGE_EXCEPTION                   ("M0006","STORAGE EXCEPTION"),
+    EXCLUSION_SERVICE_EXCEPTION         ("M0007","EXCLUSION SERVICE UNAVAILABLE"),
 
     // API/CONFIG ERRORS
     API_ERROR_USER_NOT_FOUND            ("A0001","USER NOT FOUND"),
@@ -20,7 +22,16 @@ public enum ErrorEnum {
     API_ERROR_USER_ALREADY_EXIST        ("A0007","USER ALREADY EXIST"),
     API_ERROR_USER_DATA_INVALIDE        ("A0008","USER DATA INVALID"),
     API_ERROR_REQUEST_BODY_INVALIDE     ("A0009","REQUEST BODY INVALID"),
-    API_ERROR_USER_SSN_NOT_CORRECT      ("A0010","USER SSN NOT CORRECT")
+    API_ERROR_USER_SSN_NOT_CORRECT      ("A0010","USER SSN NOT CORRECT"),
+    API_ERROR_PAGE_LIMIT_NOT_CORRECT    ("A0011","PAGE LIMIT NOT CORRECT"),
+    API_ERROR_PAGE_CURSOR_NOT_CORRECT   ("A0012","PAGE CURSOR NOT CORRECT"),
+    API_ERROR_REQUEST_PARAM_INVALIDE    ("A0013","REQUEST PARAM INVALID"),
+    API_ERROR_USERNAME_ALREADY_EXIST    ("A0014","USERNAME ALREADY EXIST"),
+    API_ERROR_READ_ONLY_REPLICA         ("A0015","READ ONLY REPLICA, WRITE TO THE LEADER"),
+    API_ERROR_IMPORT_ALREADY_RUNNING    ("A0016","IMPORT ALREADY RUNNING"),
+    API_ERROR_RECORD_TOO_LONG           ("A0017","RECORD TOO LONG"),
+    API_ERROR_EXPORT_ALREADY_RUNNING    ("A0018","EXPORT ALREADY RUNNING"),
+    API_ERROR_CLUSTER_CHANGE_CONFLICT   ("A0019","CLUSTER CHANGE CONFLICT, RETRY ONCE THE MIGRATION ENDED")
     ;
 
     private String code;
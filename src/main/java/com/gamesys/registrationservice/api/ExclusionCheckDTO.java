@@ -0,0 +1,19 @@
+package com.gamesys.registrationservice.api;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * One (dob, ssn) check of the remote exclusion service, valid being its answer.
+ */
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class ExclusionCheckDTO {
+    private String dob;
+    private String ssn;
+    private Boolean valid;
+}
@@ -0,0 +1,111 @@
+package com.gamesys.registrationservice.api;
+
+import com.gamesys.registrationservice.api.exception.ForbiddenException;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.cluster.ClusterMember;
+import com.gamesys.registrationservice.persistence.cluster.ClusterUserRepository;
+import com.gamesys.registrationservice.persistence.cluster.ClusterView;
+import com.gamesys.registrationservice.persistence.cluster.RemoteClusterMember;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Optional;
+
+/**
+ * Node to node endpoints of the cluster. They act on this node's own users only, without routing,
+ * validation or exclusion checks which the node receiving the client request already did. A refused
+ * write answers 409 and a missing user 404. They share the public port, so every request must carry
+ * registration.cluster.secret in the X-Cluster-Secret header, or is refused with 403.
+ */
+
+@Slf4j
+@RestController
+@RequestMapping("/internal")
+@ConditionalOnProperty(name = "registration.cluster.enabled", havingValue = "true")
+public class InternalUserController {
+
+    @Inject
+    protected ClusterUserRepository clusterUserRepository;
+
+    @Value("${registration.cluster.secret:}")
+    protected String secret;
+
+    @ModelAttribute
+    public void authenticate(@RequestHeader(value = RemoteClusterMember.SECRET_HEADER, required = false) String presented) {
+        if (presented == null || !MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8))) {
+            throw new ForbiddenException("Internal request without the cluster secret", ErrorEnum.FORBIDDEN_EXCEPTION);
+        }
+    }
+
+    @GetMapping("/users/{ssn}")
+    public ResponseEntity<UserDTO> getUser(@PathVariable String ssn) {
+        return found(partition().getUser(ssn), HttpStatus.NOT_FOUND);
+    }
+
+    @GetMapping("/users/by-username/{name}")
+    public ResponseEntity<UserDTO> getUserByUsername(@PathVariable String name) {
+        return found(partition().getUserByUsername(name), HttpStatus.NOT_FOUND);
+    }
+
+    @GetMapping(value = "/users", params = "limit")
+    public UserPageDTO getUserPage(@RequestParam int limit, @RequestParam(required = false) String cursor) {
+        return RegisterController.pageToDto(partition().getUserPage(StringUtils.isEmpty(cursor) ? null : cursor, limit));
+    }
+
+    @GetMapping(value = "/users", params = {"dobFrom", "dobTo"})
+    public UserPageDTO getUsersByDob(@RequestParam String dobFrom, @RequestParam String dobTo, @RequestParam int limit,
+                                     @RequestParam(required = false) String cursor) {
+        return RegisterController.pageToDto(partition().getUsersByDob(RegisterController.parseDob(dobFrom),
+                RegisterController.parseDob(dobTo), StringUtils.isEmpty(cursor) ? null : cursor, limit));
+    }
+
+    @PostMapping("/users/{ssn}")
+    public ResponseEntity<UserDTO> addUser(@PathVariable String ssn, @RequestBody UserDTO userDTO) {
+        return found(partition().addUser(ssn, RegisterController.dtoToUser(userDTO)), HttpStatus.CONFLICT);
+    }
+
+    @PutMapping("/users/{ssn}")
+    public ResponseEntity<UserDTO> replaceUser(@PathVariable String ssn, @RequestBody UserDTO userDTO) {
+        return found(partition().replaceUser(ssn, RegisterController.dtoToUser(userDTO)), HttpStatus.CONFLICT);
+    }
+
+    @DeleteMapping("/users/{ssn}")
+    public ResponseEntity<Void> removeUser(@PathVariable String ssn) {
+        return new ResponseEntity<>(partition().removeUser(ssn) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND);
+    }
+
+    @PostMapping("/users/{ssn}/handoff")
+    public ResponseEntity<Void> handOff(@PathVariable String ssn) {
+        member().handOff(ssn);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @PutMapping("/cluster")
+    public ResponseEntity<Void> install(@RequestBody ClusterView view) {
+        log.info("PUT : INSTALL CLUSTER VERSION " + view.getVersion());
+        member().install(view);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    private ClusterMember member() {
+        return clusterUserRepository.self();
+    }
+
+    private UserRepository partition() {
+        return member().partition();
+    }
+
+    private static ResponseEntity<UserDTO> found(Optional<User> user, HttpStatus otherwise) {
+        return user.map(found -> new ResponseEntity<>(RegisterController.userToDto(found), HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(otherwise));
+    }
+}
@@ -1,21 +1,36 @@
 package com.gamesys.registrationservice.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.gamesys.registrationservice.api.exception.BadRequestException;
+import com.gamesys.registrationservice.domain.Change;
+import com.gamesys.registrationservice.domain.ChangePage;
+import com.gamesys.registrationservice.domain.Page;
 import com.gamesys.registrationservice.domain.User;
 import com.gamesys.registrationservice.service.UserService;
 import com.gamesys.registrationservice.service.UserValidator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 @Slf4j
@@ -23,12 +38,21 @@ import java.util.stream.Collectors;
 @RequestMapping("/register")
 public class RegisterController {
 
+    private static final int MAX_PAGE_LIMIT = 1000;
+    private static final String NDJSON = "application/x-ndjson";
+
     @Inject
     protected UserValidator userValidator;
 
     @Inject
     protected UserService userService;
 
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Value("${registration.stream.timeout-ms:3600000}")
+    protected long streamTimeoutMillis;
+
 
     @GetMapping()
     public List<UserDTO> showAllUser() {
@@ -40,22 +64,106 @@ public class RegisterController {
     }
 
 
+    /**
+     * Streams every user as one JSON document per line. Users are read from the repository a page
+     * at a time and written through the generator's fixed size buffer, so memory stays flat and the
+     * first line is flushed before the rest of the user set is read. Only this request gets the
+     * registration.stream.timeout-ms async timeout, long enough to send every user.
+     */
+    @GetMapping(produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportAllUser(HttpServletRequest request) {
+        log.info("GET : EXPORT ALL USER");
+        request.setAttribute(AsyncTimeoutInterceptor.TIMEOUT, streamTimeoutMillis);
+        StreamingResponseBody body = out -> {
+            try (Stream<User> users = userService.streamAllUser();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                ObjectWriter writer = objectMapper.writerFor(UserDTO.class)
+                        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                        .withRootValueSeparator("");
+                long written = 0;
+                for (Iterator<User> it = users.iterator(); it.hasNext(); ) {
+                    writer.writeValue(generator, userToDto(it.next()));
+                    generator.writeRaw('\n');
+                    if (++written == 1) {
+                        generator.flush();
+                    }
+                }
+                log.info("GET : EXPORTED {} USERS", written);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+
+    @GetMapping(params = "limit")
+    public CompletableFuture<UserPageDTO> showUserPage(@RequestParam int limit, @RequestParam(required = false) String cursor) {
+        log.info("GET : SHOW USER PAGE");
+        checkPageLimit(limit);
+        return userService.getUserPageAsync(StringUtils.isEmpty(cursor) ? null : cursor, limit)
+                .thenApply(RegisterController::pageToDto);
+    }
+
+
+    @GetMapping(params = {"dobFrom", "dobTo"})
+    public CompletableFuture<UserPageDTO> findUsersByDob(@RequestParam String dobFrom, @RequestParam String dobTo,
+                                      @RequestParam(defaultValue = "100") int limit,
+                                      @RequestParam(required = false) String cursor) {
+        log.info("GET : FIND USERS BY DOB " + dobFrom + " TO " + dobTo);
+        checkPageLimit(limit);
+        LocalDate from = parseDob(dobFrom);
+        LocalDate to = parseDob(dobTo);
+        if (from.isAfter(to)) {
+            throw new BadRequestException(dobFrom + " {dobFrom} should not be after " + dobTo, ErrorEnum.API_ERROR_USER_DOB_NOT_CORRECT);
+        }
+        return userService.getUsersByDobAsync(from, to, StringUtils.isEmpty(cursor) ? null : cursor, limit)
+                .thenApply(RegisterController::pageToDto);
+    }
+
+
+    /**
+     * Single user requests below return a CompletableFuture: the servlet thread is released while
+     * the storage and exclusion calls are in flight, and the response is written on completion.
+     */
     @GetMapping("/{ssn}")
-    public UserDTO findUserBySsn(@PathVariable String ssn) {
+    public CompletableFuture<UserDTO> findUserBySsn(@PathVariable String ssn) {
         log.info("GET : FIND USER BY SSN");
-        return userToDto(userService.getUser(ssn));
+        return userService.getUserAsync(ssn).thenApply(RegisterController::userToDto);
+    }
+
+    @GetMapping("/by-username/{name}")
+    public CompletableFuture<UserDTO> findUserByUsername(@PathVariable String name) {
+        log.info("GET : FIND USER BY USERNAME");
+        return userService.getUserByUsernameAsync(name).thenApply(RegisterController::userToDto);
+    }
+
+    /**
+     * Users added, replaced or removed after the since position, oldest first, so a downstream copy
+     * is kept in sync without reloading every user. A copy starts from since=0, which answers with
+     * resyncRequired: it then loads every user and asks for the changes following nextSince. Not
+     * found unless registration.changes.enabled=true.
+     */
+    @GetMapping("/changes")
+    public ChangePageDTO showChanges(@RequestParam long since, @RequestParam(defaultValue = "100") int limit) {
+        log.info("GET : SHOW CHANGES SINCE " + since);
+        checkPageLimit(limit);
+        ChangePage page = userService.getChanges(since, limit);
+        return new ChangePageDTO(page.getChanges()
+                .stream()
+                .map(RegisterController::changeToDto)
+                .collect(Collectors.toList()), page.getNextSince(), page.getLatestSeq(), page.isResyncRequired());
     }
 
     @PostMapping
-    public ResponseEntity<UserDTO> create(@RequestBody @NotNull UserDTO userDTO) {
+    public CompletableFuture<ResponseEntity<UserDTO>> create(@RequestBody @NotNull UserDTO userDTO) {
         log.info("POST USER DTO : " + userDTO);
         userValidator.validateUser(userDTO);
         User user = dtoToUser(userDTO);
-        return new ResponseEntity(userToDto(userService.addUser(user)), HttpStatus.CREATED);
+        return userService.addUserAsync(user).thenApply(added -> new ResponseEntity<>(userToDto(added), HttpStatus.CREATED));
     }
 
     @PutMapping("/{ssn}")
-    public UserDTO replaceUser(@RequestBody UserDTO userDTO, @PathVariable String ssn) {
+    public CompletableFuture<UserDTO> replaceUser(@RequestBody UserDTO userDTO, @PathVariable String ssn) {
         log.info("PUT : UPDATE USER DTO : " + userDTO);
 
         if(StringUtils.isEmpty(ssn) || !ssn.equals(userDTO.getSsn())) {
@@ -63,24 +171,50 @@ public class RegisterController {
         }
         userValidator.validateUser(userDTO);
         User user = dtoToUser(userDTO);
-        return userToDto(userService.replaceUser(user));
+        return userService.replaceUserAsync(user).thenApply(RegisterController::userToDto);
     }
 
     @DeleteMapping("/{ssn}")
-    public void delete(@PathVariable String ssn) {
+    public CompletableFuture<Void> delete(@PathVariable String ssn) {
         log.info("DELETE : USER BY SSN");
-        userService.removeUser(ssn);
+        return userService.removeUserAsync(ssn);
     }
 
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
-    private static User dtoToUser(UserDTO userDTO) {
+    private static void checkPageLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new BadRequestException(limit + " {limit} should be between 1 and " + MAX_PAGE_LIMIT, ErrorEnum.API_ERROR_PAGE_LIMIT_NOT_CORRECT);
+        }
+    }
+
+    static LocalDate parseDob(String dob) {
+        try {
+            return LocalDate.parse(dob, formatter);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException(dob + " is not a yyyy-MM-dd date", ErrorEnum.API_ERROR_USER_DOB_NOT_CORRECT);
+        }
+    }
+
+    static UserPageDTO pageToDto(Page<User> page) {
+        return new UserPageDTO(page.getItems()
+                .stream()
+                .map(RegisterController::userToDto)
+                .collect(Collectors.toList()), page.getNextCursor());
+    }
+
+    private static ChangeDTO changeToDto(Change change) {
+        return new ChangeDTO(change.getSeq(), change.getType().name(), change.getSsn(),
+                change.getUser() == null ? null : userToDto(change.getUser()));
+    }
+
+    static User dtoToUser(UserDTO userDTO) {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         return new User(userDTO.getUsername(), userDTO.getPassword(), dateTime, userDTO.getSsn());
     }
 
 
-    private static UserDTO userToDto(User user) {
+    static UserDTO userToDto(User user) {
         return new UserDTO(user.getUsername(), user.getPassword(), user.getDob().format(formatter), user.getSsn());
     }
 
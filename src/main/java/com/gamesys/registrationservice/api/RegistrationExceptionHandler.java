@@ -1,6 +1,7 @@
 package com.gamesys.registrationservice.api;
 
 import com.gamesys.registrationservice.api.exception.BadRequestException;
+import com.gamesys.registrationservice.api.exception.ConflictException;
 import com.gamesys.registrationservice.api.exception.ForbiddenException;
 import com.gamesys.registrationservice.api.exception.NotFoundException;
 import com.gamesys.registrationservice.api.exception.ServerException;
@@ -11,6 +12,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+
+import java.util.concurrent.CompletionException;
 
 
 @Slf4j
@@ -54,12 +58,53 @@ public class RegistrationExceptionHandler {
 
     }
 
+    @ExceptionHandler(ConflictException.class)
+    public ResponseEntity<Object> handleConflictException(ConflictException ex){
+        log.error(ex.getLogMessage());
+        return response(ex.getApiError(), HttpStatus.CONFLICT);
+
+    }
+
     @ExceptionHandler(HttpMessageNotReadableException.class)
     public ResponseEntity<Object> handleJsonObjectParserException(HttpMessageNotReadableException ex) {
         log.error(ex.getMessage());
         return response(ErrorEnum.API_ERROR_REQUEST_BODY_INVALIDE, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<Object> handleRequestParamException(MethodArgumentTypeMismatchException ex) {
+        log.error(ex.getMessage());
+        return response(ErrorEnum.API_ERROR_REQUEST_PARAM_INVALIDE, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Failures of the async endpoints arrive wrapped by the future they completed, they are
+     * answered as the same exception thrown directly would be.
+     */
+    @ExceptionHandler(CompletionException.class)
+    public ResponseEntity<Object> handleCompletionException(CompletionException ex) {
+        Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+        if (cause instanceof ValidatorGenericException) {
+            return handleValidationException((ValidatorGenericException) cause);
+        }
+        if (cause instanceof BadRequestException) {
+            return handleBadRequestException((BadRequestException) cause);
+        }
+        if (cause instanceof ServerException) {
+            return handleServerException((ServerException) cause);
+        }
+        if (cause instanceof ForbiddenException) {
+            return handleForbiddenException((ForbiddenException) cause);
+        }
+        if (cause instanceof NotFoundException) {
+            return handleNotFoundException((NotFoundException) cause);
+        }
+        if (cause instanceof ConflictException) {
+            return handleConflictException((ConflictException) cause);
+        }
+        return handleGenericThrowable(cause);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Object> handleGenericException(Exception ex) {
         log.error(ex.getMessage());
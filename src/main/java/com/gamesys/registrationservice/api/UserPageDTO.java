@@ -0,0 +1,21 @@
+package com.gamesys.registrationservice.api;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of users. nextCursor is passed back as the cursor parameter to fetch the next page and
+ * is null on the last page.
+ */
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class UserPageDTO {
+    private List<UserDTO> users;
+    private String nextCursor;
+}
@@ -0,0 +1,12 @@
+package com.gamesys.registrationservice.api.exception;
+
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+
+public class ConflictException extends BaseHTTPException {
+
+    public ConflictException(String logMessage, ErrorEnum error){
+        super(logMessage, error);
+    }
+
+}
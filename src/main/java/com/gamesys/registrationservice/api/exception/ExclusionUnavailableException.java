@@ -0,0 +1,21 @@
+package com.gamesys.registrationservice.api.exception;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+
+/**
+ * The exclusion service wasn't asked because it is failing or saturated. failOpen tells whether the
+ * registration may go on unchecked, as set by registration.exclusion.resilience.fallback.
+ */
+public class ExclusionUnavailableException extends ServerException {
+
+    private final boolean failOpen;
+
+    public ExclusionUnavailableException(String logMessage, boolean failOpen){
+        super(logMessage, ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        this.failOpen = failOpen;
+    }
+
+    public boolean isFailOpen() {
+        return failOpen;
+    }
+}
@@ -0,0 +1,27 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Counters of the user cache since startup. negativeHits are lookups of missing SSNs answered by
+ * the cache, misses went to the repository, evictions were made to stay within maxBytes.
+ */
+
+@AllArgsConstructor
+@Getter
+public class CacheStatistics {
+    private long hits;
+    private long negativeHits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private int entries;
+    private long bytes;
+    private long maxBytes;
+
+    public double getHitRate() {
+        long lookups = hits + negativeHits + misses;
+        return lookups == 0 ? 0 : (double) (hits + negativeHits) / lookups;
+    }
+}
@@ -0,0 +1,20 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One entry of the change feed: the user as it was after the change, null for a REMOVE.
+ */
+
+@AllArgsConstructor
+@Getter
+public class Change {
+
+    public enum Type { ADD, REPLACE, REMOVE }
+
+    private long seq;
+    private Type type;
+    private String ssn;
+    private User user;
+}
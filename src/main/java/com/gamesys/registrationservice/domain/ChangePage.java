@@ -0,0 +1,21 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Changes following a feed position. nextSince is the position to ask from next, latestSeq the
+ * last change recorded. When resyncRequired is true the changes following the position are no longer
+ * retained: changes is empty and the reader reloads every user, then follows the feed from nextSince.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ChangePage {
+    private List<Change> changes;
+    private long nextSince;
+    private long latestSeq;
+    private boolean resyncRequired;
+}
@@ -0,0 +1,23 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Cluster state as seen by this node. migrating is true while it moves the users it no longer owns
+ * after a membership change, migratedUsers counts the users it moved and forwardedRequests the calls
+ * it sent to other nodes.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ClusterStatus {
+    private String self;
+    private long version;
+    private List<String> nodes;
+    private boolean migrating;
+    private long migratedUsers;
+    private long forwardedRequests;
+}
@@ -0,0 +1,31 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Counters of the exclusion cache since startup. Hits were answered from the cache, coalesced
+ * lookups waited for an identical call already in flight instead of making their own, misses called
+ * the exclusion service and expirations are misses of entries past their TTL. savedMillis is the
+ * time hits and coalesced lookups would have spent on calls of the average call time.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ExclusionCacheStatistics {
+    private long hits;
+    private long coalesced;
+    private long misses;
+    private long expirations;
+    private long evictions;
+    private long failures;
+    private int entries;
+    private int maxEntries;
+    private long averageCallMicros;
+    private long savedMillis;
+
+    public double getHitRate() {
+        long lookups = hits + coalesced + misses;
+        return lookups == 0 ? 0 : (double) (hits + coalesced) / lookups;
+    }
+}
@@ -0,0 +1,29 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Counters of the remote exclusion client since startup. Calls were let through the breaker and
+ * the bulkhead, timeouts missed their deadline, rejected calls found the bulkhead full and
+ * shortCircuited ones the breaker open; both are answered by the fallback policy. Hedged calls sent
+ * a second request after hedgeDelayMicros, the p95 of recent calls, and hedgeWins were answered by
+ * it first.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ExclusionClientStatus {
+    private String breakerState;
+    private String fallback;
+    private long breakerOpened;
+    private long calls;
+    private long failures;
+    private long timeouts;
+    private long rejected;
+    private long shortCircuited;
+    private long hedged;
+    private long hedgeWins;
+    private long hedgeDelayMicros;
+    private int inFlight;
+}
@@ -0,0 +1,30 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Exclusion list in use and how it was loaded. version is the modification time of the file it was
+ * built from, checksum the CRC32 of its index; buildMillis is the time to parse, sort and write the
+ * index and validateMillis the time to map and check it. Reloads count the versions swapped in since
+ * startup, failed reloads the versions refused, the last one for lastFailure.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ExclusionStatus {
+    private String file;
+    private String indexFile;
+    private long version;
+    private String checksum;
+    private long entries;
+    private long skippedLines;
+    private long bytes;
+    private long filterBytes;
+    private long loadedAt;
+    private long buildMillis;
+    private long validateMillis;
+    private long reloads;
+    private long failedReloads;
+    private String lastFailure;
+}
@@ -0,0 +1,16 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One file of an export, downloaded from GET /admin/exports/{id}/{name}.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ExportSegment {
+    private String name;
+    private long users;
+    private long bytes;
+}
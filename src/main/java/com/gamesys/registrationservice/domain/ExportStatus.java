@@ -0,0 +1,24 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Progress of an export, state being RUNNING, COMPLETED or FAILED, with the segments written so far.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ExportStatus {
+    private String id;
+    private String state;
+    private String format;
+    private long users;
+    private long bytes;
+    private long elapsedMillis;
+    private long usersPerSecond;
+    private List<ExportSegment> segments;
+    private String failure;
+}
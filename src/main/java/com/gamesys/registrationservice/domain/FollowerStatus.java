@@ -0,0 +1,18 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A follower connected to this leader. ackedLsn is the last mutation the follower applied, lag the
+ * number of mutations it is behind; synced is false while it still loads the initial snapshot.
+ */
+
+@AllArgsConstructor
+@Getter
+public class FollowerStatus {
+    private String address;
+    private boolean synced;
+    private long ackedLsn;
+    private long lag;
+}
@@ -0,0 +1,25 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Progress of a bulk import, state being RUNNING, COMPLETED or FAILED. Every record read is either
+ * imported or rejected; rejected records are listed in the rejectedReport file once the import ends.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ImportStatus {
+    private String state;
+    private String file;
+    private long bytes;
+    private long bytesRead;
+    private long records;
+    private long imported;
+    private long rejected;
+    private long elapsedMillis;
+    private long recordsPerSecond;
+    private String rejectedReport;
+    private String failure;
+}
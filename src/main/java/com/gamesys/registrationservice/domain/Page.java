@@ -0,0 +1,17 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of a repository traversal. nextCursor resumes the traversal and is null on the last page.
+ */
+
+@AllArgsConstructor
+@Getter
+public class Page<T> {
+    private List<T> items;
+    private String nextCursor;
+}
@@ -0,0 +1,25 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Replication state of this node. On a leader lsn is the last mutation logged and followers lists
+ * the connected followers; on a follower lsn is the last mutation applied, lag how far it is behind
+ * the leader's last known lsn and lagMillis the time since the leader was last heard from.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ReplicationStatus {
+    private String role;
+    private boolean connected;
+    private long lsn;
+    private long leaderLsn;
+    private long lag;
+    private long lagMillis;
+    private long syncTimeouts;
+    private List<FollowerStatus> followers;
+}
@@ -0,0 +1,21 @@
+package com.gamesys.registrationservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Counters of one repository shard since startup. contended counts writes that found the shard
+ * lock held and had to wait for it.
+ */
+
+@AllArgsConstructor
+@Getter
+public class ShardStatistics {
+    private int shard;
+    private int size;
+    private long gets;
+    private long adds;
+    private long replaces;
+    private long removes;
+    private long contended;
+}
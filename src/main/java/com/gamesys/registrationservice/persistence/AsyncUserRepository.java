@@ -0,0 +1,24 @@
+package com.gamesys.registrationservice.persistence;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking counterpart of {@link UserRepository}: every call returns at once and its future
+ * completes when the storage answers, so the calling thread is free in the meantime. Results and
+ * failures are those of the matching {@link UserRepository} method.
+ */
+public interface AsyncUserRepository {
+
+    CompletableFuture<Optional<User>> getUser(String key);
+    CompletableFuture<Optional<User>> addUser(String key, User user);
+    CompletableFuture<Optional<User>> replaceUser(String key, User user);
+    CompletableFuture<Boolean> removeUser(String key);
+    CompletableFuture<Optional<User>> getUserByUsername(String username);
+    CompletableFuture<Page<User>> getUserPage(String cursor, int limit);
+    CompletableFuture<Page<User>> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit);
+}
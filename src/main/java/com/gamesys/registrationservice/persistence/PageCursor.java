@@ -0,0 +1,47 @@
+package com.gamesys.registrationservice.persistence;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque page cursors. A repository describes where its traversal stopped as a short text such
+ * as "P:1234", which is handed to clients url safe base64 encoded so they don't depend on it.
+ */
+public final class PageCursor {
+
+    private PageCursor() {
+    }
+
+    public static String encode(String state) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(state.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decode(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    /**
+     * @return the numeric position following the given prefix
+     */
+    public static long position(String cursor, String state, String prefix) {
+        if (!state.startsWith(prefix)) {
+            throw invalid(cursor);
+        }
+        try {
+            return Long.parseLong(state.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    public static BadRequestException invalid(String cursor) {
+        return new BadRequestException("Invalid page cursor " + cursor, ErrorEnum.API_ERROR_PAGE_CURSOR_NOT_CORRECT);
+    }
+}
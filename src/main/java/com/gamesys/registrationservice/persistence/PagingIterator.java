@@ -0,0 +1,46 @@
+package com.gamesys.registrationservice.persistence;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily walks a repository through {@link UserRepository#getUserPage(String, int)}, holding one
+ * page at a time. The first page is only fetched when the iterator is first used.
+ */
+public class PagingIterator implements Iterator<User> {
+
+    private final UserRepository userRepository;
+    private final int pageSize;
+
+    private Iterator<User> current = Collections.emptyIterator();
+    private String cursor;
+    private boolean started;
+
+    public PagingIterator(UserRepository userRepository, int pageSize) {
+        this.userRepository = userRepository;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && (!started || cursor != null)) {
+            Page<User> page = userRepository.getUserPage(cursor, pageSize);
+            started = true;
+            cursor = page.getNextCursor();
+            current = page.getItems().iterator();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public User next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+}
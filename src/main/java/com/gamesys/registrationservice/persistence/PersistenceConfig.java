@@ -0,0 +1,251 @@
+package com.gamesys.registrationservice.persistence;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.persistence.cache.CachingUserRepository;
+import com.gamesys.registrationservice.persistence.changes.ChangeFeed;
+import com.gamesys.registrationservice.persistence.changes.ChangeFeedUserRepository;
+import com.gamesys.registrationservice.persistence.cluster.ClusterUserRepository;
+import com.gamesys.registrationservice.persistence.cluster.RemoteClusterMember;
+import com.gamesys.registrationservice.persistence.impl.ExecutorAsyncUserRepository;
+import com.gamesys.registrationservice.persistence.log.FsyncPolicy;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import com.gamesys.registrationservice.persistence.log.WriteAheadLog;
+import com.gamesys.registrationservice.persistence.replication.Replicable;
+import com.gamesys.registrationservice.persistence.replication.ReplicationFollower;
+import com.gamesys.registrationservice.persistence.replication.ReplicationLeader;
+import com.gamesys.registrationservice.persistence.replication.ReplicationLog;
+import com.gamesys.registrationservice.persistence.snapshot.CheckpointScheduler;
+import com.gamesys.registrationservice.persistence.snapshot.Checkpointable;
+import com.gamesys.registrationservice.persistence.snapshot.MappedSnapshotStore;
+import com.gamesys.registrationservice.persistence.snapshot.SnapshotStore;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wires the storage side of the repositories from application.properties.
+ */
+
+@Configuration
+public class PersistenceConfig {
+
+    @Value("${registration.wal.enabled:false}")
+    private boolean durable;
+
+    @Value("${registration.replication.role:none}")
+    private String replicationRole;
+
+    /**
+     * A leader ships the log to its followers, a follower's log refuses local writes and it keeps
+     * nothing on disk since every connection to the leader starts from a fresh snapshot.
+     */
+    @Bean(destroyMethod = "close")
+    public MutationLog mutationLog(@Value("${registration.wal.dir:data/wal}") String directory,
+                                   @Value("${registration.wal.fsync:INTERVAL}") FsyncPolicy fsyncPolicy,
+                                   @Value("${registration.wal.fsync-interval-ms:20}") long fsyncIntervalMillis,
+                                   @Value("${registration.wal.segment-bytes:67108864}") long segmentBytes,
+                                   @Value("${registration.replication.ack:ASYNC}") ReplicationLog.AckMode ackMode,
+                                   @Value("${registration.replication.sync-followers:1}") int syncFollowers,
+                                   @Value("${registration.replication.sync-timeout-ms:1000}") long syncTimeoutMillis) throws IOException {
+        if (replicationRole.equals("follower")) {
+            return ReplicationFollower.READ_ONLY;
+        }
+        MutationLog log = durable
+                ? new WriteAheadLog(Paths.get(directory), fsyncPolicy, fsyncIntervalMillis, segmentBytes)
+                : MutationLog.NONE;
+        return replicationRole.equals("leader") ? new ReplicationLog(log, ackMode, syncFollowers, syncTimeoutMillis) : log;
+    }
+
+    @Bean
+    public SnapshotStore snapshotStore(@Value("${registration.snapshot.dir:data/snapshot}") String directory) throws IOException {
+        if (!durable || replicationRole.equals("follower")) {
+            return SnapshotStore.NONE;
+        }
+        return new MappedSnapshotStore(Paths.get(directory));
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "registration.replication.role", havingValue = "leader")
+    public ReplicationLeader replicationLeader(MutationLog mutationLog, @Qualifier("userRepository") UserRepository userRepository,
+                                               @Value("${registration.replication.port:9091}") int port,
+                                               @Value("${registration.replication.heartbeat-ms:1000}") long heartbeatMillis,
+                                               @Value("${registration.replication.max-queued:1000000}") int maxQueued) throws IOException {
+        return new ReplicationLeader(port, (ReplicationLog) mutationLog, replicable(userRepository), heartbeatMillis, maxQueued);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "registration.replication.role", havingValue = "follower")
+    public ReplicationFollower replicationFollower(@Qualifier("userRepository") UserRepository userRepository,
+                                                   @Value("${registration.replication.leader:localhost:9091}") String leader,
+                                                   @Value("${registration.replication.heartbeat-ms:1000}") long heartbeatMillis,
+                                                   @Value("${registration.replication.retry-ms:1000}") long retryMillis) {
+        int colon = leader.lastIndexOf(':');
+        return new ReplicationFollower(leader.substring(0, colon), Integer.parseInt(leader.substring(colon + 1)),
+                replicable(userRepository), heartbeatMillis, retryMillis);
+    }
+
+    @Bean(destroyMethod = "close")
+    public CheckpointScheduler checkpointScheduler(ObjectProvider<Checkpointable> checkpointable,
+                                                   @Value("${registration.snapshot.interval-seconds:300}") long intervalSeconds) {
+        return new CheckpointScheduler(durable ? checkpointable.getIfAvailable() : null, intervalSeconds);
+    }
+
+    /**
+     * The repository injected everywhere else: the selected backend, routed across the cluster,
+     * recording its changes and cached, as enabled. The cache and the change feed only see this
+     * node's writes, so neither is combined with the cluster.
+     */
+    @Bean(destroyMethod = "")
+    @Primary
+    public UserRepository primaryUserRepository(@Qualifier("userRepository") UserRepository userRepository,
+                                                ObjectProvider<ClusterUserRepository> clusterUserRepository,
+                                                ObjectProvider<CachingUserRepository> cachingUserRepository,
+                                                ObjectProvider<ChangeFeed> changeFeed) {
+        ClusterUserRepository cluster = clusterUserRepository.getIfAvailable();
+        if (cluster != null) {
+            if (changeFeed.getIfAvailable() != null) {
+                throw new ServerException("The change feed can't be combined with registration.cluster.enabled", ErrorEnum.SERVER_EXCEPTION);
+            }
+            if (cachingUserRepository.getIfAvailable() != null) {
+                throw new ServerException("The user cache can't be combined with registration.cluster.enabled", ErrorEnum.SERVER_EXCEPTION);
+            }
+            return cluster;
+        }
+        CachingUserRepository cached = cachingUserRepository.getIfAvailable();
+        return cached != null ? cached : recordingChanges(userRepository, changeFeed);
+    }
+
+    /**
+     * The user cache, in front of the backend recording its changes when the change feed is enabled.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "registration.cache.enabled", havingValue = "true")
+    public CachingUserRepository cachingUserRepository(@Qualifier("userRepository") UserRepository userRepository,
+                                                       ObjectProvider<ChangeFeed> changeFeed,
+                                                       @Value("${registration.cache.max-bytes:67108864}") long maxBytes,
+                                                       @Value("${registration.cache.segments:16}") int segments) {
+        return new CachingUserRepository(recordingChanges(userRepository, changeFeed), maxBytes, segments);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "registration.changes.enabled", havingValue = "true")
+    public ChangeFeed changeFeed(@Value("${registration.changes.capacity:1000000}") int capacity) {
+        return new ChangeFeed(capacity);
+    }
+
+    private static UserRepository recordingChanges(UserRepository userRepository, ObjectProvider<ChangeFeed> changeFeed) {
+        ChangeFeed feed = changeFeed.getIfAvailable();
+        return feed != null ? new ChangeFeedUserRepository(userRepository, feed) : userRepository;
+    }
+
+    /**
+     * Routes users to the cluster node owning their SSN, the selected repository backend keeping this
+     * node's share.
+     *
+     * Each node only checks usernames against its own users, so two nodes can accept the same one.
+     * Keeping usernames unique across the cluster would take a second write at the node owning the
+     * username for every registration, with nothing making the two writes atomic, so the cluster
+     * refuses to start until registration.cluster.allow-duplicate-usernames accepts the loss. Node to
+     * node requests carry registration.cluster.secret, without which /internal refuses them.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "registration.cluster.enabled", havingValue = "true")
+    public ClusterUserRepository clusterUserRepository(@Qualifier("userRepository") UserRepository userRepository,
+                                                       @Value("${registration.cluster.self}") String self,
+                                                       @Value("${registration.cluster.nodes}") String[] nodes,
+                                                       @Value("${registration.cluster.virtual-nodes:256}") int virtualNodes,
+                                                       @Value("${registration.cluster.timeout-ms:2000}") int timeoutMillis,
+                                                       @Value("${registration.cluster.allow-duplicate-usernames:false}") boolean duplicateUsernames,
+                                                       @Value("${registration.cluster.secret:}") String secret) {
+        if (!duplicateUsernames) {
+            throw new ServerException("Usernames are only unique within a cluster node, set "
+                    + "registration.cluster.allow-duplicate-usernames=true to run registration.cluster.enabled", ErrorEnum.SERVER_EXCEPTION);
+        }
+        if (secret.isEmpty()) {
+            throw new ServerException("registration.cluster.secret must be set to run registration.cluster.enabled", ErrorEnum.SERVER_EXCEPTION);
+        }
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMillis);
+        requestFactory.setReadTimeout(timeoutMillis);
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            request.getHeaders().set(RemoteClusterMember.SECRET_HEADER, secret);
+            return execution.execute(request, body);
+        });
+        return new ClusterUserRepository(self, Arrays.asList(nodes), virtualNodes, userRepository,
+                node -> new RemoteClusterMember(node, restTemplate));
+    }
+
+    /**
+     * Connection pool of the jdbc repository. Reads take a connection each, batched writes share
+     * the single writer's, so a pool a little larger than the number of concurrent readers is enough.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "registration.repository.type", havingValue = "jdbc")
+    public DataSource dataSource(@Value("${registration.jdbc.url:jdbc:h2:file:./data/h2/users}") String url,
+                                 @Value("${registration.jdbc.username:sa}") String username,
+                                 @Value("${registration.jdbc.password:}") String password,
+                                 @Value("${registration.jdbc.pool-size:10}") int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("registration");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(poolSize);
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Bounded pool running the blocking storage and exclusion calls of async requests. When every
+     * thread is busy and the queue is full a request fails at once instead of piling up.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService blockingExecutor(@Value("${registration.async.threads:64}") int threads,
+                                            @Value("${registration.async.queue-capacity:10000}") int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "blocking-io-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, pool) -> {
+                    throw new ServerException("Blocking executor saturated", ErrorEnum.SERVER_EXCEPTION);
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static Replicable replicable(UserRepository userRepository) {
+        if (!(userRepository instanceof Replicable)) {
+            throw new ServerException("Replication needs registration.repository.type=memory", ErrorEnum.SERVER_EXCEPTION);
+        }
+        return (Replicable) userRepository;
+    }
+
+    @Bean
+    public AsyncUserRepository asyncUserRepository(UserRepository userRepository,
+                                                   @Qualifier("blockingExecutor") Executor blockingExecutor) {
+        return new ExecutorAsyncUserRepository(userRepository, blockingExecutor);
+    }
+}
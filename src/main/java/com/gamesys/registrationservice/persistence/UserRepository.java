@@ -1,15 +1,65 @@
 package com.gamesys.registrationservice.persistence;
 
+import com.gamesys.registrationservice.domain.Page;
 import com.gamesys.registrationservice.domain.User;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface UserRepository {
 
+    int STREAM_PAGE_SIZE = 1024;
+
     Optional<User> getUser(String key);
     Optional<User> addUser(String key, User user);
     Optional<User> replaceUser(String key, User user);
     boolean removeUser(String key);
     List<User> getAllUser();
-}
\ No newline at end of file
+
+    /**
+     * Finds a user by username, compared case insensitively. Usernames are unique across users.
+     */
+    Optional<User> getUserByUsername(String username);
+
+    /**
+     * Returns at most limit users following the cursor, null for the first page. Memory and time
+     * per call are bounded by the page size rather than the number of users.
+     */
+    Page<User> getUserPage(String cursor, int limit);
+
+    /**
+     * Returns at most limit users born between from and to, both inclusive, ordered by birth date,
+     * following the cursor, null for the first page. Cost follows the size of the page.
+     */
+    Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit);
+
+    /**
+     * Adds users keyed by their SSN, each refused like addUser when its SSN or username is taken.
+     * Repositories may apply the batch at once, paying for durability once.
+     *
+     * @return the users refused
+     */
+    default List<User> addUsers(List<User> users) {
+        List<User> refused = new ArrayList<>();
+        for (User user : users) {
+            if (!addUser(user.getSsn(), user).isPresent()) {
+                refused.add(user);
+            }
+        }
+        return refused;
+    }
+
+    /**
+     * Lazy view of every user, read from the repository one page at a time as the stream is consumed.
+     */
+    default Stream<User> streamAllUser() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                new PagingIterator(this, STREAM_PAGE_SIZE), Spliterator.NONNULL), false);
+    }
+}
@@ -0,0 +1,111 @@
+package com.gamesys.registrationservice.persistence.cache;
+
+import com.gamesys.registrationservice.domain.CacheStatistics;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Caches lookups by key in front of another repository, enabled with registration.cache.enabled.
+ *
+ * getUser is answered from a bounded LRU {@link UserCache}, including for keys the repository
+ * doesn't hold. Writes go to the repository first, then replace the cached entry with the value
+ * just written, so freshly registered users are served from the cache. Writes to the same key are
+ * ordered by a striped lock, so the cache is updated in the order the repository applied them.
+ * Listings, pages and username lookups go straight to the repository.
+ */
+public class CachingUserRepository implements UserRepository {
+
+    private static final int KEY_LOCKS = 64;
+
+    private final UserRepository userRepository;
+    private final UserCache cache;
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+
+    public CachingUserRepository(UserRepository userRepository, long maxBytes, int concurrency) {
+        this.userRepository = userRepository;
+        this.cache = new UserCache(maxBytes, concurrency);
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        UserCache.Cached cached = cache.get(key);
+        if (cached != null) {
+            return Optional.ofNullable(cached.user);
+        }
+        long generation = cache.generation(key);
+        Optional<User> user = userRepository.getUser(key);
+        cache.put(key, user.orElse(null), generation);
+        return user;
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        synchronized (lockFor(key)) {
+            Optional<User> added = userRepository.addUser(key, user);
+            added.ifPresent(value -> cache.put(key, value, cache.invalidate(key)));
+            return added;
+        }
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        synchronized (lockFor(key)) {
+            Optional<User> replaced = userRepository.replaceUser(key, user);
+            replaced.ifPresent(value -> cache.put(key, value, cache.invalidate(key)));
+            return replaced;
+        }
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        synchronized (lockFor(key)) {
+            boolean removed = userRepository.removeUser(key);
+            if (removed) {
+                cache.put(key, null, cache.invalidate(key));
+            }
+            return removed;
+        }
+    }
+
+    @Override
+    public List<User> getAllUser() {
+        return userRepository.getAllUser();
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        return userRepository.getUserByUsername(username);
+    }
+
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        return userRepository.getUserPage(cursor, limit);
+    }
+
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        return userRepository.getUsersByDob(from, to, cursor, limit);
+    }
+
+    @Override
+    public Stream<User> streamAllUser() {
+        return userRepository.streamAllUser();
+    }
+
+    public CacheStatistics getStatistics() {
+        return cache.statistics();
+    }
+
+    private Object lockFor(String key) {
+        return keyLocks[key.hashCode() & (KEY_LOCKS - 1)];
+    }
+}
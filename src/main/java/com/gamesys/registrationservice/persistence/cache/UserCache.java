@@ -0,0 +1,158 @@
+package com.gamesys.registrationservice.persistence.cache;
+
+import com.gamesys.registrationservice.domain.CacheStatistics;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.codec.UserCodec;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of users by key, split into independently locked segments by key hash. Each
+ * segment holds an access ordered map within its share of the byte budget, entries being weighed
+ * by their approximate heap size. A key known to be absent is cached as an entry without a user.
+ *
+ * Every invalidation moves its segment to a new generation, and a value read from the repository
+ * is only cached when the generation seen before the read is still current. A read that raced
+ * with a write can therefore never put back the value the write replaced.
+ */
+final class UserCache {
+
+    /**
+     * Approximate heap bytes of an entry besides its strings : map node, key and User objects.
+     */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final Segment[] segments;
+    private final long maxBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    UserCache(long maxBytes, int concurrency) {
+        int count = Integer.highestOneBit(Math.max(1, concurrency - 1) << 1);
+        this.segments = new Segment[count];
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxBytes / count);
+        }
+    }
+
+    /**
+     * @return the cached entry, null on a miss
+     */
+    Cached get(String key) {
+        Cached cached = segmentFor(key).get(key);
+        if (cached == null) {
+            misses.increment();
+        } else if (cached.user == null) {
+            negativeHits.increment();
+        } else {
+            hits.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put(String, User, long)} for a value read from now on
+     */
+    long generation(String key) {
+        return segmentFor(key).generation();
+    }
+
+    /**
+     * Caches user, null for an absent key, unless the key's segment was invalidated since generation.
+     */
+    void put(String key, User user, long generation) {
+        segmentFor(key).put(key, new Cached(user, weigh(key, user)), generation);
+    }
+
+    /**
+     * Drops the key and moves its segment to a new generation.
+     *
+     * @return the new generation
+     */
+    long invalidate(String key) {
+        invalidations.increment();
+        return segmentFor(key).invalidate(key);
+    }
+
+    CacheStatistics statistics() {
+        int entries = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                entries += segment.map.size();
+                bytes += segment.bytes;
+            }
+        }
+        return new CacheStatistics(hits.sum(), negativeHits.sum(), misses.sum(), evictions.sum(),
+                invalidations.sum(), entries, bytes, maxBytes);
+    }
+
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ hash >>> 16) & (segments.length - 1)];
+    }
+
+    private static int weigh(String key, User user) {
+        int weight = ENTRY_OVERHEAD + 2 * key.length();
+        return user == null ? weight : weight + 2 * UserCodec.encodedSize(user);
+    }
+
+    static final class Cached {
+
+        final User user;
+        private final int weight;
+
+        private Cached(User user, int weight) {
+            this.user = user;
+            this.weight = weight;
+        }
+    }
+
+    private final class Segment {
+
+        private final LinkedHashMap<String, Cached> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxBytes;
+        private long bytes;
+        private long generation;
+
+        private Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized Cached get(String key) {
+            return map.get(key);
+        }
+
+        private synchronized long generation() {
+            return generation;
+        }
+
+        private synchronized void put(String key, Cached cached, long expected) {
+            if (expected != generation || cached.weight > maxBytes) {
+                return;
+            }
+            Cached previous = map.put(key, cached);
+            bytes += cached.weight - (previous == null ? 0 : previous.weight);
+            for (Iterator<Map.Entry<String, Cached>> it = map.entrySet().iterator(); bytes > maxBytes && it.hasNext(); ) {
+                bytes -= it.next().getValue().weight;
+                it.remove();
+                evictions.increment();
+            }
+        }
+
+        private synchronized long invalidate(String key) {
+            Cached previous = map.remove(key);
+            if (previous != null) {
+                bytes -= previous.weight;
+            }
+            return ++generation;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.gamesys.registrationservice.persistence.changes;
+
+import com.gamesys.registrationservice.domain.Change;
+import com.gamesys.registrationservice.domain.ChangePage;
+import com.gamesys.registrationservice.domain.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bounded log of the last changes made to the users, numbered by a sequence that only grows. Once
+ * full, the oldest change is dropped for every new one.
+ *
+ * Sequence numbers start from the startup time in microseconds rather than zero, so positions
+ * handed out before a restart fall behind the feed and are answered with a resync instead of
+ * silently skipping the changes made since.
+ */
+public class ChangeFeed {
+
+    private final Change[] changes;
+    private long latest;
+    private long floor;
+
+    public ChangeFeed(int capacity) {
+        this(capacity, System.currentTimeMillis() * 1000);
+    }
+
+    /**
+     * @param start sequence number preceding the first change
+     */
+    public ChangeFeed(int capacity, long start) {
+        this.changes = new Change[Math.max(1, capacity)];
+        this.latest = start;
+        this.floor = start;
+    }
+
+    public synchronized long append(Change.Type type, String ssn, User user) {
+        long seq = ++latest;
+        changes[(int) (seq % changes.length)] = new Change(seq, type, ssn, user);
+        if (seq - floor > changes.length) {
+            floor = seq - changes.length;
+        }
+        return seq;
+    }
+
+    /**
+     * @return at most limit changes following since, or a resync when some of them were dropped or
+     * since wasn't handed out by this feed
+     */
+    public synchronized ChangePage read(long since, int limit) {
+        if (since < floor || since > latest) {
+            return new ChangePage(Collections.emptyList(), latest, latest, true);
+        }
+        List<Change> page = new ArrayList<>((int) Math.min(limit, latest - since));
+        for (long seq = since + 1; seq <= latest && page.size() < limit; seq++) {
+            page.add(changes[(int) (seq % changes.length)]);
+        }
+        return new ChangePage(page, since + page.size(), latest, false);
+    }
+
+    public synchronized long latestSeq() {
+        return latest;
+    }
+}
@@ -0,0 +1,96 @@
+package com.gamesys.registrationservice.persistence.changes;
+
+import com.gamesys.registrationservice.domain.Change;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Records every write another repository accepted in a {@link ChangeFeed}, enabled with
+ * registration.changes.enabled. Writes to the same key are ordered by a striped lock, so the feed
+ * lists them in the order the repository applied them. Reads go straight to the repository.
+ */
+public class ChangeFeedUserRepository implements UserRepository {
+
+    private static final int KEY_LOCKS = 64;
+
+    private final UserRepository userRepository;
+    private final ChangeFeed changeFeed;
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+
+    public ChangeFeedUserRepository(UserRepository userRepository, ChangeFeed changeFeed) {
+        this.userRepository = userRepository;
+        this.changeFeed = changeFeed;
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        return userRepository.getUser(key);
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        synchronized (lockFor(key)) {
+            Optional<User> added = userRepository.addUser(key, user);
+            added.ifPresent(value -> changeFeed.append(Change.Type.ADD, key, value));
+            return added;
+        }
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        synchronized (lockFor(key)) {
+            Optional<User> replaced = userRepository.replaceUser(key, user);
+            replaced.ifPresent(value -> changeFeed.append(Change.Type.REPLACE, key, value));
+            return replaced;
+        }
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        synchronized (lockFor(key)) {
+            boolean removed = userRepository.removeUser(key);
+            if (removed) {
+                changeFeed.append(Change.Type.REMOVE, key, null);
+            }
+            return removed;
+        }
+    }
+
+    @Override
+    public List<User> getAllUser() {
+        return userRepository.getAllUser();
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        return userRepository.getUserByUsername(username);
+    }
+
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        return userRepository.getUserPage(cursor, limit);
+    }
+
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        return userRepository.getUsersByDob(from, to, cursor, limit);
+    }
+
+    @Override
+    public Stream<User> streamAllUser() {
+        return userRepository.streamAllUser();
+    }
+
+    private Object lockFor(String key) {
+        return keyLocks[key.hashCode() & (KEY_LOCKS - 1)];
+    }
+}
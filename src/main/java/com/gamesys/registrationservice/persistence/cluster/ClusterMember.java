@@ -0,0 +1,28 @@
+package com.gamesys.registrationservice.persistence.cluster;
+
+import com.gamesys.registrationservice.persistence.UserRepository;
+
+/**
+ * A cluster node as seen by the other nodes.
+ */
+public interface ClusterMember {
+
+    /**
+     * @return the users this node holds, without any routing
+     */
+    UserRepository partition();
+
+    /**
+     * Moves the key from this node to its owner under the current ring, if this node still holds it.
+     */
+    void handOff(String key);
+
+    /**
+     * Installs the view if it follows the node's current version, the node's compare and set
+     * against concurrent membership changes.
+     *
+     * @throws com.gamesys.registrationservice.api.exception.ConflictException when the node is at
+     * another version or still migrating the users of the previous change
+     */
+    void install(ClusterView view);
+}
@@ -0,0 +1,485 @@
+package com.gamesys.registrationservice.persistence.cluster;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.BadRequestException;
+import com.gamesys.registrationservice.api.exception.ConflictException;
+import com.gamesys.registrationservice.domain.ClusterStatus;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Routes every user to the cluster node owning its SSN on a {@link HashRing}, this node's users
+ * being kept in the local repository and the other nodes' reached through their {@link ClusterMember}.
+ * Lookups that span users (the whole list, pages, usernames, birth dates) are sent to every node
+ * in parallel and merged. Usernames are unique within a node only, which the configuration must
+ * accept explicitly with registration.cluster.allow-duplicate-usernames.
+ *
+ * Adding a node installs a new ring on every member. Until the next change each node remembers the
+ * previous ring: a key missing from its new owner is looked up at its previous owner, and a write
+ * first asks the previous owner to hand the key off, so clients never see a key move. Meanwhile
+ * each node moves the keys it no longer owns in the background. A member only installs the version
+ * following its own, and none while it is still migrating, so of two concurrent changes one is
+ * refused with a conflict instead of leaving the members on different rings.
+ */
+
+@Slf4j
+public class ClusterUserRepository implements UserRepository, AutoCloseable {
+
+    private static final String CURSOR = "C:";
+    private static final int HANDOFF_LOCKS = 64;
+    private static final int MIGRATION_PASSES = 3;
+
+    private final String self;
+    private final UserRepository local;
+    private final Function<String, ClusterMember> connector;
+    private final int virtualNodes;
+    private final Map<String, ClusterMember> members = new ConcurrentHashMap<>();
+    private final ClusterMember selfMember = new SelfMember();
+    private final Object[] handOffLocks = new Object[HANDOFF_LOCKS];
+    private final ExecutorService scatter;
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder migrated = new LongAdder();
+    private volatile Topology topology;
+    private volatile boolean migrating;
+
+    /**
+     * @param connector creates the member of another node from its address
+     */
+    public ClusterUserRepository(String self, List<String> nodes, int virtualNodes, UserRepository local,
+                                 Function<String, ClusterMember> connector) {
+        this.self = self;
+        this.local = local;
+        this.connector = connector;
+        this.virtualNodes = virtualNodes;
+        this.topology = new Topology(0, new HashRing(nodes, virtualNodes), null);
+        for (int i = 0; i < HANDOFF_LOCKS; i++) {
+            handOffLocks[i] = new Object();
+        }
+        AtomicInteger count = new AtomicInteger();
+        this.scatter = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "cluster-scatter-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        Topology current = topology;
+        String owner = current.ring.owner(key);
+        Optional<User> user = partition(owner).getUser(key);
+        if (!user.isPresent() && current.previous != null) {
+            String before = current.previous.owner(key);
+            if (!before.equals(owner)) {
+                user = partition(before).getUser(key);
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        return partition(settle(key)).addUser(key, user);
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        return partition(settle(key)).replaceUser(key, user);
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        return partition(settle(key)).removeUser(key);
+    }
+
+    /**
+     * Gathers every node's users; a key caught moving between two nodes is returned once.
+     */
+    @Override
+    public List<User> getAllUser() {
+        List<User> users = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        for (List<User> part : gather(UserRepository::getAllUser)) {
+            for (User user : part) {
+                if (keys.add(user.getSsn())) {
+                    users.add(user);
+                }
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        for (Optional<User> user : gather(partition -> partition.getUserByUsername(username))) {
+            if (user.isPresent()) {
+                return user;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Pages through the nodes in ring order. Cursor state "C:node address cursor in the node", the
+     * node named rather than numbered so that a cursor taken before a node joined goes on from the
+     * same node.
+     */
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        List<String> nodes = topology.ring.nodes();
+        List<User> users = new ArrayList<>(limit);
+        int node = 0;
+        String state = null;
+        if (cursor != null) {
+            String decoded = PageCursor.decode(cursor);
+            int separator = decoded.indexOf(' ', CURSOR.length());
+            if (!decoded.startsWith(CURSOR) || separator < 0) {
+                throw PageCursor.invalid(cursor);
+            }
+            node = nodes.indexOf(decoded.substring(CURSOR.length(), separator));
+            state = decoded.substring(separator + 1);
+            if (node < 0) {
+                throw PageCursor.invalid(cursor);
+            }
+        }
+        for (; node < nodes.size(); node++, state = null) {
+            Page<User> page = partition(nodes.get(node)).getUserPage(state, limit - users.size());
+            users.addAll(page.getItems());
+            if (page.getNextCursor() != null) {
+                return new Page<>(users, PageCursor.encode(CURSOR + nodes.get(node) + " " + page.getNextCursor()));
+            }
+        }
+        return new Page<>(users, null);
+    }
+
+    /**
+     * Merges the birth date pages of every node, each ordered by birth date then SSN. Cursor state
+     * "C:" followed by one entry per node, "node address skip/cursor in the node/last birth date/last
+     * SSN" or "node address -" once the node is exhausted: the node's page is read again from its
+     * cursor, with skip more users, and those up to the last one returned are skipped, so users that
+     * left the node meanwhile don't shift the rest. Entries are named by node like the getUserPage
+     * cursor, so a cursor taken before a node joined goes on, the new node being read from the start.
+     * A node whose users read so far were all returned while it has more ends the page early.
+     */
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        List<String> nodes = topology.ring.nodes();
+        DobPosition[] positions = new DobPosition[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            positions[i] = new DobPosition();
+        }
+        if (cursor != null) {
+            decodeDobCursor(cursor, nodes, positions);
+        }
+        List<CompletableFuture<Page<User>>> pages = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            DobPosition position = positions[i];
+            String node = nodes.get(i);
+            pages.add(position.done ? null : CompletableFuture.supplyAsync(() ->
+                    partition(node).getUsersByDob(from, to, position.cursor, limit + position.skip), scatter));
+        }
+        List<List<User>> heads = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            List<User> items = positions[i].done ? new ArrayList<>() : pages.get(i).join().getItems();
+            int first = 0;
+            while (first < items.size() && positions[i].returned(items.get(first))) {
+                first++;
+            }
+            heads.add(items.subList(first, items.size()));
+        }
+        int[] taken = new int[nodes.size()];
+        List<User> users = new ArrayList<>(limit);
+        Comparator<User> order = Comparator.comparing(User::getDob);
+        while (users.size() < limit) {
+            int next = -1;
+            boolean unread = false;
+            for (int i = 0; i < nodes.size(); i++) {
+                unread |= taken[i] == heads.get(i).size() && !positions[i].done && pages.get(i).join().getNextCursor() != null;
+                if (taken[i] < heads.get(i).size()
+                        && (next < 0 || order.compare(heads.get(i).get(taken[i]), heads.get(next).get(taken[next])) < 0)) {
+                    next = i;
+                }
+            }
+            if (next < 0 || unread) {
+                break;
+            }
+            users.add(heads.get(next).get(taken[next]++));
+        }
+        StringBuilder state = new StringBuilder(CURSOR);
+        boolean more = false;
+        for (int i = 0; i < nodes.size(); i++) {
+            DobPosition position = positions[i];
+            if (!position.done && taken[i] == heads.get(i).size()) {
+                position.cursor = pages.get(i).join().getNextCursor();
+                position.done = position.cursor == null;
+                position.skip = 0;
+            } else if (taken[i] > 0) {
+                position.skip += taken[i];
+                position.last = heads.get(i).get(taken[i] - 1);
+            }
+            more |= !position.done;
+            state.append(i == 0 ? "" : ",").append(nodes.get(i)).append(' ').append(position);
+        }
+        return new Page<>(users, more ? PageCursor.encode(state.toString()) : null);
+    }
+
+    /**
+     * Adds a node to the cluster: the new ring is installed on the new node first, then on the others.
+     *
+     * @throws ConflictException while the previous change is migrating, or when a member moved to
+     * another version meanwhile
+     */
+    public synchronized ClusterStatus addNode(String node) {
+        Topology current = topology;
+        if (current.ring.nodes().contains(node)) {
+            throw new BadRequestException("Node already in the cluster : " + node, ErrorEnum.API_ERROR_REQUEST_PARAM_INVALIDE);
+        }
+        if (migrating) {
+            throw new ConflictException("Cluster version " + current.version + " still migrating",
+                    ErrorEnum.API_ERROR_CLUSTER_CHANGE_CONFLICT);
+        }
+        List<String> nodes = new ArrayList<>(current.ring.nodes());
+        nodes.add(node);
+        ClusterView view = new ClusterView(current.version + 1, nodes);
+        member(node).install(view);
+        for (String member : current.ring.nodes()) {
+            member(member).install(view);
+        }
+        return getStatus();
+    }
+
+    public ClusterStatus getStatus() {
+        Topology current = topology;
+        return new ClusterStatus(self, current.version, current.ring.nodes(), migrating, migrated.sum(), forwarded.sum());
+    }
+
+    /**
+     * @return this node as the other nodes see it, served by the internal endpoints
+     */
+    public ClusterMember self() {
+        return selfMember;
+    }
+
+    @Override
+    public void close() {
+        scatter.shutdownNow();
+    }
+
+    /**
+     * @return the key's owner, after its previous owner handed it off
+     */
+    private String settle(String key) {
+        Topology current = topology;
+        String owner = current.ring.owner(key);
+        if (current.previous != null) {
+            String before = current.previous.owner(key);
+            if (!before.equals(owner)) {
+                member(before).handOff(key);
+            }
+        }
+        return owner;
+    }
+
+    private UserRepository partition(String node) {
+        if (node.equals(self)) {
+            return local;
+        }
+        forwarded.increment();
+        return member(node).partition();
+    }
+
+    private ClusterMember member(String node) {
+        return node.equals(self) ? selfMember : members.computeIfAbsent(node, connector);
+    }
+
+    private <T> List<T> gather(Function<UserRepository, T> request) {
+        List<CompletableFuture<T>> futures = topology.ring.nodes().stream()
+                .map(node -> CompletableFuture.supplyAsync(() -> request.apply(partition(node)), scatter))
+                .collect(Collectors.toList());
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    private void decodeDobCursor(String cursor, List<String> nodes, DobPosition[] positions) {
+        String state = PageCursor.decode(cursor);
+        if (!state.startsWith(CURSOR)) {
+            throw PageCursor.invalid(cursor);
+        }
+        try {
+            for (String entry : state.substring(CURSOR.length()).split(",", -1)) {
+                int separator = entry.indexOf(' ');
+                int node = nodes.indexOf(entry.substring(0, separator));
+                if (node < 0) {
+                    throw PageCursor.invalid(cursor);
+                }
+                positions[node].parse(entry.substring(separator + 1));
+            }
+        } catch (RuntimeException e) {
+            throw PageCursor.invalid(cursor);
+        }
+    }
+
+    /**
+     * Moves a key this node no longer owns to its owner. Copies before removing, so a concurrent
+     * reader finds the user at one of the two nodes, and keeps it when the owner refuses it.
+     */
+    private void handOffLocal(String key) {
+        synchronized (handOffLocks[key.hashCode() & (HANDOFF_LOCKS - 1)]) {
+            Optional<User> user = local.getUser(key);
+            String owner = topology.ring.owner(key);
+            if (!user.isPresent() || owner.equals(self)) {
+                return;
+            }
+            UserRepository target = member(owner).partition();
+            if (target.addUser(key, user.get()).isPresent() || target.getUser(key).isPresent()) {
+                local.removeUser(key);
+                migrated.increment();
+            } else {
+                log.warn("User {} can't move to {}, its username is taken there", key, owner);
+            }
+        }
+    }
+
+    /**
+     * Compare and set of the membership: the view must follow the current version, except on a node
+     * that never installed one, which joins at whatever version the cluster reached.
+     */
+    private synchronized void installLocal(ClusterView view) {
+        Topology current = topology;
+        if (view.getVersion() == current.version && view.getNodes().equals(current.ring.nodes())) {
+            return;
+        }
+        if (migrating || (current.version != 0 && view.getVersion() != current.version + 1)) {
+            throw new ConflictException("Cluster version " + view.getVersion() + " refused at version " + current.version
+                    + (migrating ? ", still migrating" : ""), ErrorEnum.API_ERROR_CLUSTER_CHANGE_CONFLICT);
+        }
+        topology = new Topology(view.getVersion(), new HashRing(view.getNodes(), virtualNodes), current.ring);
+        log.info("Cluster version {} installed with nodes {}", view.getVersion(), topology.ring.nodes());
+        migrating = true;
+        Thread migrator = new Thread(this::migrate, "cluster-migrator");
+        migrator.setDaemon(true);
+        migrator.start();
+    }
+
+    /**
+     * Hands off every local key owned elsewhere, again until a pass finds none, which catches keys
+     * written under the old ring while the first pass ran.
+     */
+    private void migrate() {
+        try {
+            for (int pass = 0; pass < MIGRATION_PASSES; pass++) {
+                Topology current = topology;
+                List<String> leaving = local.streamAllUser()
+                        .map(User::getSsn)
+                        .filter(key -> !current.ring.owner(key).equals(self))
+                        .collect(Collectors.toList());
+                if (leaving.isEmpty()) {
+                    break;
+                }
+                leaving.forEach(this::handOffLocal);
+                log.info("Cluster migration pass {} handed off {} users", pass + 1, leaving.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Cluster migration stopped, the remaining users move when they are written", e);
+        } finally {
+            migrating = false;
+        }
+    }
+
+    private static final class Topology {
+
+        private final long version;
+        private final HashRing ring;
+        private final HashRing previous;
+
+        private Topology(long version, HashRing ring, HashRing previous) {
+            this.version = version;
+            this.ring = ring;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * Where the birth date pages of one node stand.
+     */
+    private static final class DobPosition {
+
+        private String cursor;
+        private int skip;
+        private boolean done;
+        private User last;
+
+        /**
+         * @return whether the user doesn't come after the last one returned from the node
+         */
+        private boolean returned(User user) {
+            if (last == null) {
+                return false;
+            }
+            int dob = user.getDob().compareTo(last.getDob());
+            return dob < 0 || (dob == 0 && user.getSsn().compareTo(last.getSsn()) <= 0);
+        }
+
+        private void parse(String state) {
+            done = state.equals("-");
+            if (done) {
+                return;
+            }
+            String[] parts = state.split("/", -1);
+            skip = Integer.parseInt(parts[0]);
+            cursor = parts[1].isEmpty() ? null : parts[1];
+            if (skip < 0 || parts.length != (skip == 0 ? 2 : 4)) {
+                throw new IllegalArgumentException(state);
+            }
+            if (skip > 0) {
+                last = new User(null, null, LocalDate.parse(parts[2]), PageCursor.decode(parts[3]));
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (done) {
+                return "-";
+            }
+            String position = skip + "/" + (cursor == null ? "" : cursor);
+            return skip == 0 ? position : position + "/" + last.getDob() + "/" + PageCursor.encode(last.getSsn());
+        }
+    }
+
+    private final class SelfMember implements ClusterMember {
+
+        @Override
+        public UserRepository partition() {
+            return local;
+        }
+
+        @Override
+        public void handOff(String key) {
+            handOffLocal(key);
+        }
+
+        @Override
+        public void install(ClusterView view) {
+            installLocal(view);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.gamesys.registrationservice.persistence.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cluster membership sent to every node when it changes, a node keeps the highest version it saw.
+ */
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class ClusterView {
+    private long version;
+    private List<String> nodes;
+}
@@ -0,0 +1,69 @@
+package com.gamesys.registrationservice.persistence.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring mapping keys to cluster nodes. Every node is placed on the ring at
+ * virtualNodes points and a key belongs to the node of the first point at or after its hash, so
+ * adding a node to n moves about 1/(n+1) of the keys, all of them to the new node.
+ */
+public final class HashRing {
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(nodes)));
+        int count = this.nodes.size() * virtualNodes;
+        long[][] placed = new long[count][];
+        int i = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                placed[i++] = new long[]{hash(this.nodes.get(node) + "#" + v), node};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[count];
+        this.owners = new String[count];
+        for (i = 0; i < count; i++) {
+            points[i] = placed[i][0];
+            owners[i] = this.nodes.get((int) placed[i][1]);
+        }
+    }
+
+    public String owner(String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    /**
+     * @return the nodes in a fixed order shared by every member
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
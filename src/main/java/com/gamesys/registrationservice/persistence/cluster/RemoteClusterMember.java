@@ -0,0 +1,34 @@
+package com.gamesys.registrationservice.persistence.cluster;
+
+import com.gamesys.registrationservice.persistence.UserRepository;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Another node of the cluster, reached over HTTP. Its /internal endpoints only answer requests
+ * carrying the cluster's shared secret in the {@link #SECRET_HEADER} header.
+ */
+public class RemoteClusterMember implements ClusterMember {
+
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private final RemoteUserRepository partition;
+
+    public RemoteClusterMember(String node, RestTemplate restTemplate) {
+        this.partition = new RemoteUserRepository(node, restTemplate);
+    }
+
+    @Override
+    public UserRepository partition() {
+        return partition;
+    }
+
+    @Override
+    public void handOff(String key) {
+        partition.handOff(key);
+    }
+
+    @Override
+    public void install(ClusterView view) {
+        partition.install(view);
+    }
+}
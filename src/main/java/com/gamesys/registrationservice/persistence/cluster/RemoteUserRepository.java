@@ -0,0 +1,161 @@
+package com.gamesys.registrationservice.persistence.cluster;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.UserDTO;
+import com.gamesys.registrationservice.api.UserPageDTO;
+import com.gamesys.registrationservice.api.exception.ConflictException;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The partition of another node, reached through its /internal/users endpoints. A refused write
+ * answers 409 and a missing user 404, both mapped to the repository's empty results.
+ */
+class RemoteUserRepository implements UserRepository {
+
+    private final String node;
+    private final RestTemplate restTemplate;
+
+    RemoteUserRepository(String node, RestTemplate restTemplate) {
+        this.node = node;
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        return optional(() -> restTemplate.getForObject(node + "/internal/users/{key}", UserDTO.class, key));
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        return optional(() -> restTemplate.postForObject(node + "/internal/users/{key}", toDto(user), UserDTO.class, key));
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        return optional(() -> restTemplate.exchange(node + "/internal/users/{key}", HttpMethod.PUT,
+                new HttpEntity<>(toDto(user)), UserDTO.class, key).getBody());
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        return found(() -> {
+            restTemplate.delete(node + "/internal/users/{key}", key);
+            return Boolean.TRUE;
+        }).isPresent();
+    }
+
+    @Override
+    public List<User> getAllUser() {
+        List<User> users = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<User> page = getUserPage(cursor, STREAM_PAGE_SIZE);
+            users.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return users;
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        return optional(() -> restTemplate.getForObject(node + "/internal/users/by-username/{name}", UserDTO.class, username));
+    }
+
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(node + "/internal/users").queryParam("limit", limit);
+        return page(cursor == null ? uri : uri.queryParam("cursor", cursor));
+    }
+
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(node + "/internal/users")
+                .queryParam("dobFrom", from).queryParam("dobTo", to).queryParam("limit", limit);
+        return page(cursor == null ? uri : uri.queryParam("cursor", cursor));
+    }
+
+    void handOff(String key) {
+        call(() -> restTemplate.postForObject(node + "/internal/users/{key}/handoff", null, Void.class, key));
+    }
+
+    /**
+     * @throws ConflictException when the node refuses the view with 409
+     */
+    void install(ClusterView view) {
+        try {
+            call(() -> {
+                restTemplate.put(node + "/internal/cluster", view);
+                return null;
+            });
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.CONFLICT) {
+                throw new ConflictException("Cluster node " + node + " refused version " + view.getVersion(),
+                        ErrorEnum.API_ERROR_CLUSTER_CHANGE_CONFLICT);
+            }
+            throw failed(e);
+        }
+    }
+
+    private Page<User> page(UriComponentsBuilder uri) {
+        UserPageDTO page = call(() -> restTemplate.getForObject(uri.build().encode().toUri(), UserPageDTO.class));
+        return new Page<>(page.getUsers().stream().map(RemoteUserRepository::toUser).collect(Collectors.toList()),
+                page.getNextCursor());
+    }
+
+    private Optional<User> optional(Supplier<UserDTO> request) {
+        return found(request).map(RemoteUserRepository::toUser);
+    }
+
+    private <T> Optional<T> found(Supplier<T> request) {
+        try {
+            return Optional.of(call(request));
+        } catch (HttpClientErrorException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Lets a 404 or 409 through as HttpClientErrorException, any other failure is a server error.
+     */
+    private <T> T call(Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND || e.getStatusCode() == HttpStatus.CONFLICT) {
+                throw e;
+            }
+            throw failed(e);
+        } catch (RestClientException e) {
+            throw failed(e);
+        }
+    }
+
+    private ServerException failed(RestClientException e) {
+        return new ServerException("Cluster node " + node + " failed : " + e.getMessage(), ErrorEnum.SERVER_EXCEPTION);
+    }
+
+    private static UserDTO toDto(User user) {
+        return new UserDTO(user.getUsername(), user.getPassword(), user.getDob().toString(), user.getSsn());
+    }
+
+    private static User toUser(UserDTO user) {
+        return new User(user.getUsername(), user.getPassword(), LocalDate.parse(user.getDob()), user.getSsn());
+    }
+}
@@ -0,0 +1,109 @@
+package com.gamesys.registrationservice.persistence.codec;
+
+import com.gamesys.registrationservice.domain.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Compact binary layout of a User shared by the write ahead log, snapshots and the off heap stores.
+ *
+ * [short ssn length][ssn utf-8][short username length][username utf-8]
+ * [short password length][password utf-8][int dob epoch day]
+ */
+public final class UserCodec {
+
+    private UserCodec() {
+    }
+
+    public static int encodedSize(User user) {
+        return 3 * Short.BYTES + Integer.BYTES
+                + utf8Length(user.getSsn())
+                + utf8Length(user.getUsername())
+                + utf8Length(user.getPassword());
+    }
+
+    public static void encode(User user, ByteBuffer buffer) {
+        writeString(user.getSsn(), buffer);
+        writeString(user.getUsername(), buffer);
+        writeString(user.getPassword(), buffer);
+        buffer.putInt(Math.toIntExact(user.getDob().toEpochDay()));
+    }
+
+    public static User decode(ByteBuffer buffer) {
+        String ssn = readString(buffer);
+        String username = readString(buffer);
+        String password = readString(buffer);
+        LocalDate dob = LocalDate.ofEpochDay(buffer.getInt());
+        return new User(username, password, dob, ssn);
+    }
+
+    /**
+     * Writes the string's UTF-8 bytes straight into the buffer, unpaired surrogates written as '?'
+     * like {@link String#getBytes}.
+     */
+    public static void writeString(String value, ByteBuffer buffer) {
+        int length = utf8Length(value);
+        if (length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Field too long to encode : " + length + " bytes");
+        }
+        buffer.putShort((short) length);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (isSurrogatePair(value, i)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Corrupted string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogatePair(value, i)) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+}
@@ -0,0 +1,62 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.AsyncUserRepository;
+import com.gamesys.registrationservice.persistence.UserRepository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncUserRepository} over a blocking {@link UserRepository}, each call running on the
+ * given bounded executor. The executor's threads still wait for the storage, but the request
+ * threads don't, and the number of calls waiting on a slow backend is capped by the pool size.
+ */
+public class ExecutorAsyncUserRepository implements AsyncUserRepository {
+
+    private final UserRepository userRepository;
+    private final Executor executor;
+
+    public ExecutorAsyncUserRepository(UserRepository userRepository, Executor executor) {
+        this.userRepository = userRepository;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Optional<User>> getUser(String key) {
+        return CompletableFuture.supplyAsync(() -> userRepository.getUser(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<User>> addUser(String key, User user) {
+        return CompletableFuture.supplyAsync(() -> userRepository.addUser(key, user), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<User>> replaceUser(String key, User user) {
+        return CompletableFuture.supplyAsync(() -> userRepository.replaceUser(key, user), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> removeUser(String key) {
+        return CompletableFuture.supplyAsync(() -> userRepository.removeUser(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<User>> getUserByUsername(String username) {
+        return CompletableFuture.supplyAsync(() -> userRepository.getUserByUsername(username), executor);
+    }
+
+    @Override
+    public CompletableFuture<Page<User>> getUserPage(String cursor, int limit) {
+        return CompletableFuture.supplyAsync(() -> userRepository.getUserPage(cursor, limit), executor);
+    }
+
+    @Override
+    public CompletableFuture<Page<User>> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        return CompletableFuture.supplyAsync(() -> userRepository.getUsersByDob(from, to, cursor, limit), executor);
+    }
+}
@@ -0,0 +1,347 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.index.UsernameIndex;
+import com.gamesys.registrationservice.persistence.jdbc.WriteCoalescer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Relational user repository over a JDBC {@link DataSource}, selected with
+ * registration.repository.type=jdbc. The default data source is an embedded H2 database.
+ *
+ * Writes from concurrent callers are coalesced by a {@link WriteCoalescer} into JDBC batches
+ * committed in one transaction, consecutive writes of the same kind sharing one statement. Each
+ * statement checks its own preconditions (insert only when neither the key nor the username is
+ * taken, update only when the username is free), so the update count of a row tells its caller
+ * whether its write was applied, and one duplicate doesn't fail the rest of the batch. With
+ * registration.jdbc.max-batch=1 every write is its own statement and commit on the caller thread.
+ */
+
+@Slf4j
+@Repository("userRepository")
+@ConditionalOnProperty(name = "registration.repository.type", havingValue = "jdbc")
+public class JdbcUserRepository implements UserRepository, AutoCloseable {
+
+    private static final String USER_CURSOR = "J:";
+    private static final String DOB_CURSOR = "B:";
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS users (user_key VARCHAR(64) PRIMARY KEY, ssn VARCHAR(64) NOT NULL,"
+                    + " username VARCHAR(255) NOT NULL, username_key VARCHAR(255) NOT NULL UNIQUE,"
+                    + " password VARCHAR(255) NOT NULL, dob DATE NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS users_dob ON users (dob, user_key)"
+    };
+    private static final String COLUMNS = "user_key, ssn, username, password, dob";
+    private static final String INSERT = "INSERT INTO users (user_key, ssn, username, username_key, password, dob)"
+            + " SELECT ?, ?, ?, ?, ?, ? FROM DUAL"
+            + " WHERE NOT EXISTS (SELECT 1 FROM users WHERE user_key = ?)"
+            + " AND NOT EXISTS (SELECT 1 FROM users WHERE username_key = ?)";
+    private static final String UPDATE = "UPDATE users SET ssn = ?, username = ?, username_key = ?, password = ?, dob = ?"
+            + " WHERE user_key = ?"
+            + " AND NOT EXISTS (SELECT 1 FROM users other WHERE other.username_key = ? AND other.user_key <> ?)";
+    private static final String DELETE = "DELETE FROM users WHERE user_key = ?";
+
+    private static final RowMapper<User> USER = (rs, row) ->
+            new User(rs.getString("username"), rs.getString("password"), rs.getDate("dob").toLocalDate(), rs.getString("ssn"));
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final WriteCoalescer<Write, Boolean> coalescer;
+
+    @Inject
+    public JdbcUserRepository(DataSource dataSource,
+                              @Value("${registration.jdbc.batch-window-micros:500}") long batchWindowMicros,
+                              @Value("${registration.jdbc.max-batch:256}") int maxBatch) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        for (String statement : SCHEMA) {
+            jdbcTemplate.execute(statement);
+        }
+        this.coalescer = maxBatch > 1 ? new WriteCoalescer<>("jdbc-writer", batchWindowMicros, maxBatch, this::execute) : null;
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        return first(jdbcTemplate.query("SELECT " + COLUMNS + " FROM users WHERE user_key = ?", USER, key));
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        return write(new Write(Write.Type.ADD, key, user)) ? Optional.of(user) : Optional.empty();
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        return write(new Write(Write.Type.REPLACE, key, user)) ? Optional.of(user) : Optional.empty();
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        return write(new Write(Write.Type.REMOVE, key, null));
+    }
+
+    @Override
+    public List<User> getAllUser() {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM users", USER);
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        return first(jdbcTemplate.query("SELECT " + COLUMNS + " FROM users WHERE username_key = ?", USER,
+                UsernameIndex.normalize(username)));
+    }
+
+    /**
+     * Keyset pages in key order. Cursor state "J:last key".
+     */
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        List<Keyed> rows;
+        if (cursor == null) {
+            rows = jdbcTemplate.query("SELECT " + COLUMNS + " FROM users ORDER BY user_key LIMIT ?", Keyed.MAPPER, limit + 1);
+        } else {
+            String state = PageCursor.decode(cursor);
+            if (!state.startsWith(USER_CURSOR)) {
+                throw PageCursor.invalid(cursor);
+            }
+            rows = jdbcTemplate.query("SELECT " + COLUMNS + " FROM users WHERE user_key > ? ORDER BY user_key LIMIT ?",
+                    Keyed.MAPPER, state.substring(USER_CURSOR.length()), limit + 1);
+        }
+        return page(rows, limit, last -> USER_CURSOR + last.key);
+    }
+
+    /**
+     * Keyset pages over the (dob, key) index. Cursor state "B:last dob:last key".
+     */
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        LocalDate afterDob = from;
+        String afterKey = "";
+        if (cursor != null) {
+            String state = PageCursor.decode(cursor);
+            int separator = state.indexOf(':', DOB_CURSOR.length());
+            if (!state.startsWith(DOB_CURSOR) || separator < 0) {
+                throw PageCursor.invalid(cursor);
+            }
+            try {
+                afterDob = LocalDate.parse(state.substring(DOB_CURSOR.length(), separator));
+            } catch (DateTimeParseException e) {
+                throw PageCursor.invalid(cursor);
+            }
+            afterKey = state.substring(separator + 1);
+        }
+        List<Keyed> rows = jdbcTemplate.query("SELECT " + COLUMNS + " FROM users"
+                        + " WHERE dob BETWEEN ? AND ? AND (dob > ? OR (dob = ? AND user_key > ?)) ORDER BY dob, user_key LIMIT ?",
+                Keyed.MAPPER, Date.valueOf(from), Date.valueOf(to), Date.valueOf(afterDob), Date.valueOf(afterDob), afterKey,
+                limit + 1);
+        return page(rows, limit, last -> DOB_CURSOR + last.user.getDob() + ":" + last.key);
+    }
+
+    /**
+     * @return the number of write batches executed, 0 when writes aren't batched
+     */
+    public long batches() {
+        return coalescer == null ? 0 : coalescer.batches();
+    }
+
+    /**
+     * @return the number of writes executed in batches
+     */
+    public long batchedWrites() {
+        return coalescer == null ? 0 : coalescer.writes();
+    }
+
+    @Override
+    public void close() {
+        if (coalescer != null) {
+            coalescer.close();
+        }
+    }
+
+    private boolean write(Write write) {
+        if (coalescer == null) {
+            return execute(Collections.singletonList(write)).get(0);
+        }
+        try {
+            return coalescer.submit(write).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new ServerException("User write failed : " + e.getCause(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    /**
+     * Executes the writes in order within one transaction, runs of the same kind as one batch. If a
+     * statement still fails, for instance on a constraint raced by another client of the database,
+     * the transaction is rolled back and every write retried on its own.
+     */
+    private List<Boolean> execute(List<Write> writes) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                List<Boolean> results = new ArrayList<>(writes.size());
+                int start = 0;
+                while (start < writes.size()) {
+                    int end = start + 1;
+                    while (end < writes.size() && writes.get(end).type == writes.get(start).type) {
+                        end++;
+                    }
+                    executeRun(connection, writes.subList(start, end), results);
+                    start = end;
+                }
+                connection.commit();
+                return results;
+            } catch (BatchUpdateException e) {
+                connection.rollback();
+                if (writes.size() == 1) {
+                    return Collections.singletonList(rejected(e));
+                }
+                log.warn("User write batch of {} failed, retrying one by one : {}", writes.size(), e.getMessage());
+                List<Boolean> results = new ArrayList<>(writes.size());
+                for (Write write : writes) {
+                    results.add(executeAlone(connection, write));
+                }
+                return results;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new ServerException("User write failed : " + e.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    private Boolean executeAlone(Connection connection, Write write) throws SQLException {
+        List<Boolean> result = new ArrayList<>(1);
+        try {
+            executeRun(connection, Collections.singletonList(write), result);
+            connection.commit();
+            return result.get(0);
+        } catch (BatchUpdateException e) {
+            connection.rollback();
+            return rejected(e);
+        }
+    }
+
+    private static void executeRun(Connection connection, List<Write> run, List<Boolean> results) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(run.get(0).type.sql)) {
+            for (Write write : run) {
+                write.bind(statement);
+                statement.addBatch();
+            }
+            for (int count : statement.executeBatch()) {
+                results.add(count > 0 || count == Statement.SUCCESS_NO_INFO);
+            }
+        }
+    }
+
+    /**
+     * A constraint violation means the key or username was taken after all, anything else is a
+     * storage failure.
+     */
+    private static boolean rejected(BatchUpdateException e) throws SQLException {
+        SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+        if (cause.getSQLState() != null && cause.getSQLState().startsWith("23")) {
+            return false;
+        }
+        throw e;
+    }
+
+    private static Optional<User> first(List<User> users) {
+        return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
+    }
+
+    private static Page<User> page(List<Keyed> rows, int limit, Function<Keyed, String> state) {
+        boolean more = rows.size() > limit;
+        List<User> users = new ArrayList<>(Math.min(rows.size(), limit));
+        for (int i = 0; i < rows.size() && i < limit; i++) {
+            users.add(rows.get(i).user);
+        }
+        return new Page<>(users, more ? PageCursor.encode(state.apply(rows.get(limit - 1))) : null);
+    }
+
+    private static final class Keyed {
+
+        private static final RowMapper<Keyed> MAPPER = (rs, row) -> new Keyed(rs.getString("user_key"), USER.mapRow(rs, row));
+
+        private final String key;
+        private final User user;
+
+        private Keyed(String key, User user) {
+            this.key = key;
+            this.user = user;
+        }
+    }
+
+    private static final class Write {
+
+        private enum Type {
+            ADD(INSERT), REPLACE(UPDATE), REMOVE(DELETE);
+
+            private final String sql;
+
+            Type(String sql) {
+                this.sql = sql;
+            }
+        }
+
+        private final Type type;
+        private final String key;
+        private final User user;
+
+        private Write(Type type, String key, User user) {
+            this.type = type;
+            this.key = key;
+            this.user = user;
+        }
+
+        private void bind(PreparedStatement statement) throws SQLException {
+            if (type == Type.REMOVE) {
+                statement.setString(1, key);
+                return;
+            }
+            String username = UsernameIndex.normalize(user.getUsername());
+            int i = 1;
+            if (type == Type.ADD) {
+                statement.setString(i++, key);
+            }
+            statement.setString(i++, user.getSsn());
+            statement.setString(i++, user.getUsername());
+            statement.setString(i++, username);
+            statement.setString(i++, user.getPassword());
+            statement.setDate(i++, Date.valueOf(user.getDob()));
+            statement.setString(i++, key);
+            statement.setString(i++, username);
+            if (type == Type.REPLACE) {
+                statement.setString(i, key);
+            }
+        }
+    }
+}
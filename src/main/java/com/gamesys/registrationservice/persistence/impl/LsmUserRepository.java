@@ -0,0 +1,422 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.codec.UserCodec;
+import com.gamesys.registrationservice.persistence.index.UsernameIndex;
+import com.gamesys.registrationservice.persistence.log.Mutation;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import com.gamesys.registrationservice.persistence.lsm.LsmStatistics;
+import com.gamesys.registrationservice.persistence.lsm.LsmTree;
+import com.gamesys.registrationservice.persistence.snapshot.Checkpointable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Disk backed user repository over an {@link LsmTree}, selected with registration.repository.type=lsm,
+ * for user sets larger than the heap.
+ *
+ * Users and both secondary indexes share the tree's key space:
+ * "u:key"               : the user, encoded with {@link UserCodec}
+ * "n:username"          : the key holding the lower cased username
+ * "d:epoch day:key"     : empty, one per user in birth date order
+ *
+ * Writes run one at a time under a single lock, like the memtable of most LSM engines; each write
+ * checks its key and username with two lookups that the tables' Bloom filters usually answer
+ * without a disk read. With a durable {@link MutationLog} every write is logged first, and the log
+ * written after the tree's flushed lsn is replayed on startup. A logged write is a
+ * {@link PendingWrite} until the log reports it durable: later writes are checked against it, but
+ * it only reaches the tree, in log order, once durable, so readers never see a write the log could
+ * still lose, and a write the log failed is dropped. Its user and index entries are put as one
+ * batch, which a flush covers whole or not at all.
+ */
+
+@Slf4j
+@Repository("userRepository")
+@ConditionalOnProperty(name = "registration.repository.type", havingValue = "lsm")
+public class LsmUserRepository implements UserRepository, Checkpointable, AutoCloseable {
+
+    private static final String USER = "u:";
+    private static final String USERNAME = "n:";
+    private static final String DOB = "d:";
+    private static final String USER_CURSOR = "L:";
+    private static final String DOB_CURSOR = "D:";
+    private static final byte[] PRESENT = new byte[0];
+
+    private final LsmTree tree;
+    private final MutationLog mutationLog;
+    private final Lock writeLock = new ReentrantLock();
+    private final Deque<PendingWrite> pending = new ArrayDeque<>();
+    private final Map<String, PendingWrite> pendingKeys = new HashMap<>();
+
+    public LsmUserRepository(Path directory, LsmTree.Options options) throws IOException {
+        this(directory, options, MutationLog.NONE);
+    }
+
+    @Inject
+    public LsmUserRepository(@Value("${registration.lsm.dir:data/lsm}") String directory,
+                             @Value("${registration.lsm.memtable-bytes:33554432}") long memtableBytes,
+                             @Value("${registration.lsm.level0-tables:4}") int level0Tables,
+                             @Value("${registration.lsm.level-base-bytes:268435456}") long levelBaseBytes,
+                             @Value("${registration.lsm.table-bytes:33554432}") long tableBytes,
+                             @Value("${registration.lsm.bloom-bits-per-key:10}") int bloomBitsPerKey,
+                             MutationLog mutationLog) throws IOException {
+        this(Paths.get(directory), new LsmTree.Options(memtableBytes, level0Tables, levelBaseBytes, tableBytes,
+                bloomBitsPerKey), mutationLog);
+    }
+
+    public LsmUserRepository(Path directory, LsmTree.Options options, MutationLog mutationLog) throws IOException {
+        this.mutationLog = mutationLog;
+        this.tree = new LsmTree(directory, options, mutationLog::truncate);
+        recover();
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        return Optional.ofNullable(user(key));
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        PendingWrite write;
+        writeLock.lock();
+        try {
+            if (latestUser(key) != null || !nameFree(user, key)) {
+                return Optional.empty();
+            }
+            write = log(Mutation.add(key, user), key, null, user);
+        } finally {
+            writeLock.unlock();
+        }
+        settle(write);
+        return Optional.of(user);
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        PendingWrite write;
+        writeLock.lock();
+        try {
+            User previous = latestUser(key);
+            if (previous == null || !nameFree(user, key)) {
+                return Optional.empty();
+            }
+            write = log(Mutation.replace(key, user), key, previous, user);
+        } finally {
+            writeLock.unlock();
+        }
+        settle(write);
+        return Optional.of(user);
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        PendingWrite write;
+        writeLock.lock();
+        try {
+            User previous = latestUser(key);
+            if (previous == null) {
+                return false;
+            }
+            write = log(Mutation.remove(key), key, previous, null);
+        } finally {
+            writeLock.unlock();
+        }
+        settle(write);
+        return true;
+    }
+
+    @Override
+    public List<User> getAllUser() {
+        List<User> users = new ArrayList<>();
+        tree.scan(USER, end(USER), entry -> users.add(decode(entry.getValue())));
+        return users;
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        byte[] key = tree.get(USERNAME + UsernameIndex.normalize(username));
+        return key == null ? Optional.empty()
+                : getUser(new String(key, StandardCharsets.UTF_8)).filter(user -> UsernameIndex.matches(username, user));
+    }
+
+    /**
+     * Pages through the users in key order. Cursor state "L:last key".
+     */
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        String from = USER;
+        if (cursor != null) {
+            String state = PageCursor.decode(cursor);
+            if (!state.startsWith(USER_CURSOR)) {
+                throw PageCursor.invalid(cursor);
+            }
+            from = after(USER + state.substring(USER_CURSOR.length()));
+        }
+        List<User> users = new ArrayList<>(limit);
+        String[] last = new String[1];
+        boolean more = !tree.scan(from, end(USER), entry -> {
+            if (users.size() == limit) {
+                return false;
+            }
+            users.add(decode(entry.getValue()));
+            last[0] = entry.getKey().substring(USER.length());
+            return true;
+        });
+        return new Page<>(users, more ? PageCursor.encode(USER_CURSOR + last[0]) : null);
+    }
+
+    /**
+     * Walks the "d:" entries of the range. Cursor state "D:last birth date entry".
+     */
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        String start = DOB + day(from);
+        if (cursor != null) {
+            String state = PageCursor.decode(cursor);
+            if (!state.startsWith(DOB_CURSOR + DOB)) {
+                throw PageCursor.invalid(cursor);
+            }
+            start = after(state.substring(DOB_CURSOR.length()));
+        }
+        List<User> users = new ArrayList<>(limit);
+        String[] last = new String[1];
+        boolean more = !tree.scan(start, DOB + day(to.plusDays(1)), entry -> {
+            if (users.size() == limit) {
+                return false;
+            }
+            String key = entry.getKey().substring(DOB.length() + 9);
+            User user = user(key);
+            if (user != null && !user.getDob().isBefore(from) && !user.getDob().isAfter(to)) {
+                users.add(user);
+            }
+            last[0] = entry.getKey();
+            return true;
+        });
+        return new Page<>(users, more ? PageCursor.encode(DOB_CURSOR + last[0]) : null);
+    }
+
+    /**
+     * Flushes the memtable to a table, which releases the log written before it.
+     */
+    @Override
+    public long checkpoint() {
+        return tree.flush();
+    }
+
+    public LsmStatistics statistics() {
+        return tree.statistics();
+    }
+
+    @Override
+    public void close() {
+        tree.close();
+    }
+
+    private void recover() {
+        long start = System.nanoTime();
+        long[] replayed = {0};
+        mutationLog.replay(tree.flushedLsn(), mutation -> {
+            restore(mutation.getKey(), mutation.getUser());
+            replayed[0]++;
+        });
+        tree.coverLsn(mutationLog.lastLsn());
+        if (replayed[0] > 0) {
+            log.info("LSM repository replayed {} log records after lsn {} in {} ms", replayed[0], tree.flushedLsn(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private void restore(String key, User user) {
+        User previous = user(key);
+        if (previous != null || user != null) {
+            tree.putAll(changes(key, previous, user), 0);
+        }
+    }
+
+    /**
+     * Logs a checked write under the write lock. Without a log there is nothing to wait for and the
+     * write is applied at once.
+     *
+     * @return the write to settle, or null when it was applied
+     */
+    private PendingWrite log(Mutation mutation, String key, User previous, User user) {
+        Map<String, byte[]> changes = changes(key, previous, user);
+        long lsn = mutationLog.append(mutation);
+        if (mutationLog == MutationLog.NONE) {
+            tree.putAll(changes, lsn);
+            return null;
+        }
+        PendingWrite write = new PendingWrite(lsn, changes);
+        pending.addLast(write);
+        changes.keySet().forEach(treeKey -> pendingKeys.put(treeKey, write));
+        return write;
+    }
+
+    /**
+     * Waits until the write is durable and applies every pending write up to it in log order, or
+     * drops it when the log failed.
+     */
+    private void settle(PendingWrite write) {
+        if (write == null) {
+            return;
+        }
+        try {
+            mutationLog.awaitDurable(write.lsn);
+        } catch (RuntimeException e) {
+            abandon(write);
+            throw e;
+        }
+        writeLock.lock();
+        try {
+            while (!pending.isEmpty() && pending.peekFirst().lsn <= write.lsn) {
+                PendingWrite durable = pending.pollFirst();
+                durable.changes.keySet().forEach(treeKey -> pendingKeys.remove(treeKey, durable));
+                tree.putAll(durable.changes, durable.lsn);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Drops a write the log couldn't make durable, later writes being checked against the ones
+     * still pending and the tree again.
+     */
+    private void abandon(PendingWrite write) {
+        writeLock.lock();
+        try {
+            if (pending.remove(write)) {
+                pendingKeys.clear();
+                pending.forEach(other -> other.changes.keySet().forEach(treeKey -> pendingKeys.put(treeKey, other)));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the tree writes moving key from previous to user, either of them null for an add or a
+     * remove, a null value deleting its tree key
+     */
+    private Map<String, byte[]> changes(String key, User previous, User user) {
+        Map<String, byte[]> changes = new LinkedHashMap<>();
+        if (previous != null) {
+            String name = USERNAME + UsernameIndex.normalize(previous.getUsername());
+            byte[] holder = latest(name);
+            if (holder != null && key.equals(new String(holder, StandardCharsets.UTF_8))) {
+                changes.put(name, null);
+            }
+            changes.put(dobKey(previous.getDob(), key), null);
+        }
+        if (user == null) {
+            changes.put(USER + key, null);
+            return changes;
+        }
+        changes.put(USER + key, encode(user));
+        changes.put(USERNAME + UsernameIndex.normalize(user.getUsername()), key.getBytes(StandardCharsets.UTF_8));
+        changes.put(dobKey(user.getDob(), key), PRESENT);
+        return changes;
+    }
+
+    private User user(String key) {
+        byte[] value = tree.get(USER + key);
+        return value == null ? null : decode(value);
+    }
+
+    /**
+     * @return the value of the tree key after the pending writes, seen by writers only
+     */
+    private byte[] latest(String treeKey) {
+        PendingWrite write = pendingKeys.get(treeKey);
+        return write == null ? tree.get(treeKey) : write.changes.get(treeKey);
+    }
+
+    private User latestUser(String key) {
+        byte[] value = latest(USER + key);
+        return value == null ? null : decode(value);
+    }
+
+    private boolean nameFree(User user, String key) {
+        byte[] holder = latest(USERNAME + UsernameIndex.normalize(user.getUsername()));
+        return holder == null || key.equals(new String(holder, StandardCharsets.UTF_8));
+    }
+
+    private static String dobKey(LocalDate dob, String key) {
+        return DOB + day(dob) + ":" + key;
+    }
+
+    /**
+     * Epoch day as 8 hex digits with the sign bit flipped, so text order follows date order.
+     */
+    private static String day(LocalDate date) {
+        return String.format("%08x", (int) date.toEpochDay() ^ Integer.MIN_VALUE);
+    }
+
+    /**
+     * @return the smallest key following the given one
+     */
+    private static String after(String key) {
+        return key + '\0';
+    }
+
+    /**
+     * @return the smallest key following every key with the given prefix
+     */
+    private static String end(String prefix) {
+        return prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+    }
+
+    private static byte[] encode(User user) {
+        ByteBuffer buffer = ByteBuffer.allocate(UserCodec.encodedSize(user));
+        UserCodec.encode(user, buffer);
+        return buffer.array();
+    }
+
+    private static User decode(byte[] value) {
+        try {
+            return UserCodec.decode(ByteBuffer.wrap(value));
+        } catch (RuntimeException e) {
+            throw new ServerException("Corrupted user record : " + e.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    /**
+     * The tree writes of a logged user write waiting to be durable. Guarded by the write lock.
+     */
+    private static final class PendingWrite {
+
+        private final long lsn;
+        private final Map<String, byte[]> changes;
+
+        private PendingWrite(long lsn, Map<String, byte[]> changes) {
+            this.lsn = lsn;
+            this.changes = changes;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.index.DobIndex;
+import com.gamesys.registrationservice.persistence.index.UsernameIndex;
+import com.gamesys.registrationservice.persistence.offheap.OffHeapStripe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * User repository keeping serialized users in direct memory, selected with
+ * registration.repository.type=offheap.
+ *
+ * Users are partitioned by key hash over independently locked {@link OffHeapStripe}s. Only the
+ * slab and index buffer objects live on the heap, a User object is decoded when it leaves the
+ * repository. The JVM must be started with a -XX:MaxDirectMemorySize large enough for the data set.
+ *
+ * Usernames are claimed in an on heap {@link UsernameIndex} while the stripe's write lock is held,
+ * birth dates are indexed in an on heap {@link DobIndex}.
+ */
+
+@Repository("userRepository")
+@ConditionalOnProperty(name = "registration.repository.type", havingValue = "offheap")
+public class OffHeapUserRepository implements UserRepository {
+
+    private static final String CURSOR = "O:";
+
+    private final OffHeapStripe[] stripes;
+    private final UsernameIndex usernames = new UsernameIndex();
+    private final DobIndex dobs = new DobIndex();
+    private final int stripeShift;
+
+    public OffHeapUserRepository() {
+        this(64, 16 << 20);
+    }
+
+    @Inject
+    public OffHeapUserRepository(@Value("${registration.offheap.stripes:64}") int stripes,
+                                 @Value("${registration.offheap.slab-bytes:16777216}") int slabBytes) {
+        int count = Integer.highestOneBit(Math.max(1, stripes));
+        this.stripes = new OffHeapStripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new OffHeapStripe(slabBytes);
+        }
+        this.stripeShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        int hash = hash(key);
+        return Optional.ofNullable(stripe(hash).get(bytes(key), hash));
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        int hash = hash(key);
+        byte[] bytes = bytes(key);
+        OffHeapStripe stripe = stripe(hash);
+        Lock lock = stripe.writeLock();
+        lock.lock();
+        try {
+            if (stripe.contains(bytes, hash) || !usernames.claim(key, user) || !stripe.putIfAbsent(key, bytes, hash, user)) {
+                return Optional.empty();
+            }
+            dobs.add(key, user);
+            return Optional.of(user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        int hash = hash(key);
+        byte[] bytes = bytes(key);
+        OffHeapStripe stripe = stripe(hash);
+        Lock lock = stripe.writeLock();
+        lock.lock();
+        try {
+            User previous = stripe.get(bytes, hash);
+            if (previous == null || !usernames.claim(key, user) || !stripe.replace(key, bytes, hash, user)) {
+                return Optional.empty();
+            }
+            usernames.replaced(key, previous, user);
+            dobs.replaced(key, previous, user);
+            return Optional.of(user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        int hash = hash(key);
+        byte[] bytes = bytes(key);
+        OffHeapStripe stripe = stripe(hash);
+        Lock lock = stripe.writeLock();
+        lock.lock();
+        try {
+            User previous = stripe.get(bytes, hash);
+            if (previous == null || !stripe.remove(bytes, hash)) {
+                return false;
+            }
+            usernames.release(key, previous);
+            dobs.remove(key, previous);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        String key = usernames.find(username);
+        return key == null ? Optional.empty() : getUser(key).filter(user -> UsernameIndex.matches(username, user));
+    }
+
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        return dobs.page(from, to, cursor, limit, this::getUser);
+    }
+
+    @Override
+    public List<User> getAllUser() {
+        List<User> users = new ArrayList<>(size());
+        for (OffHeapStripe stripe : stripes) {
+            stripe.forEach(users::add);
+        }
+        return users;
+    }
+
+    /**
+     * Pages through the stripes in order. Cursor state "O:stripe:stripe position".
+     */
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        List<User> users = new ArrayList<>(limit);
+        int stripe = 0;
+        long position = 0;
+        if (cursor != null) {
+            String state = PageCursor.decode(cursor);
+            int separator = state.indexOf(':', CURSOR.length());
+            if (separator < 0) {
+                throw PageCursor.invalid(cursor);
+            }
+            stripe = (int) PageCursor.position(cursor, state.substring(0, separator), CURSOR);
+            position = PageCursor.position(cursor, state.substring(separator), ":");
+            if (stripe < 0 || stripe >= stripes.length) {
+                throw PageCursor.invalid(cursor);
+            }
+        }
+        for (; stripe < stripes.length; stripe++, position = 0) {
+            position = stripes[stripe].scan(position, limit - users.size(), users::add);
+            if (position >= 0) {
+                return new Page<>(users, PageCursor.encode(CURSOR + stripe + ":" + position));
+            }
+        }
+        return new Page<>(users, null);
+    }
+
+    public int size() {
+        int size = 0;
+        for (OffHeapStripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (OffHeapStripe stripe : stripes) {
+            bytes += stripe.offHeapBytes();
+        }
+        return bytes;
+    }
+
+    private OffHeapStripe stripe(int hash) {
+        return stripeShift == 32 ? stripes[0] : stripes[hash >>> stripeShift];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
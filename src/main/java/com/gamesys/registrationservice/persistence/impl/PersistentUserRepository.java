@@ -0,0 +1,216 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.index.DobIndex;
+import com.gamesys.registrationservice.persistence.index.PersistentHashMap;
+import com.gamesys.registrationservice.persistence.index.UsernameIndex;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * In memory user repository holding users in an immutable {@link PersistentHashMap}, selected with
+ * registration.repository.type=persistent.
+ *
+ * Users and the username index are kept in one immutable {@link Version} published through an
+ * {@link AtomicReference}. A write builds the next version and swaps it in with compareAndSet, so
+ * {@link #snapshot()} is a constant time, point in time view that never shows a partly applied
+ * write, and {@link #getAllUser()} and {@link #streamAllUser()} read one such view while writers
+ * go on. Writes to the same key are ordered by a striped lock to keep the {@link DobIndex}, which
+ * is updated after the swap, in step with the map.
+ */
+
+@Repository("userRepository")
+@ConditionalOnProperty(name = "registration.repository.type", havingValue = "persistent")
+public class PersistentUserRepository implements UserRepository {
+
+    private static final int KEY_LOCKS = 64;
+    private static final String CURSOR = "T:";
+
+    private final AtomicReference<Version> version = new AtomicReference<>(Version.EMPTY);
+    private final DobIndex dobs = new DobIndex();
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+
+    public PersistentUserRepository() {
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return the users as of now, unaffected by later writes
+     */
+    public PersistentHashMap<User> snapshot() {
+        return version.get().users;
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        return Optional.ofNullable(snapshot().get(key));
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        String username = UsernameIndex.normalize(user.getUsername());
+        synchronized (lockFor(key)) {
+            Version previous = update(current -> current.users.get(key) != null || !current.nameFree(username, key) ? null
+                    : new Version(current.users.put(key, user), current.usernames.put(username, key)));
+            if (previous == null) {
+                return Optional.empty();
+            }
+            dobs.add(key, user);
+            return Optional.of(user);
+        }
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        String username = UsernameIndex.normalize(user.getUsername());
+        synchronized (lockFor(key)) {
+            Version previous = update(current -> {
+                User existing = current.users.get(key);
+                if (existing == null || !current.nameFree(username, key)) {
+                    return null;
+                }
+                return new Version(current.users.put(key, user),
+                        current.withoutName(existing, key).put(username, key));
+            });
+            if (previous == null) {
+                return Optional.empty();
+            }
+            dobs.replaced(key, previous.users.get(key), user);
+            return Optional.of(user);
+        }
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        synchronized (lockFor(key)) {
+            Version previous = update(current -> {
+                User existing = current.users.get(key);
+                return existing == null ? null : new Version(current.users.remove(key), current.withoutName(existing, key));
+            });
+            if (previous == null) {
+                return false;
+            }
+            dobs.remove(key, previous.users.get(key));
+            return true;
+        }
+    }
+
+    @Override
+    public List<User> getAllUser() {
+        PersistentHashMap<User> users = snapshot();
+        List<User> list = new ArrayList<>(users.size());
+        users.forEach(entry -> list.add(entry.getValue()));
+        return list;
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        Version current = version.get();
+        String key = current.usernames.get(UsernameIndex.normalize(username));
+        return key == null ? Optional.empty() : Optional.ofNullable(current.users.get(key));
+    }
+
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        return dobs.page(from, to, cursor, limit, this::getUser);
+    }
+
+    /**
+     * Pages in trie order, which is the same in every version. Cursor state "T:last key", so a user
+     * present for the whole traversal is returned exactly once.
+     */
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        String after = null;
+        if (cursor != null) {
+            String state = PageCursor.decode(cursor);
+            if (!state.startsWith(CURSOR)) {
+                throw PageCursor.invalid(cursor);
+            }
+            after = state.substring(CURSOR.length());
+        }
+        List<User> users = new ArrayList<>(limit);
+        String[] last = new String[1];
+        boolean more = !snapshot().scan(after, entry -> {
+            if (users.size() == limit) {
+                return false;
+            }
+            users.add(entry.getValue());
+            last[0] = entry.getKey();
+            return true;
+        });
+        return new Page<>(users, more ? PageCursor.encode(CURSOR + last[0]) : null);
+    }
+
+    /**
+     * Streams one snapshot, so the export is consistent as of the call.
+     */
+    @Override
+    public Stream<User> streamAllUser() {
+        return StreamSupport.stream(snapshot().spliterator(), false).map(Map.Entry::getValue);
+    }
+
+    public int size() {
+        return snapshot().size();
+    }
+
+    /**
+     * Swaps in the version built by change until no other writer got in between.
+     *
+     * @return the version that was replaced, or null when change returned null to refuse the write
+     */
+    private Version update(UnaryOperator<Version> change) {
+        while (true) {
+            Version current = version.get();
+            Version next = change.apply(current);
+            if (next == null) {
+                return null;
+            }
+            if (version.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    private Object lockFor(String key) {
+        return keyLocks[key.hashCode() & (KEY_LOCKS - 1)];
+    }
+
+    private static final class Version {
+
+        private static final Version EMPTY = new Version(PersistentHashMap.empty(), PersistentHashMap.empty());
+
+        private final PersistentHashMap<User> users;
+        private final PersistentHashMap<String> usernames;
+
+        private Version(PersistentHashMap<User> users, PersistentHashMap<String> usernames) {
+            this.users = users;
+            this.usernames = usernames;
+        }
+
+        private boolean nameFree(String username, String key) {
+            String holder = usernames.get(username);
+            return holder == null || holder.equals(key);
+        }
+
+        private PersistentHashMap<String> withoutName(User user, String key) {
+            String username = UsernameIndex.normalize(user.getUsername());
+            return key.equals(usernames.get(username)) ? usernames.remove(username) : usernames;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.ShardStatistics;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.index.DobIndex;
+import com.gamesys.registrationservice.persistence.index.SsnCodec;
+import com.gamesys.registrationservice.persistence.index.UsernameIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import javax.inject.Inject;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In memory user repository partitioned by SSN hash over independently locked shards, selected
+ * with registration.repository.type=sharded.
+ *
+ * Every write takes its shard's lock, so writers on different shards never meet. Each shard counts
+ * its operations and the writes that had to wait for its lock, exposed through
+ * {@link #getShardStatistics()} to find hot shards. Reads don't lock.
+ *
+ * Usernames and birth dates are indexed across shards in one {@link UsernameIndex} and
+ * {@link DobIndex}. This repository has no write ahead log.
+ */
+
+@Repository("userRepository")
+@ConditionalOnProperty(name = "registration.repository.type", havingValue = "sharded")
+public class ShardedUserRepository implements UserRepository {
+
+    private static final String CURSOR = "H:";
+
+    private final Shard[] shards;
+    private final UsernameIndex usernames = new UsernameIndex();
+    private final DobIndex dobs = new DobIndex();
+    private final int shardShift;
+
+    public ShardedUserRepository() {
+        this(16);
+    }
+
+    @Inject
+    public ShardedUserRepository(@Value("${registration.sharded.shards:16}") int shards) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(1 << 16, shards)));
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.shardShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    @Override
+    public Optional<User> getUser(String key) {
+        long ssn = SsnCodec.encode(key);
+        Shard shard = shard(ssn, key);
+        shard.gets.increment();
+        return Optional.ofNullable(shard.users.get(ssn, key));
+    }
+
+    @Override
+    public Optional<User> addUser(String key, User user) {
+        long ssn = SsnCodec.encode(key);
+        Shard shard = shard(ssn, key);
+        shard.lock();
+        try {
+            shard.adds.increment();
+            if (shard.users.get(ssn, key) != null || !usernames.claim(key, user)) {
+                return Optional.empty();
+            }
+            shard.users.store(ssn, key, user);
+            dobs.add(key, user);
+            return Optional.of(user);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<User> replaceUser(String key, User user) {
+        long ssn = SsnCodec.encode(key);
+        Shard shard = shard(ssn, key);
+        shard.lock();
+        try {
+            shard.replaces.increment();
+            User previous = shard.users.get(ssn, key);
+            if (previous == null || !usernames.claim(key, user)) {
+                return Optional.empty();
+            }
+            shard.users.store(ssn, key, user);
+            usernames.replaced(key, previous, user);
+            dobs.replaced(key, previous, user);
+            return Optional.of(user);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeUser(String key) {
+        long ssn = SsnCodec.encode(key);
+        Shard shard = shard(ssn, key);
+        shard.lock();
+        try {
+            shard.removes.increment();
+            User previous = shard.users.get(ssn, key);
+            if (previous == null) {
+                return false;
+            }
+            shard.users.store(ssn, key, null);
+            usernames.release(key, previous);
+            dobs.remove(key, previous);
+            return true;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    @Override
+    public List<User> getAllUser() {
+        List<User> users = new ArrayList<>(size());
+        for (Shard shard : shards) {
+            shard.users.forEach(users::add);
+        }
+        return users;
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        String key = usernames.find(username);
+        return key == null ? Optional.empty() : getUser(key).filter(user -> UsernameIndex.matches(username, user));
+    }
+
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        return dobs.page(from, to, cursor, limit, this::getUser);
+    }
+
+    /**
+     * Pages through the shards in order. Cursor state "H:shard:position in the shard".
+     */
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        List<User> users = new ArrayList<>(limit);
+        int shard = 0;
+        String state = null;
+        if (cursor != null) {
+            String decoded = PageCursor.decode(cursor);
+            int separator = decoded.indexOf(':', CURSOR.length());
+            if (separator < 0) {
+                throw PageCursor.invalid(cursor);
+            }
+            shard = (int) PageCursor.position(cursor, decoded.substring(0, separator), CURSOR);
+            state = decoded.substring(separator + 1);
+            if (shard < 0 || shard >= shards.length) {
+                throw PageCursor.invalid(cursor);
+            }
+        }
+        for (; shard < shards.length; shard++, state = null) {
+            Page<User> page = shards[shard].users.page(state, limit - users.size());
+            users.addAll(page.getItems());
+            if (page.getNextCursor() != null) {
+                return new Page<>(users, PageCursor.encode(CURSOR + shard + ":" + page.getNextCursor()));
+            }
+        }
+        return new Page<>(users, null);
+    }
+
+    public List<ShardStatistics> getShardStatistics() {
+        List<ShardStatistics> statistics = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            statistics.add(new ShardStatistics(i, shard.users.size(), shard.gets.sum(), shard.adds.sum(),
+                    shard.replaces.sum(), shard.removes.sum(), shard.contended.sum()));
+        }
+        return statistics;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.users.size();
+        }
+        return size;
+    }
+
+    private Shard shard(long ssn, String key) {
+        if (shardShift == 32) {
+            return shards[0];
+        }
+        int h = (ssn == SsnCodec.INVALID ? key.hashCode() : Long.hashCode(ssn)) * 0x9E3779B9;
+        return shards[(h ^ (h >>> 16)) >>> shardShift];
+    }
+
+    private static final class Shard {
+
+        private final UserTable users = new UserTable(2);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongAdder gets = new LongAdder();
+        private final LongAdder adds = new LongAdder();
+        private final LongAdder replaces = new LongAdder();
+        private final LongAdder removes = new LongAdder();
+        private final LongAdder contended = new LongAdder();
+
+        private void lock() {
+            if (!lock.tryLock()) {
+                contended.increment();
+                lock.lock();
+            }
+        }
+    }
+}
@@ -1,42 +1,551 @@
 package com.gamesys.registrationservice.persistence.impl;
 
+import com.gamesys.registrationservice.domain.Page;
 import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
 import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.index.DobIndex;
+import com.gamesys.registrationservice.persistence.index.SsnCodec;
+import com.gamesys.registrationservice.persistence.index.UsernameIndex;
+import com.gamesys.registrationservice.persistence.log.Mutation;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import com.gamesys.registrationservice.persistence.replication.Replicable;
+import com.gamesys.registrationservice.persistence.ring.WriteRing;
+import com.gamesys.registrationservice.persistence.snapshot.Checkpointable;
+import com.gamesys.registrationservice.persistence.snapshot.SnapshotStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+import javax.inject.Inject;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
+/**
+ * In memory user repository. When a durable {@link MutationLog} is configured every mutation is
+ * appended to the log while the key's lock is held, and only applied to the map once the log
+ * reports it durable. Until then it is a {@link PendingWrite}: later writes to the key are checked
+ * against it, readers don't see it, and when the log fails it is dropped and its username given
+ * back, so a write the caller was told failed is never read.
+ *
+ * On construction the newest snapshot is loaded and only the log written after it is replayed.
+ * Writers hold the checkpoint read lock from append until apply, so a checkpoint that briefly takes
+ * the write lock knows every mutation up to the current lsn is visible in the map.
+ *
+ * Users are held in a {@link UserTable}, keyed by the SSN packed into a long when it is well formed.
+ *
+ * Usernames are unique: a write claims its username in a {@link UsernameIndex} while the key is
+ * locked and is refused when another user holds the name. A {@link DobIndex} serves birth date
+ * range queries.
+ *
+ * With registration.memory.write-mode=ring writes are published to a {@link WriteRing} and applied
+ * by its single writer thread, which waits for the log once per batch instead of once per write;
+ * callers block until their own write is applied and durable. Reads don't change.
+ *
+ * As a {@link Replicable} the repository is copied to replication followers, which rebuild it
+ * through applyReplicated.
+ */
+
+@Slf4j
 @Repository("userRepository")
-public class UserRepositoryImpl implements UserRepository {
+@ConditionalOnProperty(name = "registration.repository.type", havingValue = "memory", matchIfMissing = true)
+public class UserRepositoryImpl implements UserRepository, Checkpointable, Replicable, AutoCloseable {
+
+    private static final long NOT_LOGGED = WriteRing.REJECTED;
+
+    private final UserTable userList = new UserTable(64);
+    private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final UsernameIndex usernames = new UsernameIndex();
+    private final DobIndex dobs = new DobIndex();
+    private final MutationLog mutationLog;
+    private final SnapshotStore snapshotStore;
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final WriteRing writeRing;
+    private long checkpointLsn;
+
+    public UserRepositoryImpl() {
+        this(MutationLog.NONE, SnapshotStore.NONE);
+    }
+
+    public UserRepositoryImpl(MutationLog mutationLog) {
+        this(mutationLog, SnapshotStore.NONE);
+    }
+
+    public UserRepositoryImpl(MutationLog mutationLog, SnapshotStore snapshotStore) {
+        this(mutationLog, snapshotStore, 0);
+    }
+
+    @Inject
+    public UserRepositoryImpl(MutationLog mutationLog, SnapshotStore snapshotStore,
+                              @Value("${registration.memory.write-mode:locking}") String writeMode,
+                              @Value("${registration.memory.ring-size:65536}") int ringSize) {
+        this(mutationLog, snapshotStore, writeMode.equals("ring") ? ringSize : 0);
+    }
 
-    private final Map<String, User> userList = new ConcurrentHashMap<>();
+    /**
+     * @param ringSize slots of the single writer ring, 0 to write on the caller's thread under the key's lock
+     */
+    public UserRepositoryImpl(MutationLog mutationLog, SnapshotStore snapshotStore, int ringSize) {
+        this.mutationLog = mutationLog;
+        this.snapshotStore = snapshotStore;
+        recover();
+        this.writeRing = ringSize > 0 ? new WriteRing("user-writer", ringSize, ringSize, ringHandler()) : null;
+    }
 
     @Override
     public Optional<User> getUser(String key) {
-        return Optional.ofNullable(userList.get(key));
+        return Optional.ofNullable(current(SsnCodec.encode(key), key));
     }
 
     @Override
     public Optional<User> addUser(String key, User user) {
-        return Optional.ofNullable(userList.putIfAbsent(key, user) == null ? user : null);
+        boolean added = writeRing == null ? write(Mutation.Type.ADD, key, user) : published(Mutation.Type.ADD, key, user);
+        return Optional.ofNullable(added ? user : null);
+    }
+
+    /**
+     * Logs the batch, waits for the log once, for its last write, and applies it. In ring mode every
+     * write is published before waiting for any, so the batch shares the writer's batches.
+     */
+    @Override
+    public List<User> addUsers(List<User> users) {
+        List<User> refused = new ArrayList<>();
+        if (writeRing != null) {
+            List<CompletableFuture<Boolean>> added = new ArrayList<>(users.size());
+            for (User user : users) {
+                added.add(writeRing.publish(Mutation.Type.ADD, user.getSsn(), user));
+            }
+            for (int i = 0; i < users.size(); i++) {
+                if (!joined(added.get(i))) {
+                    refused.add(users.get(i));
+                }
+            }
+            return refused;
+        }
+        List<PendingWrite> writes = new ArrayList<>(users.size());
+        checkpointLock.readLock().lock();
+        try {
+            for (User user : users) {
+                PendingWrite write = log(Mutation.Type.ADD, user.getSsn(), user, writes);
+                if (write == null) {
+                    refused.add(user);
+                } else {
+                    writes.add(write);
+                }
+            }
+            settle(writes);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        return refused;
     }
 
     @Override
     public Optional<User> replaceUser(String key, User user) {
-        return Optional.ofNullable(userList.replace(key, user) != null ? user : null);
+        boolean replaced = writeRing == null ? write(Mutation.Type.REPLACE, key, user) : published(Mutation.Type.REPLACE, key, user);
+        return Optional.ofNullable(replaced ? user : null);
     }
 
     @Override
     public boolean removeUser(String key) {
-        return userList.remove(key) != null ? true : false;
+        return writeRing == null ? write(Mutation.Type.REMOVE, key, null) : published(Mutation.Type.REMOVE, key, null);
     }
 
     @Override
     public List<User> getAllUser() {
-        return new ArrayList<>(userList.values());
+        List<User> users = new ArrayList<>(userList.size());
+        userList.forEach(users::add);
+        return users;
+    }
+
+    @Override
+    public Optional<User> getUserByUsername(String username) {
+        String key = usernames.find(username);
+        return key == null ? Optional.empty() : getUser(key).filter(user -> UsernameIndex.matches(username, user));
+    }
+
+    @Override
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        return dobs.page(from, to, cursor, limit, this::getUser);
+    }
+
+    @Override
+    public Page<User> getUserPage(String cursor, int limit) {
+        Page<User> page = userList.page(cursor == null ? null : PageCursor.decode(cursor), limit);
+        return page.getNextCursor() == null ? page : new Page<>(page.getItems(), PageCursor.encode(page.getNextCursor()));
+    }
+
+    /**
+     * Writes a snapshot of the map and truncates the log it covers. The snapshot may contain
+     * mutations after the recorded lsn; replaying them again on recovery is harmless because a
+     * replayed mutation sets the final value of its key.
+     */
+    @Override
+    public synchronized long checkpoint() {
+        long lsn;
+        checkpointLock.writeLock().lock();
+        try {
+            lsn = mutationLog.lastLsn();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        if (lsn == checkpointLsn) {
+            return lsn;
+        }
+        snapshotStore.write(lsn, userList.entries()::iterator);
+        mutationLog.truncate(lsn);
+        checkpointLsn = lsn;
+        return lsn;
+    }
+
+    @Override
+    public void forEachUser(BiConsumer<String, User> consumer) {
+        userList.entries().forEach(entry -> consumer.accept(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Applies a write shipped by the replication leader under the key's lock, like a local write.
+     */
+    @Override
+    public void applyReplicated(String key, User user) {
+        long ssn = SsnCodec.encode(key);
+        synchronized (lockFor(ssn, key)) {
+            restore(key, user);
+        }
+    }
+
+    public Optional<WriteRing> getWriteRing() {
+        return Optional.ofNullable(writeRing);
+    }
+
+    @Override
+    public void close() {
+        if (writeRing != null) {
+            writeRing.close();
+        }
+    }
+
+    private void recover() {
+        long start = System.nanoTime();
+        checkpointLsn = snapshotStore.load(this::restore);
+        long snapshotLoaded = System.nanoTime();
+        long[] replayed = {0};
+        mutationLog.replay(checkpointLsn, mutation -> {
+            apply(mutation);
+            replayed[0]++;
+        });
+        if (checkpointLsn > 0 || replayed[0] > 0) {
+            log.info("Repository ready with {} users : snapshot lsn {} loaded in {} ms, {} log records replayed in {} ms",
+                    userList.size(), checkpointLsn,
+                    TimeUnit.NANOSECONDS.toMillis(snapshotLoaded - start), replayed[0],
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - snapshotLoaded));
+        }
+    }
+
+    /**
+     * Logs one write, waits until it is durable and applies it.
+     *
+     * @return false when the write was refused
+     */
+    private boolean write(Mutation.Type type, String key, User user) {
+        checkpointLock.readLock().lock();
+        try {
+            PendingWrite write = log(type, key, user, null);
+            if (write == null) {
+                return false;
+            }
+            if (write != PendingWrite.APPLIED) {
+                settle(Collections.singletonList(write));
+            }
+            return true;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks the write against the key's latest write, pending or applied, and logs it under the
+     * key's lock. The caller holds the checkpoint read lock until the write is settled. Without a
+     * log there is nothing to wait for and the write is applied at once.
+     *
+     * @param batch writes logged earlier by the caller and not settled yet, given up if this one fails
+     * @return the write to settle, or null when it was refused
+     */
+    private PendingWrite log(Mutation.Type type, String key, User user, List<PendingWrite> batch) {
+        long ssn = SsnCodec.encode(key);
+        synchronized (lockFor(ssn, key)) {
+            PendingWrite before = pending.get(key);
+            User latest = before == null ? current(ssn, key) : before.user;
+            boolean accepted = type == Mutation.Type.ADD ? latest == null && usernames.claim(key, user)
+                    : type == Mutation.Type.REPLACE ? latest != null && usernames.claim(key, user)
+                    : latest != null;
+            if (!accepted) {
+                return null;
+            }
+            long lsn;
+            try {
+                lsn = append(type, key, user);
+            } catch (RuntimeException e) {
+                releaseName(ssn, key, user);
+                if (batch != null) {
+                    batch.forEach(this::abandon);
+                }
+                throw e;
+            }
+            if (mutationLog == MutationLog.NONE) {
+                apply(ssn, key, user);
+                return PendingWrite.APPLIED;
+            }
+            PendingWrite write = new PendingWrite(key, user, lsn, before);
+            pending.put(key, write);
+            return write;
+        }
+    }
+
+    /**
+     * Waits until the last of the writes is durable and applies them in log order, or gives them
+     * all up when the log failed.
+     */
+    private void settle(List<PendingWrite> writes) {
+        long lastLsn = NOT_LOGGED;
+        for (PendingWrite write : writes) {
+            lastLsn = Math.max(lastLsn, write.lsn);
+        }
+        if (lastLsn > 0) {
+            try {
+                mutationLog.awaitDurable(lastLsn);
+            } catch (RuntimeException e) {
+                writes.forEach(this::abandon);
+                throw e;
+            }
+        }
+        writes.forEach(this::commit);
+    }
+
+    /**
+     * Applies a durable write, unless a later write to the key was applied first, which is also
+     * durable and already holds the final value.
+     */
+    private void commit(PendingWrite write) {
+        if (write == PendingWrite.APPLIED) {
+            return;
+        }
+        long ssn = SsnCodec.encode(write.key);
+        synchronized (lockFor(ssn, write.key)) {
+            if (write.state == PendingWrite.State.PENDING) {
+                write.state = PendingWrite.State.APPLIED;
+                for (PendingWrite before = write.before; before != null; before = before.before) {
+                    if (before.state == PendingWrite.State.PENDING) {
+                        before.state = PendingWrite.State.SUPERSEDED;
+                    }
+                }
+                pending.remove(write.key, write);
+                apply(ssn, write.key, write.user);
+            } else if (write.state == PendingWrite.State.SUPERSEDED) {
+                write.state = PendingWrite.State.APPLIED;
+                releaseName(ssn, write.key, write.user);
+            }
+        }
+    }
+
+    /**
+     * Drops a write the log couldn't make durable: later writes to the key are checked against the
+     * write before it again, and its username is released.
+     */
+    private void abandon(PendingWrite write) {
+        if (write == PendingWrite.APPLIED) {
+            return;
+        }
+        long ssn = SsnCodec.encode(write.key);
+        synchronized (lockFor(ssn, write.key)) {
+            if (write.state != PendingWrite.State.PENDING) {
+                return;
+            }
+            write.state = PendingWrite.State.ABANDONED;
+            if (pending.get(write.key) == write) {
+                PendingWrite before = write.before;
+                while (before != null && before.state != PendingWrite.State.PENDING) {
+                    before = before.before;
+                }
+                if (before == null) {
+                    pending.remove(write.key);
+                } else {
+                    pending.put(write.key, before);
+                }
+            }
+            releaseName(ssn, write.key, write.user);
+        }
+    }
+
+    /**
+     * Stores the user of a durable write and moves the indexes from the user it replaces.
+     */
+    private void apply(long ssn, String key, User user) {
+        User previous = current(ssn, key);
+        store(ssn, key, user);
+        if (previous != null && user != null) {
+            dobs.replaced(key, previous, user);
+        } else if (previous != null) {
+            dobs.remove(key, previous);
+        } else if (user != null) {
+            dobs.add(key, user);
+        }
+        releaseName(ssn, key, previous);
+    }
+
+    /**
+     * Releases the user's name unless the key's applied user or one of its pending writes still
+     * uses it. Called under the key's lock.
+     */
+    private void releaseName(long ssn, String key, User user) {
+        if (user == null) {
+            return;
+        }
+        User applied = current(ssn, key);
+        if (applied != null && UsernameIndex.sameName(applied, user)) {
+            return;
+        }
+        for (PendingWrite write = pending.get(key); write != null; write = write.before) {
+            if (write.state == PendingWrite.State.PENDING && write.user != null && UsernameIndex.sameName(write.user, user)) {
+                return;
+            }
+        }
+        usernames.release(key, user);
+    }
+
+    /**
+     * Hands the write to the ring's writer thread and waits for it to be applied and durable.
+     */
+    private boolean published(Mutation.Type type, String key, User user) {
+        return joined(writeRing.publish(type, key, user));
+    }
+
+    private static boolean joined(CompletableFuture<Boolean> write) {
+        try {
+            return write.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs on the ring's writer thread, the only writer, so the key locks are never contended and
+     * the log is awaited once per batch. The writer holds the checkpoint read lock from the first
+     * write of a batch until the batch is settled.
+     */
+    private WriteRing.Handler ringHandler() {
+        return new WriteRing.Handler() {
+            private final List<PendingWrite> batch = new ArrayList<>();
+            private boolean locked;
+
+            @Override
+            public long apply(Mutation.Type type, String key, User user) {
+                if (!locked) {
+                    checkpointLock.readLock().lock();
+                    locked = true;
+                }
+                PendingWrite write = log(type, key, user, null);
+                if (write == null) {
+                    return NOT_LOGGED;
+                }
+                batch.add(write);
+                return write.lsn;
+            }
+
+            @Override
+            public void endOfBatch(long lastLsn) {
+                try {
+                    settle(batch);
+                } finally {
+                    batch.clear();
+                    if (locked) {
+                        checkpointLock.readLock().unlock();
+                        locked = false;
+                    }
+                }
+            }
+        };
+    }
+
+    private Object lockFor(long ssn, String key) {
+        return userList.lockFor(ssn, key);
+    }
+
+    private User current(long ssn, String key) {
+        return userList.get(ssn, key);
+    }
+
+    private void store(long ssn, String key, User user) {
+        userList.store(ssn, key, user);
+    }
+
+    /**
+     * Skips building the mutation when durability is disabled, keeping the SSN path allocation free.
+     */
+    private long append(Mutation.Type type, String key, User user) {
+        return mutationLog == MutationLog.NONE ? 0 : mutationLog.append(new Mutation(type, key, user));
+    }
+
+    /**
+     * Applies a recovered write, trusting its username over any claim left by a fuzzy snapshot.
+     */
+    private void restore(String key, User user) {
+        long ssn = SsnCodec.encode(key);
+        User previous = current(ssn, key);
+        store(ssn, key, user);
+        if (previous != null) {
+            usernames.release(key, previous);
+            dobs.remove(key, previous);
+        }
+        if (user != null) {
+            usernames.assign(key, user);
+            dobs.add(key, user);
+        }
+    }
+
+    private void apply(Mutation mutation) {
+        restore(mutation.getKey(), mutation.getUser());
+    }
+
+    /**
+     * A logged write of a key waiting to be durable, chained to the write of the key it was checked
+     * against while that one was pending too. A null user removes the key.
+     */
+    private static final class PendingWrite {
+
+        private enum State { PENDING, APPLIED, SUPERSEDED, ABANDONED }
+
+        /**
+         * Stands for a write applied at once because there is no log.
+         */
+        private static final PendingWrite APPLIED = new PendingWrite(null, null, 0, null);
+
+        private final String key;
+        private final User user;
+        private final long lsn;
+        private final PendingWrite before;
+        private State state = State.PENDING;
+
+        private PendingWrite(String key, User user, long lsn, PendingWrite before) {
+            this.key = key;
+            this.user = user;
+            this.lsn = lsn;
+            this.before = before;
+        }
     }
-}
\ No newline at end of file
+}
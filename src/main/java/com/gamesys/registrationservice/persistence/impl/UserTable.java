@@ -0,0 +1,118 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
+import com.gamesys.registrationservice.persistence.index.ConcurrentLongObjectMap;
+import com.gamesys.registrationservice.persistence.index.SsnCodec;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Users by key for the in memory repositories.
+ *
+ * Well formed SSN keys are packed into a long by {@link SsnCodec} and kept in a
+ * {@link ConcurrentLongObjectMap}, so lookups and inserts on that path allocate no key objects.
+ * Any other key is kept in a String keyed skip list, ordered so it can be paged by key.
+ *
+ * Reads never lock. Writers check and store a key while holding {@link #lockFor(long, String)},
+ * which lets the repository log and index the write atomically with it.
+ */
+class UserTable {
+
+    private static final int OTHER_LOCKS = 64;
+    private static final String PACKED_CURSOR = "P:";
+    private static final String OTHER_CURSOR = "S:";
+
+    private final ConcurrentLongObjectMap<User> packedUsers;
+    private final ConcurrentSkipListMap<String, User> otherUsers = new ConcurrentSkipListMap<>();
+    private final Object[] otherLocks = new Object[OTHER_LOCKS];
+
+    UserTable(int concurrency) {
+        packedUsers = new ConcurrentLongObjectMap<>(concurrency);
+        for (int i = 0; i < OTHER_LOCKS; i++) {
+            otherLocks[i] = new Object();
+        }
+    }
+
+    Object lockFor(long ssn, String key) {
+        return ssn == SsnCodec.INVALID ? otherLocks[key.hashCode() & (OTHER_LOCKS - 1)] : packedUsers.lockFor(ssn);
+    }
+
+    User get(long ssn, String key) {
+        return ssn == SsnCodec.INVALID ? otherUsers.get(key) : packedUsers.get(ssn);
+    }
+
+    /**
+     * Sets the user of a key, removing the key when user is null.
+     */
+    void store(long ssn, String key, User user) {
+        if (ssn == SsnCodec.INVALID) {
+            if (user == null) {
+                otherUsers.remove(key);
+            } else {
+                otherUsers.put(key, user);
+            }
+        } else if (user == null) {
+            packedUsers.remove(ssn);
+        } else {
+            packedUsers.put(ssn, user);
+        }
+    }
+
+    int size() {
+        return packedUsers.size() + otherUsers.size();
+    }
+
+    void forEach(Consumer<User> consumer) {
+        packedUsers.forEach((ssn, user) -> consumer.accept(user));
+        otherUsers.values().forEach(consumer);
+    }
+
+    Stream<Map.Entry<String, User>> entries() {
+        Stream<Map.Entry<String, User>> packed = StreamSupport.stream(packedUsers.<Map.Entry<String, User>>entries(
+                (ssn, user) -> new AbstractMap.SimpleImmutableEntry<>(SsnCodec.decode(ssn), user)).spliterator(), false);
+        return Stream.concat(packed, otherUsers.entrySet().stream());
+    }
+
+    /**
+     * Pages through the packed SSN map by table position ("P:position") and then through the
+     * other keys in key order ("S:last key"). Takes and returns the plain cursor state, null for
+     * the first page and on the last page.
+     */
+    Page<User> page(String state, int limit) {
+        List<User> users = new ArrayList<>(limit);
+        NavigableMap<String, User> others = otherUsers;
+        if (state == null) {
+            state = PACKED_CURSOR + 0;
+        }
+        if (state.equals(OTHER_CURSOR)) {
+            others = otherUsers;
+        } else if (state.startsWith(OTHER_CURSOR)) {
+            others = otherUsers.tailMap(state.substring(OTHER_CURSOR.length()), false);
+        } else {
+            long position = packedUsers.scan(PageCursor.position(state, state, PACKED_CURSOR), limit,
+                    (ssn, user) -> users.add(user));
+            if (position >= 0) {
+                return new Page<>(users, PACKED_CURSOR + position);
+            }
+        }
+        String last = "";
+        for (Map.Entry<String, User> entry : others.entrySet()) {
+            if (users.size() == limit) {
+                return new Page<>(users, OTHER_CURSOR + last);
+            }
+            users.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new Page<>(users, null);
+    }
+}
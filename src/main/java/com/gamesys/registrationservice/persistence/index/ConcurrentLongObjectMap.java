@@ -0,0 +1,341 @@
+package com.gamesys.registrationservice.persistence.index;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent open addressing map from primitive long keys to values, with no boxing.
+ *
+ * The map is split into segments. Writers lock their segment, readers never lock: a slot's key is
+ * written once (after its value) and never changes until the segment table is rebuilt, so a
+ * reader that finds the key also sees a value at least as new as the one published with it.
+ * Removing an entry clears the value and keeps the key, which reserves the slot for that key
+ * until the next rebuild.
+ *
+ * Callers that need to run extra work atomically with a write (logging, secondary indexes) can
+ * hold {@link #lockFor(long)} around it; the segment monitor is reentrant.
+ *
+ * {@link #scan(long, int, LongObjectConsumer)} walks the map a page at a time from a position the
+ * caller keeps between pages.
+ */
+public class ConcurrentLongObjectMap<V> {
+
+    public interface LongObjectConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    public interface LongObjectFunction<V, R> {
+        R apply(long key, V value);
+    }
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_SLOTS = 16;
+    private static final int MAX_SEGMENTS = 1 << 15;
+
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+
+    public ConcurrentLongObjectMap() {
+        this(64);
+    }
+
+    public ConcurrentLongObjectMap(int concurrency) {
+        int count = Integer.highestOneBit(Math.min(MAX_SEGMENTS, Math.max(2, concurrency)));
+        @SuppressWarnings("unchecked")
+        Segment<V>[] created = (Segment<V>[]) new Segment<?>[count];
+        segments = created;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>();
+        }
+        segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    public V get(long key) {
+        int hash = hash(key);
+        return segments[hash >>> segmentShift].get(key, hash);
+    }
+
+    /**
+     * @return the previous value, or null when the key was absent
+     */
+    public V put(long key, V value) {
+        checkKey(key);
+        int hash = hash(key);
+        return segments[hash >>> segmentShift].put(key, hash, value, false, false);
+    }
+
+    /**
+     * @return the current value, or null when the value was inserted
+     */
+    public V putIfAbsent(long key, V value) {
+        checkKey(key);
+        int hash = hash(key);
+        return segments[hash >>> segmentShift].put(key, hash, value, true, false);
+    }
+
+    /**
+     * @return the previous value, or null when the key was absent and nothing was replaced
+     */
+    public V replace(long key, V value) {
+        checkKey(key);
+        int hash = hash(key);
+        return segments[hash >>> segmentShift].put(key, hash, value, false, true);
+    }
+
+    /**
+     * @return the removed value, or null when the key was absent
+     */
+    public V remove(long key) {
+        int hash = hash(key);
+        return segments[hash >>> segmentShift].remove(key, hash);
+    }
+
+    public Object lockFor(long key) {
+        return segments[hash(key) >>> segmentShift];
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Weakly consistent traversal: entries changed during the traversal may or may not be seen.
+     */
+    public void forEach(LongObjectConsumer<? super V> consumer) {
+        for (Segment<V> segment : segments) {
+            Table<V> table = segment.table;
+            for (int slot = 0; slot < table.length; slot++) {
+                long key = table.keys.get(slot);
+                if (key != EMPTY) {
+                    V value = table.values.get(slot);
+                    if (value != null) {
+                        consumer.accept(key, value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Weakly consistent view of the entries, each converted by the given function.
+     */
+    public <R> Iterable<R> entries(LongObjectFunction<? super V, ? extends R> function) {
+        return () -> new Iterator<R>() {
+            private int segment;
+            private int slot;
+            private Table<V> table = segments[0].table;
+            private R next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public R next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                R current = next;
+                next = advance();
+                return current;
+            }
+
+            private R advance() {
+                while (true) {
+                    while (slot < table.length) {
+                        int current = slot++;
+                        long key = table.keys.get(current);
+                        V value = key == EMPTY ? null : table.values.get(current);
+                        if (value != null) {
+                            return function.apply(key, value);
+                        }
+                    }
+                    if (++segment == segments.length) {
+                        return null;
+                    }
+                    table = segments[segment].table;
+                    slot = 0;
+                }
+            }
+        };
+    }
+
+    /**
+     * Visits up to limit entries from the given position, 0 for the first page.
+     *
+     * Position : [16 bits segment][16 bits table generation][32 bits slot]
+     *
+     * A segment rebuilt since the position was issued is walked again from its first slot, so an
+     * entry present for the whole traversal is visited at least once and may be visited twice.
+     *
+     * @return the position of the next page, or -1 when the traversal is complete
+     */
+    public long scan(long position, int limit, LongObjectConsumer<? super V> consumer) {
+        int segment = (int) (position >>> 48);
+        int generation = (int) (position >>> 32) & 0xFFFF;
+        int slot = (int) position;
+        int visited = 0;
+        for (; segment < segments.length; segment++, slot = 0) {
+            Table<V> table = segments[segment].table;
+            if ((table.generation & 0xFFFF) != generation) {
+                slot = 0;
+            }
+            for (; slot < table.length; slot++) {
+                long key = table.keys.get(slot);
+                V value = key == EMPTY ? null : table.values.get(slot);
+                if (value != null) {
+                    if (visited == limit) {
+                        return (long) segment << 48 | (long) (table.generation & 0xFFFF) << 32 | slot;
+                    }
+                    consumer.accept(key, value);
+                    visited++;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Reserved key " + key);
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Table<V> {
+        final int length;
+        final int generation;
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<V> values;
+
+        Table(int length, int generation) {
+            this.length = length;
+            this.generation = generation;
+            this.keys = new AtomicLongArray(length);
+            this.values = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < length; i++) {
+                keys.lazySet(i, EMPTY);
+            }
+        }
+    }
+
+    private static final class Segment<V> {
+
+        volatile Table<V> table = new Table<>(MIN_SLOTS, 0);
+        volatile int size;
+        int usedSlots;
+
+        V get(long key, int hash) {
+            Table<V> current = table;
+            int mask = current.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long candidate = current.keys.get(slot);
+                if (candidate == key) {
+                    return current.values.get(slot);
+                }
+                if (candidate == EMPTY) {
+                    return null;
+                }
+            }
+        }
+
+        synchronized V put(long key, int hash, V value, boolean onlyIfAbsent, boolean onlyIfPresent) {
+            Table<V> current = table;
+            int mask = current.length - 1;
+            int slot = hash & mask;
+            while (true) {
+                long candidate = current.keys.get(slot);
+                if (candidate == key) {
+                    V previous = current.values.get(slot);
+                    if (previous == null ? onlyIfPresent : onlyIfAbsent) {
+                        return previous;
+                    }
+                    current.values.set(slot, value);
+                    if (previous == null) {
+                        size++;
+                    }
+                    return onlyIfAbsent ? null : previous;
+                }
+                if (candidate == EMPTY) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (onlyIfPresent) {
+                return null;
+            }
+            if ((usedSlots + 1) * 4 > current.length * 3) {
+                current = rebuild();
+                mask = current.length - 1;
+                slot = hash & mask;
+                while (current.keys.get(slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+            }
+            current.values.set(slot, value);
+            current.keys.set(slot, key);
+            usedSlots++;
+            size++;
+            return null;
+        }
+
+        synchronized V remove(long key, int hash) {
+            Table<V> current = table;
+            int mask = current.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long candidate = current.keys.get(slot);
+                if (candidate == key) {
+                    V previous = current.values.getAndSet(slot, null);
+                    if (previous != null) {
+                        size--;
+                    }
+                    return previous;
+                }
+                if (candidate == EMPTY) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Copies live entries to a table sized for twice the live count, dropping removed keys.
+         */
+        private Table<V> rebuild() {
+            Table<V> old = table;
+            int length = MIN_SLOTS;
+            while (length < (size + 1) * 2) {
+                length <<= 1;
+            }
+            Table<V> rebuilt = new Table<>(length, old.generation + 1);
+            int mask = length - 1;
+            int used = 0;
+            for (int i = 0; i < old.length; i++) {
+                long key = old.keys.get(i);
+                V value = key == EMPTY ? null : old.values.get(i);
+                if (value != null) {
+                    int slot = hash(key) & mask;
+                    while (rebuilt.keys.get(slot) != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    rebuilt.values.lazySet(slot, value);
+                    rebuilt.keys.lazySet(slot, key);
+                    used++;
+                }
+            }
+            usedSlots = used;
+            table = rebuilt;
+            return rebuilt;
+        }
+    }
+}
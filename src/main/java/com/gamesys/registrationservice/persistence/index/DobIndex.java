@@ -0,0 +1,93 @@
+package com.gamesys.registrationservice.persistence.index;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.PageCursor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+/**
+ * Secondary index on date of birth, a skip list of (epoch day, repository key) pairs so a range of
+ * birth dates is read in order and the cost of a query follows the number of users it returns.
+ *
+ * Repositories add the new pair after a write is applied and remove the old one afterwards, so a
+ * reader may meet a pair whose user has moved on; {@link #page} loads each user and skips those
+ * whose birth date is no longer in the range.
+ */
+public class DobIndex {
+
+    private static final String CURSOR = "D:";
+
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingLong(entry -> entry.day)
+            .thenComparing(entry -> entry.key);
+
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+
+    public void add(String key, User user) {
+        entries.add(new Entry(user.getDob().toEpochDay(), key));
+    }
+
+    public void remove(String key, User user) {
+        entries.remove(new Entry(user.getDob().toEpochDay(), key));
+    }
+
+    /**
+     * Removes the previous pair once a replace has been applied, unless the birth date did not change.
+     */
+    public void replaced(String key, User previous, User user) {
+        if (!previous.getDob().equals(user.getDob())) {
+            remove(key, previous);
+        }
+        add(key, user);
+    }
+
+    /**
+     * Returns up to limit users born between from and to, both inclusive, ordered by birth date.
+     * Cursor state "D:epoch day:key" of the last pair returned.
+     */
+    public Page<User> page(LocalDate from, LocalDate to, String cursor, int limit, Function<String, Optional<User>> loader) {
+        Entry start = new Entry(from.toEpochDay(), "");
+        boolean inclusive = true;
+        if (cursor != null) {
+            String state = PageCursor.decode(cursor);
+            int separator = state.indexOf(':', CURSOR.length());
+            if (separator < 0) {
+                throw PageCursor.invalid(cursor);
+            }
+            start = new Entry(PageCursor.position(cursor, state.substring(0, separator), CURSOR), state.substring(separator + 1));
+            inclusive = false;
+        }
+        NavigableSet<Entry> range = entries.subSet(start, inclusive, new Entry(to.toEpochDay() + 1, ""), false);
+
+        List<User> users = new ArrayList<>(Math.min(limit, 1024));
+        Entry last = null;
+        for (Entry entry : range) {
+            if (users.size() == limit) {
+                return new Page<>(users, PageCursor.encode(CURSOR + last.day + ":" + last.key));
+            }
+            long day = entry.day;
+            loader.apply(entry.key)
+                    .filter(user -> user.getDob().toEpochDay() == day)
+                    .ifPresent(users::add);
+            last = entry;
+        }
+        return new Page<>(users, null);
+    }
+
+    private static final class Entry {
+        final long day;
+        final String key;
+
+        Entry(long day, String key) {
+            this.day = day;
+            this.key = key;
+        }
+    }
+}
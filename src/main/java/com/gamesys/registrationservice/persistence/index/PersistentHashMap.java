@@ -0,0 +1,377 @@
+package com.gamesys.registrationservice.persistence.index;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Immutable hash array mapped trie from String keys to non null values.
+ *
+ * {@link #put(String, Object)} and {@link #remove(String)} return a new map that shares every node
+ * off the changed path with this one, copying at most one small node per level. A map is never
+ * modified once built, so holding a reference to it is a point in time snapshot that can be read
+ * and iterated while newer versions are made.
+ *
+ * Each level consumes 5 bits of the spread key hash from the most significant end, so entries are
+ * visited in order of unsigned hash then key. That order does not depend on the version, which lets
+ * {@link #scan(String, Predicate)} resume a traversal after a key in any later version. Keys with the
+ * same hash share a collision node at the bottom of the trie.
+ */
+public final class PersistentHashMap<V> implements Iterable<Map.Entry<String, V>> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int TOP_SHIFT = Integer.SIZE - BITS;
+    private static final int BOTTOM_SHIFT = TOP_SHIFT % BITS - BITS;
+    private static final int MAX_DEPTH = (Integer.SIZE + BITS - 1) / BITS + 1;
+
+    private static final PersistentHashMap<?> EMPTY = new PersistentHashMap<>(new BitmapNode(0, new Object[0]), 0);
+
+    private final BitmapNode root;
+    private final int size;
+
+    private PersistentHashMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentHashMap<V> empty() {
+        return (PersistentHashMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        int hash = hash(key);
+        Object node = root;
+        for (int shift = TOP_SHIFT; ; shift -= BITS) {
+            if (node instanceof BitmapNode) {
+                BitmapNode bitmapNode = (BitmapNode) node;
+                int bit = 1 << index(hash, shift);
+                if ((bitmapNode.bitmap & bit) == 0) {
+                    return null;
+                }
+                node = bitmapNode.array[bitmapNode.position(bit)];
+            } else if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                return leaf.hash == hash && leaf.getKey().equals(key) ? (V) leaf.getValue() : null;
+            } else {
+                for (Object leaf : ((CollisionNode) node).leaves) {
+                    if (((Leaf) leaf).getKey().equals(key)) {
+                        return (V) ((Leaf) leaf).getValue();
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return a map where key holds value, this map when key already holds that value
+     */
+    public PersistentHashMap<V> put(String key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        Leaf leaf = new Leaf(hash(key), key, value);
+        Object updated = put(root, TOP_SHIFT, leaf);
+        if (updated == root) {
+            return this;
+        }
+        return new PersistentHashMap<>((BitmapNode) updated, get(key) == null ? size + 1 : size);
+    }
+
+    /**
+     * @return a map without key, this map when key is absent
+     */
+    public PersistentHashMap<V> remove(String key) {
+        int hash = hash(key);
+        Object updated = remove(root, TOP_SHIFT, hash, key);
+        if (updated == root) {
+            return this;
+        }
+        if (updated == null) {
+            return empty();
+        }
+        if (updated instanceof Leaf) {
+            updated = new BitmapNode(1 << index(hash, TOP_SHIFT), new Object[]{updated});
+        }
+        return new PersistentHashMap<>((BitmapNode) updated, size - 1);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+
+    /**
+     * Visits the entries following the given key in traversal order, every entry when after is
+     * null, until the consumer returns false. The key itself need not be present.
+     *
+     * @return false when the consumer stopped the traversal
+     */
+    @SuppressWarnings("unchecked")
+    public boolean scan(String after, Predicate<? super Map.Entry<String, V>> consumer) {
+        Predicate<Object> visitor = leaf -> consumer.test((Map.Entry<String, V>) leaf);
+        return after == null ? scan(root, TOP_SHIFT, false, 0, null, visitor)
+                : scan(root, TOP_SHIFT, true, hash(after), after, visitor);
+    }
+
+    private static boolean scan(Object node, int shift, boolean bounded, int hash, String after,
+                                Predicate<Object> consumer) {
+        if (node instanceof BitmapNode) {
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int start = bounded ? index(hash, shift) : 0;
+            for (int bits = bitmapNode.bitmap >>> start << start; bits != 0; bits &= bits - 1) {
+                int bit = Integer.lowestOneBit(bits);
+                boolean boundedChild = bounded && bit == 1 << start;
+                if (!scan(bitmapNode.array[bitmapNode.position(bit)], shift - BITS, boundedChild, hash, after, consumer)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        Object[] leaves = node instanceof Leaf ? new Object[]{node} : ((CollisionNode) node).leaves;
+        for (Object leaf : leaves) {
+            if ((!bounded || follows((Leaf) leaf, hash, after)) && !consumer.test(leaf)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object put(Object node, int shift, Leaf leaf) {
+        if (node instanceof BitmapNode) {
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int bit = 1 << index(leaf.hash, shift);
+            int position = bitmapNode.position(bit);
+            if ((bitmapNode.bitmap & bit) == 0) {
+                Object[] array = new Object[bitmapNode.array.length + 1];
+                System.arraycopy(bitmapNode.array, 0, array, 0, position);
+                array[position] = leaf;
+                System.arraycopy(bitmapNode.array, position, array, position + 1, bitmapNode.array.length - position);
+                return new BitmapNode(bitmapNode.bitmap | bit, array);
+            }
+            Object child = bitmapNode.array[position];
+            Object updated = put(child, shift - BITS, leaf);
+            return updated == child ? node : bitmapNode.with(position, updated);
+        }
+        if (node instanceof Leaf) {
+            Leaf existing = (Leaf) node;
+            if (existing.getKey().equals(leaf.getKey())) {
+                return existing.getValue() == leaf.getValue() ? existing : leaf;
+            }
+            return merge(existing, leaf, shift);
+        }
+        CollisionNode collision = (CollisionNode) node;
+        Object[] leaves = collision.leaves;
+        int position = find(leaves, leaf.getKey());
+        if (position >= 0) {
+            if (((Leaf) leaves[position]).getValue() == leaf.getValue()) {
+                return node;
+            }
+            leaves = leaves.clone();
+            leaves[position] = leaf;
+            return new CollisionNode(leaves);
+        }
+        position = -position - 1;
+        Object[] inserted = new Object[leaves.length + 1];
+        System.arraycopy(leaves, 0, inserted, 0, position);
+        inserted[position] = leaf;
+        System.arraycopy(leaves, position, inserted, position + 1, leaves.length - position);
+        return new CollisionNode(inserted);
+    }
+
+    /**
+     * Builds the subtree holding two leaves that meet at the given level.
+     */
+    private static Object merge(Leaf first, Leaf second, int shift) {
+        if (shift < BOTTOM_SHIFT) {
+            return first.getKey().compareTo(second.getKey()) < 0
+                    ? new CollisionNode(new Object[]{first, second}) : new CollisionNode(new Object[]{second, first});
+        }
+        int firstIndex = index(first.hash, shift);
+        int secondIndex = index(second.hash, shift);
+        if (firstIndex == secondIndex) {
+            return new BitmapNode(1 << firstIndex, new Object[]{merge(first, second, shift - BITS)});
+        }
+        return firstIndex < secondIndex
+                ? new BitmapNode(1 << firstIndex | 1 << secondIndex, new Object[]{first, second})
+                : new BitmapNode(1 << firstIndex | 1 << secondIndex, new Object[]{second, first});
+    }
+
+    /**
+     * @return the node without key, the same node when key is absent, null when nothing is left or
+     * the single remaining leaf, which can move up to any level on its hash path
+     */
+    private static Object remove(Object node, int shift, int hash, String key) {
+        if (node instanceof BitmapNode) {
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int bit = 1 << index(hash, shift);
+            if ((bitmapNode.bitmap & bit) == 0) {
+                return node;
+            }
+            int position = bitmapNode.position(bit);
+            Object child = bitmapNode.array[position];
+            Object updated = remove(child, shift - BITS, hash, key);
+            if (updated == child) {
+                return node;
+            }
+            if (updated == null) {
+                if (bitmapNode.array.length == 1) {
+                    return null;
+                }
+                Object[] array = new Object[bitmapNode.array.length - 1];
+                System.arraycopy(bitmapNode.array, 0, array, 0, position);
+                System.arraycopy(bitmapNode.array, position + 1, array, position, array.length - position);
+                return array.length == 1 && array[0] instanceof Leaf ? array[0] : new BitmapNode(bitmapNode.bitmap ^ bit, array);
+            }
+            if (bitmapNode.array.length == 1 && updated instanceof Leaf) {
+                return updated;
+            }
+            return bitmapNode.with(position, updated);
+        }
+        if (node instanceof Leaf) {
+            return ((Leaf) node).getKey().equals(key) ? null : node;
+        }
+        Object[] leaves = ((CollisionNode) node).leaves;
+        int position = find(leaves, key);
+        if (position < 0) {
+            return node;
+        }
+        if (leaves.length == 2) {
+            return leaves[1 - position];
+        }
+        Object[] array = new Object[leaves.length - 1];
+        System.arraycopy(leaves, 0, array, 0, position);
+        System.arraycopy(leaves, position + 1, array, position, array.length - position);
+        return new CollisionNode(array);
+    }
+
+    private static int find(Object[] leaves, String key) {
+        int low = 0;
+        int high = leaves.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = ((Leaf) leaves[middle]).getKey().compareTo(key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private static boolean follows(Leaf leaf, int hash, String key) {
+        int comparison = Integer.compareUnsigned(leaf.hash, hash);
+        return comparison > 0 || comparison == 0 && leaf.getKey().compareTo(key) > 0;
+    }
+
+    /**
+     * Bits of the hash selecting the child at the level of the given shift. The last level holds the
+     * lowest bits left aligned, so children stay in unsigned hash order.
+     */
+    private static int index(int hash, int shift) {
+        return (shift >= 0 ? hash >>> shift : hash << -shift) & MASK;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Leaf extends AbstractMap.SimpleImmutableEntry<String, Object> {
+
+        private final int hash;
+
+        private Leaf(int hash, String key, Object value) {
+            super(key, value);
+            this.hash = hash;
+        }
+    }
+
+    private static final class BitmapNode {
+
+        private final int bitmap;
+        private final Object[] array;
+
+        private BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int position(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private BitmapNode with(int position, Object child) {
+            Object[] copy = array.clone();
+            copy[position] = child;
+            return new BitmapNode(bitmap, copy);
+        }
+    }
+
+    private static final class CollisionNode {
+
+        private final Object[] leaves;
+
+        private CollisionNode(Object[] leaves) {
+            this.leaves = leaves;
+        }
+    }
+
+    private static final class EntryIterator<V> implements Iterator<Map.Entry<String, V>> {
+
+        private final Object[][] arrays = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth;
+        private Leaf next;
+
+        private EntryIterator(BitmapNode root) {
+            arrays[0] = root.array;
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<String, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf leaf = next;
+            next = advance();
+            return (Map.Entry<String, V>) (Map.Entry<String, ?>) leaf;
+        }
+
+        private Leaf advance() {
+            while (depth >= 0) {
+                if (positions[depth] == arrays[depth].length) {
+                    depth--;
+                    continue;
+                }
+                Object node = arrays[depth][positions[depth]++];
+                if (node instanceof Leaf) {
+                    return (Leaf) node;
+                }
+                depth++;
+                arrays[depth] = node instanceof BitmapNode ? ((BitmapNode) node).array : ((CollisionNode) node).leaves;
+                positions[depth] = 0;
+            }
+            return null;
+        }
+    }
+}
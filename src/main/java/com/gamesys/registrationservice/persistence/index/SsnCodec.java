@@ -0,0 +1,63 @@
+package com.gamesys.registrationservice.persistence.index;
+
+/**
+ * Packs a US social security number into a long so it can key a primitive map.
+ *
+ * "123456789"   is packed as 123456789
+ * "123-45-6789" is packed as 123456789 with the DASHED bit set, so both spellings stay distinct keys
+ *               and decode back to the exact string that was stored
+ *
+ * Anything else is not a well formed SSN and encodes to {@link #INVALID}; callers keep those keys
+ * on a String keyed path.
+ */
+public final class SsnCodec {
+
+    public static final long INVALID = -1;
+
+    private static final long DASHED = 1L << 32;
+
+    private SsnCodec() {
+    }
+
+    public static long encode(String ssn) {
+        int length = ssn.length();
+        if (length == 9) {
+            return digits(ssn, 0, 9, 0);
+        }
+        if (length == 11 && ssn.charAt(3) == '-' && ssn.charAt(6) == '-') {
+            long value = digits(ssn, 0, 3, 0);
+            value = digits(ssn, 4, 6, value);
+            value = digits(ssn, 7, 11, value);
+            return value < 0 ? INVALID : value | DASHED;
+        }
+        return INVALID;
+    }
+
+    public static String decode(long packed) {
+        int value = (int) (packed & 0xFFFFFFFFL);
+        StringBuilder ssn = new StringBuilder(11);
+        String digits = Integer.toString(value);
+        for (int i = digits.length(); i < 9; i++) {
+            ssn.append('0');
+        }
+        ssn.append(digits);
+        if ((packed & DASHED) != 0) {
+            ssn.insert(5, '-').insert(3, '-');
+        }
+        return ssn.toString();
+    }
+
+    private static long digits(String ssn, int from, int to, long value) {
+        if (value < 0) {
+            return INVALID;
+        }
+        for (int i = from; i < to; i++) {
+            char c = ssn.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
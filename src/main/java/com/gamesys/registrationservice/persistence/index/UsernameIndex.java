@@ -0,0 +1,73 @@
+package com.gamesys.registrationservice.persistence.index;
+
+import com.gamesys.registrationservice.domain.User;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary index from normalized username to the repository key of the user holding it.
+ *
+ * A username is claimed with a single putIfAbsent, so two concurrent writers can never both hold
+ * the same name and no lock wider than the map bin is taken. Repositories claim the new name while
+ * holding the key's own lock, before the write is logged or applied, and release the old name
+ * after the write is applied. A reader can therefore find a name whose write is not visible yet,
+ * which {@link #find(String)} callers resolve by loading the user and checking the name.
+ *
+ * Usernames are compared case insensitively.
+ */
+public class UsernameIndex {
+
+    private final ConcurrentHashMap<String, String> keys = new ConcurrentHashMap<>();
+
+    /**
+     * @return true when the user's name is now held by key, false when another key holds it
+     */
+    public boolean claim(String key, User user) {
+        String holder = keys.putIfAbsent(normalize(user.getUsername()), key);
+        return holder == null || holder.equals(key);
+    }
+
+    /**
+     * Releases the user's name if key holds it.
+     */
+    public void release(String key, User user) {
+        keys.remove(normalize(user.getUsername()), key);
+    }
+
+    /**
+     * Releases the previous name once a replace has been applied, unless the name did not change.
+     */
+    public void replaced(String key, User previous, User user) {
+        if (!sameName(previous, user)) {
+            release(key, previous);
+        }
+    }
+
+    /**
+     * Gives the name to key whoever holds it. Used while recovering, when a fuzzy snapshot may
+     * briefly hold two users with the same name until the log replay settles it.
+     */
+    public void assign(String key, User user) {
+        keys.put(normalize(user.getUsername()), key);
+    }
+
+    /**
+     * @return the key holding the username, or null
+     */
+    public String find(String username) {
+        return keys.get(normalize(username));
+    }
+
+    public static boolean sameName(User user, User other) {
+        return matches(user.getUsername(), other);
+    }
+
+    public static boolean matches(String username, User user) {
+        return normalize(username).equals(normalize(user.getUsername()));
+    }
+
+    public static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,158 @@
+package com.gamesys.registrationservice.persistence.jdbc;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Collects writes submitted by concurrent callers and hands them to a batch function on a single
+ * writer thread, so many callers share one statement round trip and one commit.
+ *
+ * The writer takes the first pending write, then keeps collecting for at most the window or until
+ * the batch is full. Writes arriving while a batch executes are picked up by the next one, so under
+ * load batches grow by themselves even with a zero window. The batch function returns one result
+ * per write, in order, and each caller's future completes with its own result.
+ */
+
+@Slf4j
+public class WriteCoalescer<W, R> implements AutoCloseable {
+
+    private final BlockingQueue<Pending<W, R>> queue = new LinkedBlockingQueue<>();
+    private final long windowNanos;
+    private final int maxBatch;
+    private final Function<List<W>, List<R>> batch;
+    private final Thread writer;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private volatile boolean closed;
+
+    public WriteCoalescer(String name, long windowMicros, int maxBatch, Function<List<W>, List<R>> batch) {
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatch = maxBatch;
+        this.batch = batch;
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public CompletableFuture<R> submit(W write) {
+        if (closed) {
+            throw new ServerException("Write batcher closed", ErrorEnum.STORAGE_EXCEPTION);
+        }
+        Pending<W, R> pending = new Pending<>(write);
+        queue.add(pending);
+        return pending.result;
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * Executes the writes already submitted and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.add(new Pending<>(null));
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending<W, R> late;
+        while ((late = queue.poll()) != null) {
+            late.result.completeExceptionally(new ServerException("Write batcher closed", ErrorEnum.STORAGE_EXCEPTION));
+        }
+    }
+
+    private void run() {
+        List<Pending<W, R>> pending = new ArrayList<>(maxBatch);
+        boolean stopping = false;
+        while (!stopping) {
+            stopping = collect(pending);
+            execute(pending);
+        }
+    }
+
+    /**
+     * @return true once the close marker was taken
+     */
+    private boolean collect(List<Pending<W, R>> pending) {
+        long deadline = 0;
+        try {
+            while (pending.size() < maxBatch) {
+                Pending<W, R> next;
+                if (pending.isEmpty()) {
+                    next = queue.take();
+                    deadline = System.nanoTime() + windowNanos;
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        return false;
+                    }
+                }
+                if (next.write == null) {
+                    return true;
+                }
+                pending.add(next);
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    private void execute(List<Pending<W, R>> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<W> batchWrites = new ArrayList<>(pending.size());
+        for (Pending<W, R> write : pending) {
+            batchWrites.add(write.write);
+        }
+        List<R> results = null;
+        RuntimeException failure = null;
+        try {
+            results = batch.apply(batchWrites);
+        } catch (RuntimeException e) {
+            log.error("Write batch of {} failed", pending.size(), e);
+            failure = e;
+        }
+        batches.increment();
+        writes.add(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            if (failure == null) {
+                pending.get(i).result.complete(results.get(i));
+            } else {
+                pending.get(i).result.completeExceptionally(failure);
+            }
+        }
+        pending.clear();
+    }
+
+    private static final class Pending<W, R> {
+
+        private final W write;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private Pending(W write) {
+            this.write = write;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.gamesys.registrationservice.persistence.log;
+
+/**
+ * Controls when the write ahead log forces appended records to the storage device.
+ *
+ * PER_WRITE : every mutation waits for an fsync, concurrent writers share one force (group commit)
+ * INTERVAL  : records are written by the background flusher and forced every interval, a crash can lose
+ *             at most one interval of mutations
+ * NONE      : records are written by the background flusher and never forced, the OS decides
+ */
+public enum FsyncPolicy {
+    PER_WRITE,
+    INTERVAL,
+    NONE
+}
@@ -0,0 +1,40 @@
+package com.gamesys.registrationservice.persistence.log;
+
+import com.gamesys.registrationservice.domain.User;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A single change applied to the user repository. The user is null for a REMOVE.
+ */
+
+@AllArgsConstructor
+@Getter
+public class Mutation {
+
+    public enum Type { ADD, REPLACE, REMOVE }
+
+    private final Type type;
+    private final String key;
+    private final User user;
+
+    public static Mutation add(String key, User user) {
+        return new Mutation(Type.ADD, key, user);
+    }
+
+    public static Mutation replace(String key, User user) {
+        return new Mutation(Type.REPLACE, key, user);
+    }
+
+    public static Mutation remove(String key) {
+        return new Mutation(Type.REMOVE, key, null);
+    }
+
+    @Override
+    public String toString() {
+        return "Mutation{" +
+                "type=" + type +
+                ", key='" + key + '\'' +
+                '}';
+    }
+}
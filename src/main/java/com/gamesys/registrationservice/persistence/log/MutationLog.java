@@ -0,0 +1,71 @@
+package com.gamesys.registrationservice.persistence.log;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Ordered log of repository mutations.
+ *
+ * append is called while the repository holds the per key lock so the log order matches the
+ * order in which mutations are applied. awaitDurable is called after the lock is released and
+ * blocks as long as the configured {@link FsyncPolicy} requires.
+ */
+public interface MutationLog extends Closeable {
+
+    /**
+     * Log used when durability is disabled, nothing is written and nothing is replayed.
+     */
+    MutationLog NONE = new MutationLog() {
+        @Override
+        public long append(Mutation mutation) {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long lsn) {
+        }
+
+        @Override
+        public void replay(long afterLsn, Consumer<Mutation> consumer) {
+        }
+
+        @Override
+        public long lastLsn() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * @return the log sequence number assigned to the mutation
+     */
+    long append(Mutation mutation);
+
+    void awaitDurable(long lsn);
+
+    /**
+     * Feeds every intact mutation with an lsn above afterLsn to the consumer, oldest first.
+     */
+    void replay(long afterLsn, Consumer<Mutation> consumer);
+
+    default void replay(Consumer<Mutation> consumer) {
+        replay(0, consumer);
+    }
+
+    /**
+     * @return the lsn of the last appended mutation
+     */
+    long lastLsn();
+
+    /**
+     * Releases the part of the log that is covered by a snapshot taken at the given lsn.
+     */
+    default void truncate(long lsn) {
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,490 @@
+package com.gamesys.registrationservice.persistence.log;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.persistence.codec.UserCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * File based {@link MutationLog} with group commit.
+ *
+ * Writers encode their record into a shared pending buffer under a short lock. A single flusher
+ * thread swaps the pending buffer with an empty one, writes the whole batch with one
+ * FileChannel.write and, depending on the {@link FsyncPolicy}, one FileChannel.force. Every writer
+ * whose record was part of the batch is released by the same force, so the number of fsync calls
+ * follows the flusher cycle and not the request rate.
+ *
+ * The log is split into segments named after the first lsn they hold. The flusher rolls to a new
+ * segment once the active one grows past the segment size, and {@link #truncate(long)} deletes
+ * segments fully covered by a snapshot.
+ *
+ * Record layout : [int body length][int crc32 of body][long lsn][byte type][key][byte has user][user]
+ */
+@Slf4j
+public class WriteAheadLog implements MutationLog {
+
+    static final String LEGACY_FILE_NAME = "users.wal";
+    static final String SEGMENT_PREFIX = "users-";
+    static final String SEGMENT_SUFFIX = ".wal";
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int INITIAL_BUFFER_BYTES = 1 << 20;
+    private static final int MAX_PENDING_BYTES = 16 << 20;
+
+    /**
+     * Record code of each mutation type, by ordinal.
+     */
+    private static final byte[] TYPE_CODES = {0, 1, 2};
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long segmentBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    private ByteBuffer pending = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+    private ByteBuffer writing = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    private volatile Path segment;
+    private FileChannel channel;
+
+    private long lastLsn;
+    private long writtenLsn;
+    private long durableLsn;
+    private long lastForceNanos = System.nanoTime();
+    private IOException failure;
+    private volatile boolean closed;
+
+    private final Thread flusher;
+
+    public WriteAheadLog(Path directory, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) throws IOException {
+        this(directory, fsyncPolicy, fsyncIntervalMillis, 64L << 20);
+    }
+
+    public WriteAheadLog(Path directory, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, long segmentBytes) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.segmentBytes = segmentBytes;
+        this.lastLsn = recover();
+        this.writtenLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        log.info("WAL opened {} policy={} lastLsn={}", segment, fsyncPolicy, lastLsn);
+    }
+
+    @Override
+    public long append(Mutation mutation) {
+        lock.lock();
+        try {
+            checkUsable();
+            while (pending.position() > MAX_PENDING_BYTES) {
+                flushNeeded.signal();
+                flushed.awaitUninterruptibly();
+                checkUsable();
+            }
+            long lsn = lastLsn + 1;
+            int maxBody = Long.BYTES + 2 + Short.BYTES + UserCodec.utf8Length(mutation.getKey())
+                    + (mutation.getUser() == null ? 0 : UserCodec.encodedSize(mutation.getUser()));
+            ensureCapacity(HEADER_BYTES + maxBody);
+
+            int start = pending.position();
+            pending.position(start + HEADER_BYTES);
+            pending.putLong(lsn);
+            pending.put(TYPE_CODES[mutation.getType().ordinal()]);
+            UserCodec.writeString(mutation.getKey(), pending);
+            if (mutation.getUser() == null) {
+                pending.put((byte) 0);
+            } else {
+                pending.put((byte) 1);
+                UserCodec.encode(mutation.getUser(), pending);
+            }
+            int end = pending.position();
+            int bodyLength = end - start - HEADER_BYTES;
+            pending.putInt(start, bodyLength);
+            pending.putInt(start + Integer.BYTES, checksum(pending, start + HEADER_BYTES, bodyLength));
+
+            lastLsn = lsn;
+            flushNeeded.signal();
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitDurable(long lsn) {
+        if (fsyncPolicy != FsyncPolicy.PER_WRITE) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableLsn < lsn) {
+                checkUsable();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws ServerException when a segment other than the newest is corrupted, as the records
+     * after the damage can't be read and replaying around them would lose writes silently; only
+     * the newest segment may end in a torn record, which recovery truncated
+     */
+    @Override
+    public void replay(long afterLsn, Consumer<Mutation> consumer) {
+        try {
+            List<Path> segments = segments();
+            for (int i = 0; i < segments.size(); i++) {
+                boolean covered = i + 1 < segments.size() && firstLsn(segments.get(i + 1)) <= afterLsn + 1;
+                if (covered) {
+                    continue;
+                }
+                long scanned = scan(segments.get(i), afterLsn, consumer);
+                if (scanned < Files.size(segments.get(i)) && i + 1 < segments.size()) {
+                    throw new ServerException("WAL segment " + segments.get(i) + " is corrupted at byte " + scanned,
+                            ErrorEnum.STORAGE_EXCEPTION);
+                }
+            }
+        } catch (IOException e) {
+            throw new ServerException("WAL replay failed : " + e.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    @Override
+    public long lastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurableLsn() {
+        lock.lock();
+        try {
+            return durableLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes every segment whose records all have an lsn lower than or equal to the given one.
+     * The active segment is never deleted.
+     */
+    @Override
+    public void truncate(long lsn) {
+        try {
+            List<Path> segments = segments();
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                Path candidate = segments.get(i);
+                if (firstLsn(segments.get(i + 1)) <= lsn + 1 && !candidate.equals(segment)) {
+                    Files.deleteIfExists(candidate);
+                    log.info("WAL segment {} compacted", candidate.getFileName());
+                }
+            }
+        } catch (IOException e) {
+            log.error("WAL truncation failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("WAL close failed", e);
+        }
+        log.info("WAL closed {} lastLsn={}", segment, lastLsn);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long batchLsn;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    awaitFlushSignal();
+                }
+                if (pending.position() == 0 && closed) {
+                    forceQuietly(writtenLsn);
+                    flushed.signalAll();
+                    return;
+                }
+                ByteBuffer batch = pending;
+                pending = writing;
+                writing = batch;
+                batchLsn = lastLsn;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                writing.clear();
+                boolean roll = channel.size() >= segmentBytes;
+                boolean force = fsyncPolicy == FsyncPolicy.PER_WRITE
+                        || (fsyncPolicy == FsyncPolicy.INTERVAL && (roll || forceDue()));
+                if (force) {
+                    channel.force(false);
+                    lastForceNanos = System.nanoTime();
+                }
+                if (roll) {
+                    channel.close();
+                    openSegment(batchLsn + 1);
+                }
+                lock.lock();
+                try {
+                    writtenLsn = batchLsn;
+                    if (force) {
+                        durableLsn = batchLsn;
+                    }
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (IOException e) {
+                log.error("WAL write failed, log is no longer usable", e);
+                lock.lock();
+                try {
+                    failure = e;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    private void awaitFlushSignal() {
+        try {
+            if (fsyncPolicy == FsyncPolicy.INTERVAL && durableLsn < writtenLsn) {
+                flushNeeded.awaitNanos(fsyncIntervalNanos);
+                if (forceDue()) {
+                    forceQuietly(writtenLsn);
+                }
+            } else {
+                flushNeeded.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    private boolean forceDue() {
+        return System.nanoTime() - lastForceNanos >= fsyncIntervalNanos;
+    }
+
+    private void forceQuietly(long lsn) {
+        if (fsyncPolicy == FsyncPolicy.NONE || durableLsn >= lsn) {
+            return;
+        }
+        try {
+            channel.force(false);
+            lastForceNanos = System.nanoTime();
+            durableLsn = lsn;
+        } catch (IOException e) {
+            log.error("WAL force failed", e);
+            failure = e;
+        }
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw new ServerException("WAL failure : " + failure.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+        if (closed) {
+            throw new ServerException("WAL closed", ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (pending.remaining() >= bytes) {
+            return;
+        }
+        ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(pending.capacity() * 2, pending.position() + bytes));
+        pending.flip();
+        bigger.put(pending);
+        pending = bigger;
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(offset + length).position(offset);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Opens the newest segment for appending, truncating a torn tail left by a crash.
+     */
+    private long recover() throws IOException {
+        Path legacy = directory.resolve(LEGACY_FILE_NAME);
+        if (Files.exists(legacy)) {
+            Files.move(legacy, segmentPath(1));
+        }
+        List<Path> segments = segments();
+        if (segments.isEmpty()) {
+            openSegment(1);
+            return 0;
+        }
+        Path newest = segments.get(segments.size() - 1);
+        final long[] last = {firstLsn(newest) - 1};
+        long validBytes;
+        try (FileChannel scanChannel = FileChannel.open(newest, StandardOpenOption.READ)) {
+            validBytes = scanRecords(scanChannel, (lsn, body) -> last[0] = lsn);
+        }
+        segment = newest;
+        channel = FileChannel.open(newest, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (validBytes < channel.size()) {
+            log.warn("WAL {} has a torn tail, truncating {} bytes", newest, channel.size() - validBytes);
+            channel.truncate(validBytes);
+        }
+        channel.position(validBytes);
+        return last[0];
+    }
+
+    private void openSegment(long firstLsn) throws IOException {
+        Path path = segmentPath(firstLsn);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        segment = path;
+    }
+
+    private Path segmentPath(long firstLsn) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return the segment files of the log, oldest first
+     */
+    public List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long firstLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Feeds the intact records of a segment with an lsn above afterLsn to the consumer.
+     *
+     * @return the number of intact bytes at the head of the segment
+     */
+    private long scan(Path path, long afterLsn, Consumer<Mutation> consumer) throws IOException {
+        try (FileChannel scanChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return scanRecords(scanChannel, (lsn, body) -> {
+                if (lsn > afterLsn) {
+                    consumer.accept(decode(body));
+                }
+            });
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(long lsn, ByteBuffer body);
+    }
+
+    private long scanRecords(FileChannel scanChannel, RecordVisitor visitor) throws IOException {
+        long size = scanChannel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        ByteBuffer body = ByteBuffer.allocate(4096);
+        CRC32 readCrc = new CRC32();
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(scanChannel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int expectedCrc = header.getInt();
+            if (length <= 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            if (body.capacity() < length) {
+                body = ByteBuffer.allocate(length);
+            }
+            body.clear().limit(length);
+            readFully(scanChannel, body, position + HEADER_BYTES);
+            body.flip();
+            readCrc.reset();
+            readCrc.update(body.array(), 0, length);
+            if ((int) readCrc.getValue() != expectedCrc) {
+                break;
+            }
+            visitor.visit(body.getLong(), body);
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel scanChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = scanChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of WAL segment");
+            }
+            position += read;
+        }
+    }
+
+    static Mutation decode(ByteBuffer body) {
+        Mutation.Type type = Mutation.Type.values()[body.get()];
+        String key = UserCodec.readString(body);
+        boolean hasUser = body.get() == 1;
+        return new Mutation(type, key, hasUser ? UserCodec.decode(body) : null);
+    }
+}
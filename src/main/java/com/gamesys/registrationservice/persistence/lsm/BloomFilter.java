@@ -0,0 +1,90 @@
+package com.gamesys.registrationservice.persistence.lsm;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over the keys of one {@link SSTable}, so a lookup of an absent key usually skips the
+ * table without reading it. With 10 bits per key about 1% of absent keys still read a block.
+ *
+ * Layout : [int hash count][int word count][long words...]
+ */
+final class BloomFilter {
+
+    private final long[] words;
+    private final int hashes;
+
+    private BloomFilter(long[] words, int hashes) {
+        this.words = words;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Builds a filter from the {@link #hash(String)} of every key of a table.
+     */
+    static BloomFilter of(long[] keyHashes, int count, int bitsPerKey) {
+        long bits = Math.max(Long.SIZE, (long) count * bitsPerKey);
+        BloomFilter filter = new BloomFilter(new long[(int) ((bits + Long.SIZE - 1) / Long.SIZE)],
+                Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * Math.log(2)))));
+        for (int i = 0; i < count; i++) {
+            filter.add(keyHashes[i]);
+        }
+        return filter;
+    }
+
+    static BloomFilter read(ByteBuffer buffer) {
+        int hashes = buffer.getInt();
+        long[] words = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(words);
+        return new BloomFilter(words, hashes);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(hashes);
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    int bytes() {
+        return 2 * Integer.BYTES + words.length * Long.BYTES;
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        long bits = (long) words.length * Long.SIZE;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            if ((words[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(long hash) {
+        long bits = (long) words.length * Long.SIZE;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
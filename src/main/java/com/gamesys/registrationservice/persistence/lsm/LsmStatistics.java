@@ -0,0 +1,34 @@
+package com.gamesys.registrationservice.persistence.lsm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Counters of an {@link LsmTree} since it was opened.
+ *
+ * Read amplification is the number of table blocks read per lookup, write amplification the bytes
+ * written to tables by flushes and compactions per byte of key and value written by the caller.
+ */
+
+@AllArgsConstructor
+@Getter
+public class LsmStatistics {
+    private long gets;
+    private long blockReads;
+    private long bloomSkips;
+    private long userBytes;
+    private long flushedBytes;
+    private long compactedReadBytes;
+    private long compactedWrittenBytes;
+    private long writeStalls;
+    private int[] tablesPerLevel;
+    private long diskBytes;
+
+    public double getReadAmplification() {
+        return gets == 0 ? 0 : (double) blockReads / gets;
+    }
+
+    public double getWriteAmplification() {
+        return userBytes == 0 ? 0 : (double) (flushedBytes + compactedWrittenBytes) / userBytes;
+    }
+}
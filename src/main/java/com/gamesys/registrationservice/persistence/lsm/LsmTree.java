@@ -0,0 +1,800 @@
+package com.gamesys.registrationservice.persistence.lsm;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Log structured merge tree from String keys to byte values, stored in one directory.
+ *
+ * Writes go to an in memory memtable. A full memtable is frozen and written by a background thread
+ * as an immutable {@link SSTable} in level 0, whose tables may overlap. When level 0 holds too many
+ * tables they are merged with the overlapping tables of level 1; from level 1 down each level is a
+ * sorted run of non overlapping tables ten times larger than the one above, and a level over its
+ * budget pushes one table into the next (leveled compaction). Deletes are tombstones, dropped when
+ * a merge writes the bottom level.
+ *
+ * Lookups check the memtables and then at most one table per level, newest first, and skip every
+ * table whose Bloom filter rules the key out. The MANIFEST file lists the live tables and the log
+ * sequence number covered by them; it is replaced atomically after each flush and compaction, so
+ * a restart reopens the last consistent set of tables. Writes still in the memtable are lost on a
+ * crash unless the caller logs them and replays the log after {@link #flushedLsn()}.
+ *
+ * Reads are safe from any thread. Callers needing read-check-write atomicity must order their
+ * writes themselves.
+ */
+@Slf4j
+public class LsmTree implements Closeable {
+
+    static final byte[] TOMBSTONE = new byte[0];
+
+    private static final String MANIFEST = "MANIFEST";
+    private static final int MAX_FROZEN = 2;
+    private static final int LEVELS = 7;
+    private static final int LEVEL_FANOUT = 10;
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final Path directory;
+    private final Options options;
+    private final LongConsumer flushListener;
+    private final ReadWriteLock tablesLock = new ReentrantReadWriteLock();
+    private final ExecutorService background;
+    private final Counters counters = new Counters();
+    private final String[] compactPointers = new String[LEVELS];
+
+    private volatile State state;
+    private volatile boolean closed;
+    private long nextTableId = 1;
+    private long flushedLsn;
+    private Exception failure;
+
+    /**
+     * @param flushListener called with {@link #flushedLsn()} after each memtable flush
+     */
+    public LsmTree(Path directory, Options options, LongConsumer flushListener) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.options = options;
+        this.flushListener = flushListener;
+        this.state = recover();
+        this.background = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lsm-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.execute(this::maintain);
+    }
+
+    /**
+     * @return the value of key, or null when absent
+     */
+    public byte[] get(String key) {
+        counters.gets.increment();
+        tablesLock.readLock().lock();
+        try {
+            State current = state;
+            byte[] value = current.active.entries.get(key);
+            for (int i = 0; value == null && i < current.frozen.size(); i++) {
+                value = current.frozen.get(i).entries.get(key);
+            }
+            for (int i = 0; value == null && i < current.level0.size(); i++) {
+                value = current.level0.get(i).get(key, counters);
+            }
+            for (int level = 1; value == null && level < LEVELS; level++) {
+                SSTable table = find(current.level(level), key);
+                value = table == null ? null : table.get(key, counters);
+            }
+            return value == TOMBSTONE ? null : value;
+        } catch (IOException e) {
+            throw new ServerException("LSM read failed : " + e.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets key to value, deleting it when value is null. lsn is the caller's log sequence number of
+     * the write, reported by {@link #flushedLsn()} once the write is in a table.
+     */
+    public void put(String key, byte[] value, long lsn) {
+        putAll(Collections.singletonMap(key, value), lsn);
+    }
+
+    /**
+     * Sets every key of one logged write to its value, a null value deleting the key. The memtable
+     * only rotates after the last key, so a flush never reports lsn covered with part of the write
+     * still outside the table.
+     */
+    public synchronized void putAll(Map<String, byte[]> values, long lsn) {
+        if (closed) {
+            throw new ServerException("LSM tree closed", ErrorEnum.STORAGE_EXCEPTION);
+        }
+        Memtable memtable = state.active;
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            byte[] value = entry.getValue();
+            memtable.put(entry.getKey(), value == null ? TOMBSTONE : value, lsn);
+            counters.userBytes.add(entry.getKey().length() + (value == null ? 0 : value.length));
+        }
+        if (memtable.bytes.get() >= options.memtableBytes) {
+            rotate();
+        }
+    }
+
+    /**
+     * Records that every write up to lsn is in the tree, after a caller replayed its log.
+     */
+    public synchronized void coverLsn(long lsn) {
+        state.active.lastLsn = Math.max(state.active.lastLsn, lsn);
+    }
+
+    /**
+     * Visits the live entries with from &lt;= key &lt; to in key order, null bounds being open,
+     * until the consumer returns false. Tables are not deleted while a scan runs.
+     *
+     * @return false when the consumer stopped the scan
+     */
+    public boolean scan(String from, String to, Predicate<Map.Entry<String, byte[]>> consumer) {
+        tablesLock.readLock().lock();
+        try {
+            State current = state;
+            List<Iterator<Map.Entry<String, byte[]>>> sources = new ArrayList<>();
+            sources.add(range(current.active.entries, from, to));
+            for (Memtable memtable : current.frozen) {
+                sources.add(range(memtable.entries, from, to));
+            }
+            for (SSTable table : current.level0) {
+                sources.add(table.iterator(from));
+            }
+            for (int level = 1; level < LEVELS; level++) {
+                sources.add(new LevelIterator(current.level(level), from));
+            }
+            Iterator<Map.Entry<String, byte[]>> merged = new MergingIterator(sources);
+            while (merged.hasNext()) {
+                Map.Entry<String, byte[]> entry = merged.next();
+                if (to != null && entry.getKey().compareTo(to) >= 0) {
+                    return true;
+                }
+                if (entry.getValue() != TOMBSTONE && !consumer.test(entry)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (UncheckedIOException e) {
+            throw new ServerException("LSM scan failed : " + e.getCause().getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the highest lsn whose write is stored in a table
+     */
+    public synchronized long flushedLsn() {
+        return flushedLsn;
+    }
+
+    /**
+     * Writes the memtable to a table and waits for it.
+     *
+     * @return {@link #flushedLsn()}
+     */
+    public synchronized long flush() {
+        if (closed) {
+            return flushedLsn;
+        }
+        rotate();
+        while (!state.frozen.isEmpty() && failure == null) {
+            awaitBackground();
+        }
+        checkFailure();
+        return flushedLsn;
+    }
+
+    public LsmStatistics statistics() {
+        State current = state;
+        int[] tables = new int[LEVELS];
+        long diskBytes = 0;
+        tables[0] = current.level0.size();
+        for (SSTable table : current.level0) {
+            diskBytes += table.fileBytes();
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            tables[level] = current.level(level).size();
+            diskBytes += bytes(current.level(level));
+        }
+        return new LsmStatistics(counters.gets.sum(), counters.blockReads.sum(), counters.bloomSkips.sum(),
+                counters.userBytes.sum(), counters.flushedBytes.sum(), counters.compactedReadBytes.sum(),
+                counters.compactedWrittenBytes.sum(), counters.writeStalls.sum(), tables, diskBytes);
+    }
+
+    /**
+     * Flushes the memtable, stops background work and closes the tables.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("LSM flush on close failed", e);
+        }
+        closed = true;
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        tablesLock.writeLock().lock();
+        try {
+            for (SSTable table : state.tables()) {
+                table.close();
+            }
+        } catch (IOException e) {
+            log.error("LSM table close failed", e);
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+    }
+
+    private void rotate() {
+        checkFailure();
+        while (state.frozen.size() >= MAX_FROZEN && failure == null) {
+            counters.writeStalls.increment();
+            awaitBackground();
+        }
+        checkFailure();
+        State current = state;
+        if (current.active.entries.isEmpty()) {
+            return;
+        }
+        Memtable next = new Memtable();
+        next.lastLsn = current.active.lastLsn;
+        state = new State(next, prepend(current.active, current.frozen), current.level0, current.levels);
+        background.execute(this::maintain);
+    }
+
+    private void awaitBackground() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerException("Interrupted waiting for LSM flush", ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new ServerException("LSM background work failed : " + failure.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    /**
+     * Background loop: flushes frozen memtables, oldest first, and compacts while a level is over
+     * budget. Flushes go first so writers are not stalled behind a long compaction.
+     */
+    private void maintain() {
+        try {
+            while (true) {
+                Memtable oldest;
+                synchronized (this) {
+                    oldest = state.frozen.isEmpty() ? null : state.frozen.get(state.frozen.size() - 1);
+                }
+                if (oldest != null) {
+                    writeTable(oldest);
+                } else if (closed || !compact()) {
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("LSM background work failed", e);
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        }
+    }
+
+    private void writeTable(Memtable memtable) throws IOException {
+        long start = System.nanoTime();
+        long id = nextTableId();
+        SSTable table;
+        try (SSTable.Writer writer = new SSTable.Writer(SSTable.path(directory, id), options.bitsPerKey)) {
+            for (Map.Entry<String, byte[]> entry : memtable.entries.entrySet()) {
+                writer.add(entry.getKey(), entry.getValue());
+            }
+            table = writer.finish(id);
+        }
+        counters.flushedBytes.add(table.fileBytes());
+        long lsn;
+        synchronized (this) {
+            State current = state;
+            List<Memtable> frozen = new ArrayList<>(current.frozen);
+            frozen.remove(memtable);
+            state = new State(current.active, frozen, prepend(table, current.level0), current.levels);
+            flushedLsn = Math.max(flushedLsn, memtable.lastLsn);
+            lsn = flushedLsn;
+            writeManifest(state);
+            notifyAll();
+        }
+        log.debug("Memtable flushed to table {} : {} records, {} bytes in {} ms", id, table.records(), table.fileBytes(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        flushListener.accept(lsn);
+    }
+
+    /**
+     * Runs one compaction if a level is over its budget.
+     *
+     * @return false when no level needed compacting
+     */
+    private boolean compact() throws IOException {
+        State current = state;
+        if (current.level0.size() >= options.level0Tables) {
+            compact(current, 0, current.level0);
+            return true;
+        }
+        long budget = options.levelBaseBytes;
+        for (int level = 1; level < LEVELS - 1; level++, budget *= LEVEL_FANOUT) {
+            List<SSTable> tables = current.level(level);
+            if (bytes(tables) > budget) {
+                compact(current, level, Collections.singletonList(pick(level, tables)));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compact(State current, int level, List<SSTable> inputs) throws IOException {
+        long start = System.nanoTime();
+        int output = level + 1;
+        String first = inputs.get(0).firstKey();
+        String last = inputs.get(0).lastKey();
+        for (SSTable table : inputs) {
+            first = table.firstKey().compareTo(first) < 0 ? table.firstKey() : first;
+            last = table.lastKey().compareTo(last) > 0 ? table.lastKey() : last;
+        }
+        List<SSTable> overlapping = new ArrayList<>();
+        for (SSTable table : current.level(output)) {
+            if (table.overlaps(first, last)) {
+                overlapping.add(table);
+            }
+        }
+        boolean bottom = true;
+        for (int deeper = output + 1; deeper < LEVELS; deeper++) {
+            bottom &= current.level(deeper).isEmpty();
+        }
+
+        List<Iterator<Map.Entry<String, byte[]>>> sources = new ArrayList<>();
+        long readBytes = 0;
+        for (SSTable table : inputs) {
+            sources.add(table.iterator(null));
+            readBytes += table.fileBytes();
+        }
+        for (SSTable table : overlapping) {
+            sources.add(table.iterator(null));
+            readBytes += table.fileBytes();
+        }
+        List<SSTable> outputs = new ArrayList<>();
+        SSTable.Writer writer = null;
+        long writerId = 0;
+        try {
+            Iterator<Map.Entry<String, byte[]>> merged = new MergingIterator(sources);
+            while (merged.hasNext()) {
+                Map.Entry<String, byte[]> entry = merged.next();
+                if (bottom && entry.getValue() == TOMBSTONE) {
+                    continue;
+                }
+                if (writer == null) {
+                    writerId = nextTableId();
+                    writer = new SSTable.Writer(SSTable.path(directory, writerId), options.bitsPerKey);
+                }
+                writer.add(entry.getKey(), entry.getValue());
+                if (writer.bytes() >= options.tableBytes) {
+                    outputs.add(writer.finish(writerId));
+                    writer = null;
+                }
+            }
+            if (writer != null) {
+                outputs.add(writer.finish(writerId));
+                writer = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (writer != null) {
+                writer.close();
+            }
+            for (SSTable table : outputs) {
+                table.delete();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            State latest = state;
+            List<SSTable> level0 = level == 0 ? without(latest.level0, inputs) : latest.level0;
+            List<List<SSTable>> levels = new ArrayList<>(latest.levels);
+            if (level > 0) {
+                levels.set(level - 1, without(latest.level(level), inputs));
+            }
+            List<SSTable> merged = without(latest.level(output), overlapping);
+            merged.addAll(outputs);
+            merged.sort(Comparator.comparing(SSTable::firstKey));
+            levels.set(output - 1, merged);
+            state = new State(latest.active, latest.frozen, level0, levels);
+            writeManifest(state);
+        }
+        compactPointers[level] = last;
+        long writtenBytes = bytes(outputs);
+        counters.compactedReadBytes.add(readBytes);
+        counters.compactedWrittenBytes.add(writtenBytes);
+
+        tablesLock.writeLock().lock();
+        try {
+            for (SSTable table : inputs) {
+                table.delete();
+            }
+            for (SSTable table : overlapping) {
+                table.delete();
+            }
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+        log.info("Compacted {} tables of L{} with {} tables of L{} into {} tables : {} bytes read, {} bytes written in {} ms",
+                inputs.size(), level, overlapping.size(), output, outputs.size(), readBytes, writtenBytes,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Picks the table after the one compacted last, so compaction cycles through the key space.
+     */
+    private SSTable pick(int level, List<SSTable> tables) {
+        String pointer = compactPointers[level];
+        for (SSTable table : tables) {
+            if (pointer == null || table.firstKey().compareTo(pointer) > 0) {
+                return table;
+            }
+        }
+        return tables.get(0);
+    }
+
+    private synchronized long nextTableId() {
+        return nextTableId++;
+    }
+
+    private State recover() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        List<SSTable> level0 = new ArrayList<>();
+        List<List<SSTable>> levels = new ArrayList<>();
+        for (int level = 1; level < LEVELS; level++) {
+            levels.add(new ArrayList<>());
+        }
+        Set<Path> live = new HashSet<>();
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(" ");
+                if (fields[0].equals("lsn")) {
+                    flushedLsn = Long.parseLong(fields[1]);
+                } else if (fields[0].equals("next")) {
+                    nextTableId = Long.parseLong(fields[1]);
+                } else if (fields[0].equals("table")) {
+                    int level = Integer.parseInt(fields[1]);
+                    long id = Long.parseLong(fields[2]);
+                    Path file = SSTable.path(directory, id);
+                    SSTable table = SSTable.open(file, id);
+                    live.add(file);
+                    (level == 0 ? level0 : levels.get(level - 1)).add(table);
+                }
+            }
+        }
+        level0.sort(Comparator.comparing(SSTable::id).reversed());
+        for (List<SSTable> tables : levels) {
+            tables.sort(Comparator.comparing(SSTable::firstKey));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{sst,tmp}")) {
+            for (Path file : files) {
+                if (!live.contains(file)) {
+                    Files.delete(file);
+                }
+            }
+        }
+        if (!live.isEmpty()) {
+            log.info("LSM tree opened with {} tables covering lsn {}", live.size(), flushedLsn);
+        }
+        return new State(new Memtable(), Collections.emptyList(), level0, levels);
+    }
+
+    private void writeManifest(State current) {
+        StringBuilder manifest = new StringBuilder();
+        manifest.append("lsn ").append(flushedLsn).append('\n');
+        manifest.append("next ").append(nextTableId).append('\n');
+        for (SSTable table : current.level0) {
+            manifest.append("table 0 ").append(table.id()).append('\n');
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            for (SSTable table : current.level(level)) {
+                manifest.append("table ").append(level).append(' ').append(table.id()).append('\n');
+            }
+        }
+        Path target = directory.resolve(MANIFEST);
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(manifest.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the table of a sorted level whose key range may hold key, or null
+     */
+    private static SSTable find(List<SSTable> tables, String key) {
+        int low = 0;
+        int high = tables.size() - 1;
+        SSTable candidate = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (tables.get(middle).firstKey().compareTo(key) <= 0) {
+                candidate = tables.get(middle);
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return candidate;
+    }
+
+    private static Iterator<Map.Entry<String, byte[]>> range(NavigableMap<String, byte[]> entries, String from, String to) {
+        NavigableMap<String, byte[]> view = entries;
+        if (from != null) {
+            view = view.tailMap(from, true);
+        }
+        if (to != null) {
+            view = view.headMap(to, false);
+        }
+        return view.entrySet().iterator();
+    }
+
+    private static long bytes(List<SSTable> tables) {
+        long bytes = 0;
+        for (SSTable table : tables) {
+            bytes += table.fileBytes();
+        }
+        return bytes;
+    }
+
+    private static <T> List<T> prepend(T first, List<T> rest) {
+        List<T> list = new ArrayList<>(rest.size() + 1);
+        list.add(first);
+        list.addAll(rest);
+        return list;
+    }
+
+    private static List<SSTable> without(List<SSTable> tables, List<SSTable> removed) {
+        List<SSTable> list = new ArrayList<>(tables);
+        list.removeAll(removed);
+        return list;
+    }
+
+    /**
+     * Tuning of an {@link LsmTree}.
+     */
+    public static final class Options {
+
+        private final long memtableBytes;
+        private final int level0Tables;
+        private final long levelBaseBytes;
+        private final long tableBytes;
+        private final int bitsPerKey;
+
+        /**
+         * @param memtableBytes  approximate memtable size that triggers a flush
+         * @param level0Tables   level 0 table count that triggers a compaction into level 1
+         * @param levelBaseBytes size budget of level 1, each deeper level gets ten times more
+         * @param tableBytes     size at which compaction starts a new output table
+         * @param bitsPerKey     Bloom filter bits per key
+         */
+        public Options(long memtableBytes, int level0Tables, long levelBaseBytes, long tableBytes, int bitsPerKey) {
+            this.memtableBytes = memtableBytes;
+            this.level0Tables = level0Tables;
+            this.levelBaseBytes = levelBaseBytes;
+            this.tableBytes = tableBytes;
+            this.bitsPerKey = bitsPerKey;
+        }
+    }
+
+    static final class Counters {
+        final LongAdder gets = new LongAdder();
+        final LongAdder blockReads = new LongAdder();
+        final LongAdder bloomSkips = new LongAdder();
+        final LongAdder userBytes = new LongAdder();
+        final LongAdder flushedBytes = new LongAdder();
+        final LongAdder compactedReadBytes = new LongAdder();
+        final LongAdder compactedWrittenBytes = new LongAdder();
+        final LongAdder writeStalls = new LongAdder();
+    }
+
+    private static final class Memtable {
+
+        private final ConcurrentSkipListMap<String, byte[]> entries = new ConcurrentSkipListMap<>();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile long lastLsn;
+
+        private void put(String key, byte[] value, long lsn) {
+            entries.put(key, value);
+            bytes.addAndGet(2L * key.length() + value.length + ENTRY_OVERHEAD_BYTES);
+            lastLsn = Math.max(lastLsn, lsn);
+        }
+    }
+
+    /**
+     * Immutable view of the tree, replaced as a whole on every rotation, flush and compaction.
+     */
+    private static final class State {
+
+        private final Memtable active;
+        private final List<Memtable> frozen;
+        private final List<SSTable> level0;
+        private final List<List<SSTable>> levels;
+
+        private State(Memtable active, List<Memtable> frozen, List<SSTable> level0, List<List<SSTable>> levels) {
+            this.active = active;
+            this.frozen = frozen;
+            this.level0 = level0;
+            this.levels = levels;
+        }
+
+        /**
+         * @return the sorted tables of a level from 1 down
+         */
+        private List<SSTable> level(int level) {
+            return levels.get(level - 1);
+        }
+
+        private List<SSTable> tables() {
+            List<SSTable> tables = new ArrayList<>(level0);
+            levels.forEach(tables::addAll);
+            return tables;
+        }
+    }
+
+    /**
+     * Concatenation of the tables of one sorted level, from the first table that may hold from.
+     */
+    private static final class LevelIterator implements Iterator<Map.Entry<String, byte[]>> {
+
+        private final List<SSTable> tables;
+        private int next;
+        private Iterator<Map.Entry<String, byte[]>> current = Collections.emptyIterator();
+        private String from;
+
+        private LevelIterator(List<SSTable> tables, String from) {
+            this.tables = tables;
+            this.from = from;
+            while (next < tables.size() && from != null && tables.get(next).lastKey().compareTo(from) < 0) {
+                next++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && next < tables.size()) {
+                current = tables.get(next++).iterator(from);
+                from = null;
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+
+    /**
+     * Merges sorted sources into one sorted sequence. Sources are given newest first; when several
+     * hold a key only the newest entry is returned.
+     */
+    private static final class MergingIterator implements Iterator<Map.Entry<String, byte[]>> {
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+        private MergingIterator(List<Iterator<Map.Entry<String, byte[]>>> sources) {
+            for (int rank = 0; rank < sources.size(); rank++) {
+                Iterator<Map.Entry<String, byte[]>> source = sources.get(rank);
+                if (source.hasNext()) {
+                    heads.add(new Head(source.next(), rank, source));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<String, byte[]> next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, byte[]> entry = head.entry;
+            while (!heads.isEmpty() && heads.peek().entry.getKey().equals(entry.getKey())) {
+                advance(heads.poll());
+            }
+            advance(head);
+            return entry;
+        }
+
+        private void advance(Head head) {
+            if (head.source.hasNext()) {
+                head.entry = head.source.next();
+                heads.add(head);
+            }
+        }
+
+        private static final class Head implements Comparable<Head> {
+
+            private final int rank;
+            private final Iterator<Map.Entry<String, byte[]>> source;
+            private Map.Entry<String, byte[]> entry;
+
+            private Head(Map.Entry<String, byte[]> entry, int rank, Iterator<Map.Entry<String, byte[]>> source) {
+                this.entry = entry;
+                this.rank = rank;
+                this.source = source;
+            }
+
+            @Override
+            public int compareTo(Head other) {
+                int comparison = entry.getKey().compareTo(other.entry.getKey());
+                return comparison != 0 ? comparison : Integer.compare(rank, other.rank);
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.gamesys.registrationservice.persistence.lsm;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable sorted table file of an {@link LsmTree}.
+ *
+ * File layout :
+ * Records   : [short key length][key utf-8][int value length, -1 for a tombstone][value], sorted by key
+ * Index     : [int count] then [short key length][key utf-8][long offset] for every 16th record
+ * Bloom     : {@link BloomFilter} of every key
+ * Last key  : [short key length][key utf-8]
+ * Footer    : [long index offset][long bloom offset][long last key offset][long record count][int magic]
+ *
+ * The sparse index, the Bloom filter and the key range stay in memory, so a lookup reads at most
+ * one block of 16 records and a lookup the filter rules out reads nothing.
+ */
+final class SSTable implements Closeable {
+
+    private static final int MAGIC = 0x4C534D54;
+    private static final int INDEX_INTERVAL = 16;
+    private static final int FOOTER_BYTES = 4 * Long.BYTES + Integer.BYTES;
+    private static final int SCAN_CHUNK_BYTES = 64 << 10;
+    private static final int TOMBSTONE_LENGTH = -1;
+
+    private final long id;
+    private final Path file;
+    private final FileChannel channel;
+    private final String[] indexKeys;
+    private final long[] indexOffsets;
+    private final long dataBytes;
+    private final BloomFilter bloom;
+    private final String lastKey;
+    private final long records;
+    private final long fileBytes;
+
+    private SSTable(long id, Path file, FileChannel channel, String[] indexKeys, long[] indexOffsets, long dataBytes,
+                    BloomFilter bloom, String lastKey, long records, long fileBytes) {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.dataBytes = dataBytes;
+        this.bloom = bloom;
+        this.lastKey = lastKey;
+        this.records = records;
+        this.fileBytes = fileBytes;
+    }
+
+    static Path path(Path directory, long id) {
+        return directory.resolve(String.format("%012d.sst", id));
+    }
+
+    static SSTable open(Path file, long id) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer footer = read(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            long lastKeyOffset = footer.getLong();
+            long records = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Not a table file " + file);
+            }
+            ByteBuffer meta = read(channel, indexOffset, (int) (size - FOOTER_BYTES - indexOffset));
+            int count = meta.getInt();
+            String[] indexKeys = new String[count];
+            long[] indexOffsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                indexKeys[i] = readKey(meta);
+                indexOffsets[i] = meta.getLong();
+            }
+            meta.position((int) (bloomOffset - indexOffset));
+            BloomFilter bloom = BloomFilter.read(meta);
+            meta.position((int) (lastKeyOffset - indexOffset));
+            String lastKey = readKey(meta);
+            return new SSTable(id, file, channel, indexKeys, indexOffsets, indexOffset, bloom, lastKey, records, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long id() {
+        return id;
+    }
+
+    String firstKey() {
+        return indexKeys[0];
+    }
+
+    String lastKey() {
+        return lastKey;
+    }
+
+    long records() {
+        return records;
+    }
+
+    long fileBytes() {
+        return fileBytes;
+    }
+
+    boolean overlaps(String first, String last) {
+        return firstKey().compareTo(last) <= 0 && lastKey.compareTo(first) >= 0;
+    }
+
+    /**
+     * @return the value, {@link LsmTree#TOMBSTONE} when the key was deleted, null when the table
+     * doesn't hold the key
+     */
+    byte[] get(String key, LsmTree.Counters counters) throws IOException {
+        if (key.compareTo(firstKey()) < 0 || key.compareTo(lastKey) > 0) {
+            return null;
+        }
+        if (!bloom.mightContain(key)) {
+            counters.bloomSkips.increment();
+            return null;
+        }
+        int block = floorBlock(key);
+        long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataBytes;
+        ByteBuffer buffer = read(channel, indexOffsets[block], (int) (end - indexOffsets[block]));
+        counters.blockReads.increment();
+        while (buffer.hasRemaining()) {
+            int comparison = readKey(buffer).compareTo(key);
+            if (comparison == 0) {
+                return readValue(buffer);
+            }
+            if (comparison > 0) {
+                return null;
+            }
+            skipValue(buffer);
+        }
+        return null;
+    }
+
+    /**
+     * Entries with a key at or after from, every entry when from is null, tombstones included.
+     */
+    Iterator<Map.Entry<String, byte[]>> iterator(String from) {
+        return new TableIterator(from);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    private int floorBlock(String key) {
+        int index = Arrays.binarySearch(indexKeys, key);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of table file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String readKey(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readValue(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == TOMBSTONE_LENGTH) {
+            return LsmTree.TOMBSTONE;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    private static void skipValue(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private final class TableIterator implements Iterator<Map.Entry<String, byte[]>> {
+
+        private int block;
+        private ByteBuffer buffer = ByteBuffer.allocate(0);
+        private Map.Entry<String, byte[]> next;
+
+        private TableIterator(String from) {
+            block = from == null ? 0 : Math.max(0, floorBlock(from));
+            next = advance();
+            while (from != null && next != null && next.getKey().compareTo(from) < 0) {
+                next = advance();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, byte[]> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, byte[]> entry = next;
+            next = advance();
+            return entry;
+        }
+
+        private Map.Entry<String, byte[]> advance() {
+            if (!buffer.hasRemaining()) {
+                if (block >= indexOffsets.length) {
+                    return null;
+                }
+                long start = indexOffsets[block];
+                int endBlock = block + 1;
+                while (endBlock < indexOffsets.length && indexOffsets[endBlock] - start < SCAN_CHUNK_BYTES) {
+                    endBlock++;
+                }
+                long end = endBlock < indexOffsets.length ? indexOffsets[endBlock] : dataBytes;
+                try {
+                    buffer = read(channel, start, (int) (end - start));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                block = endBlock;
+            }
+            String key = readKey(buffer);
+            return new AbstractMap.SimpleImmutableEntry<>(key, readValue(buffer));
+        }
+    }
+
+    /**
+     * Writes a table from entries added in key order. The file is written under a temporary name,
+     * forced and renamed by {@link #finish(long)}.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path file;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final int bitsPerKey;
+        private final List<String> indexKeys = new ArrayList<>();
+        private long[] indexOffsets = new long[64];
+        private long[] keyHashes = new long[1024];
+        private int count;
+        private long bytes;
+        private String lastKey;
+        private boolean finished;
+
+        Writer(Path file, int bitsPerKey) throws IOException {
+            this.file = file;
+            this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            this.bitsPerKey = bitsPerKey;
+        }
+
+        void add(String key, byte[] value) throws IOException {
+            if (count % INDEX_INTERVAL == 0) {
+                if (indexKeys.size() == indexOffsets.length) {
+                    indexOffsets = Arrays.copyOf(indexOffsets, indexOffsets.length * 2);
+                }
+                indexOffsets[indexKeys.size()] = bytes;
+                indexKeys.add(key);
+            }
+            if (count == keyHashes.length) {
+                keyHashes = Arrays.copyOf(keyHashes, count * 2);
+            }
+            keyHashes[count++] = BloomFilter.hash(key);
+            bytes += writeKey(key);
+            if (value == LsmTree.TOMBSTONE) {
+                out.writeInt(TOMBSTONE_LENGTH);
+                bytes += Integer.BYTES;
+            } else {
+                out.writeInt(value.length);
+                out.write(value);
+                bytes += Integer.BYTES + value.length;
+            }
+            lastKey = key;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        int count() {
+            return count;
+        }
+
+        SSTable finish(long id) throws IOException {
+            long indexOffset = bytes;
+            out.writeInt(indexKeys.size());
+            bytes += Integer.BYTES;
+            for (int i = 0; i < indexKeys.size(); i++) {
+                bytes += writeKey(indexKeys.get(i));
+                out.writeLong(indexOffsets[i]);
+                bytes += Long.BYTES;
+            }
+            long bloomOffset = bytes;
+            BloomFilter bloom = BloomFilter.of(keyHashes, count, bitsPerKey);
+            bloom.writeTo(out);
+            long lastKeyOffset = bloomOffset + bloom.bytes();
+            writeKey(lastKey);
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(lastKeyOffset);
+            out.writeLong(count);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+            out.close();
+            finished = true;
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            return open(file, id);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        private int writeKey(String key) throws IOException {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            return Short.BYTES + bytes.length;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.gamesys.registrationservice.persistence.offheap;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.codec.UserCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * One independently locked partition of the off heap user store.
+ *
+ * Records are appended to slabs of direct memory and located through an open addressing index that
+ * also lives in direct memory, so the heap only holds the slab and index buffer objects.
+ *
+ * Index slot : [long address + 1, 0 when empty, -1 when removed][int key hash][int unused]
+ * Address    : slab number in the upper 32 bits, offset in the slab in the lower 32 bits
+ * Record     : [int payload length][short key length][key][byte ssn differs][ssn if it differs]
+ *              [short username length][username][short password length][password][int dob epoch day]
+ *
+ * Replaced and removed records become garbage; the stripe is compacted when garbage outweighs
+ * live data.
+ */
+public class OffHeapStripe {
+
+    private static final int SLOT_BYTES = 16;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+    private static final int INITIAL_SLOTS = 64;
+    private static final int INITIAL_SLAB_BYTES = 64 << 10;
+    private static final long COMPACTION_MIN_GARBAGE = 1 << 20;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int maxSlabBytes;
+
+    private ByteBuffer index = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_BYTES);
+    private int slots = INITIAL_SLOTS;
+    private int size;
+    private int usedSlots;
+    private int generation;
+
+    private List<ByteBuffer> slabs = new ArrayList<>();
+    private long liveBytes;
+    private long garbageBytes;
+    private long slabBytes;
+
+    public OffHeapStripe(int maxSlabBytes) {
+        this.maxSlabBytes = maxSlabBytes;
+    }
+
+    public User get(byte[] key, int hash) {
+        lock.readLock().lock();
+        try {
+            int slot = find(key, hash);
+            return slot < 0 ? null : decode(addressAt(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(byte[] key, int hash) {
+        lock.readLock().lock();
+        try {
+            return find(key, hash) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reentrant lock taken by every write, for callers that keep other state consistent with a write.
+     */
+    public Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    public boolean putIfAbsent(String keyString, byte[] key, int hash, User user) {
+        lock.writeLock().lock();
+        try {
+            if (find(key, hash) >= 0) {
+                return false;
+            }
+            ensureIndexCapacity();
+            long address = write(keyString, key, user);
+            int slot = freeSlot(hash);
+            if (index.getLong(slot * SLOT_BYTES) == EMPTY) {
+                usedSlots++;
+            }
+            index.putLong(slot * SLOT_BYTES, address + 1);
+            index.putInt(slot * SLOT_BYTES + Long.BYTES, hash);
+            size++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean replace(String keyString, byte[] key, int hash, User user) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return false;
+            }
+            long address = write(keyString, key, user);
+            release(addressAt(slot));
+            index.putLong(slot * SLOT_BYTES, address + 1);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(byte[] key, int hash) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return false;
+            }
+            release(addressAt(slot));
+            index.putLong(slot * SLOT_BYTES, REMOVED);
+            size--;
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void forEach(Consumer<User> consumer) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < slots; slot++) {
+                long entry = index.getLong(slot * SLOT_BYTES);
+                if (entry != EMPTY && entry != REMOVED) {
+                    consumer.accept(decode(entry - 1));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits up to limit users from the given position, 0 for the first page.
+     *
+     * Position : [32 bits index generation][32 bits slot]
+     *
+     * An index rebuilt since the position was issued is walked again from its first slot, so a user
+     * present for the whole traversal is visited at least once and may be visited twice.
+     *
+     * @return the position of the next page, or -1 when the stripe is exhausted
+     */
+    public long scan(long position, int limit, Consumer<User> consumer) {
+        lock.readLock().lock();
+        try {
+            int slot = (int) (position >>> 32) == generation ? (int) position : 0;
+            int visited = 0;
+            for (; slot < slots; slot++) {
+                long entry = index.getLong(slot * SLOT_BYTES);
+                if (entry != EMPTY && entry != REMOVED) {
+                    if (visited == limit) {
+                        return (long) generation << 32 | slot;
+                    }
+                    consumer.accept(decode(entry - 1));
+                    visited++;
+                }
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return direct memory held by the index and the slabs
+     */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) slots * SLOT_BYTES + slabBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int find(byte[] key, int hash) {
+        int mask = slots - 1;
+        for (int slot = hash & mask, probes = 0; probes < slots; slot = (slot + 1) & mask, probes++) {
+            long entry = index.getLong(slot * SLOT_BYTES);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != REMOVED && index.getInt(slot * SLOT_BYTES + Long.BYTES) == hash && keyEquals(entry - 1, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int freeSlot(int hash) {
+        int mask = slots - 1;
+        int slot = hash & mask;
+        while (true) {
+            long entry = index.getLong(slot * SLOT_BYTES);
+            if (entry == EMPTY || entry == REMOVED) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private long addressAt(int slot) {
+        return index.getLong(slot * SLOT_BYTES) - 1;
+    }
+
+    private void ensureIndexCapacity() {
+        if ((usedSlots + 1) * 10L < slots * 6L) {
+            return;
+        }
+        int newSlots = size * 10L >= slots * 3L ? slots * 2 : slots;
+        ByteBuffer old = index;
+        int oldSlots = slots;
+        index = ByteBuffer.allocateDirect(newSlots * SLOT_BYTES);
+        slots = newSlots;
+        usedSlots = size;
+        generation++;
+        for (int slot = 0; slot < oldSlots; slot++) {
+            long entry = old.getLong(slot * SLOT_BYTES);
+            if (entry != EMPTY && entry != REMOVED) {
+                int hash = old.getInt(slot * SLOT_BYTES + Long.BYTES);
+                int target = freeSlot(hash);
+                index.putLong(target * SLOT_BYTES, entry);
+                index.putInt(target * SLOT_BYTES + Long.BYTES, hash);
+            }
+        }
+    }
+
+    private long write(String keyString, byte[] key, User user) {
+        boolean ssnDiffers = !user.getSsn().equals(keyString);
+        byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] password = user.getPassword().getBytes(StandardCharsets.UTF_8);
+        byte[] ssn = ssnDiffers ? user.getSsn().getBytes(StandardCharsets.UTF_8) : null;
+        int payload = fieldBytes(key) + 1 + (ssnDiffers ? fieldBytes(ssn) : 0)
+                + fieldBytes(username) + fieldBytes(password) + Integer.BYTES;
+
+        ByteBuffer slab = slabFor(Integer.BYTES + payload);
+        long address = ((long) (slabs.size() - 1) << 32) | slab.position();
+        slab.putInt(payload);
+        putBytes(slab, key);
+        slab.put((byte) (ssnDiffers ? 1 : 0));
+        if (ssnDiffers) {
+            putBytes(slab, ssn);
+        }
+        putBytes(slab, username);
+        putBytes(slab, password);
+        slab.putInt(Math.toIntExact(user.getDob().toEpochDay()));
+        liveBytes += Integer.BYTES + payload;
+        return address;
+    }
+
+    private ByteBuffer slabFor(int bytes) {
+        ByteBuffer current = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        if (current != null && current.remaining() >= bytes) {
+            return current;
+        }
+        int capacity = current == null ? INITIAL_SLAB_BYTES : Math.min(maxSlabBytes, current.capacity() * 2);
+        ByteBuffer slab = ByteBuffer.allocateDirect(Math.max(capacity, bytes));
+        slabs.add(slab);
+        slabBytes += slab.capacity();
+        return slab;
+    }
+
+    private void release(long address) {
+        int length = Integer.BYTES + slab(address).getInt(offset(address));
+        liveBytes -= length;
+        garbageBytes += length;
+    }
+
+    private void compactIfNeeded() {
+        if (garbageBytes < COMPACTION_MIN_GARBAGE || garbageBytes < liveBytes) {
+            return;
+        }
+        List<ByteBuffer> oldSlabs = slabs;
+        slabs = new ArrayList<>();
+        slabBytes = 0;
+        liveBytes = 0;
+        garbageBytes = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            long entry = index.getLong(slot * SLOT_BYTES);
+            if (entry == EMPTY || entry == REMOVED) {
+                continue;
+            }
+            long address = entry - 1;
+            ByteBuffer source = oldSlabs.get((int) (address >>> 32)).duplicate();
+            int offset = offset(address);
+            int length = Integer.BYTES + source.getInt(offset);
+            source.limit(offset + length).position(offset);
+            ByteBuffer target = slabFor(length);
+            long moved = ((long) (slabs.size() - 1) << 32) | target.position();
+            target.put(source);
+            liveBytes += length;
+            index.putLong(slot * SLOT_BYTES, moved + 1);
+        }
+    }
+
+    private boolean keyEquals(long address, byte[] key) {
+        ByteBuffer slab = slab(address);
+        int offset = offset(address) + Integer.BYTES;
+        if (slab.getShort(offset) != key.length) {
+            return false;
+        }
+        offset += Short.BYTES;
+        for (int i = 0; i < key.length; i++) {
+            if (slab.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private User decode(long address) {
+        ByteBuffer record = slab(address).duplicate();
+        record.position(offset(address) + Integer.BYTES);
+        String key = UserCodec.readString(record);
+        String ssn = record.get() == 1 ? UserCodec.readString(record) : key;
+        String username = UserCodec.readString(record);
+        String password = UserCodec.readString(record);
+        return new User(username, password, LocalDate.ofEpochDay(record.getInt()), ssn);
+    }
+
+    private ByteBuffer slab(long address) {
+        return slabs.get((int) (address >>> 32));
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Bytes taken by a length prefixed field, refusing a field whose length does not fit the short
+     * prefix before anything of the record is written.
+     */
+    private static int fieldBytes(byte[] bytes) {
+        checkLength(bytes);
+        return Short.BYTES + bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        checkLength(bytes);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void checkLength(byte[] bytes) {
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new ServerException("Off heap field of " + bytes.length + " bytes is longer than "
+                    + Short.MAX_VALUE, ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+}
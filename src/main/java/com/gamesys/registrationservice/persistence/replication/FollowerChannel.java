@@ -0,0 +1,193 @@
+package com.gamesys.registrationservice.persistence.replication;
+
+import com.gamesys.registrationservice.domain.FollowerStatus;
+import com.gamesys.registrationservice.persistence.log.Mutation;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leader end of one follower connection. A sender thread sends the snapshot and then the queued
+ * mutations, a reader thread takes the follower's acknowledgements.
+ *
+ * Mutations logged while the follower is slow wait in a bounded queue; a follower that falls further
+ * behind than the queue is disconnected and starts over with a new snapshot when it reconnects.
+ */
+
+@Slf4j
+final class FollowerChannel implements AutoCloseable {
+
+    private static final int MAX_FRAMES_PER_FLUSH = 1024;
+
+    private final Socket socket;
+    private final String address;
+    private final ReplicationLog replicationLog;
+    private final Replicable repository;
+    private final long heartbeatMillis;
+    private final BlockingQueue<Shipped> queue;
+    private volatile long ackedLsn = -1;
+    private volatile long snapshotLsn = Long.MAX_VALUE;
+    private volatile boolean closed;
+
+    FollowerChannel(Socket socket, ReplicationLog replicationLog, Replicable repository, long heartbeatMillis,
+                    int maxQueued) {
+        this.socket = socket;
+        this.address = socket.getRemoteSocketAddress().toString();
+        this.replicationLog = replicationLog;
+        this.repository = repository;
+        this.heartbeatMillis = heartbeatMillis;
+        this.queue = new ArrayBlockingQueue<>(maxQueued);
+    }
+
+    void start() {
+        Thread sender = new Thread(this::send, "replication-sender-" + address);
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Called with the log's append lock held, so it must not block.
+     */
+    void ship(long lsn, Mutation mutation) {
+        if (!queue.offer(new Shipped(lsn, mutation))) {
+            log.warn("Follower {} is more than {} mutations behind, disconnecting it", address, queue.size());
+            close();
+        }
+    }
+
+    long ackedLsn() {
+        return ackedLsn;
+    }
+
+    boolean isSynced() {
+        return ackedLsn >= snapshotLsn;
+    }
+
+    FollowerStatus status(long lastLsn) {
+        return new FollowerStatus(address, isSynced(), Math.max(0, ackedLsn), isSynced() ? lastLsn - ackedLsn : lastLsn);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        replicationLog.detach(this);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Closing follower {} failed", address, e);
+        }
+    }
+
+    private void send() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            if (in.readInt() != ReplicationProtocol.MAGIC) {
+                throw new IOException("Not a replication follower");
+            }
+            out.writeInt(ReplicationProtocol.MAGIC);
+            long start = System.nanoTime();
+            long lsn = replicationLog.attach(this);
+            long[] users = {0};
+            try {
+                repository.forEachUser((key, user) -> {
+                    try {
+                        out.writeByte(ReplicationProtocol.SNAPSHOT_USER);
+                        out.writeUTF(key);
+                        ReplicationProtocol.writeUser(user, out);
+                        users[0]++;
+                    } catch (IOException e) {
+                        throw new SnapshotAborted(e);
+                    }
+                });
+            } catch (SnapshotAborted e) {
+                throw e.getCause();
+            }
+            out.writeByte(ReplicationProtocol.SNAPSHOT_END);
+            out.writeLong(lsn);
+            out.flush();
+            snapshotLsn = lsn;
+            log.info("Sent snapshot of {} users at lsn {} to follower {} in {} ms", users[0], lsn, address,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            Thread reader = new Thread(() -> acknowledge(in), "replication-acks-" + address);
+            reader.setDaemon(true);
+            reader.start();
+            stream(out);
+        } catch (IOException | InterruptedException e) {
+            if (!closed) {
+                log.warn("Replication to follower {} stopped : {}", address, e.toString());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void stream(DataOutputStream out) throws IOException, InterruptedException {
+        while (!closed) {
+            Shipped shipped = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+            if (shipped == null) {
+                out.writeByte(ReplicationProtocol.HEARTBEAT);
+                out.writeLong(replicationLog.lastLsn());
+                out.flush();
+                continue;
+            }
+            int frames = 0;
+            do {
+                out.writeByte(ReplicationProtocol.MUTATION);
+                out.writeLong(shipped.lsn);
+                out.writeUTF(shipped.mutation.getKey());
+                ReplicationProtocol.writeUser(shipped.mutation.getUser(), out);
+            } while (++frames < MAX_FRAMES_PER_FLUSH && (shipped = queue.poll()) != null);
+            out.flush();
+        }
+    }
+
+    private void acknowledge(DataInputStream in) {
+        try {
+            while (!closed) {
+                ackedLsn = in.readLong();
+                replicationLog.acknowledged();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.warn("Follower {} disconnected : {}", address, e.toString());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private static final class Shipped {
+
+        private final long lsn;
+        private final Mutation mutation;
+
+        private Shipped(long lsn, Mutation mutation) {
+            this.lsn = lsn;
+            this.mutation = mutation;
+        }
+    }
+
+    private static final class SnapshotAborted extends RuntimeException {
+
+        private SnapshotAborted(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.gamesys.registrationservice.persistence.replication;
+
+import com.gamesys.registrationservice.domain.User;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Repository whose content can be copied to a follower and rebuilt there.
+ */
+public interface Replicable {
+
+    /**
+     * Visits every user, without stopping writers, so the copy may mix states of a key around
+     * concurrent writes; the mutations logged after the scan started set them right.
+     */
+    void forEachUser(BiConsumer<String, User> consumer);
+
+    /**
+     * Sets the user of a key as the leader has it, null removing it.
+     */
+    void applyReplicated(String key, User user);
+}
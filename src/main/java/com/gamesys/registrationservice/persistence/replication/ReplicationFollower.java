@@ -0,0 +1,201 @@
+package com.gamesys.registrationservice.persistence.replication;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ForbiddenException;
+import com.gamesys.registrationservice.domain.ReplicationStatus;
+import com.gamesys.registrationservice.persistence.log.Mutation;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a read only copy of the leader's users: connects to the leader's replication port, loads
+ * its snapshot, applies the mutations that follow and acknowledges the last applied lsn after each
+ * run of frames. A lost connection is retried, and every connection starts from a fresh snapshot;
+ * users the new snapshot doesn't have are dropped once it is loaded.
+ *
+ * Local writes are refused by {@link #READ_ONLY}, the follower's mutation log.
+ */
+
+@Slf4j
+public class ReplicationFollower implements ReplicationNode, AutoCloseable {
+
+    /**
+     * Log of a follower's repository, which refuses every write.
+     */
+    public static final MutationLog READ_ONLY = new MutationLog() {
+        @Override
+        public long append(Mutation mutation) {
+            throw new ForbiddenException("Writes are served by the replication leader", ErrorEnum.API_ERROR_READ_ONLY_REPLICA);
+        }
+
+        @Override
+        public void awaitDurable(long lsn) {
+        }
+
+        @Override
+        public void replay(long afterLsn, Consumer<Mutation> consumer) {
+        }
+
+        @Override
+        public long lastLsn() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private static final long MISSED_HEARTBEATS = 5;
+
+    private final String host;
+    private final int port;
+    private final Replicable repository;
+    private final long heartbeatMillis;
+    private final long retryMillis;
+    private final Thread worker;
+    private volatile Socket socket;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile long appliedLsn;
+    private volatile long leaderLsn;
+    private volatile long leaderHeardAt = System.currentTimeMillis();
+
+    public ReplicationFollower(String host, int port, Replicable repository, long heartbeatMillis, long retryMillis) {
+        this.host = host;
+        this.port = port;
+        this.repository = repository;
+        this.heartbeatMillis = heartbeatMillis;
+        this.retryMillis = retryMillis;
+        this.worker = new Thread(this::run, "replication-follower");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public ReplicationStatus getStatus() {
+        long lag = Math.max(0, leaderLsn - appliedLsn);
+        long lagMillis = lag == 0 && connected ? 0 : System.currentTimeMillis() - leaderHeardAt;
+        return new ReplicationStatus("follower", connected, appliedLsn, leaderLsn, lag, lagMillis, 0,
+                Collections.emptyList());
+    }
+
+    /**
+     * @return true once the follower is connected and applied the leader's lsn as of the call
+     */
+    public boolean isCaughtUp(long lsn) {
+        return connected && appliedLsn >= lsn;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.debug("Closing the leader connection failed", e);
+            }
+        }
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (!closed) {
+            try (Socket leader = new Socket()) {
+                socket = leader;
+                leader.connect(new InetSocketAddress(host, port), (int) (MISSED_HEARTBEATS * heartbeatMillis));
+                leader.setTcpNoDelay(true);
+                leader.setSoTimeout((int) (MISSED_HEARTBEATS * heartbeatMillis));
+                follow(leader);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Replication from leader {}:{} stopped : {}", host, port, e.toString());
+                }
+            } finally {
+                connected = false;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(Socket leader) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(leader.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(leader.getOutputStream()));
+        out.writeInt(ReplicationProtocol.MAGIC);
+        out.flush();
+        if (in.readInt() != ReplicationProtocol.MAGIC) {
+            throw new IOException("Not a replication leader");
+        }
+        Set<String> snapshotKeys = new HashSet<>();
+        long acked = -1;
+        while (!closed) {
+            byte type = in.readByte();
+            leaderHeardAt = System.currentTimeMillis();
+            switch (type) {
+                case ReplicationProtocol.SNAPSHOT_USER:
+                    String key = in.readUTF();
+                    repository.applyReplicated(key, ReplicationProtocol.readUser(in));
+                    snapshotKeys.add(key);
+                    break;
+                case ReplicationProtocol.SNAPSHOT_END:
+                    long lsn = in.readLong();
+                    dropMissing(snapshotKeys);
+                    snapshotKeys = null;
+                    appliedLsn = lsn;
+                    leaderLsn = lsn;
+                    connected = true;
+                    log.info("Loaded the leader's snapshot at lsn {}", lsn);
+                    break;
+                case ReplicationProtocol.MUTATION:
+                    long mutationLsn = in.readLong();
+                    repository.applyReplicated(in.readUTF(), ReplicationProtocol.readUser(in));
+                    appliedLsn = mutationLsn;
+                    leaderLsn = Math.max(leaderLsn, mutationLsn);
+                    break;
+                case ReplicationProtocol.HEARTBEAT:
+                    leaderLsn = in.readLong();
+                    break;
+                default:
+                    throw new IOException("Unknown replication frame " + type);
+            }
+            if (connected && appliedLsn != acked && in.available() == 0) {
+                acked = appliedLsn;
+                out.writeLong(acked);
+                out.flush();
+            }
+        }
+    }
+
+    private void dropMissing(Set<String> snapshotKeys) {
+        List<String> missing = new ArrayList<>();
+        repository.forEachUser((key, user) -> {
+            if (!snapshotKeys.contains(key)) {
+                missing.add(key);
+            }
+        });
+        for (String key : missing) {
+            repository.applyReplicated(key, null);
+        }
+    }
+}
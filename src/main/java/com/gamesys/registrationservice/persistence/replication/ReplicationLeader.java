@@ -0,0 +1,88 @@
+package com.gamesys.registrationservice.persistence.replication;
+
+import com.gamesys.registrationservice.domain.FollowerStatus;
+import com.gamesys.registrationservice.domain.ReplicationStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accepts follower connections on the replication port and ships the {@link ReplicationLog} to each.
+ */
+
+@Slf4j
+public class ReplicationLeader implements ReplicationNode, AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ReplicationLog replicationLog;
+    private final Replicable repository;
+    private final long heartbeatMillis;
+    private final int maxQueued;
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * @param port replication port, 0 for any free port
+     */
+    public ReplicationLeader(int port, ReplicationLog replicationLog, Replicable repository, long heartbeatMillis,
+                             int maxQueued) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(port));
+        this.replicationLog = replicationLog;
+        this.repository = repository;
+        this.heartbeatMillis = heartbeatMillis;
+        this.maxQueued = maxQueued;
+        this.acceptor = new Thread(this::accept, "replication-leader");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+        log.info("Replication leader listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public ReplicationStatus getStatus() {
+        long lsn = replicationLog.lastLsn();
+        List<FollowerStatus> followers = new ArrayList<>();
+        for (FollowerChannel follower : replicationLog.followers()) {
+            followers.add(follower.status(lsn));
+        }
+        return new ReplicationStatus("leader", true, lsn, lsn, 0, 0, replicationLog.syncTimeouts(), followers);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.debug("Closing replication port failed", e);
+        }
+        for (FollowerChannel follower : replicationLog.followers()) {
+            follower.close();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                log.info("Follower connected from {}", socket.getRemoteSocketAddress());
+                new FollowerChannel(socket, replicationLog, repository, heartbeatMillis, maxQueued).start();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Accepting a follower failed : {}", e.toString());
+                }
+            }
+        }
+    }
+}
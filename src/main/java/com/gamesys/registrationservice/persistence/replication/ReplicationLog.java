@@ -0,0 +1,156 @@
+package com.gamesys.registrationservice.persistence.replication;
+
+import com.gamesys.registrationservice.persistence.log.Mutation;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Leader side {@link MutationLog}: logs every mutation to the wrapped log and queues it for each
+ * connected follower under the same lsn.
+ *
+ * With {@link AckMode#SYNC} awaitDurable also waits until syncFollowers followers applied the
+ * mutation, for at most the sync timeout. While fewer followers than that are connected and synced
+ * writes don't wait at all, like semi synchronous replication, and waits that time out are counted.
+ */
+public class ReplicationLog implements MutationLog {
+
+    public enum AckMode { ASYNC, SYNC }
+
+    private final MutationLog delegate;
+    private final AckMode ackMode;
+    private final int syncFollowers;
+    private final long syncTimeoutNanos;
+    private final List<FollowerChannel> followers = new CopyOnWriteArrayList<>();
+    private final Object appendLock = new Object();
+    private final Object acks = new Object();
+    private final LongAdder syncTimeouts = new LongAdder();
+    private long lsn;
+
+    public ReplicationLog(MutationLog delegate, AckMode ackMode, int syncFollowers, long syncTimeoutMillis) {
+        this.delegate = delegate;
+        this.ackMode = ackMode;
+        this.syncFollowers = Math.max(1, syncFollowers);
+        this.syncTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(syncTimeoutMillis);
+        this.lsn = delegate.lastLsn();
+    }
+
+    /**
+     * Numbers mutations itself when the wrapped log doesn't keep any.
+     */
+    @Override
+    public long append(Mutation mutation) {
+        synchronized (appendLock) {
+            long logged = delegate.append(mutation);
+            lsn = logged > 0 ? logged : lsn + 1;
+            for (FollowerChannel follower : followers) {
+                follower.ship(lsn, mutation);
+            }
+            return lsn;
+        }
+    }
+
+    @Override
+    public void awaitDurable(long lsn) {
+        delegate.awaitDurable(lsn);
+        if (ackMode == AckMode.SYNC && synced() >= syncFollowers) {
+            awaitAcknowledged(lsn);
+        }
+    }
+
+    @Override
+    public void replay(long afterLsn, Consumer<Mutation> consumer) {
+        delegate.replay(afterLsn, consumer);
+    }
+
+    @Override
+    public long lastLsn() {
+        synchronized (appendLock) {
+            return lsn;
+        }
+    }
+
+    @Override
+    public void truncate(long lsn) {
+        delegate.truncate(lsn);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    List<FollowerChannel> followers() {
+        return followers;
+    }
+
+    public long syncTimeouts() {
+        return syncTimeouts.sum();
+    }
+
+    /**
+     * Starts shipping mutations to the follower.
+     *
+     * @return the lsn of the last mutation the follower won't receive, its snapshot must cover it
+     */
+    long attach(FollowerChannel follower) {
+        synchronized (appendLock) {
+            followers.add(follower);
+            return lsn;
+        }
+    }
+
+    void detach(FollowerChannel follower) {
+        followers.remove(follower);
+        acknowledged();
+    }
+
+    void acknowledged() {
+        synchronized (acks) {
+            acks.notifyAll();
+        }
+    }
+
+    private void awaitAcknowledged(long lsn) {
+        long deadline = System.nanoTime() + syncTimeoutNanos;
+        synchronized (acks) {
+            while (acknowledgedBy(lsn) < syncFollowers) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    syncTimeouts.increment();
+                    return;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(acks, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int acknowledgedBy(long lsn) {
+        int count = 0;
+        for (FollowerChannel follower : followers) {
+            if (follower.ackedLsn() >= lsn) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int synced() {
+        int count = 0;
+        for (FollowerChannel follower : followers) {
+            if (follower.isSynced()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
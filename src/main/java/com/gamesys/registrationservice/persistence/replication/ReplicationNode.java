@@ -0,0 +1,11 @@
+package com.gamesys.registrationservice.persistence.replication;
+
+import com.gamesys.registrationservice.domain.ReplicationStatus;
+
+/**
+ * Leader or follower side of replication, served at GET /admin/replication.
+ */
+public interface ReplicationNode {
+
+    ReplicationStatus getStatus();
+}
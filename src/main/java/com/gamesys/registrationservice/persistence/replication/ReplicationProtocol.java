@@ -0,0 +1,57 @@
+package com.gamesys.registrationservice.persistence.replication;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.codec.UserCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Frames exchanged over a replication connection.
+ *
+ * The follower opens with MAGIC and the leader answers MAGIC. The leader then sends every user as a
+ * SNAPSHOT_USER frame, one SNAPSHOT_END frame with the lsn the snapshot was started at, and from then
+ * on a MUTATION frame per logged write, with a HEARTBEAT carrying its last lsn when idle. The follower
+ * answers with the lsn it last applied, as a plain long, after each run of frames.
+ *
+ * SNAPSHOT_USER : [byte type][utf key][user]
+ * SNAPSHOT_END  : [byte type][long lsn]
+ * MUTATION      : [byte type][long lsn][utf key][user]
+ * HEARTBEAT     : [byte type][long lsn]
+ * user          : [int length, -1 when removed][{@link UserCodec} bytes]
+ */
+final class ReplicationProtocol {
+
+    static final int MAGIC = 0x52504C31;
+
+    static final byte SNAPSHOT_USER = 1;
+    static final byte SNAPSHOT_END = 2;
+    static final byte MUTATION = 3;
+    static final byte HEARTBEAT = 4;
+
+    private ReplicationProtocol() {
+    }
+
+    static void writeUser(User user, DataOutputStream out) throws IOException {
+        if (user == null) {
+            out.writeInt(-1);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(UserCodec.encodedSize(user));
+        UserCodec.encode(user, buffer);
+        out.writeInt(buffer.capacity());
+        out.write(buffer.array());
+    }
+
+    static User readUser(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return UserCodec.decode(ByteBuffer.wrap(bytes));
+    }
+}
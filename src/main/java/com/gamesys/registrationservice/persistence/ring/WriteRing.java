@@ -0,0 +1,228 @@
+package com.gamesys.registrationservice.persistence.ring;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.log.Mutation;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated ring of write slots drained by a single writer thread, in the style of the LMAX
+ * Disruptor.
+ *
+ * A producer claims the next sequence with one atomic increment, waits while the ring is full, fills
+ * the slot and publishes it by writing the slot's sequence. The writer applies every published slot
+ * in sequence order with {@link Handler#apply}, then calls {@link Handler#endOfBatch} once for the run
+ * it just applied, so durability is paid once per batch, and only then completes the callers'
+ * futures. Writes published while a batch is being made durable form the next batch, so batches grow
+ * with the load.
+ *
+ * An idle writer parks and the producer publishing the next write unparks it.
+ */
+
+@Slf4j
+public class WriteRing implements AutoCloseable {
+
+    public static final long REJECTED = -1;
+
+    private static final int SPINS = 64;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Applies the writes on the writer thread.
+     */
+    public interface Handler {
+
+        /**
+         * @return the write's log sequence number, or {@link #REJECTED} when it was refused
+         */
+        long apply(Mutation.Type type, String key, User user);
+
+        /**
+         * Called after each run of applied writes with the highest sequence number of the run, the
+         * futures of the run complete when it returns.
+         */
+        void endOfBatch(long lastLsn);
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final int maxBatch;
+    private final Handler handler;
+    private final Thread writer;
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private volatile long consumed;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity slots in the ring, rounded up to a power of two
+     */
+    public WriteRing(String name, int capacity, int maxBatch, Handler handler) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i - size);
+        }
+        this.mask = size - 1;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.handler = handler;
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return a future completing with true once the write is applied and durable, false when the
+     * handler refused it
+     */
+    public CompletableFuture<Boolean> publish(Mutation.Type type, String key, User user) {
+        if (closed) {
+            throw new ServerException("Write ring closed", ErrorEnum.STORAGE_EXCEPTION);
+        }
+        long sequence = claimed.getAndIncrement();
+        while (sequence - slots.length >= consumed) {
+            wakeWriter();
+            LockSupport.parkNanos(this, PARK_NANOS / 100);
+        }
+        Slot slot = slots[(int) sequence & mask];
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        slot.type = type;
+        slot.key = key;
+        slot.user = user;
+        slot.result = result;
+        slot.sequence = sequence;
+        wakeWriter();
+        return result;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * Applies the writes already published and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeWriter() {
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void run() {
+        long next = 0;
+        while (true) {
+            if (!awaitPublished(next)) {
+                return;
+            }
+            long end = next + 1;
+            while (end - next < maxBatch && slots[(int) end & mask].sequence == end) {
+                end++;
+            }
+            execute(next, end);
+            next = end;
+            consumed = next;
+        }
+    }
+
+    /**
+     * @return false once the ring is closed and every claimed write was applied
+     */
+    private boolean awaitPublished(long sequence) {
+        Slot slot = slots[(int) sequence & mask];
+        int spins = 0;
+        while (slot.sequence != sequence) {
+            if (closed && claimed.get() == sequence) {
+                return false;
+            }
+            if (spins++ < SPINS) {
+                Thread.yield();
+                continue;
+            }
+            sleeping = true;
+            if (slot.sequence != sequence) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            sleeping = false;
+        }
+        return true;
+    }
+
+    private void execute(long from, long to) {
+        long lastLsn = REJECTED;
+        for (long sequence = from; sequence < to; sequence++) {
+            Slot slot = slots[(int) sequence & mask];
+            try {
+                slot.lsn = handler.apply(slot.type, slot.key, slot.user);
+                lastLsn = Math.max(lastLsn, slot.lsn);
+            } catch (RuntimeException e) {
+                slot.lsn = REJECTED;
+                slot.result.completeExceptionally(e);
+            }
+        }
+        RuntimeException failure = null;
+        try {
+            handler.endOfBatch(lastLsn);
+        } catch (RuntimeException e) {
+            log.error("Write batch of {} failed", to - from, e);
+            failure = e;
+        }
+        batches.increment();
+        writes.add(to - from);
+        for (long sequence = from; sequence < to; sequence++) {
+            Slot slot = slots[(int) sequence & mask];
+            if (failure != null) {
+                slot.result.completeExceptionally(failure);
+            } else {
+                slot.result.complete(slot.lsn != REJECTED);
+            }
+            slot.key = null;
+            slot.user = null;
+            slot.result = null;
+        }
+    }
+
+    private static final class Slot {
+
+        private volatile long sequence;
+        private Mutation.Type type;
+        private String key;
+        private User user;
+        private CompletableFuture<Boolean> result;
+        private long lsn;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
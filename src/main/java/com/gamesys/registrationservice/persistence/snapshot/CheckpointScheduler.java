@@ -0,0 +1,54 @@
+package com.gamesys.registrationservice.persistence.snapshot;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs periodic checkpoints in the background and a last one on shutdown, so a restart only has
+ * to replay the log written since the newest snapshot.
+ */
+@Slf4j
+public class CheckpointScheduler implements AutoCloseable {
+
+    private final Checkpointable checkpointable;
+    private final ScheduledExecutorService executor;
+
+    public CheckpointScheduler(Checkpointable checkpointable, long intervalSeconds) {
+        this.checkpointable = checkpointable;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (checkpointable != null && intervalSeconds > 0) {
+            executor.scheduleWithFixedDelay(this::checkpoint, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted waiting for the running checkpoint, skipping the last one");
+            Thread.currentThread().interrupt();
+            return;
+        }
+        checkpoint();
+    }
+
+    private void checkpoint() {
+        if (checkpointable == null) {
+            return;
+        }
+        try {
+            checkpointable.checkpoint();
+        } catch (RuntimeException e) {
+            log.error("Checkpoint failed", e);
+        }
+    }
+}
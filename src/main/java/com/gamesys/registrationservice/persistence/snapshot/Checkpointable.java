@@ -0,0 +1,12 @@
+package com.gamesys.registrationservice.persistence.snapshot;
+
+/**
+ * A repository able to snapshot its contents and release the log covered by the snapshot.
+ */
+public interface Checkpointable {
+
+    /**
+     * @return the lsn covered by the newest snapshot
+     */
+    long checkpoint();
+}
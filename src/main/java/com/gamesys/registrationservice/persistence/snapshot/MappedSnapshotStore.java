@@ -0,0 +1,188 @@
+package com.gamesys.registrationservice.persistence.snapshot;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.codec.UserCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Binary snapshot files read back through {@link MappedByteBuffer}.
+ *
+ * File layout : [int magic][int version][long lsn][long count] followed by count records of
+ * [byte key flag][key if the flag is set][user encoded with {@link UserCodec}]. The key is only
+ * written when it differs from the user's SSN, which is never the case for UserService.
+ *
+ * A snapshot is written to a temporary file, forced and renamed, and the directory is forced so
+ * the rename is durable before the log behind it is truncated; a crash leaves either the old or
+ * the new snapshot. Older snapshots are deleted once the new one is in place.
+ */
+@Slf4j
+public class MappedSnapshotStore implements SnapshotStore {
+
+    private static final int MAGIC = 0x55534E50;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int COUNT_OFFSET = 2 * Integer.BYTES + Long.BYTES;
+
+    private static final String PREFIX = "users-";
+    private static final String SUFFIX = ".snap";
+
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final long MAP_WINDOW_BYTES = 1L << 30;
+    private static final int MAX_RECORD_BYTES = 1 + 4 * (Short.BYTES + Short.MAX_VALUE) + Integer.BYTES;
+
+    private final Path directory;
+
+    public MappedSnapshotStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+    }
+
+    @Override
+    public long load(BiConsumer<String, User> consumer) {
+        try {
+            List<Path> snapshots = snapshots();
+            if (snapshots.isEmpty()) {
+                return 0;
+            }
+            return load(snapshots.get(snapshots.size() - 1), consumer);
+        } catch (IOException e) {
+            throw new ServerException("Snapshot load failed : " + e.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    @Override
+    public void write(long lsn, Iterable<Map.Entry<String, User>> users) {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, lsn, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        long start = System.nanoTime();
+        try {
+            long count = 0;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(lsn).putLong(0);
+                for (Map.Entry<String, User> entry : users) {
+                    User user = entry.getValue();
+                    boolean explicitKey = !entry.getKey().equals(user.getSsn());
+                    int size = 1 + UserCodec.encodedSize(user)
+                            + (explicitKey ? Short.BYTES + UserCodec.utf8Length(entry.getKey()) : 0);
+                    if (buffer.remaining() < size) {
+                        drain(buffer, channel);
+                    }
+                    buffer.put((byte) (explicitKey ? 1 : 0));
+                    if (explicitKey) {
+                        UserCodec.writeString(entry.getKey(), buffer);
+                    }
+                    UserCodec.encode(user, buffer);
+                    count++;
+                }
+                drain(buffer, channel);
+                buffer.putLong(count).flip();
+                channel.write(buffer, COUNT_OFFSET);
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+            long bytes = Files.size(target);
+            log.info("Snapshot {} written : {} users, {} bytes, {} bytes/user in {} ms", target.getFileName(), count,
+                    bytes, count == 0 ? 0 : bytes / count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            deleteOlderThan(target);
+        } catch (IOException e) {
+            throw new ServerException("Snapshot write failed : " + e.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    private long load(Path snapshot, BiConsumer<String, User> consumer) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a snapshot file " + snapshot);
+            }
+            long lsn = header.getLong();
+            long count = header.getLong();
+
+            long windowStart = HEADER_BYTES;
+            long loaded = 0;
+            while (loaded < count) {
+                long windowLength = Math.min(MAP_WINDOW_BYTES, size - windowStart);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+                boolean lastWindow = windowStart + windowLength == size;
+                while (loaded < count && (lastWindow || window.remaining() >= MAX_RECORD_BYTES)) {
+                    String key = window.get() == 1 ? UserCodec.readString(window) : null;
+                    User user = UserCodec.decode(window);
+                    consumer.accept(key == null ? user.getSsn() : key, user);
+                    loaded++;
+                }
+                windowStart += window.position();
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("Snapshot {} loaded : {} users, {} bytes, {} bytes/user in {} ms", snapshot.getFileName(), count,
+                    size, count == 0 ? 0 : size / count, millis);
+            return lsn;
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Forces the rename itself to disk, so the log is never truncated behind a snapshot a crash could
+     * still lose. Platforms that cannot open a directory as a channel, such as Windows, skip it.
+     */
+    private void forceDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            log.debug("Snapshot directory {} cannot be forced : {}", directory, e.getMessage());
+            return;
+        }
+        try (FileChannel opened = channel) {
+            opened.force(true);
+        }
+    }
+
+    private void deleteOlderThan(Path newest) throws IOException {
+        for (Path snapshot : snapshots()) {
+            if (snapshot.compareTo(newest) < 0) {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                snapshots.add(path);
+            }
+        }
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+}
@@ -0,0 +1,36 @@
+package com.gamesys.registrationservice.persistence.snapshot;
+
+import com.gamesys.registrationservice.domain.User;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Point in time copies of the repository contents. A snapshot taken at lsn L holds at least every
+ * mutation up to L, so recovery loads it and replays the log after L only.
+ */
+public interface SnapshotStore {
+
+    /**
+     * Store used when durability is disabled, nothing is written and nothing is loaded.
+     */
+    SnapshotStore NONE = new SnapshotStore() {
+        @Override
+        public long load(BiConsumer<String, User> consumer) {
+            return 0;
+        }
+
+        @Override
+        public void write(long lsn, Iterable<Map.Entry<String, User>> users) {
+        }
+    };
+
+    /**
+     * Feeds the newest snapshot to the consumer.
+     *
+     * @return the lsn the snapshot was taken at, 0 when there is no snapshot
+     */
+    long load(BiConsumer<String, User> consumer);
+
+    void write(long lsn, Iterable<Map.Entry<String, User>> users);
+}
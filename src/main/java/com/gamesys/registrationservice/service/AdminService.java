@@ -0,0 +1,155 @@
+package com.gamesys.registrationservice.service;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.NotFoundException;
+import com.gamesys.registrationservice.domain.CacheStatistics;
+import com.gamesys.registrationservice.domain.ClusterStatus;
+import com.gamesys.registrationservice.domain.ExclusionCacheStatistics;
+import com.gamesys.registrationservice.domain.ExclusionClientStatus;
+import com.gamesys.registrationservice.domain.ExclusionStatus;
+import com.gamesys.registrationservice.domain.ExportStatus;
+import com.gamesys.registrationservice.domain.ImportStatus;
+import com.gamesys.registrationservice.domain.ReplicationStatus;
+import com.gamesys.registrationservice.domain.ShardStatistics;
+import com.gamesys.registrationservice.persistence.cache.CachingUserRepository;
+import com.gamesys.registrationservice.persistence.cluster.ClusterUserRepository;
+import com.gamesys.registrationservice.persistence.impl.ShardedUserRepository;
+import com.gamesys.registrationservice.persistence.replication.ReplicationNode;
+import com.gamesys.registrationservice.service.exclusion.CachingExclusionService;
+import com.gamesys.registrationservice.service.exclusion.FileExclusionService;
+import com.gamesys.registrationservice.service.exclusion.ResilientExclusionService;
+import com.gamesys.registrationservice.service.exporter.BulkExporter;
+import com.gamesys.registrationservice.service.importer.BulkImporter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.nio.file.Path;
+import java.util.List;
+
+
+/**
+ * This service is offer the operational tasks of the node: statistics and status of the optional
+ * storage and exclusion features, bulk imports and exports, and cluster membership.
+ *
+ * A feature that is not enabled has no bean, and asking for its status throws not found.
+ */
+
+@Service
+public class AdminService
+{
+
+    @Inject
+    protected ObjectProvider<ShardedUserRepository> shardedUserRepository;
+
+    @Inject
+    protected ObjectProvider<CachingUserRepository> cachingUserRepository;
+
+    @Inject
+    protected ObjectProvider<ReplicationNode> replicationNode;
+
+    @Inject
+    protected ObjectProvider<ClusterUserRepository> clusterUserRepository;
+
+    @Inject
+    protected ObjectProvider<FileExclusionService> fileExclusionService;
+
+    @Inject
+    protected ObjectProvider<CachingExclusionService> cachingExclusionService;
+
+    @Inject
+    protected ObjectProvider<ResilientExclusionService> resilientExclusionService;
+
+    @Inject
+    protected BulkImporter bulkImporter;
+
+    @Inject
+    protected BulkExporter bulkExporter;
+
+    public List<ShardStatistics> getShardStatistics() {
+        ShardedUserRepository sharded = shardedUserRepository.getIfAvailable();
+        if (sharded == null) {
+            throw new NotFoundException("Sharded repository not enabled", ErrorEnum.NO_FOUND_EXCEPTION);
+        }
+        return sharded.getShardStatistics();
+    }
+
+    public CacheStatistics getCacheStatistics() {
+        CachingUserRepository cache = cachingUserRepository.getIfAvailable();
+        if (cache == null) {
+            throw new NotFoundException("User cache not enabled", ErrorEnum.NO_FOUND_EXCEPTION);
+        }
+        return cache.getStatistics();
+    }
+
+    public ReplicationStatus getReplicationStatus() {
+        ReplicationNode node = replicationNode.getIfAvailable();
+        if (node == null) {
+            throw new NotFoundException("Replication not enabled", ErrorEnum.NO_FOUND_EXCEPTION);
+        }
+        return node.getStatus();
+    }
+
+    public ImportStatus startImport(String file) {
+        return bulkImporter.start(file);
+    }
+
+    public ImportStatus getImportStatus() {
+        return bulkImporter.getStatus()
+                .orElseThrow(() -> new NotFoundException("No import started", ErrorEnum.NO_FOUND_EXCEPTION));
+    }
+
+    public ExportStatus startExport() {
+        return bulkExporter.start();
+    }
+
+    public ExportStatus getExportStatus() {
+        return bulkExporter.getStatus()
+                .orElseThrow(() -> new NotFoundException("No export started", ErrorEnum.NO_FOUND_EXCEPTION));
+    }
+
+    public Path getExportSegment(String id, String name) {
+        return bulkExporter.segment(id, name);
+    }
+
+    public ExclusionStatus getExclusionStatus() {
+        FileExclusionService exclusionList = fileExclusionService.getIfAvailable();
+        if (exclusionList == null) {
+            throw new NotFoundException("Exclusion list not enabled", ErrorEnum.NO_FOUND_EXCEPTION);
+        }
+        return exclusionList.getStatus();
+    }
+
+    public ExclusionCacheStatistics getExclusionCacheStatistics() {
+        CachingExclusionService cache = cachingExclusionService.getIfAvailable();
+        if (cache == null) {
+            throw new NotFoundException("Exclusion cache not enabled", ErrorEnum.NO_FOUND_EXCEPTION);
+        }
+        return cache.getStatistics();
+    }
+
+    public ExclusionClientStatus getExclusionClientStatus() {
+        ResilientExclusionService client = resilientExclusionService.getIfAvailable();
+        if (client == null) {
+            throw new NotFoundException("Exclusion client resilience not enabled", ErrorEnum.NO_FOUND_EXCEPTION);
+        }
+        return client.getStatus();
+    }
+
+    public ClusterStatus getClusterStatus() {
+        return cluster().getStatus();
+    }
+
+    public ClusterStatus addClusterNode(String node) {
+        return cluster().addNode(node);
+    }
+
+    private ClusterUserRepository cluster() {
+        ClusterUserRepository cluster = clusterUserRepository.getIfAvailable();
+        if (cluster == null) {
+            throw new NotFoundException("Cluster not enabled", ErrorEnum.NO_FOUND_EXCEPTION);
+        }
+        return cluster;
+    }
+
+}
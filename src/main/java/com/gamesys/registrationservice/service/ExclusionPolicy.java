@@ -0,0 +1,30 @@
+package com.gamesys.registrationservice.service;
+
+import com.gamesys.registrationservice.api.exception.ExclusionUnavailableException;
+
+/**
+ * How an exclusion check is answered when the exclusion service can't be asked, shared by the
+ * registration endpoints and the bulk import.
+ */
+public final class ExclusionPolicy {
+
+    private ExclusionPolicy() {
+    }
+
+    /**
+     * A user whose check couldn't be made goes through unchecked only when the exclusion client fails open.
+     *
+     * @return true when the user is black listed
+     * @throws ExclusionUnavailableException when the check couldn't be made and the client fails closed
+     */
+    public static boolean isBlackListed(ExclusionService exclusionService, String dob, String ssn) {
+        try {
+            return !exclusionService.validate(dob, ssn);
+        } catch (ExclusionUnavailableException e) {
+            if (!e.isFailOpen()) {
+                throw e;
+            }
+            return false;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.gamesys.registrationservice.service;
 
-
 /**
  * Service to offer validation of a user against a 'blacklist'. Blacklisted users
  * fail the validation.
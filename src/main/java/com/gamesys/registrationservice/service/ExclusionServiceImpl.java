@@ -1,12 +1,14 @@
 package com.gamesys.registrationservice.service;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 /**
  * This is stub , like all dob starting with 1998 is fine.
  */
 
-@Service
+@Service("exclusionService")
+@ConditionalOnProperty(name = "registration.exclusion.type", havingValue = "stub", matchIfMissing = true)
 public class ExclusionServiceImpl implements ExclusionService {
 
     @Override
@@ -2,18 +2,32 @@ package com.gamesys.registrationservice.service;
 
 import com.gamesys.registrationservice.api.ErrorEnum;
 import com.gamesys.registrationservice.api.exception.NotFoundException;
+import com.gamesys.registrationservice.domain.ChangePage;
+import com.gamesys.registrationservice.domain.Page;
 import com.gamesys.registrationservice.domain.User;
 import com.gamesys.registrationservice.exception.ValidatorUserAlreadyExistException;
 import com.gamesys.registrationservice.exception.ValidatorUserBlackListedException;
+import com.gamesys.registrationservice.persistence.AsyncUserRepository;
 import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.changes.ChangeFeed;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 
 /**
  * This service is offer User data manipulation task.
+ *
+ * The *Async methods are the non blocking path used by the controller: storage goes through the
+ * {@link AsyncUserRepository} and the exclusion check runs on the blocking executor, and failures
+ * complete the future with the same exceptions the blocking methods throw.
  */
 
 @Service
@@ -26,21 +40,43 @@ public class UserService
     @Inject
     protected ExclusionService exclusionService;
 
+    @Inject
+    protected AsyncUserRepository asyncUserRepository;
+
+    @Inject
+    @Named("blockingExecutor")
+    protected Executor blockingExecutor;
+
+    @Inject
+    protected ObjectProvider<ChangeFeed> changeFeed;
+
     public User getUser(String key) {
          return userRepository.getUser(key).orElseThrow(() -> new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND));
     }
 
 
+    public User getUserByUsername(String username) {
+        return userRepository.getUserByUsername(username).orElseThrow(() -> new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND));
+    }
+
+    /**
+     * The repository refuses a user whose SSN or username is already registered, the SSN is checked
+     * again to report which one.
+     */
     public User addUser(User user) {
         checkBlackListed(user);
         return userRepository.addUser(user.getSsn(), user)
-                .orElseThrow(() -> new ValidatorUserAlreadyExistException("SSN", ErrorEnum.API_ERROR_USER_ALREADY_EXIST));
+                .orElseThrow(() -> userRepository.getUser(user.getSsn()).isPresent()
+                        ? new ValidatorUserAlreadyExistException("SSN", ErrorEnum.API_ERROR_USER_ALREADY_EXIST)
+                        : new ValidatorUserAlreadyExistException("USERNAME", ErrorEnum.API_ERROR_USERNAME_ALREADY_EXIST));
     }
 
     public User replaceUser(User user) {
         checkBlackListed(user);
         return userRepository.replaceUser(user.getSsn(), user)
-                .orElseThrow(() -> new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND));
+                .orElseThrow(() -> userRepository.getUser(user.getSsn()).isPresent()
+                        ? new ValidatorUserAlreadyExistException("USERNAME", ErrorEnum.API_ERROR_USERNAME_ALREADY_EXIST)
+                        : new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND));
     }
 
     public void removeUser(String key) {
@@ -49,12 +85,78 @@ public class UserService
         }
     }
 
+    public CompletableFuture<User> getUserAsync(String key) {
+        return asyncUserRepository.getUser(key).thenApply(user -> user.orElseThrow(() -> new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND)));
+    }
+
+    public CompletableFuture<User> getUserByUsernameAsync(String username) {
+        return asyncUserRepository.getUserByUsername(username).thenApply(user -> user.orElseThrow(() -> new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND)));
+    }
+
+    public CompletableFuture<User> addUserAsync(User user) {
+        return CompletableFuture.runAsync(() -> checkBlackListed(user), blockingExecutor)
+                .thenCompose(checked -> asyncUserRepository.addUser(user.getSsn(), user))
+                .thenCompose(added -> added.isPresent() ? CompletableFuture.completedFuture(added.get())
+                        : asyncUserRepository.getUser(user.getSsn()).thenApply(existing -> {
+                            throw existing.isPresent()
+                                    ? new ValidatorUserAlreadyExistException("SSN", ErrorEnum.API_ERROR_USER_ALREADY_EXIST)
+                                    : new ValidatorUserAlreadyExistException("USERNAME", ErrorEnum.API_ERROR_USERNAME_ALREADY_EXIST);
+                        }));
+    }
+
+    public CompletableFuture<User> replaceUserAsync(User user) {
+        return CompletableFuture.runAsync(() -> checkBlackListed(user), blockingExecutor)
+                .thenCompose(checked -> asyncUserRepository.replaceUser(user.getSsn(), user))
+                .thenCompose(replaced -> replaced.isPresent() ? CompletableFuture.completedFuture(replaced.get())
+                        : asyncUserRepository.getUser(user.getSsn()).thenApply(existing -> {
+                            throw existing.isPresent()
+                                    ? new ValidatorUserAlreadyExistException("USERNAME", ErrorEnum.API_ERROR_USERNAME_ALREADY_EXIST)
+                                    : new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND);
+                        }));
+    }
+
+    public CompletableFuture<Void> removeUserAsync(String key) {
+        return asyncUserRepository.removeUser(key).thenAccept(removed -> {
+            if (!removed) {
+                throw new NotFoundException("User not fount", ErrorEnum.API_ERROR_USER_NOT_FOUND);
+            }
+        });
+    }
+
+    public CompletableFuture<Page<User>> getUserPageAsync(String cursor, int limit) {
+        return asyncUserRepository.getUserPage(cursor, limit);
+    }
+
+    public CompletableFuture<Page<User>> getUsersByDobAsync(LocalDate from, LocalDate to, String cursor, int limit) {
+        return asyncUserRepository.getUsersByDob(from, to, cursor, limit);
+    }
+
     public List<User> getAllUser() {
         return userRepository.getAllUser();
     }
 
+    public Stream<User> streamAllUser() {
+        return userRepository.streamAllUser();
+    }
+
+    public Page<User> getUserPage(String cursor, int limit) {
+        return userRepository.getUserPage(cursor, limit);
+    }
+
+    public Page<User> getUsersByDob(LocalDate from, LocalDate to, String cursor, int limit) {
+        return userRepository.getUsersByDob(from, to, cursor, limit);
+    }
+
+    public ChangePage getChanges(long since, int limit) {
+        ChangeFeed feed = changeFeed.getIfAvailable();
+        if (feed == null) {
+            throw new NotFoundException("Change feed not enabled", ErrorEnum.NO_FOUND_EXCEPTION);
+        }
+        return feed.read(since, limit);
+    }
+
     private void checkBlackListed(User user) {
-        if (!exclusionService.validate(user.getDob().toString(), user.getSsn())) {
+        if (ExclusionPolicy.isBlackListed(exclusionService, user.getDob().toString(), user.getSsn())) {
             throw new ValidatorUserBlackListedException("DOB and SSN", ErrorEnum.API_ERROR_USER_BLACK_LISTED);
         }
     }
@@ -21,21 +21,19 @@ public class UserValidator
 {
 
 
-    private final String passwordPattern = "((?=.*\\d)(?=.*[A-Z]).{4,100})";
-    private final String userNamePattern = "[A-Za-z0-9]+";
+    private static final Pattern passwordPattern = Pattern.compile("((?=.*\\d)(?=.*[A-Z]).{4,100})");
+    private static final Pattern userNamePattern = Pattern.compile("[A-Za-z0-9]+");
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     public boolean validatePassword(String password)
     {
-        Pattern p = Pattern.compile(passwordPattern);
-        Matcher m = p.matcher(password);
+        Matcher m = passwordPattern.matcher(password);
         return m.matches();
     }
 
     public boolean validateUsername(String username)
     {
-        Pattern p = Pattern.compile(userNamePattern);
-        Matcher m = p.matcher(username);
+        Matcher m = userNamePattern.matcher(username);
         return m.matches();
     }
 
@@ -0,0 +1,212 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.ExclusionCheckDTO;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.service.ExclusionService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the checks of concurrent registrations to the remote exclusion service as bulk requests,
+ * enabled with registration.exclusion.batch.enabled.
+ *
+ * A collector thread takes the first pending check, then keeps collecting for at most the window or
+ * until the batch is full, like the JDBC write coalescer. Identical pairs of a batch are sent once.
+ * At most maxInFlight bulk requests run at a time; while they do, checks queue up and form bigger
+ * batches, so the number of requests stays flat as the load grows. Each caller waits for its own
+ * answer for at most the timeout.
+ */
+
+@Slf4j
+public class BatchingExclusionService implements ExclusionService, AutoCloseable {
+
+    private final RemoteExclusionService exclusionService;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final long windowNanos;
+    private final int maxBatch;
+    private final long timeoutMillis;
+    private final Semaphore inFlight;
+    private final ExecutorService senders;
+    private final Thread collector;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private volatile boolean closed;
+
+    public BatchingExclusionService(RemoteExclusionService exclusionService, long windowMicros, int maxBatch,
+                                    int maxInFlight, long timeoutMillis) {
+        this.exclusionService = exclusionService;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.timeoutMillis = timeoutMillis;
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        AtomicInteger count = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(Math.max(1, maxInFlight), task -> {
+            Thread thread = new Thread(task, "exclusion-batch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.collector = new Thread(this::run, "exclusion-batcher");
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    @Override
+    public boolean validate(String dob, String ssn) {
+        if (closed) {
+            throw new ServerException("Exclusion batcher closed", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        }
+        Pending pending = new Pending(dob, ssn);
+        queue.add(pending);
+        try {
+            return pending.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ServerException("Exclusion check failed : " + e.getCause(), ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        } catch (TimeoutException e) {
+            throw new ServerException("Exclusion check timed out after " + timeoutMillis + " ms", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerException("Exclusion check interrupted", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        }
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long checks() {
+        return checks.sum();
+    }
+
+    /**
+     * Sends the checks already queued and stops the collector thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.add(new Pending(null, null));
+        try {
+            collector.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        senders.shutdown();
+        Pending late;
+        while ((late = queue.poll()) != null) {
+            late.result.completeExceptionally(new ServerException("Exclusion batcher closed", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION));
+        }
+    }
+
+    private void run() {
+        boolean stopping = false;
+        while (!stopping) {
+            List<Pending> pending = new ArrayList<>();
+            stopping = collect(pending);
+            if (pending.isEmpty()) {
+                continue;
+            }
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopping = true;
+                inFlight.acquireUninterruptibly();
+            }
+            senders.execute(() -> {
+                try {
+                    send(pending);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true once the close marker was taken
+     */
+    private boolean collect(List<Pending> pending) {
+        long deadline = 0;
+        try {
+            while (pending.size() < maxBatch) {
+                Pending next;
+                if (pending.isEmpty()) {
+                    next = queue.take();
+                    deadline = System.nanoTime() + windowNanos;
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        return false;
+                    }
+                }
+                if (next.dob == null) {
+                    return true;
+                }
+                pending.add(next);
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    private void send(List<Pending> pending) {
+        Map<String, List<Pending>> pairs = new LinkedHashMap<>();
+        for (Pending check : pending) {
+            pairs.computeIfAbsent(check.dob + ',' + check.ssn, key -> new ArrayList<>(1)).add(check);
+        }
+        List<ExclusionCheckDTO> bulk = new ArrayList<>(pairs.size());
+        for (List<Pending> callers : pairs.values()) {
+            bulk.add(new ExclusionCheckDTO(callers.get(0).dob, callers.get(0).ssn, null));
+        }
+        batches.increment();
+        checks.add(pending.size());
+        try {
+            boolean[] valid = exclusionService.validateAll(bulk);
+            int i = 0;
+            for (List<Pending> callers : pairs.values()) {
+                for (Pending caller : callers) {
+                    caller.result.complete(valid[i]);
+                }
+                i++;
+            }
+        } catch (RuntimeException e) {
+            log.error("Exclusion batch of {} checks failed", bulk.size(), e);
+            for (Pending caller : pending) {
+                caller.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class Pending {
+
+        private final String dob;
+        private final String ssn;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Pending(String dob, String ssn) {
+            this.dob = dob;
+            this.ssn = ssn;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import java.nio.LongBuffer;
+
+/**
+ * Bloom filter over packed exclusion keys where every probe of a key falls in the same 512 bit
+ * block, one cache line, so an absent key costs a single memory access whatever the hash count.
+ * With 10 bits per key about 1% of absent keys still reach the exact set, slightly more than an
+ * unblocked filter of the same size.
+ *
+ * The words are read through a LongBuffer, a heap array while a list is built or a mapped index
+ * file once it's loaded.
+ */
+final class BlockedBloomFilter {
+
+    static final int BLOCK_WORDS = 8;
+
+    private final LongBuffer words;
+    private final int blocks;
+    private final int hashes;
+
+    BlockedBloomFilter(LongBuffer words, int hashes) {
+        this.words = words;
+        this.blocks = words.limit() / BLOCK_WORDS;
+        this.hashes = hashes;
+    }
+
+    static BlockedBloomFilter create(long keys, int bitsPerKey) {
+        long bits = Math.max(1, keys) * bitsPerKey;
+        long blocks = (bits + BLOCK_WORDS * Long.SIZE - 1) / (BLOCK_WORDS * Long.SIZE);
+        if (blocks * BLOCK_WORDS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Bloom filter of " + keys + " keys too large");
+        }
+        return new BlockedBloomFilter(LongBuffer.wrap(new long[(int) blocks * BLOCK_WORDS]), hashes(bitsPerKey));
+    }
+
+    static int hashes(int bitsPerKey) {
+        return Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * Math.log(2))));
+    }
+
+    void add(long key) {
+        long hash = mix(key);
+        int block = block(hash);
+        int h1 = (int) hash;
+        int h2 = (int) (hash * 0x9E3779B97F4A7C15L >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & 511;
+            int word = block + (bit >>> 6);
+            words.put(word, words.get(word) | 1L << bit);
+        }
+    }
+
+    boolean mightContain(long key) {
+        long hash = mix(key);
+        int block = block(hash);
+        int h1 = (int) hash;
+        int h2 = (int) (hash * 0x9E3779B97F4A7C15L >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & 511;
+            if ((words.get(block + (bit >>> 6)) & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    LongBuffer words() {
+        return words;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    long bytes() {
+        return (long) words.limit() * Long.BYTES;
+    }
+
+    private int block(long hash) {
+        return (int) (((hash >>> 32) * blocks) >>> 32) * BLOCK_WORDS;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        return key ^ (key >>> 33);
+    }
+}
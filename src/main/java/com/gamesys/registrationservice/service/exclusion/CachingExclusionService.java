@@ -0,0 +1,176 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.domain.ExclusionCacheStatistics;
+import com.gamesys.registrationservice.service.ExclusionService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the answers of another {@link ExclusionService} by (dob, ssn), enabled with
+ * registration.exclusion.cache.enabled.
+ *
+ * Passing and failing answers are kept for their own TTL, so a user added to the blacklist is
+ * refused again within the pass TTL while refusals, which rarely change, can be kept longer. The
+ * cache is bounded to maxEntries split into independently locked LRU segments by key hash. Lookups
+ * of a key already being checked wait for that call instead of making their own, so a burst of
+ * identical registrations makes a single call; a failed call is shared by its waiters and never
+ * cached.
+ */
+public class CachingExclusionService implements ExclusionService {
+
+    private final ExclusionService exclusionService;
+    private final Segment[] segments;
+    private final int maxEntries;
+    private final long passTtlNanos;
+    private final long failTtlNanos;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder callNanos = new LongAdder();
+
+    public CachingExclusionService(ExclusionService exclusionService, int maxEntries, long passTtlMillis,
+                                   long failTtlMillis, int concurrency) {
+        this(exclusionService, maxEntries, passTtlMillis, failTtlMillis, concurrency, System::nanoTime);
+    }
+
+    CachingExclusionService(ExclusionService exclusionService, int maxEntries, long passTtlMillis,
+                            long failTtlMillis, int concurrency, LongSupplier nanoClock) {
+        this.exclusionService = exclusionService;
+        int count = concurrency <= 1 ? 1 : Integer.highestOneBit(concurrency - 1) << 1;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / count));
+        }
+        this.maxEntries = maxEntries;
+        this.passTtlNanos = TimeUnit.MILLISECONDS.toNanos(passTtlMillis);
+        this.failTtlNanos = TimeUnit.MILLISECONDS.toNanos(failTtlMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public boolean validate(String dob, String ssn) {
+        String key = dob + ',' + ssn;
+        Segment segment = segmentFor(key);
+        Boolean cached = segment.get(key, nanoClock.getAsLong());
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        CompletableFuture<Boolean> call = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+        misses.increment();
+        try {
+            long started = System.nanoTime();
+            boolean valid = exclusionService.validate(dob, ssn);
+            callNanos.add(System.nanoTime() - started);
+            calls.increment();
+            segment.put(key, valid, nanoClock.getAsLong() + (valid ? passTtlNanos : failTtlNanos));
+            call.complete(valid);
+            return valid;
+        } catch (RuntimeException e) {
+            failures.increment();
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public ExclusionCacheStatistics getStatistics() {
+        int entries = 0;
+        for (Segment segment : segments) {
+            entries += segment.size();
+        }
+        long callCount = calls.sum();
+        long averageCallNanos = callCount == 0 ? 0 : callNanos.sum() / callCount;
+        return new ExclusionCacheStatistics(hits.sum(), coalesced.sum(), misses.sum(), expirations.sum(),
+                evictions.sum(), failures.sum(), entries, maxEntries, TimeUnit.NANOSECONDS.toMicros(averageCallNanos),
+                TimeUnit.NANOSECONDS.toMillis((hits.sum() + coalesced.sum()) * averageCallNanos));
+    }
+
+    private static boolean await(CompletableFuture<Boolean> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ hash >>> 16) & (segments.length - 1)];
+    }
+
+    private static final class Cached {
+
+        private final boolean valid;
+        private final long expiresAt;
+
+        private Cached(boolean valid, long expiresAt) {
+            this.valid = valid;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final class Segment {
+
+        private final LinkedHashMap<String, Cached> map;
+
+        private Segment(int maxEntries) {
+            this.map = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                    if (size() > maxEntries) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * @return the cached answer, null when there is none or it expired
+         */
+        private synchronized Boolean get(String key, long now) {
+            Cached cached = map.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiresAt - now <= 0) {
+                map.remove(key);
+                expirations.increment();
+                return null;
+            }
+            return cached.valid;
+        }
+
+        private synchronized void put(String key, boolean valid, long expiresAt) {
+            map.put(key, new Cached(valid, expiresAt));
+        }
+
+        private synchronized int size() {
+            return map.size();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker over the outcomes of the last window calls.
+ *
+ * Once at least minCalls of the window are known and failureRatio of them failed, the breaker opens
+ * and refuses every call for the open time. The first call after that is a trial: its success closes
+ * the breaker with an empty window, its failure opens it again.
+ */
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean[] outcomes;
+    private final int minCalls;
+    private final double failureRatio;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+    private volatile State state = State.CLOSED;
+    private int next;
+    private int calls;
+    private int failures;
+    private long openedAt;
+    private long opened;
+
+    CircuitBreaker(int window, int minCalls, double failureRatio, long openMillis, LongSupplier nanoClock) {
+        this.outcomes = new boolean[Math.max(1, window)];
+        this.minCalls = Math.max(1, Math.min(minCalls, outcomes.length));
+        this.failureRatio = failureRatio;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return true when the call may go on, its outcome must then be reported
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nanoClock.getAsLong() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            next = 0;
+            calls = 0;
+            failures = 0;
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && calls >= minCalls && failures >= failureRatio * calls) {
+            open();
+        }
+    }
+
+    /**
+     * The acquired call ended without an outcome, never sent or its caller interrupted, a trial is
+     * let through again.
+     */
+    synchronized void onCancel() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = nanoClock.getAsLong() - openNanos;
+        }
+    }
+
+    State state() {
+        return state;
+    }
+
+    synchronized long opened() {
+        return opened;
+    }
+
+    private void record(boolean failed) {
+        if (calls == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        opened++;
+    }
+}
@@ -0,0 +1,40 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.service.ExclusionService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Wires the exclusion service from application.properties.
+ */
+
+@Configuration
+public class ExclusionConfig {
+
+    /**
+     * The exclusion service injected everywhere else: the registration.exclusion.type one, cached
+     * when enabled.
+     */
+    @Bean(destroyMethod = "")
+    @Primary
+    public ExclusionService primaryExclusionService(@Qualifier("exclusionService") ExclusionService exclusionService,
+                                                    ObjectProvider<CachingExclusionService> cachingExclusionService) {
+        CachingExclusionService cached = cachingExclusionService.getIfAvailable();
+        return cached != null ? cached : exclusionService;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "registration.exclusion.cache.enabled", havingValue = "true")
+    public CachingExclusionService cachingExclusionService(@Qualifier("exclusionService") ExclusionService exclusionService,
+                                                           @Value("${registration.exclusion.cache.max-entries:100000}") int maxEntries,
+                                                           @Value("${registration.exclusion.cache.pass-ttl-ms:60000}") long passTtlMillis,
+                                                           @Value("${registration.exclusion.cache.fail-ttl-ms:300000}") long failTtlMillis,
+                                                           @Value("${registration.exclusion.cache.segments:16}") int segments) {
+        return new CachingExclusionService(exclusionService, maxEntries, passTtlMillis, failTtlMillis, segments);
+    }
+}
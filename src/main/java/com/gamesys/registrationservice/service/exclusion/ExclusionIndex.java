@@ -0,0 +1,155 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ExclusionList} written to a file and mapped back read only, so a list of tens of millions
+ * of pairs lives in the page cache rather than on the heap and is shared by every reader.
+ *
+ * File layout, little endian : [int magic][int version][int hash count][int unused][long source
+ * modified millis][long source size][long skipped lines][long filter words][long keys][long crc32 of
+ * what follows] then the filter words and the sorted keys.
+ *
+ * A file is written to a temporary file, forced and renamed. Mapping it checks its checksum and that
+ * its keys are strictly ascending before the list is served.
+ */
+final class ExclusionIndex {
+
+    private static final int MAGIC = 0x55455843;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + 6 * Long.BYTES;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final Path file;
+    private final ExclusionList exclusionList;
+    private final long sourceModified;
+    private final long sourceSize;
+    private final long checksum;
+
+    private ExclusionIndex(Path file, ExclusionList exclusionList, long sourceModified, long sourceSize, long checksum) {
+        this.file = file;
+        this.exclusionList = exclusionList;
+        this.sourceModified = sourceModified;
+        this.sourceSize = sourceSize;
+        this.checksum = checksum;
+    }
+
+    static void write(ExclusionList exclusionList, long sourceModified, long sourceSize, Path target) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        LongBuffer words = exclusionList.filter().words();
+        LongBuffer keys = exclusionList.keys();
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_BYTES);
+            drain(words, buffer, channel, crc);
+            drain(keys, buffer, channel, crc);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(exclusionList.filter().hashes()).putInt(0)
+                    .putLong(sourceModified).putLong(sourceSize).putLong(exclusionList.skipped())
+                    .putLong(words.limit()).putLong(keys.limit()).putLong(crc.getValue()).flip();
+            channel.write(buffer, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static ExclusionIndex map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Truncated exclusion index " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not an exclusion index " + file);
+            }
+            int hashes = header.getInt();
+            header.getInt();
+            long sourceModified = header.getLong();
+            long sourceSize = header.getLong();
+            long skipped = header.getLong();
+            long words = header.getLong();
+            long keys = header.getLong();
+            long checksum = header.getLong();
+            long bodyBytes = (words + keys) * Long.BYTES;
+            if (channel.size() != HEADER_BYTES + bodyBytes) {
+                throw new IOException("Exclusion index " + file + " is " + channel.size() + " bytes, expected "
+                        + (HEADER_BYTES + bodyBytes));
+            }
+            if (bodyBytes > Integer.MAX_VALUE) {
+                throw new IOException("Exclusion index " + file + " too large to map : " + bodyBytes + " bytes");
+            }
+            MappedByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, bodyBytes);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Exclusion index " + file + " is corrupted, checksum mismatch");
+            }
+            body.order(ByteOrder.LITTLE_ENDIAN);
+            LongBuffer filterWords = slice(body, 0, words);
+            LongBuffer sortedKeys = slice(body, words, keys);
+            for (int i = 1; i < sortedKeys.limit(); i++) {
+                if (sortedKeys.get(i - 1) >= sortedKeys.get(i)) {
+                    throw new IOException("Exclusion index " + file + " keys out of order at " + i);
+                }
+            }
+            ExclusionList exclusionList = new ExclusionList(sortedKeys, new BlockedBloomFilter(filterWords, hashes), skipped);
+            return new ExclusionIndex(file, exclusionList, sourceModified, sourceSize, checksum);
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    ExclusionList exclusionList() {
+        return exclusionList;
+    }
+
+    long sourceModified() {
+        return sourceModified;
+    }
+
+    long sourceSize() {
+        return sourceSize;
+    }
+
+    long checksum() {
+        return checksum;
+    }
+
+    private static LongBuffer slice(ByteBuffer body, long fromWord, long words) {
+        ByteBuffer slice = body.duplicate();
+        slice.position((int) (fromWord * Long.BYTES)).limit((int) ((fromWord + words) * Long.BYTES));
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+
+    private static void drain(LongBuffer values, ByteBuffer buffer, FileChannel channel, CRC32 crc) throws IOException {
+        for (int i = 0; i < values.limit(); i++) {
+            if (!buffer.hasRemaining()) {
+                flush(buffer, channel, crc);
+            }
+            buffer.putLong(values.get(i));
+        }
+        flush(buffer, channel, crc);
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
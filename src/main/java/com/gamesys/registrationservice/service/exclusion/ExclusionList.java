@@ -0,0 +1,304 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Immutable set of excluded (dob, ssn) pairs, each packed into one long as epoch day << 30 | the
+ * 9 digit SSN, kept in a sorted array searched by binary search behind a {@link BlockedBloomFilter}.
+ * An entry takes 8 bytes plus the filter's bits per entry, and a pair that isn't listed is usually
+ * answered by the filter alone.
+ *
+ * Lists are built on the heap and read through LongBuffers, so an {@link ExclusionIndex} file
+ * mapped in memory serves them without copying them back.
+ *
+ * Only US SSNs, 9 digits with optional dashes or spaces, can be listed; any other SSN is never
+ * listed.
+ */
+public final class ExclusionList {
+
+    /**
+     * Key of a pair that can't be listed.
+     */
+    public static final long NOT_LISTABLE = Long.MIN_VALUE;
+
+    private static final int SSN_BITS = 30;
+    private static final int SSN_DIGITS = 9;
+    private static final int MAX_LINE = 64;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    private final LongBuffer keys;
+    private final BlockedBloomFilter filter;
+    private final long skipped;
+
+    ExclusionList(LongBuffer keys, BlockedBloomFilter filter, long skipped) {
+        this.keys = keys;
+        this.filter = filter;
+        this.skipped = skipped;
+    }
+
+    /**
+     * Builds the list from the first count keys of the array, which it sorts in place.
+     */
+    public static ExclusionList of(long[] keys, int count, int bitsPerKey) {
+        return of(keys, count, bitsPerKey, 0);
+    }
+
+    /**
+     * Loads a file of dob,ssn lines, dob being yyyy-MM-dd. Lines that don't hold a listable pair,
+     * such as a header, are skipped and counted.
+     */
+    public static ExclusionList load(Path file, int bitsPerKey) throws IOException {
+        long[] keys;
+        int count = 0;
+        long skipped = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            keys = new long[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, channel.size() / 20))];
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            Line line = new Line();
+            boolean eof = false;
+            while (!eof) {
+                buffer.clear();
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                while (buffer.hasRemaining() || eof && line.length > 0) {
+                    byte b = buffer.hasRemaining() ? buffer.get() : (byte) '\n';
+                    if (b != '\n') {
+                        line.append(b);
+                        continue;
+                    }
+                    long key = line.overflow ? NOT_LISTABLE : parse(line);
+                    if (key == NOT_LISTABLE) {
+                        skipped += line.isBlank() ? 0 : 1;
+                    } else {
+                        if (count == keys.length) {
+                            keys = Arrays.copyOf(keys, (int) Math.min(Integer.MAX_VALUE - 8, (long) count * 3 / 2));
+                        }
+                        keys[count++] = key;
+                    }
+                    line.clear();
+                }
+            }
+        }
+        return of(keys, count, bitsPerKey, skipped);
+    }
+
+    /**
+     * @return the key of the pair, {@link #NOT_LISTABLE} when the dob isn't a yyyy-MM-dd date or the
+     * ssn isn't a US SSN
+     */
+    public static long pack(String dob, String ssn) {
+        return pack(dob, 0, dob.length(), ssn, 0, ssn.length());
+    }
+
+    public boolean contains(long key) {
+        return key != NOT_LISTABLE && filter.mightContain(key) && binarySearch(key);
+    }
+
+    public boolean isListed(String dob, String ssn) {
+        return contains(pack(dob, ssn));
+    }
+
+    public int size() {
+        return keys.limit();
+    }
+
+    /**
+     * @return lines of the loaded file that didn't hold a listable pair
+     */
+    public long skipped() {
+        return skipped;
+    }
+
+    /**
+     * @return bytes of the sorted keys and the filter
+     */
+    public long bytes() {
+        return (long) keys.limit() * Long.BYTES + filter.bytes();
+    }
+
+    public long filterBytes() {
+        return filter.bytes();
+    }
+
+    LongBuffer keys() {
+        return keys;
+    }
+
+    BlockedBloomFilter filter() {
+        return filter;
+    }
+
+    private boolean binarySearch(long key) {
+        int low = 0;
+        int high = keys.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = keys.get(mid);
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ExclusionList of(long[] keys, int count, int bitsPerKey, long skipped) {
+        Arrays.parallelSort(keys, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || keys[i] != keys[unique - 1]) {
+                keys[unique++] = keys[i];
+            }
+        }
+        long[] sorted = unique == keys.length ? keys : Arrays.copyOf(keys, unique);
+        BlockedBloomFilter filter = BlockedBloomFilter.create(unique, bitsPerKey);
+        for (long key : sorted) {
+            filter.add(key);
+        }
+        return new ExclusionList(LongBuffer.wrap(sorted), filter, skipped);
+    }
+
+    private static long parse(Line line) {
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+            return NOT_LISTABLE;
+        }
+        int dobFrom = line.skipSpaces(0, comma);
+        int dobTo = line.trimSpaces(dobFrom, comma);
+        int ssnFrom = line.skipSpaces(comma + 1, line.length());
+        int ssnTo = line.trimSpaces(ssnFrom, line.length());
+        return pack(line, dobFrom, dobTo, line, ssnFrom, ssnTo);
+    }
+
+    private static long pack(CharSequence dob, int dobFrom, int dobTo, CharSequence ssn, int ssnFrom, int ssnTo) {
+        long day = epochDay(dob, dobFrom, dobTo);
+        if (day == NOT_LISTABLE || ssnTo - ssnFrom > 2 * SSN_DIGITS) {
+            return NOT_LISTABLE;
+        }
+        int value = 0;
+        int digits = 0;
+        for (int i = ssnFrom; i < ssnTo; i++) {
+            char c = ssn.charAt(i);
+            int digit = c - '0';
+            if (digit >= 0 && digit <= 9) {
+                value = value * 10 + digit;
+                digits++;
+            } else if (c != '-' && c != ' ') {
+                return NOT_LISTABLE;
+            }
+        }
+        return digits == SSN_DIGITS ? day << SSN_BITS | value : NOT_LISTABLE;
+    }
+
+    /**
+     * Days since 1970-01-01 of a yyyy-MM-dd date, without allocating a LocalDate.
+     */
+    private static long epochDay(CharSequence dob, int from, int to) {
+        if (to - from != 10 || dob.charAt(from + 4) != '-' || dob.charAt(from + 7) != '-') {
+            return NOT_LISTABLE;
+        }
+        int year = digit(dob, from) * 1000 + digit(dob, from + 1) * 100 + digit(dob, from + 2) * 10 + digit(dob, from + 3);
+        int month = digit(dob, from + 5) * 10 + digit(dob, from + 6);
+        int day = digit(dob, from + 8) * 10 + digit(dob, from + 9);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return NOT_LISTABLE;
+        }
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the digit's value, or a negative number large enough to make any date built from it
+     * invalid
+     */
+    private static int digit(CharSequence value, int index) {
+        int digit = value.charAt(index) - '0';
+        return digit >= 0 && digit <= 9 ? digit : -100_000;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * One line of the file being loaded, as ASCII characters.
+     */
+    private static final class Line implements CharSequence {
+
+        private final byte[] bytes = new byte[MAX_LINE];
+        private int length;
+        private boolean overflow;
+
+        private void append(byte b) {
+            if (length == MAX_LINE) {
+                overflow = true;
+            } else {
+                bytes[length++] = b;
+            }
+        }
+
+        private void clear() {
+            length = 0;
+            overflow = false;
+        }
+
+        private boolean isBlank() {
+            return skipSpaces(0, length) == length;
+        }
+
+        private int indexOf(char c) {
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int skipSpaces(int from, int to) {
+            while (from < to && bytes[from] <= ' ') {
+                from++;
+            }
+            return from;
+        }
+
+        private int trimSpaces(int from, int to) {
+            while (to > from && bytes[to - 1] <= ' ') {
+                to--;
+            }
+            return to;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.ExclusionStatus;
+import com.gamesys.registrationservice.service.ExclusionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ExclusionService} over the blacklist of registration.exclusion.file, a file of dob,ssn
+ * lines, reloaded whenever a new version of the file is published.
+ *
+ * Each version is built into an {@link ExclusionIndex} file of registration.exclusion.index-dir and
+ * served from its memory mapping. The file is polled every reload-seconds; a new version is built,
+ * mapped and validated on the reload thread, then swapped in with one volatile write, so
+ * {@link #validate} never waits and always sees a complete list. A version is refused, and the
+ * current one kept, when more than max-skipped-ratio of its lines can't be read or when it holds
+ * less than min-entries-ratio of the current entries. On restart the index of an unchanged file is
+ * mapped again without parsing it.
+ */
+
+@Slf4j
+@Service("exclusionService")
+@ConditionalOnProperty(name = "registration.exclusion.type", havingValue = "file")
+public class FileExclusionService implements ExclusionService, AutoCloseable {
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final Path file;
+    private final Path indexDirectory;
+    private final int bloomBitsPerKey;
+    private final double maxSkippedRatio;
+    private final double minEntriesRatio;
+    private final ScheduledExecutorService reloader;
+    private volatile Version active;
+    private volatile Version previous;
+    private volatile long reloads;
+    private volatile long failedReloads;
+    private volatile String lastFailure;
+    private long refusedModified = -1;
+    private long refusedSize = -1;
+
+    @Inject
+    public FileExclusionService(@Value("${registration.exclusion.file:data/exclusion/blacklist.csv}") String file,
+                                @Value("${registration.exclusion.index-dir:data/exclusion/index}") String indexDirectory,
+                                @Value("${registration.exclusion.bloom-bits-per-key:10}") int bloomBitsPerKey,
+                                @Value("${registration.exclusion.reload-seconds:10}") long reloadSeconds,
+                                @Value("${registration.exclusion.max-skipped-ratio:0.01}") double maxSkippedRatio,
+                                @Value("${registration.exclusion.min-entries-ratio:0.5}") double minEntriesRatio) {
+        this(Paths.get(file), Paths.get(indexDirectory), bloomBitsPerKey, reloadSeconds, maxSkippedRatio, minEntriesRatio);
+    }
+
+    public FileExclusionService(Path file, Path indexDirectory, int bloomBitsPerKey, long reloadSeconds,
+                                double maxSkippedRatio, double minEntriesRatio) {
+        this.file = file.toAbsolutePath();
+        this.indexDirectory = indexDirectory.toAbsolutePath();
+        this.bloomBitsPerKey = bloomBitsPerKey;
+        this.maxSkippedRatio = maxSkippedRatio;
+        this.minEntriesRatio = minEntriesRatio;
+        try {
+            Files.createDirectories(this.indexDirectory);
+            this.active = load(Files.readAttributes(this.file, BasicFileAttributes.class));
+        } catch (IOException e) {
+            throw new ServerException("Can't load exclusion list " + this.file + " : " + e.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+        log.info("Exclusion list {} version {} in use : {}", this.file, active.index.sourceModified(), active.describe());
+        this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "exclusion-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (reloadSeconds > 0) {
+            reloader.scheduleWithFixedDelay(this::reload, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public boolean validate(String dob, String ssn) {
+        return !active.index.exclusionList().isListed(dob, ssn);
+    }
+
+    /**
+     * Swaps in the file's current version unless it's the one in use or was already refused.
+     *
+     * @return true when a new version was swapped in
+     */
+    public synchronized boolean reload() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (isCurrent(active, modified, attributes.size()) || modified == refusedModified && attributes.size() == refusedSize) {
+                return false;
+            }
+            Version loaded = load(attributes);
+            BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+            if (after.lastModifiedTime().toMillis() != modified || after.size() != attributes.size()) {
+                log.info("Exclusion list {} changed while loading, retrying on the next check", file);
+                return false;
+            }
+            String refusal = refusal(loaded.index.exclusionList(), active.index.exclusionList());
+            if (refusal != null) {
+                refusedModified = modified;
+                refusedSize = attributes.size();
+                refuse(refusal);
+                Files.deleteIfExists(loaded.index.file());
+                return false;
+            }
+            previous = active;
+            active = loaded;
+            reloads++;
+            log.info("Exclusion list {} version {} swapped in : {}", file, modified, loaded.describe());
+            deleteOlderIndexes();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            refuse(e.toString());
+            return false;
+        }
+    }
+
+    public ExclusionStatus getStatus() {
+        Version version = active;
+        ExclusionList exclusionList = version.index.exclusionList();
+        return new ExclusionStatus(file.toString(), version.index.file().toString(), version.index.sourceModified(),
+                Long.toHexString(version.index.checksum()), exclusionList.size(), exclusionList.skipped(),
+                exclusionList.bytes(), exclusionList.filterBytes(), version.loadedAt, version.buildMillis,
+                version.validateMillis, reloads, failedReloads, lastFailure);
+    }
+
+    @Override
+    public void close() {
+        reloader.shutdownNow();
+    }
+
+    /**
+     * Maps the index of this version of the file, building it first unless a valid one exists.
+     */
+    private Version load(BasicFileAttributes attributes) throws IOException {
+        long modified = attributes.lastModifiedTime().toMillis();
+        Path indexFile = indexDirectory.resolve(String.format("%s-%020d-%d%s", file.getFileName(), modified,
+                attributes.size(), INDEX_SUFFIX));
+        if (Files.exists(indexFile)) {
+            try {
+                return validate(indexFile, modified, attributes.size(), 0);
+            } catch (IOException e) {
+                log.warn("Rebuilding exclusion index {} : {}", indexFile, e.getMessage());
+            }
+        }
+        long started = System.nanoTime();
+        ExclusionList built = ExclusionList.load(file, bloomBitsPerKey);
+        ExclusionIndex.write(built, modified, attributes.size(), indexFile);
+        return validate(indexFile, modified, attributes.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private static Version validate(Path indexFile, long modified, long size, long buildMillis) throws IOException {
+        long started = System.nanoTime();
+        ExclusionIndex index = ExclusionIndex.map(indexFile);
+        if (!isCurrent(index, modified, size)) {
+            throw new IOException("Exclusion index " + indexFile + " was built from another version");
+        }
+        return new Version(index, System.currentTimeMillis(), buildMillis,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private String refusal(ExclusionList candidate, ExclusionList current) {
+        long lines = candidate.size() + candidate.skipped();
+        if (candidate.skipped() > maxSkippedRatio * lines) {
+            return candidate.skipped() + " of " + lines + " lines skipped";
+        }
+        if (candidate.size() < minEntriesRatio * current.size()) {
+            return candidate.size() + " entries against " + current.size() + " in use";
+        }
+        return null;
+    }
+
+    private void refuse(String reason) {
+        failedReloads++;
+        lastFailure = reason;
+        log.error("Exclusion list {} reload refused, keeping version {} : {}", file, active.index.sourceModified(), reason);
+    }
+
+    /**
+     * Keeps the indexes of the active and previous versions, lookups that started on the previous
+     * one may still read it.
+     */
+    private void deleteOlderIndexes() throws IOException {
+        String prefix = file.getFileName() + "-";
+        try (DirectoryStream<Path> indexes = Files.newDirectoryStream(indexDirectory, prefix + "*" + INDEX_SUFFIX)) {
+            for (Path index : indexes) {
+                if (!index.equals(active.index.file()) && (previous == null || !index.equals(previous.index.file()))) {
+                    Files.deleteIfExists(index);
+                }
+            }
+        }
+    }
+
+    private static boolean isCurrent(Version version, long modified, long size) {
+        return isCurrent(version.index, modified, size);
+    }
+
+    private static boolean isCurrent(ExclusionIndex index, long modified, long size) {
+        return index.sourceModified() == modified && index.sourceSize() == size;
+    }
+
+    private static final class Version {
+
+        private final ExclusionIndex index;
+        private final long loadedAt;
+        private final long buildMillis;
+        private final long validateMillis;
+
+        private Version(ExclusionIndex index, long loadedAt, long buildMillis, long validateMillis) {
+            this.index = index;
+            this.loadedAt = loadedAt;
+            this.buildMillis = buildMillis;
+            this.validateMillis = validateMillis;
+        }
+
+        private String describe() {
+            ExclusionList exclusionList = index.exclusionList();
+            return String.format("%d entries, %d lines skipped, %d bytes mapped of which %d of Bloom filter, built in %d ms, validated in %d ms",
+                    exclusionList.size(), exclusionList.skipped(), exclusionList.bytes(), exclusionList.filterBytes(),
+                    buildMillis, validateMillis);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.service.ExclusionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Wires the remote exclusion service when registration.exclusion.type=remote, its checks sent in
+ * bulk requests when batching is enabled. With resilience enabled the exclusion service is the
+ * {@link ResilientExclusionService} in front of it, whose status the admin endpoints read.
+ */
+
+@Configuration
+@ConditionalOnProperty(name = "registration.exclusion.type", havingValue = "remote")
+public class RemoteExclusionConfig {
+
+    private final String url;
+    private final int timeoutMillis;
+    private final boolean batched;
+    private final long windowMicros;
+    private final int maxBatch;
+    private final int maxInFlight;
+
+    public RemoteExclusionConfig(@Value("${registration.exclusion.url}") String url,
+                                 @Value("${registration.exclusion.timeout-ms:2000}") int timeoutMillis,
+                                 @Value("${registration.exclusion.batch.enabled:false}") boolean batched,
+                                 @Value("${registration.exclusion.batch.window-micros:500}") long windowMicros,
+                                 @Value("${registration.exclusion.batch.max-size:256}") int maxBatch,
+                                 @Value("${registration.exclusion.batch.max-in-flight:8}") int maxInFlight) {
+        this.url = url;
+        this.timeoutMillis = timeoutMillis;
+        this.batched = batched;
+        this.windowMicros = windowMicros;
+        this.maxBatch = maxBatch;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Bean("exclusionService")
+    @ConditionalOnProperty(name = "registration.exclusion.resilience.enabled", havingValue = "false", matchIfMissing = true)
+    public ExclusionService remoteExclusionService() {
+        return client();
+    }
+
+    /**
+     * The remote exclusion service behind deadlines, a bulkhead, a circuit breaker and hedging.
+     */
+    @Bean("exclusionService")
+    @ConditionalOnProperty(name = "registration.exclusion.resilience.enabled", havingValue = "true")
+    public ResilientExclusionService resilientExclusionService(@Value("${registration.exclusion.resilience.deadline-ms:500}") long deadlineMillis,
+                                                               @Value("${registration.exclusion.resilience.max-concurrent:32}") int maxConcurrent,
+                                                               @Value("${registration.exclusion.resilience.queue:64}") int queue,
+                                                               @Value("${registration.exclusion.resilience.hedge:true}") boolean hedging,
+                                                               @Value("${registration.exclusion.resilience.hedge-min-delay-ms:10}") long minHedgeDelayMillis,
+                                                               @Value("${registration.exclusion.resilience.window:50}") int window,
+                                                               @Value("${registration.exclusion.resilience.min-calls:20}") int minCalls,
+                                                               @Value("${registration.exclusion.resilience.failure-ratio:0.5}") double failureRatio,
+                                                               @Value("${registration.exclusion.resilience.open-ms:5000}") long openMillis,
+                                                               @Value("${registration.exclusion.resilience.fallback:FAIL_CLOSED}") ResilientExclusionService.Fallback fallback) {
+        return new ResilientExclusionService(client(), deadlineMillis, maxConcurrent, queue, hedging,
+                minHedgeDelayMillis, window, minCalls, failureRatio, openMillis, fallback);
+    }
+
+    private ExclusionService client() {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMillis);
+        requestFactory.setReadTimeout(timeoutMillis);
+        RemoteExclusionService remoteExclusionService = new RemoteExclusionService(url, new RestTemplate(requestFactory));
+        return batched
+                ? new BatchingExclusionService(remoteExclusionService, windowMicros, maxBatch, maxInFlight, 2L * timeoutMillis)
+                : remoteExclusionService;
+    }
+}
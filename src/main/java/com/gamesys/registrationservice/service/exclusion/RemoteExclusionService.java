@@ -0,0 +1,69 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.ExclusionCheckDTO;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.service.ExclusionService;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+/**
+ * {@link ExclusionService} answered by the exclusion service at registration.exclusion.url, one
+ * GET {url}/exclusions?dob=&ssn= per check answering an {@link ExclusionCheckDTO}, or one
+ * POST {url}/exclusions of many checks answered in the same order with {@link #validateAll}. Any
+ * failure to get an answer is a server error, a registration is never let through unchecked.
+ */
+public class RemoteExclusionService implements ExclusionService {
+
+    private final String url;
+    private final RestTemplate restTemplate;
+
+    public RemoteExclusionService(String url, RestTemplate restTemplate) {
+        this.url = url;
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public boolean validate(String dob, String ssn) {
+        ExclusionCheckDTO check;
+        try {
+            check = restTemplate.getForObject(url + "/exclusions?dob={dob}&ssn={ssn}", ExclusionCheckDTO.class, dob, ssn);
+        } catch (RestClientException e) {
+            throw new ServerException("Exclusion service " + url + " failed : " + e.getMessage(), ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        }
+        if (check == null || check.getValid() == null) {
+            throw new ServerException("Exclusion service " + url + " answered without a result", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        }
+        return check.getValid();
+    }
+
+    /**
+     * @return the answers of the checks, in their order
+     */
+    public boolean[] validateAll(List<ExclusionCheckDTO> checks) {
+        ExclusionCheckDTO[] answers;
+        try {
+            answers = restTemplate.postForObject(url + "/exclusions", checks, ExclusionCheckDTO[].class);
+        } catch (RestClientException e) {
+            throw new ServerException("Exclusion service " + url + " failed on " + checks.size() + " checks : " + e.getMessage(),
+                    ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        }
+        if (answers == null || answers.length != checks.size()) {
+            throw new ServerException("Exclusion service " + url + " answered " + (answers == null ? 0 : answers.length)
+                    + " of " + checks.size() + " checks", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        }
+        boolean[] valid = new boolean[answers.length];
+        for (int i = 0; i < answers.length; i++) {
+            ExclusionCheckDTO check = checks.get(i);
+            ExclusionCheckDTO answer = answers[i];
+            if (answer == null || answer.getValid() == null
+                    || !check.getDob().equals(answer.getDob()) || !check.getSsn().equals(answer.getSsn())) {
+                throw new ServerException("Exclusion service " + url + " answered out of order", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+            }
+            valid[i] = answer.getValid();
+        }
+        return valid;
+    }
+}
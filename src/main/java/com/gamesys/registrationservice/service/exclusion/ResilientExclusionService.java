@@ -0,0 +1,258 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ExclusionUnavailableException;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.ExclusionClientStatus;
+import com.gamesys.registrationservice.service.ExclusionService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a slow or failing remote exclusion service from holding the request threads, enabled with
+ * registration.exclusion.resilience.enabled.
+ *
+ * Calls run on a bulkhead of maxConcurrent threads admitting at most queue more waiting calls, so
+ * however slow the service gets it never holds more threads than that, and each caller waits for
+ * its answer until its deadline only. A call still unanswered after the p95 of the recent calls is hedged: a second
+ * request is sent when the bulkhead has room and the first answer wins. Timeouts and failures feed
+ * a {@link CircuitBreaker}; while it is open, or the bulkhead is full, the service isn't asked and
+ * an {@link ExclusionUnavailableException} tells the caller whether to let the registration through
+ * (fail open) or refuse it (fail closed).
+ */
+
+@Slf4j
+public class ResilientExclusionService implements ExclusionService, AutoCloseable {
+
+    public enum Fallback { FAIL_CLOSED, FAIL_OPEN }
+
+    private static final int SAMPLES = 256;
+    private static final int SAMPLES_PER_UPDATE = 32;
+
+    private final ExclusionService exclusionService;
+    private final long deadlineNanos;
+    private final boolean hedging;
+    private final long minHedgeDelayNanos;
+    private final Fallback fallback;
+    private final CircuitBreaker breaker;
+    private final ThreadPoolExecutor bulkhead;
+    private final Semaphore admitted;
+    private final int maxAdmitted;
+    private final long[] latencies = new long[SAMPLES];
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private long sampled;
+    private volatile long hedgeDelayNanos;
+
+    public ResilientExclusionService(ExclusionService exclusionService, long deadlineMillis, int maxConcurrent, int queue,
+                                     boolean hedging, long minHedgeDelayMillis, int window, int minCalls,
+                                     double failureRatio, long openMillis, Fallback fallback) {
+        this.exclusionService = exclusionService;
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        this.hedging = hedging;
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis);
+        this.hedgeDelayNanos = minHedgeDelayNanos;
+        this.fallback = fallback;
+        this.breaker = new CircuitBreaker(window, minCalls, failureRatio, openMillis, System::nanoTime);
+        this.maxAdmitted = maxConcurrent + Math.max(0, queue);
+        this.admitted = new Semaphore(maxAdmitted);
+        AtomicInteger count = new AtomicInteger();
+        this.bulkhead = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "exclusion-call-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bulkhead.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public boolean validate(String dob, String ssn) {
+        if (!breaker.tryAcquire()) {
+            shortCircuited.increment();
+            throw unavailable("circuit breaker open");
+        }
+        long deadline = System.nanoTime() + deadlineNanos;
+        Call call = new Call(dob, ssn);
+        if (!call.attempt(false)) {
+            breaker.onCancel();
+            rejected.increment();
+            throw unavailable("bulkhead full");
+        }
+        calls.increment();
+        boolean reported = false;
+        try {
+            Boolean valid = await(call.answer, Math.min(hedgeDelayNanos, deadlineNanos));
+            if (valid == null && hedging && call.attempt(true)) {
+                hedged.increment();
+            }
+            if (valid == null) {
+                valid = await(call.answer, deadline - System.nanoTime());
+            }
+            if (valid == null) {
+                timeouts.increment();
+                reported = true;
+                breaker.onFailure();
+                throw new ServerException("Exclusion check missed its " + TimeUnit.NANOSECONDS.toMillis(deadlineNanos)
+                        + " ms deadline", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+            }
+            reported = true;
+            breaker.onSuccess();
+            return valid;
+        } catch (ExecutionException e) {
+            failures.increment();
+            reported = true;
+            breaker.onFailure();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ServerException("Exclusion check failed : " + e.getCause(), ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        } finally {
+            // interrupted, or failed in a way that says nothing about the service: give back a trial slot
+            if (!reported) {
+                breaker.onCancel();
+            }
+        }
+    }
+
+    public ExclusionClientStatus getStatus() {
+        return new ExclusionClientStatus(breaker.state().name(), fallback.name(), breaker.opened(),
+                calls.sum(), failures.sum(), timeouts.sum(), rejected.sum(), shortCircuited.sum(), hedged.sum(),
+                hedgeWins.sum(), TimeUnit.NANOSECONDS.toMicros(hedgeDelayNanos), maxAdmitted - admitted.availablePermits());
+    }
+
+    /**
+     * Stops the bulkhead threads and closes the wrapped client.
+     */
+    @Override
+    public void close() {
+        bulkhead.shutdownNow();
+        if (exclusionService instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) exclusionService).close();
+            } catch (Exception e) {
+                log.warn("Closing exclusion client failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return the answer, null when it didn't come in time
+     */
+    private static Boolean await(CompletableFuture<Boolean> answer, long nanos) throws ExecutionException {
+        try {
+            return nanos > 0 ? answer.get(nanos, TimeUnit.NANOSECONDS) : answer.getNow(null);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerException("Exclusion check interrupted", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+        }
+    }
+
+    private ExclusionUnavailableException unavailable(String reason) {
+        boolean failOpen = fallback == Fallback.FAIL_OPEN;
+        return new ExclusionUnavailableException("Exclusion service not asked, " + reason
+                + (failOpen ? ", registration let through" : ", registration refused"), failOpen);
+    }
+
+    /**
+     * Keeps the last call latencies and moves the hedge delay to their p95 every few calls.
+     */
+    private void sample(long nanos) {
+        long[] sorted = null;
+        synchronized (latencies) {
+            latencies[(int) (sampled++ % SAMPLES)] = nanos;
+            if (sampled % SAMPLES_PER_UPDATE == 0) {
+                sorted = Arrays.copyOf(latencies, (int) Math.min(sampled, SAMPLES));
+            }
+        }
+        if (sorted != null) {
+            Arrays.sort(sorted);
+            hedgeDelayNanos = Math.max(minHedgeDelayNanos, sorted[(int) (sorted.length * 0.95)]);
+        }
+    }
+
+    /**
+     * One check, answered by the first of its requests to succeed, or failed once they all did.
+     */
+    private final class Call {
+
+        private final String dob;
+        private final String ssn;
+        private final CompletableFuture<Boolean> answer = new CompletableFuture<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicBoolean answered = new AtomicBoolean();
+
+        private Call(String dob, String ssn) {
+            this.dob = dob;
+            this.ssn = ssn;
+        }
+
+        /**
+         * @return false when the bulkhead is full
+         */
+        private boolean attempt(boolean hedge) {
+            if (!admitted.tryAcquire()) {
+                return false;
+            }
+            running.incrementAndGet();
+            try {
+                bulkhead.execute(() -> request(hedge));
+                return true;
+            } catch (RejectedExecutionException e) {
+                running.decrementAndGet();
+                admitted.release();
+                return false;
+            }
+        }
+
+        /**
+         * Frees its bulkhead place before answering, so the caller's next check finds it free.
+         */
+        private void request(boolean hedge) {
+            boolean valid = false;
+            RuntimeException failure = null;
+            try {
+                if (answer.isDone()) {
+                    return;
+                }
+                long started = System.nanoTime();
+                valid = exclusionService.validate(dob, ssn);
+                sample(System.nanoTime() - started);
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                admitted.release();
+            }
+            if (failure == null) {
+                if (answered.compareAndSet(false, true)) {
+                    if (hedge) {
+                        hedgeWins.increment();
+                    }
+                    answer.complete(valid);
+                }
+            } else if (running.decrementAndGet() == 0) {
+                answer.completeExceptionally(failure);
+            } else {
+                log.warn("Exclusion request failed, waiting for the hedged one : {}", failure.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.gamesys.registrationservice.service.exporter;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.BadRequestException;
+import com.gamesys.registrationservice.api.exception.NotFoundException;
+import com.gamesys.registrationservice.domain.ExportSegment;
+import com.gamesys.registrationservice.domain.ExportStatus;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Exports every user into segment files of registration.export.segment-users users each, in the
+ * registration.export.format {@link ExportFormat}, under registration.export.dir/{id}.
+ *
+ * Users are read a page at a time with streamAllUser and each segment goes through one fixed size
+ * buffer, so heap use doesn't grow with the number of users. A segment is written under a temporary
+ * name and renamed once complete, and listed by {@link #getStatus} from then on. The previous
+ * export is kept for the downloads still reading it; older ones are deleted once an export completes.
+ */
+
+@Slf4j
+@Service
+public class BulkExporter {
+
+    private static final String SEGMENT_PREFIX = "users-";
+
+    @Inject
+    protected UserRepository userRepository;
+
+    @Value("${registration.export.dir:data/export}")
+    protected String directory;
+
+    @Value("${registration.export.format:GZIP}")
+    protected ExportFormat format;
+
+    @Value("${registration.export.segment-users:1000000}")
+    protected long segmentUsers;
+
+    private volatile Export current;
+    private volatile Export previous;
+
+    public synchronized ExportStatus start() {
+        Export started = begin();
+        Thread runner = new Thread(() -> execute(started), "bulk-export");
+        runner.setDaemon(true);
+        runner.start();
+        return started.status();
+    }
+
+    /**
+     * Exports on the calling thread.
+     */
+    public ExportStatus run() {
+        Export started;
+        synchronized (this) {
+            started = begin();
+        }
+        execute(started);
+        return started.status();
+    }
+
+    public Optional<ExportStatus> getStatus() {
+        Export export = current;
+        return export == null ? Optional.empty() : Optional.of(export.status());
+    }
+
+    /**
+     * @return a complete segment of the current or previous export
+     */
+    public Path segment(String id, String name) {
+        for (Export export : new Export[]{current, previous}) {
+            if (export != null && export.id.equals(id)) {
+                for (ExportSegment segment : export.segments) {
+                    if (segment.getName().equals(name)) {
+                        return export.directory.resolve(name);
+                    }
+                }
+            }
+        }
+        throw new NotFoundException("Export segment " + id + "/" + name + " not found", ErrorEnum.NO_FOUND_EXCEPTION);
+    }
+
+    private Export begin() {
+        if (current != null && current.isRunning()) {
+            throw new BadRequestException("Export " + current.id + " still running", ErrorEnum.API_ERROR_EXPORT_ALREADY_RUNNING);
+        }
+        String id = String.valueOf(System.currentTimeMillis());
+        if (current != null) {
+            previous = current;
+        }
+        current = new Export(id, Paths.get(directory).toAbsolutePath().resolve(id), format);
+        return current;
+    }
+
+    private void execute(Export export) {
+        log.info("Export {} started in {}", export.id, export.directory);
+        try (Stream<User> users = userRepository.streamAllUser()) {
+            Files.createDirectories(export.directory);
+            Iterator<User> it = users.iterator();
+            while (it.hasNext()) {
+                writeSegment(export, it);
+            }
+            export.finish("COMPLETED", null);
+            ExportStatus status = export.status();
+            log.info("Export {} completed : {} users in {} segments, {} bytes in {} ms, {} users/s", export.id,
+                    status.getUsers(), status.getSegments().size(), status.getBytes(), status.getElapsedMillis(),
+                    status.getUsersPerSecond());
+            deleteOlderExports();
+        } catch (Exception e) {
+            log.error("Export {} failed", export.id, e);
+            export.finish("FAILED", e.getMessage());
+        }
+    }
+
+    private void writeSegment(Export export, Iterator<User> users) throws IOException {
+        String name = String.format("%s%05d%s", SEGMENT_PREFIX, export.segments.size(), export.format.suffix());
+        Path temporary = export.directory.resolve(name + ".tmp");
+        long count = 0;
+        try (ExportFormat.SegmentWriter writer = export.format.open(temporary)) {
+            while (count < segmentUsers && users.hasNext()) {
+                writer.write(users.next());
+                count++;
+                export.users++;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Path segment = Files.move(temporary, export.directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        long bytes = Files.size(segment);
+        export.bytes += bytes;
+        export.segments.add(new ExportSegment(name, count, bytes));
+    }
+
+    private void deleteOlderExports() throws IOException {
+        List<Path> older = new ArrayList<>();
+        try (DirectoryStream<Path> exports = Files.newDirectoryStream(Paths.get(directory).toAbsolutePath())) {
+            for (Path export : exports) {
+                if (!export.equals(current.directory) && (previous == null || !export.equals(previous.directory))) {
+                    older.add(export);
+                }
+            }
+        }
+        for (Path export : older) {
+            try (Stream<Path> files = Files.walk(export)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * One export, written by a single thread and read by status requests.
+     */
+    private static final class Export {
+
+        private final String id;
+        private final Path directory;
+        private final ExportFormat format;
+        private final List<ExportSegment> segments = Collections.synchronizedList(new ArrayList<>());
+        private final long started = System.nanoTime();
+        private volatile long users;
+        private volatile long bytes;
+        private volatile long elapsedNanos = -1;
+        private volatile String state = "RUNNING";
+        private volatile String failure;
+
+        private Export(String id, Path directory, ExportFormat format) {
+            this.id = id;
+            this.directory = directory;
+            this.format = format;
+        }
+
+        private boolean isRunning() {
+            return elapsedNanos < 0;
+        }
+
+        private void finish(String finalState, String reason) {
+            failure = reason;
+            state = finalState;
+            elapsedNanos = System.nanoTime() - started;
+        }
+
+        private ExportStatus status() {
+            long millis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos < 0 ? System.nanoTime() - started : elapsedNanos);
+            long count = users;
+            List<ExportSegment> written;
+            synchronized (segments) {
+                written = new ArrayList<>(segments);
+            }
+            return new ExportStatus(id, state, format.name(), count, bytes, millis, millis == 0 ? count : count * 1000 / millis,
+                    written, failure);
+        }
+    }
+}
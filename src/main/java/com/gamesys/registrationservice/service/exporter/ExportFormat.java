@@ -0,0 +1,230 @@
+package com.gamesys.registrationservice.service.exporter;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.codec.UserCodec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Segment file formats of an export.
+ *
+ * GZIP is gzip compressed NDJSON, one {"username","password","dob","ssn"} object per line like the
+ * NDJSON export of GET /register. Users are encoded without Jackson into a reused array, since the
+ * Java 8 Deflater only takes arrays, and deflated straight to the file.
+ *
+ * BINARY is [int magic][int version][long count] followed by count users in the {@link UserCodec}
+ * layout, encoded into a direct buffer and written with the file channel.
+ */
+public enum ExportFormat {
+
+    GZIP(".ndjson.gz", "application/gzip") {
+        @Override
+        SegmentWriter open(Path file) throws IOException {
+            return new GzipWriter(file);
+        }
+    },
+
+    BINARY(".users", "application/octet-stream") {
+        @Override
+        SegmentWriter open(Path file) throws IOException {
+            return new BinaryWriter(file);
+        }
+    };
+
+    public static final int BINARY_MAGIC = 0x55455850;
+    public static final int BINARY_VERSION = 1;
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final String suffix;
+    private final String contentType;
+
+    ExportFormat(String suffix, String contentType) {
+        this.suffix = suffix;
+        this.contentType = contentType;
+    }
+
+    public String suffix() {
+        return suffix;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the content type of the segment file name
+     */
+    public static String contentTypeOf(String name) {
+        for (ExportFormat format : values()) {
+            if (name.endsWith(format.suffix)) {
+                return format.contentType;
+            }
+        }
+        return BINARY.contentType;
+    }
+
+    abstract SegmentWriter open(Path file) throws IOException;
+
+    /**
+     * Writes the users of one segment file.
+     */
+    interface SegmentWriter extends AutoCloseable {
+
+        void write(User user) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class GzipWriter implements SegmentWriter {
+
+        private final FileChannel channel;
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_BYTES];
+        private int position;
+
+        private GzipWriter(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.out = new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16);
+        }
+
+        @Override
+        public void write(User user) throws IOException {
+            int bound = 64 + 6 * (user.getUsername().length() + user.getPassword().length() + user.getSsn().length());
+            if (bound > BUFFER_BYTES) {
+                throw new IOException("User " + user.getSsn() + " too large to export");
+            }
+            if (BUFFER_BYTES - position < bound) {
+                drain();
+            }
+            ascii("{\"username\":");
+            string(user.getUsername());
+            ascii(",\"password\":");
+            string(user.getPassword());
+            ascii(",\"dob\":\"");
+            date(user.getDob());
+            ascii("\",\"ssn\":");
+            string(user.getSsn());
+            ascii("}\n");
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+            out.close();
+        }
+
+        private void drain() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+
+        private void ascii(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+        }
+
+        /**
+         * ISO yyyy-MM-dd without going through a String.
+         */
+        private void date(LocalDate date) {
+            digits(date.getYear(), 4);
+            buffer[position++] = '-';
+            digits(date.getMonthValue(), 2);
+            buffer[position++] = '-';
+            digits(date.getDayOfMonth(), 2);
+        }
+
+        private void digits(int value, int width) {
+            for (int i = position + width - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position += width;
+        }
+
+        /**
+         * JSON string in UTF-8, escaping quotes, backslashes and control characters.
+         */
+        private void string(String value) {
+            buffer[position++] = '"';
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x20) {
+                    ascii(String.format("\\u%04x", (int) c));
+                } else if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xC0 | c >> 6);
+                    buffer[position++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                    buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+                } else {
+                    buffer[position++] = (byte) (0xE0 | c >> 12);
+                    buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            buffer[position++] = '"';
+        }
+    }
+
+    private static final class BinaryWriter implements SegmentWriter {
+
+        private static final int COUNT_OFFSET = 2 * Integer.BYTES;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private long count;
+
+        private BinaryWriter(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            buffer.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putLong(0);
+        }
+
+        @Override
+        public void write(User user) throws IOException {
+            if (buffer.remaining() < UserCodec.encodedSize(user)) {
+                drain();
+            }
+            UserCodec.encode(user, buffer);
+            count++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+                buffer.putLong(count).flip();
+                channel.write(buffer, COUNT_OFFSET);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
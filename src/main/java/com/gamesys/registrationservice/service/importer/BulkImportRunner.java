@@ -0,0 +1,34 @@
+package com.gamesys.registrationservice.service.importer;
+
+import com.gamesys.registrationservice.domain.ImportStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.nio.file.Paths;
+
+/**
+ * Imports the files given as --import=path on the command line once the application started.
+ */
+
+@Slf4j
+@Component
+public class BulkImportRunner implements ApplicationRunner {
+
+    @Inject
+    protected BulkImporter bulkImporter;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("import")) {
+            return;
+        }
+        for (String file : args.getOptionValues("import")) {
+            ImportStatus status = bulkImporter.run(Paths.get(file));
+            log.info("Import of {} {} : {} imported, {} rejected, rejected records in {}", file, status.getState(),
+                    status.getImported(), status.getRejected(), status.getRejectedReport());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.gamesys.registrationservice.service.importer;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.BadRequestException;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.ImportStatus;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.service.ExclusionService;
+import com.gamesys.registrationservice.service.UserValidator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.inject.Inject;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Imports users from a CSV or NDJSON file, see {@link RecordParser}, without the per user HTTP,
+ * validation and exclusion round trips of POST /register.
+ *
+ * The file is cut into chunks of registration.import.chunk-bytes imported by {@link ImportChunkTask}s
+ * on a fork/join pool: each record is validated and exclusion checked like a registration and the
+ * accepted users are added registration.import.batch-size at a time with {@link UserRepository#addUsers}.
+ * Records refused for any reason are listed with their line number in a rejected records report,
+ * written next to the other reports in registration.import.dir. Progress is logged while the import
+ * runs and served by {@link #getStatus}. One import runs at a time.
+ */
+
+@Slf4j
+@Service
+public class BulkImporter {
+
+    @Inject
+    protected UserRepository userRepository;
+
+    @Inject
+    protected UserValidator userValidator;
+
+    @Inject
+    protected ExclusionService exclusionService;
+
+    @Value("${registration.import.dir:data/import}")
+    protected String directory;
+
+    @Value("${registration.import.parallelism:0}")
+    protected int parallelism;
+
+    @Value("${registration.import.chunk-bytes:16777216}")
+    protected long chunkBytes;
+
+    @Value("${registration.import.batch-size:1000}")
+    protected int batchSize;
+
+    @Value("${registration.import.progress-seconds:5}")
+    protected long progressSeconds;
+
+    private volatile ImportJob job;
+
+    /**
+     * Starts importing a file of registration.import.dir in the background.
+     */
+    public synchronized ImportStatus start(String file) {
+        Path path = resolve(file);
+        ImportJob started = begin(path);
+        Thread runner = new Thread(() -> execute(started), "bulk-import");
+        runner.setDaemon(true);
+        runner.start();
+        return started.status();
+    }
+
+    /**
+     * Imports a file on the calling thread.
+     */
+    public ImportStatus run(Path file) {
+        ImportJob started;
+        synchronized (this) {
+            started = begin(file);
+        }
+        execute(started);
+        return started.status();
+    }
+
+    public Optional<ImportStatus> getStatus() {
+        ImportJob current = job;
+        return current == null ? Optional.empty() : Optional.of(current.status());
+    }
+
+    private Path resolve(String file) {
+        Path root = Paths.get(directory).toAbsolutePath().normalize();
+        Path path = root.resolve(file).normalize();
+        if (!path.startsWith(root) || !Files.isRegularFile(path)) {
+            throw new BadRequestException(file + " {file} is not a file of " + root, ErrorEnum.API_ERROR_REQUEST_PARAM_INVALIDE);
+        }
+        return path;
+    }
+
+    private ImportJob begin(Path file) {
+        if (job != null && job.isRunning()) {
+            throw new BadRequestException("Import of " + job.file + " still running", ErrorEnum.API_ERROR_IMPORT_ALREADY_RUNNING);
+        }
+        try {
+            job = new ImportJob(file, Files.size(file));
+        } catch (IOException e) {
+            throw new BadRequestException(file + " can't be read : " + e.getMessage(), ErrorEnum.API_ERROR_REQUEST_PARAM_INVALIDE);
+        }
+        return job;
+    }
+
+    private void execute(ImportJob job) {
+        log.info("Import of {} started, {} bytes", job.file, job.bytes);
+        ForkJoinPool pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        try (FileChannel channel = FileChannel.open(job.file, StandardOpenOption.READ)) {
+            ImportChunkTask.Context context = new ImportChunkTask.Context(job, channel, chunkBytes, batchSize,
+                    RecordParser.forFile(job.file), userValidator, exclusionService, userRepository);
+            if (context.results.length > 0) {
+                ForkJoinTask<Void> chunks = pool.submit(new ImportChunkTask(context, 0, context.results.length));
+                awaitLoggingProgress(job, chunks);
+            }
+            job.completed(report(job, context.results));
+            ImportStatus status = job.status();
+            log.info("Import of {} completed : {} records, {} imported, {} rejected in {} ms, {} records/s",
+                    job.file, status.getRecords(), status.getImported(), status.getRejected(),
+                    status.getElapsedMillis(), status.getRecordsPerSecond());
+        } catch (Exception e) {
+            log.error("Import of {} failed", job.file, e);
+            job.failed(e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void awaitLoggingProgress(ImportJob job, ForkJoinTask<Void> chunks) throws Exception {
+        while (true) {
+            try {
+                chunks.get(progressSeconds, TimeUnit.SECONDS);
+                return;
+            } catch (TimeoutException e) {
+                ImportStatus status = job.status();
+                log.info("Import of {} : {}% read, {} records, {} imported, {} rejected, {} records/s", job.file,
+                        status.getBytesRead() * 100 / Math.max(1, status.getBytes()), status.getRecords(),
+                        status.getImported(), status.getRejected(), status.getRecordsPerSecond());
+            }
+        }
+    }
+
+    /**
+     * Writes the rejected records in file order, numbering lines from the start of the file. A chunk
+     * rejects the users its batches refused after the records that failed validation, hence the sort.
+     *
+     * @return the report, null when every record was imported
+     */
+    private Path report(ImportJob job, ImportJob.ChunkResult[] results) throws IOException {
+        if (job.rejected.sum() == 0) {
+            return null;
+        }
+        Path report = Paths.get(directory).toAbsolutePath().resolve(job.file.getFileName() + ".rejected.csv");
+        Files.createDirectories(report.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            writer.write("line,code,reason,record");
+            writer.newLine();
+            long lines = 0;
+            for (ImportJob.ChunkResult result : results) {
+                if (result == null) {
+                    throw new ServerException("Import of " + job.file + " incomplete", ErrorEnum.SERVER_EXCEPTION);
+                }
+                result.rejections.sort(Comparator.comparingLong(rejection -> rejection.line));
+                for (ImportJob.Rejection rejection : result.rejections) {
+                    writer.write((lines + rejection.line) + "," + rejection.code + "," + quote(rejection.reason) + "," + quote(rejection.record));
+                    writer.newLine();
+                }
+                lines += result.lines;
+            }
+        }
+        return report;
+    }
+
+    private static String quote(String value) {
+        return value == null ? "" : "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
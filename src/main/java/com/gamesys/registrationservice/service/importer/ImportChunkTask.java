@@ -0,0 +1,223 @@
+package com.gamesys.registrationservice.service.importer;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.UserDTO;
+import com.gamesys.registrationservice.api.exception.BadRequestException;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.service.ExclusionPolicy;
+import com.gamesys.registrationservice.service.ExclusionService;
+import com.gamesys.registrationservice.service.UserValidator;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Imports chunks [from, to) of a file, splitting the range in halves until a single chunk is left.
+ *
+ * A chunk owns the lines starting inside its byte range: it skips the end of a line started by the
+ * previous chunk and finishes its own last line past its range. The file is read through mapped
+ * windows of one chunk, remapped when a line runs over. Each record is parsed, validated and
+ * exclusion checked, and the accepted ones are added in batches. A record whose exclusion check
+ * fails is rejected like an invalid one, under the same fail open or closed policy as POST /register.
+ */
+class ImportChunkTask extends RecursiveAction {
+
+    static final int MAX_RECORD_BYTES = 64 * 1024;
+    private static final int MAX_REPORTED_BYTES = 256;
+
+    /**
+     * What every chunk task of a job shares.
+     */
+    static final class Context {
+
+        final ImportJob job;
+        final FileChannel channel;
+        final long chunkBytes;
+        final int batchSize;
+        final RecordParser parser;
+        final UserValidator userValidator;
+        final ExclusionService exclusionService;
+        final UserRepository userRepository;
+        final ImportJob.ChunkResult[] results;
+
+        Context(ImportJob job, FileChannel channel, long chunkBytes, int batchSize, RecordParser parser,
+                UserValidator userValidator, ExclusionService exclusionService, UserRepository userRepository) {
+            this.job = job;
+            this.channel = channel;
+            this.chunkBytes = chunkBytes;
+            this.batchSize = batchSize;
+            this.parser = parser;
+            this.userValidator = userValidator;
+            this.exclusionService = exclusionService;
+            this.userRepository = userRepository;
+            this.results = new ImportJob.ChunkResult[(int) ((job.bytes + chunkBytes - 1) / chunkBytes)];
+        }
+    }
+
+    private final Context context;
+    private final int from;
+    private final int to;
+
+    ImportChunkTask(Context context, int from, int to) {
+        this.context = context;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from > 1) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ImportChunkTask(context, from, middle), new ImportChunkTask(context, middle, to));
+            return;
+        }
+        try {
+            context.results[from] = importChunk(from);
+        } catch (IOException e) {
+            throw new ServerException("Import of " + context.job.file + " failed : " + e.getMessage(), ErrorEnum.STORAGE_EXCEPTION);
+        }
+    }
+
+    private ImportJob.ChunkResult importChunk(int chunk) throws IOException {
+        long start = chunk * context.chunkBytes;
+        long end = Math.min(context.job.bytes, start + context.chunkBytes);
+        Window window = new Window(context.channel, context.job.bytes, context.chunkBytes);
+        long position = start;
+        if (start > 0) {
+            while (position < context.job.bytes && window.get(position - 1) != '\n') {
+                position++;
+            }
+        }
+        Batch batch = new Batch();
+        List<ImportJob.Rejection> rejections = new ArrayList<>();
+        byte[] line = new byte[MAX_RECORD_BYTES];
+        long lines = 0;
+        long read = start;
+        while (position < end) {
+            int length = 0;
+            long next = position;
+            while (next < context.job.bytes && window.get(next) != '\n') {
+                if (length < MAX_RECORD_BYTES) {
+                    line[length] = window.get(next);
+                }
+                length++;
+                next++;
+            }
+            lines++;
+            if (length > 0 && length <= MAX_RECORD_BYTES && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length > MAX_RECORD_BYTES) {
+                reject(rejections, lines, ErrorEnum.API_ERROR_RECORD_TOO_LONG, length + " bytes", text(line, MAX_REPORTED_BYTES));
+            } else if (length > 0 && !(chunk == 0 && lines == 1 && context.parser.isHeader(line, length))) {
+                importRecord(line, length, lines, batch, rejections);
+            }
+            position = next + 1;
+            if (batch.users.size() >= context.batchSize) {
+                batch.flush(rejections);
+                context.job.bytesRead.add(Math.min(position, end) - read);
+                read = Math.min(position, end);
+            }
+        }
+        batch.flush(rejections);
+        context.job.bytesRead.add(end - read);
+        return new ImportJob.ChunkResult(lines, rejections);
+    }
+
+    private void importRecord(byte[] line, int length, long number, Batch batch, List<ImportJob.Rejection> rejections) {
+        context.job.records.increment();
+        UserDTO userDTO;
+        try {
+            userDTO = context.parser.parse(line, length);
+            context.userValidator.validateUser(userDTO);
+        } catch (IllegalArgumentException e) {
+            reject(rejections, number, ErrorEnum.API_ERROR_REQUEST_BODY_INVALIDE, e.getMessage(), text(line, length));
+            return;
+        } catch (BadRequestException e) {
+            reject(rejections, number, e.getApiError(), e.getLogMessage(), text(line, length));
+            return;
+        }
+        try {
+            if (ExclusionPolicy.isBlackListed(context.exclusionService, userDTO.getDob(), userDTO.getSsn())) {
+                reject(rejections, number, ErrorEnum.API_ERROR_USER_BLACK_LISTED, "DOB and SSN", text(line, length));
+                return;
+            }
+        } catch (ServerException e) {
+            reject(rejections, number, e.getApiError(), e.getLogMessage(), text(line, length));
+            return;
+        }
+        User user = new User(userDTO.getUsername(), userDTO.getPassword(), LocalDate.parse(userDTO.getDob()), userDTO.getSsn());
+        batch.users.add(user);
+        batch.lines.put(user, number);
+    }
+
+    private void reject(List<ImportJob.Rejection> rejections, long number, ErrorEnum error, String reason, String record) {
+        context.job.rejected.increment();
+        rejections.add(new ImportJob.Rejection(number, error.getCode(), reason, record));
+    }
+
+    private static String text(byte[] line, int length) {
+        return new String(line, 0, Math.min(length, MAX_REPORTED_BYTES), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Accepted users waiting to be added, with the line each one came from.
+     */
+    private final class Batch {
+
+        private final List<User> users = new ArrayList<>();
+        private final Map<User, Long> lines = new IdentityHashMap<>();
+
+        private void flush(List<ImportJob.Rejection> rejections) {
+            if (users.isEmpty()) {
+                return;
+            }
+            List<User> refused = context.userRepository.addUsers(users);
+            context.job.imported.add(users.size() - refused.size());
+            for (User user : refused) {
+                ErrorEnum error = context.userRepository.getUser(user.getSsn()).isPresent()
+                        ? ErrorEnum.API_ERROR_USER_ALREADY_EXIST : ErrorEnum.API_ERROR_USERNAME_ALREADY_EXIST;
+                reject(rejections, lines.get(user), error, error.getMessage(),
+                        String.join(",", user.getUsername(), user.getPassword(), user.getDob().toString(), user.getSsn()));
+            }
+            users.clear();
+            lines.clear();
+        }
+    }
+
+    /**
+     * Reads a file through a mapping of windowBytes, moved forward when a position falls outside it.
+     */
+    private static final class Window {
+
+        private final FileChannel channel;
+        private final long size;
+        private final long windowBytes;
+        private MappedByteBuffer buffer;
+        private long base;
+
+        private Window(FileChannel channel, long size, long windowBytes) {
+            this.channel = channel;
+            this.size = size;
+            this.windowBytes = windowBytes;
+        }
+
+        private byte get(long position) throws IOException {
+            if (buffer == null || position < base || position >= base + buffer.limit()) {
+                base = position;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(windowBytes, size - base));
+            }
+            return buffer.get((int) (position - base));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.gamesys.registrationservice.service.importer;
+
+import com.gamesys.registrationservice.domain.ImportStatus;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one import, updated by the chunk tasks as they go.
+ */
+class ImportJob {
+
+    /**
+     * A rejected record, line counted from 1 within its chunk until the report is written.
+     */
+    static final class Rejection {
+
+        final long line;
+        final String code;
+        final String reason;
+        final String record;
+
+        Rejection(long line, String code, String reason, String record) {
+            this.line = line;
+            this.code = code;
+            this.reason = reason;
+            this.record = record;
+        }
+    }
+
+    /**
+     * What a chunk task leaves behind: the lines it read and the records it rejected.
+     */
+    static final class ChunkResult {
+
+        final long lines;
+        final List<Rejection> rejections;
+
+        ChunkResult(long lines, List<Rejection> rejections) {
+            this.lines = lines;
+            this.rejections = rejections;
+        }
+    }
+
+    final Path file;
+    final long bytes;
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder records = new LongAdder();
+    final LongAdder imported = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    private final long started = System.nanoTime();
+    private volatile long elapsedNanos = -1;
+    private volatile String state = "RUNNING";
+    private volatile Path rejectedReport;
+    private volatile String failure;
+
+    ImportJob(Path file, long bytes) {
+        this.file = file;
+        this.bytes = bytes;
+    }
+
+    void completed(Path report) {
+        rejectedReport = report;
+        finish("COMPLETED");
+    }
+
+    void failed(String reason) {
+        failure = reason;
+        finish("FAILED");
+    }
+
+    boolean isRunning() {
+        return elapsedNanos < 0;
+    }
+
+    ImportStatus status() {
+        long nanos = elapsedNanos < 0 ? System.nanoTime() - started : elapsedNanos;
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        long count = records.sum();
+        return new ImportStatus(state, file.toString(), bytes, bytesRead.sum(), count, imported.sum(), rejected.sum(),
+                millis, millis == 0 ? count : count * 1000 / millis,
+                rejectedReport == null ? null : rejectedReport.toString(), failure);
+    }
+
+    private void finish(String finalState) {
+        state = finalState;
+        elapsedNanos = System.nanoTime() - started;
+    }
+}
@@ -0,0 +1,59 @@
+package com.gamesys.registrationservice.service.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gamesys.registrationservice.api.UserDTO;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Turns one line of an import file into a user. CSV lines are username,password,dob,ssn without
+ * quoting, an optional header line starting with "username" is skipped; NDJSON lines hold one user
+ * object each, as accepted by POST /register.
+ */
+abstract class RecordParser {
+
+    static final RecordParser CSV = new RecordParser() {
+        @Override
+        UserDTO parse(byte[] line, int length) {
+            String[] fields = new String(line, 0, length, StandardCharsets.UTF_8).split(",", -1);
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Expected 4 fields, found " + fields.length);
+            }
+            return new UserDTO(fields[0].trim(), fields[1].trim(), fields[2].trim(), fields[3].trim());
+        }
+
+        @Override
+        boolean isHeader(byte[] line, int length) {
+            return length >= 8 && new String(line, 0, 8, StandardCharsets.US_ASCII).equalsIgnoreCase("username");
+        }
+    };
+
+    static final RecordParser NDJSON = new RecordParser() {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+
+        @Override
+        UserDTO parse(byte[] line, int length) {
+            try {
+                return objectMapper.readValue(line, 0, length, UserDTO.class);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage().split("\n")[0], e);
+            }
+        }
+    };
+
+    static RecordParser forFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json") ? NDJSON : CSV;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the line isn't a record
+     */
+    abstract UserDTO parse(byte[] line, int length);
+
+    boolean isHeader(byte[] line, int length) {
+        return false;
+    }
+}
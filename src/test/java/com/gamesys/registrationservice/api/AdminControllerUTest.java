@@ -0,0 +1,229 @@
+package com.gamesys.registrationservice.api;
+
+import com.gamesys.registrationservice.RegistrationServiceApplication;
+import com.gamesys.registrationservice.api.exception.NotFoundException;
+import com.gamesys.registrationservice.domain.CacheStatistics;
+import com.gamesys.registrationservice.domain.ClusterStatus;
+import com.gamesys.registrationservice.domain.ExclusionCacheStatistics;
+import com.gamesys.registrationservice.domain.ExclusionClientStatus;
+import com.gamesys.registrationservice.domain.ExclusionStatus;
+import com.gamesys.registrationservice.domain.ReplicationStatus;
+import com.gamesys.registrationservice.domain.ShardStatistics;
+import com.gamesys.registrationservice.persistence.cluster.RemoteClusterMember;
+import com.gamesys.registrationservice.service.AdminService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(SpringRunner.class)
+@AutoConfigureMockMvc
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = RegistrationServiceApplication.class,
+        properties = "registration.cluster.secret=s3cret")
+public class AdminControllerUTest {
+
+    @MockBean
+    private AdminService adminService;
+
+    @Autowired
+    private MockMvc mvc;
+
+
+    String apiEndPoint = "/admin";
+
+
+    @Test
+    public void testIfShardStatisticsRequestedThenResponseJsonArrayOfShards()
+            throws Exception {
+
+        doReturn(Collections.singletonList(new ShardStatistics(0, 10, 20, 11, 2, 1, 3)))
+                .when(adminService).getShardStatistics();
+
+        mvc.perform(get(apiEndPoint + "/shards")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].size", is(10)))
+                .andExpect(jsonPath("$[0].contended", is(3)))
+                .andReturn();
+        verify(adminService, times(1)).getShardStatistics();
+    }
+
+
+    @Test
+    public void testIfCacheStatisticsRequestedThenResponseJsonCounters()
+            throws Exception {
+
+        doReturn(new CacheStatistics(90, 5, 5, 2, 1, 40, 8000, 16000))
+                .when(adminService).getCacheStatistics();
+
+        mvc.perform(get(apiEndPoint + "/cache")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hits", is(90)))
+                .andExpect(jsonPath("$.hitRate", is(0.95)))
+                .andReturn();
+        verify(adminService, times(1)).getCacheStatistics();
+    }
+
+    @Test
+    public void testIfReplicationStatusRequestedOnFollowerThenResponseJsonLag()
+            throws Exception {
+
+        doReturn(new ReplicationStatus("follower", true, 120, 128, 8, 3, 0, Collections.emptyList()))
+                .when(adminService).getReplicationStatus();
+
+        mvc.perform(get(apiEndPoint + "/replication")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.role", is("follower")))
+                .andExpect(jsonPath("$.lag", is(8)))
+                .andReturn();
+        verify(adminService, times(1)).getReplicationStatus();
+    }
+
+
+    @Test
+    public void testIfClusterNodeAddedThenResponseJsonNewMembership()
+            throws Exception {
+
+        String node = "http://localhost:8083";
+        doReturn(new ClusterStatus("http://localhost:8081", 1, Arrays.asList("http://localhost:8081", node), true, 0, 0))
+                .when(adminService).addClusterNode(node);
+
+        mvc.perform(post(apiEndPoint + "/cluster/nodes")
+                .param("address", node)
+                .header(RemoteClusterMember.SECRET_HEADER, "s3cret"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is(1)))
+                .andExpect(jsonPath("$.nodes[1]", is(node)))
+                .andExpect(jsonPath("$.migrating", is(true)))
+                .andReturn();
+        verify(adminService, times(1)).addClusterNode(node);
+    }
+
+    @Test
+    public void testIfClusterNodeAddedWithoutClusterSecretThenResponseForbidden()
+            throws Exception {
+
+        String node = "http://localhost:8083";
+        mvc.perform(post(apiEndPoint + "/cluster/nodes")
+                .param("address", node))
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.code", is(ErrorEnum.FORBIDDEN_EXCEPTION.getCode())));
+        mvc.perform(post(apiEndPoint + "/cluster/nodes")
+                .param("address", node)
+                .header(RemoteClusterMember.SECRET_HEADER, "guess"))
+                .andExpect(status().isForbidden());
+        verify(adminService, never()).addClusterNode(node);
+    }
+
+
+    @Test
+    public void testIfExclusionListLoadedThenResponseItsStatusElseNotFound() throws Exception {
+
+        doReturn(new ExclusionStatus("/data/exclusion/blacklist.csv",
+                "/data/exclusion/index/blacklist.csv-00000001792339200000-72.idx", 1792339200000L, "5c1e7a2f", 3, 1, 88, 64,
+                1792339212345L, 12, 2, 1, 0, null))
+                .when(adminService).getExclusionStatus();
+
+        mvc.perform(get(apiEndPoint + "/exclusions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entries", is(3)))
+                .andExpect(jsonPath("$.filterBytes", is(64)))
+                .andExpect(jsonPath("$.version", is(1792339200000L)))
+                .andExpect(jsonPath("$.buildMillis", is(12)));
+
+        doThrow(new NotFoundException("Exclusion list not enabled", ErrorEnum.NO_FOUND_EXCEPTION))
+                .when(adminService).getExclusionStatus();
+        mvc.perform(get(apiEndPoint + "/exclusions"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testIfExclusionCacheEnabledThenResponseItsStatisticsElseNotFound() throws Exception {
+
+        doReturn(new ExclusionCacheStatistics(90, 5, 5, 2, 0, 1, 5, 100000, 5210, 494))
+                .when(adminService).getExclusionCacheStatistics();
+
+        mvc.perform(get(apiEndPoint + "/exclusions/cache"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hits", is(90)))
+                .andExpect(jsonPath("$.coalesced", is(5)))
+                .andExpect(jsonPath("$.savedMillis", is(494)))
+                .andExpect(jsonPath("$.hitRate", is(0.95)));
+
+        doThrow(new NotFoundException("Exclusion cache not enabled", ErrorEnum.NO_FOUND_EXCEPTION))
+                .when(adminService).getExclusionCacheStatistics();
+        mvc.perform(get(apiEndPoint + "/exclusions/cache"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testIfExclusionClientResilientThenResponseItsStatusElseNotFound() throws Exception {
+
+        doReturn(new ExclusionClientStatus("OPEN", "FAIL_CLOSED", 1, 120, 4, 16, 0, 37, 6, 5, 12000, 0))
+                .when(adminService).getExclusionClientStatus();
+
+        mvc.perform(get(apiEndPoint + "/exclusions/client"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.breakerState", is("OPEN")))
+                .andExpect(jsonPath("$.shortCircuited", is(37)))
+                .andExpect(jsonPath("$.hedgeWins", is(5)))
+                .andExpect(jsonPath("$.hedgeDelayMicros", is(12000)));
+
+        doThrow(new NotFoundException("Exclusion client resilience not enabled", ErrorEnum.NO_FOUND_EXCEPTION))
+                .when(adminService).getExclusionClientStatus();
+        mvc.perform(get(apiEndPoint + "/exclusions/client"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testIfGivenExportSegmentThenTransferItOrHandItToSendfile() throws Exception {
+
+        Path segment = Files.createTempFile("users-00000", ".ndjson.gz");
+        byte[] bytes = new byte[100000];
+        new Random(7).nextBytes(bytes);
+        Files.write(segment, bytes);
+        try {
+            doReturn(segment).when(adminService).getExportSegment("1540000000000", "users-00000.ndjson.gz");
+
+            mvc.perform(get(apiEndPoint + "/exports/1540000000000/users-00000.ndjson.gz"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType("application/gzip"))
+                    .andExpect(header().longValue("Content-Length", bytes.length))
+                    .andExpect(content().bytes(bytes));
+
+            mvc.perform(get(apiEndPoint + "/exports/1540000000000/users-00000.ndjson.gz")
+                    .requestAttr("org.apache.tomcat.sendfile.support", Boolean.TRUE))
+                    .andExpect(status().isOk())
+                    .andExpect(request().attribute("org.apache.tomcat.sendfile.filename", segment.toAbsolutePath().toString()))
+                    .andExpect(request().attribute("org.apache.tomcat.sendfile.end", (long) bytes.length))
+                    .andExpect(content().bytes(new byte[0]));
+        } finally {
+            Files.delete(segment);
+        }
+
+        doThrow(new NotFoundException("Export segment not found", ErrorEnum.NO_FOUND_EXCEPTION))
+                .when(adminService).getExportSegment("1540000000000", "users-00001.ndjson.gz");
+        mvc.perform(get(apiEndPoint + "/exports/1540000000000/users-00001.ndjson.gz"))
+                .andExpect(status().isNotFound());
+    }
+}
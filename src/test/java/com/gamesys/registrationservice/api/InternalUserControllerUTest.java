@@ -0,0 +1,52 @@
+package com.gamesys.registrationservice.api;
+
+import com.gamesys.registrationservice.RegistrationServiceApplication;
+import com.gamesys.registrationservice.persistence.cluster.RemoteClusterMember;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@AutoConfigureMockMvc
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = RegistrationServiceApplication.class,
+        properties = {
+                "registration.cluster.enabled=true",
+                "registration.cluster.allow-duplicate-usernames=true",
+                "registration.cluster.secret=s3cret",
+                "registration.cluster.self=http://localhost:1",
+                "registration.cluster.nodes=http://localhost:1"})
+public class InternalUserControllerUTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    public void testIfInternalRequestHasNoClusterSecretThenResponseForbidden()
+            throws Exception {
+
+        mvc.perform(get("/internal/users/ssn110"))
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.code", is(ErrorEnum.FORBIDDEN_EXCEPTION.getCode())));
+        mvc.perform(get("/internal/users/ssn110").header(RemoteClusterMember.SECRET_HEADER, "guess"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void testIfInternalRequestHasClusterSecretThenItIsServed()
+            throws Exception {
+
+        mvc.perform(get("/internal/users/ssn110").header(RemoteClusterMember.SECRET_HEADER, "s3cret"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -17,6 +17,11 @@ import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultHandler;
+import org.springframework.test.web.servlet.ResultMatcher;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -39,7 +44,7 @@ public class RegisterControllerITest {
 
     String apiEndPoint = createURLWithPort("/register");
 
-    @MockBean
+    @MockBean(name = "exclusionService")
     private ExclusionService exclusionService;
 
     @Autowired
@@ -58,7 +63,7 @@ public class RegisterControllerITest {
         when(exclusionService.validate(userDTO.getDob(), userDTO.getSsn()))
                 .thenReturn(true);
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isCreated())
@@ -75,7 +80,7 @@ public class RegisterControllerITest {
         when(exclusionService.validate(userDTO.getDob(), userDTO.getSsn()))
                 .thenReturn(false);
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -93,7 +98,7 @@ public class RegisterControllerITest {
         when(exclusionService.validate(userDTO.getDob(), userDTO.getSsn()))
                 .thenReturn(true);
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -110,7 +115,7 @@ public class RegisterControllerITest {
         when(exclusionService.validate(userDTO.getDob(), userDTO.getSsn()))
                 .thenReturn(true);
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -128,12 +133,12 @@ public class RegisterControllerITest {
         when(exclusionService.validate(userDTO.getDob(), userDTO.getSsn()))
                 .thenReturn(true);
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isCreated());
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -151,7 +156,7 @@ public class RegisterControllerITest {
         when(exclusionService.validate(userDTO.getDob(), userDTO.getSsn()))
                 .thenReturn(true);
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -168,7 +173,7 @@ public class RegisterControllerITest {
         when(exclusionService.validate(Mockito.anyString(), Mockito.anyString()))
                 .thenReturn(true);
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString("")))
                 .andExpect(status().isBadRequest())
@@ -185,7 +190,7 @@ public class RegisterControllerITest {
         when(exclusionService.validate(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
         userService.addUser(generateUser(userDTO));
 
-        mvc.perform(get(apiEndPoint + "/" + userDTO.getSsn())
+        perform(get(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
@@ -201,7 +206,7 @@ public class RegisterControllerITest {
 
         when(exclusionService.validate(userDTO.getDob(), userDTO.getSsn()))
                 .thenReturn(true);
-        mvc.perform(get(apiEndPoint + "/" + userDTO.getSsn())
+        perform(get(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.TEXT_PLAIN))
                 .andExpect(status().isNotFound())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
@@ -220,7 +225,7 @@ public class RegisterControllerITest {
         userService.addUser(generateUser(userDTO1));
         userService.addUser(generateUser(userDTO2));
 
-        mvc.perform(get(apiEndPoint)
+        perform(get(apiEndPoint)
                 .contentType(MediaType.TEXT_PLAIN))
                 .andExpect(status().isOk())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
@@ -229,6 +234,67 @@ public class RegisterControllerITest {
     }
 
 
+    @Test
+    public void testOnGetUserPageRequestIfUsersExistThenResponsePageWithCursor() throws Exception {
+
+        UserDTO userDTO1 = new UserDTO("username52", "443908Rr", "1986-05-26", "552-00-0001");
+        UserDTO userDTO2 = new UserDTO("username53", "443908Rr", "1986-05-27", "ssn553");
+        when(exclusionService.validate(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        userService.addUser(generateUser(userDTO1));
+        userService.addUser(generateUser(userDTO2));
+
+        perform(get(apiEndPoint).param("limit", "1")
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.users", hasSize(1)))
+                .andExpect(jsonPath("$.nextCursor", notNullValue()))
+                .andReturn();
+    }
+
+
+    @Test
+    public void testIfGivenUsernameAlreadyRegisteredThenResponseJsonErrorOnCreateAndFindByUsername() throws Exception {
+
+        UserDTO userDTO1 = new UserDTO("username54", "443908Rr", "1986-05-26", "ssn554");
+        UserDTO userDTO2 = new UserDTO("UserName54", "443908Rr", "1986-05-26", "ssn555");
+        when(exclusionService.validate(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        userService.addUser(generateUser(userDTO1));
+
+        perform(post(apiEndPoint)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(userDTO2)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is(ErrorEnum.API_ERROR_USERNAME_ALREADY_EXIST.getCode())))
+                .andReturn();
+
+        perform(get(apiEndPoint + "/by-username/USERNAME54")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ssn", is(userDTO1.getSsn())))
+                .andReturn();
+    }
+
+
+    @Test
+    public void testOnGetUsersByDobRequestThenResponseOnlyUsersBornInRange() throws Exception {
+
+        UserDTO userDTO1 = new UserDTO("username56", "443908Rr", "1971-03-02", "ssn556");
+        UserDTO userDTO2 = new UserDTO("username57", "443908Rr", "1971-04-02", "ssn557");
+        when(exclusionService.validate(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        userService.addUser(generateUser(userDTO1));
+        userService.addUser(generateUser(userDTO2));
+
+        perform(get(apiEndPoint).param("dobFrom", "1971-03-01").param("dobTo", "1971-03-31")
+                .contentType(MediaType.TEXT_PLAIN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(1)))
+                .andExpect(jsonPath("$.users[0].ssn", is(userDTO1.getSsn())))
+                .andExpect(jsonPath("$.nextCursor", nullValue()))
+                .andReturn();
+    }
+
+
     @Test
     public void testGivenUserSSNOnUpdateUserRequestIfUserExistThenResponseUserJson() throws Exception {
 
@@ -241,7 +307,7 @@ public class RegisterControllerITest {
         UserDTO updateUserDTO = new UserDTO("username14", "443908Rr", "1986-05-16", "ssn210");
 
 
-        mvc.perform(put(apiEndPoint + "/" + userDTO.getSsn())
+        perform(put(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(updateUserDTO)))
                 .andExpect(status().isOk())
@@ -264,7 +330,7 @@ public class RegisterControllerITest {
         when(exclusionService.validate(userDTO.getDob(), userDTO.getSsn()))
                 .thenReturn(true);
 
-        mvc.perform(put(apiEndPoint + "/" + userDTO.getSsn())
+        perform(put(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isNotFound())
@@ -285,7 +351,7 @@ public class RegisterControllerITest {
         userService.addUser(user);
 
 
-        mvc.perform(delete(apiEndPoint + "/" + userDTO.getSsn())
+        perform(delete(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andReturn();
@@ -298,7 +364,7 @@ public class RegisterControllerITest {
 
         UserDTO userDTO = new UserDTO("username27", "443908Rr", "1986-05-12", "ssn262");
 
-        mvc.perform(delete(apiEndPoint + "/" + userDTO.getSsn())
+        perform(delete(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNotFound())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
@@ -312,6 +378,35 @@ public class RegisterControllerITest {
         return "http://localhost:" + port + uri;
     }
 
+    /**
+     * Performs the request and, when the controller answered with a future, the async dispatch
+     * writing its result.
+     */
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        MvcResult result = mvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mvc.perform(asyncDispatch(result));
+        }
+        return new ResultActions() {
+            @Override
+            public ResultActions andExpect(ResultMatcher matcher) throws Exception {
+                matcher.match(result);
+                return this;
+            }
+
+            @Override
+            public ResultActions andDo(ResultHandler handler) throws Exception {
+                handler.handle(result);
+                return this;
+            }
+
+            @Override
+            public MvcResult andReturn() {
+                return result;
+            }
+        };
+    }
+
     public static String asJsonString(final Object obj) {
         try {
             final ObjectMapper mapper = new ObjectMapper();
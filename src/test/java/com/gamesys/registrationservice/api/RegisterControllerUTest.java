@@ -3,6 +3,9 @@ package com.gamesys.registrationservice.api;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gamesys.registrationservice.RegistrationServiceApplication;
 import com.gamesys.registrationservice.api.exception.*;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.Change;
+import com.gamesys.registrationservice.domain.ChangePage;
 import com.gamesys.registrationservice.domain.User;
 import com.gamesys.registrationservice.exception.ValidatorUserAlreadyExistException;
 import com.gamesys.registrationservice.exception.ValidatorUserBlackListedException;
@@ -17,11 +20,23 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultHandler;
+import org.springframework.test.web.servlet.ResultMatcher;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.BDDMockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -56,15 +71,57 @@ public class RegisterControllerUTest {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
-        doReturn(user).when(userService).getUser(anyString());
+        doReturn(CompletableFuture.completedFuture(user)).when(userService).getUserAsync(anyString());
 
-        mvc.perform(get(apiEndPoint + "/" + userDTO.getSsn())
+        perform(get(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.username", is(userDTO.getUsername())))
                 .andReturn();
-        verify(userService, times(1)).getUser(user.getSsn());
+        verify(userService, times(1)).getUserAsync(user.getSsn());
+    }
+
+
+    @Test
+    public void testIfGivenUsernameAndFoundUserThenResponseJsonOfUser()
+            throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        User user = new User("username22", "443908Rr", dateTime, "ssn110");
+
+        doReturn(CompletableFuture.completedFuture(user)).when(userService).getUserByUsernameAsync("UserName22");
+
+        perform(get(apiEndPoint + "/by-username/UserName22")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.ssn", is(user.getSsn())))
+                .andReturn();
+        verify(userService, times(1)).getUserByUsernameAsync("UserName22");
+    }
+
+
+    @Test
+    public void testIfChangesRequestedThenResponseJsonChangesAndNextPosition()
+            throws Exception {
+
+        User user = new User("username22", "443908Rr", LocalDate.parse("1986-05-26", formatter), "ssn110");
+        doReturn(new ChangePage(Arrays.asList(new Change(42, Change.Type.REPLACE, "ssn110", user),
+                new Change(43, Change.Type.REMOVE, "ssn111", null)), 43, 50, false))
+                .when(userService).getChanges(41, 2);
+
+        perform(get(apiEndPoint + "/changes")
+                .param("since", "41")
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes[0].type", is("REPLACE")))
+                .andExpect(jsonPath("$.changes[0].user.dob", is("1986-05-26")))
+                .andExpect(jsonPath("$.changes[1].user").value(nullValue()))
+                .andExpect(jsonPath("$.nextSince", is(43)))
+                .andExpect(jsonPath("$.resyncRequired", is(false)))
+                .andReturn();
+        verify(userService, times(1)).getChanges(41, 2);
     }
 
 
@@ -77,11 +134,11 @@ public class RegisterControllerUTest {
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
 
-        doThrow(new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND))
-                .when(userService).getUser(userDTO.getSsn());
+        doReturn(failed(new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND)))
+                .when(userService).getUserAsync(userDTO.getSsn());
 
 
-        mvc.perform(get(apiEndPoint + "/" + userDTO.getSsn())
+        perform(get(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.TEXT_PLAIN))
                 .andExpect(status().isNotFound())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
@@ -98,8 +155,8 @@ public class RegisterControllerUTest {
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
         doNothing().when(userValidator).validateUser(any(UserDTO.class));
-        doReturn(user).when(userService).addUser(any(User.class));
-        mvc.perform(post(apiEndPoint)
+        doReturn(CompletableFuture.completedFuture(user)).when(userService).addUserAsync(any(User.class));
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isCreated())
@@ -108,7 +165,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any());
-        verify(userService, times(1)).addUser(user);
+        verify(userService, times(1)).addUserAsync(user);
     }
 
     @Test
@@ -118,10 +175,10 @@ public class RegisterControllerUTest {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
-        doThrow(new ValidatorUserBlackListedException("DOB and SSN", ErrorEnum.API_ERROR_USER_BLACK_LISTED))
-                .when(userService).addUser(any(User.class));
+        doReturn(failed(new ValidatorUserBlackListedException("DOB and SSN", ErrorEnum.API_ERROR_USER_BLACK_LISTED)))
+                .when(userService).addUserAsync(any(User.class));
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -130,7 +187,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any());
-        verify(userService, times(1)).addUser(user);
+        verify(userService, times(1)).addUserAsync(user);
     }
 
 
@@ -143,7 +200,7 @@ public class RegisterControllerUTest {
                 .when(userValidator)
                 .validateUser(any(UserDTO.class));
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -158,7 +215,7 @@ public class RegisterControllerUTest {
 
 
         doNothing().when(userValidator).validateUser(any(UserDTO.class));
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString("")))
                 .andExpect(status().isBadRequest())
@@ -177,7 +234,7 @@ public class RegisterControllerUTest {
         doThrow(new BadRequestException("Username", ErrorEnum.API_ERROR_USER_NAME_NOT_CORRECT))
                 .when(userValidator)
                 .validateUser(any());
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -186,7 +243,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any());
-        verify(userService, times(0)).addUser(user);
+        verify(userService, times(0)).addUserAsync(user);
     }
 
     @Test
@@ -201,7 +258,7 @@ public class RegisterControllerUTest {
                 .validateUser(any(UserDTO.class));
 
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -209,7 +266,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(0)).addUser(user);
+        verify(userService, times(0)).addUserAsync(user);
     }
 
 
@@ -224,7 +281,7 @@ public class RegisterControllerUTest {
                 .when(userValidator)
                 .validateUser(any(UserDTO.class));
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -232,7 +289,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(0)).addUser(user);
+        verify(userService, times(0)).addUserAsync(user);
     }
 
     @Test
@@ -242,10 +299,10 @@ public class RegisterControllerUTest {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
-        doThrow(new ValidatorUserAlreadyExistException("SSN", ErrorEnum.API_ERROR_USER_ALREADY_EXIST))
-                .when(userService).addUser(any(User.class));
+        doReturn(failed(new ValidatorUserAlreadyExistException("SSN", ErrorEnum.API_ERROR_USER_ALREADY_EXIST)))
+                .when(userService).addUserAsync(any(User.class));
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -254,7 +311,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(1)).addUser(user);
+        verify(userService, times(1)).addUserAsync(user);
     }
 
 
@@ -264,8 +321,8 @@ public class RegisterControllerUTest {
         UserDTO userDTO = new UserDTO("username22", "443908Rr", "1986-05-26", "ssn110");
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
-        doReturn(user).when(userService).replaceUser(any(User.class));
-        mvc.perform(put(apiEndPoint + "/" + userDTO.getSsn())
+        doReturn(CompletableFuture.completedFuture(user)).when(userService).replaceUserAsync(any(User.class));
+        perform(put(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isOk())
@@ -274,7 +331,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(1)).replaceUser(any());
+        verify(userService, times(1)).replaceUserAsync(any());
     }
 
 
@@ -282,9 +339,9 @@ public class RegisterControllerUTest {
     public void testIfGivenUserSSNAndNotFoundUserThenResponseJsonError() throws Exception {
 
         UserDTO userDTO = new UserDTO("username22", "443908Rr", "1986-05-26", "ssn110");
-        doThrow(new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND)).when(userService).replaceUser(any(User.class));
+        doReturn(failed(new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND))).when(userService).replaceUserAsync(any(User.class));
 
-        mvc.perform(put(apiEndPoint + "/" + userDTO.getSsn())
+        perform(put(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isNotFound())
@@ -306,7 +363,7 @@ public class RegisterControllerUTest {
                 .when(userValidator)
                 .validateUser(any(UserDTO.class));
 
-        mvc.perform(put(apiEndPoint + "/" + userDTO.getSsn())
+        perform(put(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -315,7 +372,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(0)).addUser(any());
+        verify(userService, times(0)).addUserAsync(any());
     }
 
 
@@ -326,7 +383,7 @@ public class RegisterControllerUTest {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
         String wrongSSN = "invalid_ssn";
-        mvc.perform(put(apiEndPoint + "/" + wrongSSN)
+        perform(put(apiEndPoint + "/" + wrongSSN)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isBadRequest())
@@ -335,7 +392,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(0)).validateUser(any(UserDTO.class));
-        verify(userService, times(0)).addUser(any());
+        verify(userService, times(0)).addUserAsync(any());
     }
 
 
@@ -345,13 +402,13 @@ public class RegisterControllerUTest {
 
         UserDTO userDTO = new UserDTO("username22", "443908Rr", "1986-05-26", "ssn110");
 
-        doNothing().when(userService).removeUser(anyString());
-        mvc.perform(delete(apiEndPoint + "/" + userDTO.getSsn())
+        doReturn(CompletableFuture.completedFuture(null)).when(userService).removeUserAsync(anyString());
+        perform(delete(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andReturn();
 
-        verify(userService, times(1)).removeUser(userDTO.getSsn());
+        verify(userService, times(1)).removeUserAsync(userDTO.getSsn());
     }
 
     @Test
@@ -359,10 +416,10 @@ public class RegisterControllerUTest {
 
         UserDTO userDTO = new UserDTO("username22", "443908Rr", "1986-05-26", "ssn110");
 
-        doThrow(new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND)).when(userService).removeUser(anyString());
+        doReturn(failed(new NotFoundException("User not found", ErrorEnum.API_ERROR_USER_NOT_FOUND))).when(userService).removeUserAsync(anyString());
 
 
-        mvc.perform(delete(apiEndPoint + "/" + userDTO.getSsn())
+        perform(delete(apiEndPoint + "/" + userDTO.getSsn())
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNotFound())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
@@ -379,8 +436,8 @@ public class RegisterControllerUTest {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
-        when(userService.addUser(any(User.class))).thenThrow(new NullPointerException());
-        mvc.perform(post(apiEndPoint)
+        when(userService.addUserAsync(any(User.class))).thenReturn(failed(new NullPointerException()));
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isInternalServerError())
@@ -389,7 +446,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(1)).addUser(user);
+        verify(userService, times(1)).addUserAsync(user);
     }
 
 
@@ -400,8 +457,8 @@ public class RegisterControllerUTest {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
-        when(userService.addUser(any(User.class))).thenThrow(new ForbiddenException("TEST FORBIDDEN", ErrorEnum.FORBIDDEN_EXCEPTION));
-        mvc.perform(post(apiEndPoint)
+        when(userService.addUserAsync(any(User.class))).thenReturn(failed(new ForbiddenException("TEST FORBIDDEN", ErrorEnum.FORBIDDEN_EXCEPTION)));
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isForbidden())
@@ -410,7 +467,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(1)).addUser(user);
+        verify(userService, times(1)).addUserAsync(user);
     }
 
     @Test
@@ -420,8 +477,8 @@ public class RegisterControllerUTest {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
-        when(userService.addUser(any(User.class))).thenThrow(new ServerException("SERVER EXCEPTION TEST", ErrorEnum.SERVER_EXCEPTION));
-        mvc.perform(post(apiEndPoint)
+        when(userService.addUserAsync(any(User.class))).thenReturn(failed(new ServerException("SERVER EXCEPTION TEST", ErrorEnum.SERVER_EXCEPTION)));
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isInternalServerError())
@@ -430,7 +487,7 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(1)).addUser(user);
+        verify(userService, times(1)).addUserAsync(user);
     }
 
 
@@ -441,9 +498,9 @@ public class RegisterControllerUTest {
         LocalDate dateTime = LocalDate.parse(userDTO.getDob(), formatter);
         User user = new User("username22", "443908Rr", dateTime, "ssn110");
 
-        doThrow(new Error("test throwable")).when(userService).addUser(any(User.class));
+        doReturn(failed(new Error("test throwable"))).when(userService).addUserAsync(any(User.class));
 
-        mvc.perform(post(apiEndPoint)
+        perform(post(apiEndPoint)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(userDTO)))
                 .andExpect(status().isInternalServerError())
@@ -452,7 +509,152 @@ public class RegisterControllerUTest {
                 .andReturn();
 
         verify(userValidator, times(1)).validateUser(any(UserDTO.class));
-        verify(userService, times(1)).addUser(user);
+        verify(userService, times(1)).addUserAsync(user);
+    }
+
+    @Test
+    public void testIfGivenPageLimitThenResponseJsonPageOfUser() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        User user = new User("username22", "443908Rr", dateTime, "ssn110");
+
+        doReturn(CompletableFuture.completedFuture(new Page<>(Collections.singletonList(user), "next"))).when(userService).getUserPageAsync("abc", 1);
+
+        perform(get(apiEndPoint).param("limit", "1").param("cursor", "abc")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.users[0].username", is(user.getUsername())))
+                .andExpect(jsonPath("$.nextCursor", is("next")))
+                .andReturn();
+        verify(userService, times(1)).getUserPageAsync("abc", 1);
+    }
+
+    @Test
+    public void testIfGivenDobRangeThenResponseJsonPageOfUser() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        User user = new User("username22", "443908Rr", dateTime, "ssn110");
+
+        doReturn(CompletableFuture.completedFuture(new Page<>(Collections.singletonList(user), null))).when(userService)
+                .getUsersByDobAsync(LocalDate.parse("1986-05-01"), LocalDate.parse("1986-05-31"), null, 100);
+
+        perform(get(apiEndPoint).param("dobFrom", "1986-05-01").param("dobTo", "1986-05-31")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users[0].dob", is("1986-05-26")))
+                .andReturn();
+        verify(userService, times(1)).getUsersByDobAsync(LocalDate.parse("1986-05-01"), LocalDate.parse("1986-05-31"), null, 100);
+    }
+
+    @Test
+    public void testIfGivenDobRangeReversedOrNotADateThenResponseJsonError() throws Exception {
+
+        perform(get(apiEndPoint).param("dobFrom", "1986-06-01").param("dobTo", "1986-05-31")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is(ErrorEnum.API_ERROR_USER_DOB_NOT_CORRECT.getCode())))
+                .andReturn();
+
+        perform(get(apiEndPoint).param("dobFrom", "1986-13-01").param("dobTo", "1986-05-31").param("limit", "5")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is(ErrorEnum.API_ERROR_USER_DOB_NOT_CORRECT.getCode())))
+                .andReturn();
+        verify(userService, never()).getUsersByDobAsync(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void testIfGivenPageLimitOutOfRangeThenResponseJsonError() throws Exception {
+
+        perform(get(apiEndPoint).param("limit", "0")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is(ErrorEnum.API_ERROR_PAGE_LIMIT_NOT_CORRECT.getCode())))
+                .andReturn();
+
+        perform(get(apiEndPoint).param("limit", "ten")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is(ErrorEnum.API_ERROR_REQUEST_PARAM_INVALIDE.getCode())))
+                .andReturn();
+        verify(userService, never()).getUserPageAsync(anyString(), anyInt());
+    }
+
+    @Test
+    public void testIfGivenNdjsonAcceptThenStreamOneUserPerLine() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        User user1 = new User("username22", "443908Rr", dateTime, "ssn110");
+        User user2 = new User("username23", "443908Rr", dateTime, "ssn111");
+
+        doReturn(Stream.of(user1, user2)).when(userService).streamAllUser();
+
+        MvcResult result = mvc.perform(get(apiEndPoint)
+                .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andExpect(content().string(
+                        "{\"username\":\"username22\",\"password\":\"443908Rr\",\"dob\":\"1986-05-26\",\"ssn\":\"ssn110\"}\n"
+                        + "{\"username\":\"username23\",\"password\":\"443908Rr\",\"dob\":\"1986-05-26\",\"ssn\":\"ssn111\"}\n"));
+        verify(userService, times(1)).streamAllUser();
+    }
+
+    @Test
+    public void testIfGivenNdjsonAcceptThenOnlyTheStreamGetsTheLongAsyncTimeout() throws Exception {
+
+        doReturn(Stream.empty()).when(userService).streamAllUser();
+        doReturn(new CompletableFuture<User>()).when(userService).getUserAsync("ssn110");
+
+        MvcResult stream = mvc.perform(get(apiEndPoint)
+                .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(stream.getRequest().getAsyncContext().getTimeout(), is(3_600_000L));
+
+        MvcResult single = mvc.perform(get(apiEndPoint + "/ssn110"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(single.getRequest().getAsyncContext().getTimeout(), is(not(3_600_000L)));
+    }
+
+    /**
+     * Performs the request and, when the controller answered with a future, the async dispatch
+     * writing its result.
+     */
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        MvcResult result = mvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mvc.perform(asyncDispatch(result));
+        }
+        return new ResultActions() {
+            @Override
+            public ResultActions andExpect(ResultMatcher matcher) throws Exception {
+                matcher.match(result);
+                return this;
+            }
+
+            @Override
+            public ResultActions andDo(ResultHandler handler) throws Exception {
+                handler.handle(result);
+                return this;
+            }
+
+            @Override
+            public MvcResult andReturn() {
+                return result;
+            }
+        };
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
     }
 
     private static String asJsonString(final Object obj) {
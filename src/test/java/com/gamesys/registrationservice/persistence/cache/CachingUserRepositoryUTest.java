@@ -0,0 +1,98 @@
+package com.gamesys.registrationservice.persistence.cache;
+
+import com.gamesys.registrationservice.domain.CacheStatistics;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+public class CachingUserRepositoryUTest {
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    @Test
+    public void testIfUserIsReadTwiceThenSecondReadIsServedFromCache() {
+        UserRepository backend = spy(new UserRepositoryImpl());
+        CachingUserRepository userRepository = new CachingUserRepository(backend, 1 << 20, 4);
+        backend.addUser("123456789", new User("username22", "443908Rr", dob, "123456789"));
+
+        assertThat(userRepository.getUser("123456789").get().getUsername(), is("username22"));
+        assertThat(userRepository.getUser("123456789").get().getUsername(), is("username22"));
+        assertFalse(userRepository.getUser("987654321").isPresent());
+        assertFalse(userRepository.getUser("987654321").isPresent());
+
+        verify(backend, times(1)).getUser("123456789");
+        verify(backend, times(1)).getUser("987654321");
+        CacheStatistics statistics = userRepository.getStatistics();
+        assertThat(statistics.getHits(), is(1L));
+        assertThat(statistics.getNegativeHits(), is(1L));
+        assertThat(statistics.getMisses(), is(2L));
+        assertThat(statistics.getEntries(), is(2));
+    }
+
+    @Test
+    public void testIfUserIsWrittenThenCacheServesWrittenValue() {
+        UserRepository backend = spy(new UserRepositoryImpl());
+        CachingUserRepository userRepository = new CachingUserRepository(backend, 1 << 20, 4);
+
+        assertFalse(userRepository.getUser("123456789").isPresent());
+        userRepository.addUser("123456789", new User("username22", "443908Rr", dob, "123456789"));
+        assertThat(userRepository.getUser("123456789").get().getUsername(), is("username22"));
+        userRepository.replaceUser("123456789", new User("renamed", "443908Rr", dob, "123456789"));
+        assertThat(userRepository.getUser("123456789").get().getUsername(), is("renamed"));
+        assertTrue(userRepository.removeUser("123456789"));
+        assertFalse(userRepository.getUser("123456789").isPresent());
+
+        verify(backend, times(1)).getUser("123456789");
+        assertThat(userRepository.getStatistics().getInvalidations(), is(3L));
+    }
+
+    @Test
+    public void testIfReadRacesWithWriteThenReplacedValueIsNotCached() {
+        UserCache cache = new UserCache(1 << 20, 1);
+        User stale = new User("username22", "443908Rr", dob, "123456789");
+
+        // a reader takes the generation and reads the old value, a replace lands before it caches it
+        long generation = cache.generation("123456789");
+        cache.put("123456789", new User("renamed", "443908Rr", dob, "123456789"), cache.invalidate("123456789"));
+        cache.put("123456789", stale, generation);
+
+        assertThat(cache.get("123456789").user.getUsername(), is("renamed"));
+    }
+
+    @Test
+    public void testIfCacheIsFullThenLeastRecentlyUsedUsersAreEvicted() {
+        UserRepository backend = new UserRepositoryImpl();
+        CachingUserRepository userRepository = new CachingUserRepository(backend, 64 << 10, 1);
+        for (int i = 0; i < 2_000; i++) {
+            String ssn = String.format("%09d", i);
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob, ssn));
+            userRepository.getUser("000000000");
+        }
+
+        CacheStatistics statistics = userRepository.getStatistics();
+        assertThat(statistics.getEvictions(), greaterThan(0L));
+        assertThat(statistics.getBytes(), lessThanOrEqualTo(64L << 10));
+        long misses = statistics.getMisses();
+        userRepository.getUser("000000000");
+        userRepository.getUser("000001999");
+        assertThat(userRepository.getStatistics().getMisses(), is(misses));
+        userRepository.getUser("000000001");
+        assertThat(userRepository.getStatistics().getMisses(), is(misses + 1));
+    }
+}
@@ -0,0 +1,73 @@
+package com.gamesys.registrationservice.persistence.changes;
+
+import com.gamesys.registrationservice.domain.Change;
+import com.gamesys.registrationservice.domain.ChangePage;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class ChangeFeedUserRepositoryUTest {
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    @Test
+    public void testAcceptedWritesAreReadBackInOrderFromAnyPosition() {
+        ChangeFeed feed = new ChangeFeed(100, 1000);
+        ChangeFeedUserRepository repository = new ChangeFeedUserRepository(new UserRepositoryImpl(), feed);
+        repository.addUser("ssn1", new User("username1", "443908Rr", dob, "ssn1"));
+        repository.addUser("ssn2", new User("username2", "443908Rr", dob, "ssn2"));
+        repository.addUser("ssn3", new User("username1", "443908Rr", dob, "ssn3"));
+        repository.replaceUser("ssn1", new User("renamed", "443908Rr", dob, "ssn1"));
+        repository.removeUser("ssn2");
+        repository.removeUser("ssn2");
+
+        ChangePage page = feed.read(1000, 3);
+        assertFalse(page.isResyncRequired());
+        assertThat(page.getChanges().size(), is(3));
+        assertThat(page.getChanges().get(2).getSeq(), is(1003L));
+        assertThat(page.getChanges().get(2).getType(), is(Change.Type.REPLACE));
+        assertThat(page.getChanges().get(2).getUser().getUsername(), is("renamed"));
+        assertThat(page.getNextSince(), is(1003L));
+        assertThat(page.getLatestSeq(), is(1004L));
+
+        page = feed.read(page.getNextSince(), 3);
+        assertThat(page.getChanges().size(), is(1));
+        assertThat(page.getChanges().get(0).getType(), is(Change.Type.REMOVE));
+        assertThat(page.getChanges().get(0).getSsn(), is("ssn2"));
+        assertThat(page.getChanges().get(0).getUser(), is(nullValue()));
+        assertThat(feed.read(page.getNextSince(), 3).getChanges().size(), is(0));
+        assertThat(feed.read(page.getNextSince(), 3).getNextSince(), is(1004L));
+    }
+
+    @Test
+    public void testPositionsBehindTheRetainedChangesOrNotHandedOutRequireAResync() {
+        ChangeFeed feed = new ChangeFeed(10, 1000);
+        ChangeFeedUserRepository repository = new ChangeFeedUserRepository(new UserRepositoryImpl(), feed);
+        for (int i = 0; i < 25; i++) {
+            repository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+
+        ChangePage truncated = feed.read(1014, 100);
+        assertTrue(truncated.isResyncRequired());
+        assertThat(truncated.getChanges().size(), is(0));
+        assertThat(truncated.getNextSince(), is(1025L));
+        assertTrue(feed.read(0, 100).isResyncRequired());
+        assertTrue(feed.read(1026, 100).isResyncRequired());
+
+        ChangePage oldest = feed.read(1015, 100);
+        assertFalse(oldest.isResyncRequired());
+        assertThat(oldest.getChanges().size(), is(10));
+        assertThat(oldest.getChanges().get(0).getSsn(), is("ssn15"));
+    }
+}
@@ -0,0 +1,257 @@
+package com.gamesys.registrationservice.persistence.cluster;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ConflictException;
+import com.gamesys.registrationservice.domain.ClusterStatus;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class ClusterUserRepositoryUTest {
+
+    private static final List<String> NODES = Arrays.asList("node1", "node2", "node3");
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+    private final Map<String, ClusterUserRepository> cluster = new HashMap<>();
+    private final Map<String, UserRepositoryImpl> partitions = new HashMap<>();
+
+    @After
+    public void tearDown() {
+        cluster.values().forEach(ClusterUserRepository::close);
+    }
+
+    @Test
+    public void testUsersAreSpreadOverTheNodesAndReadableFromAnyNode() {
+        start(NODES);
+        for (int i = 0; i < 3_000; i++) {
+            cluster.get(NODES.get(i % 3)).addUser("ssn" + i, user(i));
+        }
+
+        for (UserRepositoryImpl partition : partitions.values()) {
+            assertThat(partition.getAllUser().size(), is(both(greaterThan(700)).and(lessThan(1_300))));
+        }
+        for (ClusterUserRepository node : cluster.values()) {
+            assertThat(node.getAllUser().size(), is(3_000));
+            assertThat(node.getUser("ssn1234").get().getUsername(), is("username1234"));
+            assertThat(node.getUserByUsername("username2999").get().getSsn(), is("ssn2999"));
+            assertFalse(node.addUser("ssn7", user(7)).isPresent());
+        }
+        assertTrue(cluster.get("node2").removeUser("ssn7"));
+        assertFalse(cluster.get("node3").getUser("ssn7").isPresent());
+        assertThat(cluster.get("node1").getStatus().getForwardedRequests(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void testPagesAndBirthDateSearchesCoverEveryNodeOnce() {
+        start(NODES);
+        for (int i = 0; i < 1_000; i++) {
+            cluster.get("node1").addUser("ssn" + i, new User("username" + i, "443908Rr", dob.plusDays(i), "ssn" + i));
+        }
+
+        Set<String> paged = new HashSet<>();
+        String cursor = null;
+        do {
+            Page<User> page = cluster.get("node2").getUserPage(cursor, 64);
+            assertThat(page.getItems().size(), is(lessThanOrEqualTo(64)));
+            page.getItems().forEach(user -> assertTrue(paged.add(user.getSsn())));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertThat(paged.size(), is(1_000));
+
+        List<User> born = new ArrayList<>();
+        cursor = null;
+        do {
+            Page<User> page = cluster.get("node3").getUsersByDob(dob.plusDays(100), dob.plusDays(399), cursor, 37);
+            born.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertThat(born.size(), is(300));
+        for (int i = 0; i < born.size(); i++) {
+            assertThat(born.get(i).getDob(), is(dob.plusDays(100 + i)));
+        }
+    }
+
+    @Test
+    public void testAddedNodeReceivesItsShareWhileEveryUserStaysReadable() throws Exception {
+        start(NODES);
+        for (int i = 0; i < 4_000; i++) {
+            cluster.get("node1").addUser("ssn" + i, user(i));
+        }
+        join("node4");
+
+        ClusterStatus status = cluster.get("node2").addNode("node4");
+        for (int i = 0; i < 4_000; i += 7) {
+            assertTrue(cluster.get("node3").getUser("ssn" + i).isPresent());
+        }
+        assertThat(cluster.get("node3").replaceUser("ssn42", new User("renamed", "443908Rr", dob, "ssn42")).isPresent(), is(true));
+        awaitMigrated();
+
+        assertThat(status.getVersion(), is(1L));
+        assertThat(status.getNodes(), is(Arrays.asList("node1", "node2", "node3", "node4")));
+        int moved = partitions.get("node4").getAllUser().size();
+        assertThat(moved, is(both(greaterThan(700)).and(lessThan(1_300))));
+        long migrated = NODES.stream().mapToLong(node -> cluster.get(node).getStatus().getMigratedUsers()).sum();
+        assertThat(migrated, is(lessThanOrEqualTo((long) moved)));
+        assertThat(partitions.values().stream().mapToInt(partition -> partition.getAllUser().size()).sum(), is(4_000));
+        for (ClusterUserRepository node : cluster.values()) {
+            assertThat(node.getStatus().getVersion(), is(1L));
+            assertThat(node.getAllUser().size(), is(4_000));
+            assertThat(node.getUser("ssn42").get().getUsername(), is("renamed"));
+        }
+        try {
+            cluster.get("node1").addNode("node4");
+            fail();
+        } catch (RuntimeException e) {
+            assertThat(cluster.get("node1").getStatus().getVersion(), is(1L));
+        }
+    }
+
+    @Test
+    public void testNodeIsRefusedWhileTheLastOneMigratesOrAtAnotherVersion() throws Exception {
+        CountDownLatch migrationGoesOn = new CountDownLatch(1);
+        start(NODES);
+        cluster.remove("node2").close();
+        partitions.put("node2", new UserRepositoryImpl() {
+            @Override
+            public Stream<User> streamAllUser() {
+                try {
+                    migrationGoesOn.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.streamAllUser();
+            }
+        });
+        cluster.put("node2", new ClusterUserRepository("node2", NODES, 256, partitions.get("node2"), other -> cluster.get(other).self()));
+        join("node4");
+        join("node5");
+        List<String> joined = Arrays.asList("node1", "node2", "node3", "node4", "node5");
+
+        cluster.get("node1").addNode("node4");
+        try {
+            cluster.get("node2").addNode("node5");
+            fail();
+        } catch (ConflictException e) {
+            assertThat(e.getApiError(), is(ErrorEnum.API_ERROR_CLUSTER_CHANGE_CONFLICT));
+        }
+        try {
+            cluster.get("node2").self().install(new ClusterView(2, joined));
+            fail();
+        } catch (ConflictException e) {
+            assertThat(cluster.get("node2").getStatus().getVersion(), is(1L));
+        }
+        migrationGoesOn.countDown();
+        awaitMigrated();
+        try {
+            cluster.get("node3").self().install(new ClusterView(1, joined));
+            fail();
+        } catch (ConflictException e) {
+            assertThat(cluster.get("node3").getStatus().getNodes().size(), is(4));
+        }
+        try {
+            cluster.get("node3").self().install(new ClusterView(3, joined));
+            fail();
+        } catch (ConflictException e) {
+            assertThat(cluster.get("node3").getStatus().getVersion(), is(1L));
+        }
+
+        ClusterStatus status = cluster.get("node2").addNode("node5");
+        assertThat(status.getVersion(), is(2L));
+        assertThat(status.getNodes(), is(joined));
+        assertThat(cluster.get("node5").getStatus().getVersion(), is(2L));
+    }
+
+    @Test
+    public void testPageCursorGoesOnFromTheSameNodeAfterANodeJoins() throws Exception {
+        start(Arrays.asList("node2", "node3"));
+        for (int i = 0; i < 600; i++) {
+            cluster.get("node2").addUser("ssn" + i, new User("username" + i, "443908Rr", dob.plusDays(i), "ssn" + i));
+        }
+        Page<User> page = cluster.get("node3").getUserPage(null, 10);
+        Set<String> paged = new HashSet<>();
+        page.getItems().forEach(user -> paged.add(user.getSsn()));
+        Page<User> born = cluster.get("node2").getUsersByDob(dob, dob.plusDays(599), null, 10);
+        Set<String> bornPaged = new HashSet<>();
+        born.getItems().forEach(user -> bornPaged.add(user.getSsn()));
+        join("node1");
+        cluster.get("node2").addNode("node1");
+        awaitMigrated();
+
+        while (page.getNextCursor() != null) {
+            page = cluster.get("node3").getUserPage(page.getNextCursor(), 64);
+            for (User user : page.getItems()) {
+                assertTrue(paged.add(user.getSsn()));
+                assertFalse(partitions.get("node1").getUser(user.getSsn()).isPresent());
+            }
+        }
+        partitions.get("node3").getAllUser().forEach(user -> assertTrue(paged.contains(user.getSsn())));
+
+        while (born.getNextCursor() != null) {
+            born = cluster.get("node3").getUsersByDob(dob, dob.plusDays(599), born.getNextCursor(), 64);
+            born.getItems().forEach(user -> bornPaged.add(user.getSsn()));
+        }
+        assertThat(bornPaged.size(), is(600));
+    }
+
+    @Test
+    public void testAddingANodeOnlyMovesKeysToTheNewNode() {
+        HashRing before = new HashRing(NODES, 256);
+        HashRing after = new HashRing(Arrays.asList("node1", "node2", "node3", "node4"), 256);
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String owner = after.owner("ssn" + i);
+            if (!owner.equals(before.owner("ssn" + i))) {
+                assertThat(owner, is("node4"));
+                moved++;
+            }
+        }
+        assertThat(moved, is(both(greaterThan(2_000)).and(lessThan(3_000))));
+    }
+
+    private void start(List<String> nodes) {
+        nodes.forEach(node -> {
+            partitions.put(node, new UserRepositoryImpl());
+            cluster.put(node, new ClusterUserRepository(node, nodes, 256, partitions.get(node), other -> cluster.get(other).self()));
+        });
+    }
+
+    private void join(String node) {
+        partitions.put(node, new UserRepositoryImpl());
+        cluster.put(node, new ClusterUserRepository(node, NODES, 256, partitions.get(node), other -> cluster.get(other).self()));
+    }
+
+    private void awaitMigrated() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cluster.values().stream().anyMatch(node -> node.getStatus().isMigrating())) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private User user(int i) {
+        return new User("username" + i, "443908Rr", dob, "ssn" + i);
+    }
+}
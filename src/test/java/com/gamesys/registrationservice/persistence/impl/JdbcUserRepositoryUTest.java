@@ -0,0 +1,121 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class JdbcUserRepositoryUTest {
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    private HikariDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(config);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testIfUsersAreWrittenThenLookupsPagingAndDobRangeSeeThem() throws Exception {
+        try (JdbcUserRepository userRepository = new JdbcUserRepository(dataSource, 500, 64)) {
+            for (int i = 0; i < 500; i++) {
+                String ssn = String.format("%09d", i);
+                assertTrue(userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob.plusDays(i % 5), ssn)).isPresent());
+            }
+            assertFalse(userRepository.addUser("000000001", new User("other", "443908Rr", dob, "000000001")).isPresent());
+            assertFalse(userRepository.addUser("999999999", new User("USERNAME1", "443908Rr", dob, "999999999")).isPresent());
+            assertFalse(userRepository.replaceUser("000000002", new User("username3", "443908Rr", dob, "000000002")).isPresent());
+            assertTrue(userRepository.replaceUser("000000002", new User("renamed", "443908Rr", dob.minusYears(40), "000000002")).isPresent());
+            assertTrue(userRepository.removeUser("000000003"));
+            assertFalse(userRepository.removeUser("000000003"));
+
+            assertThat(userRepository.getUser("000000002").get().getUsername(), is("renamed"));
+            assertThat(userRepository.getUserByUsername("RENAMED").get().getSsn(), is("000000002"));
+            assertThat(userRepository.getUsersByDob(dob.minusYears(41), dob.minusYears(39), null, 10).getItems().size(), is(1));
+            assertThat(userRepository.getAllUser().size(), is(499));
+
+            Set<String> seen = new HashSet<>();
+            String cursor = null;
+            do {
+                Page<User> page = userRepository.getUserPage(cursor, 77);
+                page.getItems().forEach(user -> assertTrue(seen.add(user.getSsn())));
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            assertThat(seen.size(), is(499));
+
+            int born = 0;
+            cursor = null;
+            do {
+                Page<User> page = userRepository.getUsersByDob(dob, dob.plusDays(1), cursor, 30);
+                born += page.getItems().size();
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            assertThat(born, is(200));
+        }
+    }
+
+    @Test
+    public void testIfWritersRaceThenBatchesKeepEachCallersOwnResult() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try (JdbcUserRepository userRepository = new JdbcUserRepository(dataSource, 2_000, 256)) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 1_600; i++) {
+                String ssn = String.format("%09d", i / 2);
+                String username = "username" + i / 2 + (i % 2 == 0 ? "" : "x");
+                results.add(executor.submit(() -> userRepository.addUser(ssn, new User(username, "443908Rr", dob, ssn)).isPresent()));
+            }
+            int added = 0;
+            for (Future<Boolean> result : results) {
+                added += result.get() ? 1 : 0;
+            }
+
+            assertThat(added, is(800));
+            assertThat(userRepository.getAllUser().size(), is(800));
+            assertThat(userRepository.batchedWrites(), is(1_600L));
+            assertThat(userRepository.batches(), lessThan(800L));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testIfWritesAreNotBatchedThenDuplicatesAreStillRejected() throws Exception {
+        try (JdbcUserRepository userRepository = new JdbcUserRepository(dataSource, 0, 1)) {
+            assertTrue(userRepository.addUser("123456789", new User("username22", "443908Rr", dob, "123456789")).isPresent());
+            assertFalse(userRepository.addUser("123456789", new User("other", "443908Rr", dob, "123456789")).isPresent());
+            assertFalse(userRepository.addUser("987654321", new User("UserName22", "443908Rr", dob, "987654321")).isPresent());
+            assertThat(userRepository.batches(), is(0L));
+        }
+    }
+}
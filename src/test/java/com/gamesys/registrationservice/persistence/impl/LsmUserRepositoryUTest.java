@@ -0,0 +1,181 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.log.FsyncPolicy;
+import com.gamesys.registrationservice.persistence.log.Mutation;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import com.gamesys.registrationservice.persistence.log.WriteAheadLog;
+import com.gamesys.registrationservice.persistence.lsm.LsmTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class LsmUserRepositoryUTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    private final LsmTree.Options options = new LsmTree.Options(32 << 10, 2, 128 << 10, 32 << 10, 10);
+
+    @Test
+    public void testIfUsersAreWrittenThenLookupsPagingAndDobRangeSeeThem() throws Exception {
+        try (LsmUserRepository userRepository = new LsmUserRepository(folder.getRoot().toPath(), options)) {
+            for (int i = 0; i < 2_000; i++) {
+                String ssn = String.format("%09d", i);
+                assertTrue(userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob.plusDays(i % 10), ssn)).isPresent());
+            }
+            assertFalse(userRepository.addUser("000000001", new User("other", "443908Rr", dob, "000000001")).isPresent());
+            assertFalse(userRepository.addUser("999999999", new User("USERNAME1", "443908Rr", dob, "999999999")).isPresent());
+            assertTrue(userRepository.replaceUser("000000002", new User("renamed", "443908Rr", dob.minusYears(40), "000000002")).isPresent());
+            assertTrue(userRepository.removeUser("000000003"));
+            assertFalse(userRepository.removeUser("000000003"));
+
+            assertThat(userRepository.getUserByUsername("RENAMED").get().getSsn(), is("000000002"));
+            assertFalse(userRepository.getUserByUsername("username2").isPresent());
+            assertThat(userRepository.getUsersByDob(dob.minusYears(41), dob.minusYears(39), null, 10).getItems().size(), is(1));
+
+            Set<String> seen = new HashSet<>();
+            String cursor = null;
+            do {
+                Page<User> page = userRepository.getUserPage(cursor, 333);
+                page.getItems().forEach(user -> assertTrue(seen.add(user.getSsn())));
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            assertThat(seen.size(), is(1_999));
+            assertThat(userRepository.getAllUser().size(), is(1_999));
+
+            int born = 0;
+            cursor = null;
+            do {
+                Page<User> page = userRepository.getUsersByDob(dob, dob, cursor, 50);
+                born += page.getItems().size();
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            assertThat(born, is(200));
+        }
+    }
+
+    @Test
+    public void testIfRepositoryIsReopenedWithLogThenUnflushedWritesAreReplayed() throws Exception {
+        Path lsm = folder.newFolder("lsm").toPath();
+        Path wal = folder.newFolder("wal").toPath();
+        MutationLog log = new WriteAheadLog(wal, FsyncPolicy.PER_WRITE, 10);
+        LsmUserRepository userRepository = new LsmUserRepository(lsm, options, log);
+        for (int i = 0; i < 1_000; i++) {
+            String ssn = String.format("%09d", i);
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob, ssn));
+        }
+        userRepository.removeUser("000000007");
+        // simulated crash : the memtable is dropped without a flush
+        log.close();
+
+        try (MutationLog reopened = new WriteAheadLog(wal, FsyncPolicy.PER_WRITE, 10);
+             LsmUserRepository recovered = new LsmUserRepository(lsm, options, reopened)) {
+            assertThat(recovered.getAllUser().size(), is(999));
+            assertFalse(recovered.getUser("000000007").isPresent());
+            assertThat(recovered.getUserByUsername("username999").get().getSsn(), is("000000999"));
+            assertFalse(recovered.addUser("000001000", new User("username5", "443908Rr", dob, "000001000")).isPresent());
+        }
+    }
+
+    @Test
+    public void testWriteIsNotReadableUntilDurableAndDroppedWhenTheLogFails() throws Exception {
+        StallingLog log = new StallingLog();
+        try (LsmUserRepository userRepository = new LsmUserRepository(folder.getRoot().toPath(), options, log)) {
+            userRepository.addUser("ssn0", new User("username0", "443908Rr", dob, "ssn0"));
+            log.failing = true;
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<Optional<User>> replaced = executor.submit(() ->
+                    userRepository.replaceUser("ssn0", new User("renamed", "443908Rr", dob, "ssn0")));
+            assertTrue(log.waiting.await(5, TimeUnit.SECONDS));
+
+            assertThat(userRepository.getUser("ssn0").get().getUsername(), is("username0"));
+            assertFalse(userRepository.getUserByUsername("renamed").isPresent());
+            assertFalse(userRepository.addUser("ssn2", new User("renamed", "443908Rr", dob, "ssn2")).isPresent());
+            log.release.countDown();
+            try {
+                replaced.get(5, TimeUnit.SECONDS);
+                fail("A write the log failed must not succeed");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause().getMessage(), is("WAL failure : disk gone"));
+            }
+            executor.shutdown();
+
+            log.failing = false;
+            assertThat(userRepository.getUser("ssn0").get().getUsername(), is("username0"));
+            assertTrue(userRepository.getUserByUsername("username0").isPresent());
+            assertTrue(userRepository.addUser("ssn2", new User("renamed", "443908Rr", dob, "ssn2")).isPresent());
+        }
+    }
+
+    /**
+     * Log whose awaitDurable, once failing, blocks until released and then throws.
+     */
+    private static final class StallingLog implements MutationLog {
+
+        private final AtomicLong lsn = new AtomicLong();
+        private final CountDownLatch waiting = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean failing;
+
+        @Override
+        public long append(Mutation mutation) {
+            return lsn.incrementAndGet();
+        }
+
+        @Override
+        public void awaitDurable(long lsn) {
+            if (!failing) {
+                return;
+            }
+            waiting.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new ServerException("WAL failure : disk gone", ErrorEnum.STORAGE_EXCEPTION);
+        }
+
+        @Override
+        public void replay(long afterLsn, Consumer<Mutation> consumer) {
+        }
+
+        @Override
+        public long lastLsn() {
+            return lsn.get();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class OffHeapUserRepositoryUTest {
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    private OffHeapUserRepository userRepository;
+
+    @Before
+    public void setup() {
+        userRepository = new OffHeapUserRepository(4, 1 << 20);
+    }
+
+    @Test
+    public void testIfUserIsAddedThenGetUserDecodesSameFields() throws Exception {
+        User user = new User("username22", "443908Rr", dob, "ssn110");
+
+        assertTrue(userRepository.addUser(user.getSsn(), user).isPresent());
+
+        Optional<User> userExpected = userRepository.getUser("ssn110");
+        assertTrue(userExpected.isPresent());
+        assertThat(userExpected.get().getUsername(), is("username22"));
+        assertThat(userExpected.get().getPassword(), is("443908Rr"));
+        assertThat(userExpected.get().getDob(), is(dob));
+        assertThat(userExpected.get().getSsn(), is("ssn110"));
+    }
+
+    @Test
+    public void testIfUserExistAddUserFailAndReplaceUserSuccess() throws Exception {
+        User user = new User("username22", "443908Rr", dob, "ssn110");
+        userRepository.addUser(user.getSsn(), user);
+
+        assertFalse(userRepository.addUser(user.getSsn(), user).isPresent());
+        assertTrue(userRepository.replaceUser(user.getSsn(), new User("username99", "443908Rr", dob, "ssn110")).isPresent());
+        assertThat(userRepository.getUser("ssn110").get().getUsername(), is("username99"));
+    }
+
+    @Test
+    public void testIfUserNotExistReplaceAndRemoveUserFail() throws Exception {
+        User user = new User("username22", "443908Rr", dob, "ssn110");
+
+        assertFalse(userRepository.replaceUser(user.getSsn(), user).isPresent());
+        assertFalse(userRepository.removeUser(user.getSsn()));
+        assertFalse(userRepository.getUser(user.getSsn()).isPresent());
+    }
+
+    @Test
+    public void testIfAFieldIsTooLongThenTheUserIsRefusedAndTheStoreIsUnchanged() throws Exception {
+        StringBuilder password = new StringBuilder();
+        for (int i = 0; i < Short.MAX_VALUE + 1; i++) {
+            password.append('p');
+        }
+        userRepository.addUser("ssn110", new User("username22", "443908Rr", dob, "ssn110"));
+
+        try {
+            userRepository.addUser("ssn111", new User("username23", password.toString(), dob, "ssn111"));
+            fail("Expected ServerException");
+        } catch (ServerException e) {
+            assertFalse(userRepository.getUser("ssn111").isPresent());
+        }
+        try {
+            userRepository.replaceUser("ssn110", new User("username99", password.toString(), dob, "ssn110"));
+            fail("Expected ServerException");
+        } catch (ServerException e) {
+            assertThat(userRepository.getUser("ssn110").get().getUsername(), is("username22"));
+        }
+        assertThat(userRepository.size(), is(1));
+    }
+
+    @Test
+    public void testIfManyUsersAreAddedReplacedAndRemovedThenStoreStaysConsistentAndCompacts() throws Exception {
+        int users = 20_000;
+        for (int i = 0; i < users; i++) {
+            userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+        long bytesAfterInsert = userRepository.offHeapBytes();
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < users; i++) {
+                userRepository.replaceUser("ssn" + i, new User("round" + round + "user" + i, "443908Rr", dob, "ssn" + i));
+            }
+        }
+        for (int i = 0; i < users; i += 2) {
+            assertTrue(userRepository.removeUser("ssn" + i));
+        }
+
+        assertThat(userRepository.size(), is(users / 2));
+        assertThat(userRepository.getAllUser().size(), is(users / 2));
+        assertFalse(userRepository.getUser("ssn0").isPresent());
+        assertThat(userRepository.getUser("ssn1").get().getUsername(), is("round4user1"));
+        assertThat(userRepository.offHeapBytes(), is(lessThan(bytesAfterInsert * 4)));
+    }
+
+    @Test
+    public void testIfIndexGrowsBetweenPagesThenUserPagesStillCoverEveryEarlierUser() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+        Set<String> seen = new HashSet<>();
+        Page<User> page = userRepository.getUserPage(null, 10);
+        page.getItems().forEach(user -> seen.add(user.getSsn()));
+        for (int i = 100; i < 2_000; i++) {
+            userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+        while (page.getNextCursor() != null) {
+            page = userRepository.getUserPage(page.getNextCursor(), 10);
+            assertTrue(page.getItems().size() <= 10);
+            page.getItems().forEach(user -> seen.add(user.getSsn()));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(seen.contains("ssn" + i));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.index.PersistentHashMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class PersistentUserRepositoryUTest {
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    private PersistentUserRepository userRepository;
+
+    @Before
+    public void setup() {
+        userRepository = new PersistentUserRepository();
+    }
+
+    @Test
+    public void testIfUsersChangeAfterSnapshotThenSnapshotIsUnchanged() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+        PersistentHashMap<User> snapshot = userRepository.snapshot();
+
+        userRepository.removeUser("ssn1");
+        userRepository.replaceUser("ssn2", new User("renamed", "443908Rr", dob, "ssn2"));
+        userRepository.addUser("ssn100", new User("username100", "443908Rr", dob, "ssn100"));
+
+        assertThat(snapshot.size(), is(100));
+        assertThat(snapshot.get("ssn1").getUsername(), is("username1"));
+        assertThat(snapshot.get("ssn2").getUsername(), is("username2"));
+        assertThat(userRepository.size(), is(100));
+        assertFalse(userRepository.getUser("ssn1").isPresent());
+        assertThat(userRepository.getUserByUsername("RENAMED").get().getSsn(), is("ssn2"));
+        assertFalse(userRepository.getUserByUsername("username2").isPresent());
+    }
+
+    @Test
+    public void testIfUsernameIsTakenThenAddAndReplaceFail() throws Exception {
+        userRepository.addUser("ssn1", new User("username1", "443908Rr", dob, "ssn1"));
+        userRepository.addUser("ssn2", new User("username2", "443908Rr", dob, "ssn2"));
+
+        assertFalse(userRepository.addUser("ssn3", new User("USERNAME1", "443908Rr", dob, "ssn3")).isPresent());
+        assertFalse(userRepository.replaceUser("ssn2", new User("username1", "443908Rr", dob, "ssn2")).isPresent());
+        assertTrue(userRepository.replaceUser("ssn1", new User("UserName1", "password", dob, "ssn1")).isPresent());
+        assertFalse(userRepository.addUser("ssn1", new User("username9", "443908Rr", dob, "ssn1")).isPresent());
+        assertThat(userRepository.getUserByUsername("username1").get().getPassword(), is("password"));
+    }
+
+    @Test
+    public void testIfUsersAreRemovedWhilePagingThenRemainingUsersAreReturnedOnce() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+        Set<String> seen = new HashSet<>();
+        Page<User> page = userRepository.getUserPage(null, 50);
+        page.getItems().forEach(user -> assertTrue(seen.add(user.getSsn())));
+        for (int i = 0; i < 300; i += 3) {
+            if (!seen.contains("ssn" + i)) {
+                userRepository.removeUser("ssn" + i);
+            }
+        }
+        while (page.getNextCursor() != null) {
+            page = userRepository.getUserPage(page.getNextCursor(), 50);
+            page.getItems().forEach(user -> assertTrue(seen.add(user.getSsn())));
+        }
+        assertThat(seen.size(), is(userRepository.size()));
+        assertThat(userRepository.streamAllUser().count(), is((long) userRepository.size()));
+        assertThat(userRepository.getUsersByDob(dob, dob, null, 500).getItems().size(), is(userRepository.size()));
+    }
+}
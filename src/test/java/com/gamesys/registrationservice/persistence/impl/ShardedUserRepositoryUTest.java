@@ -0,0 +1,111 @@
+package com.gamesys.registrationservice.persistence.impl;
+
+import com.gamesys.registrationservice.api.exception.BadRequestException;
+import com.gamesys.registrationservice.domain.Page;
+import com.gamesys.registrationservice.domain.ShardStatistics;
+import com.gamesys.registrationservice.domain.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+public class ShardedUserRepositoryUTest {
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    private ShardedUserRepository userRepository;
+
+    @Before
+    public void setup() {
+        userRepository = new ShardedUserRepository(8);
+    }
+
+    @Test
+    public void testIfUsersAreAddedReplacedAndRemovedThenShardsCountEveryOperation() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            String ssn = String.format("%09d", i);
+            assertTrue(userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob, ssn)).isPresent());
+        }
+        assertFalse(userRepository.addUser("000000001", new User("other", "443908Rr", dob, "000000001")).isPresent());
+        assertTrue(userRepository.replaceUser("000000002", new User("renamed", "443908Rr", dob, "000000002")).isPresent());
+        assertTrue(userRepository.removeUser("000000003"));
+        assertThat(userRepository.getUser("000000002").get().getUsername(), is("renamed"));
+        assertThat(userRepository.getUserByUsername("RENAMED").get().getSsn(), is("000000002"));
+
+        List<ShardStatistics> statistics = userRepository.getShardStatistics();
+        assertThat(statistics.size(), is(8));
+        long size = 0, adds = 0, replaces = 0, removes = 0, gets = 0;
+        for (ShardStatistics shard : statistics) {
+            assertThat(shard.getSize(), greaterThan(60));
+            size += shard.getSize();
+            adds += shard.getAdds();
+            replaces += shard.getReplaces();
+            removes += shard.getRemoves();
+            gets += shard.getGets();
+        }
+        assertThat(size, is(999L));
+        assertThat(adds, is(1001L));
+        assertThat(replaces, is(1L));
+        assertThat(removes, is(1L));
+        assertThat(gets, is(2L));
+        assertThat(userRepository.getAllUser().size(), is(999));
+    }
+
+    @Test
+    public void testIfUsersArePagedThenEveryUserIsReturnedOnceAcrossShards() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            String ssn = i % 2 == 0 ? String.format("%09d", i) : "ssn" + i;
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob, ssn));
+        }
+        Set<String> seen = new HashSet<>();
+        String cursor = null;
+        do {
+            Page<User> page = userRepository.getUserPage(cursor, 37);
+            for (User user : page.getItems()) {
+                assertTrue(seen.add(user.getSsn()));
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertThat(seen.size(), is(500));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testIfCursorNamesUnknownShardThenGetUserPageFail() throws Exception {
+        userRepository.getUserPage("SDo5OTpQOjA", 10);
+    }
+
+    @Test
+    public void testIfThreadsRaceForOneUsernameThenOnlyOneUserIsAdded() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            String ssn = String.format("%09d", i);
+            results.add(executor.submit(() -> userRepository.addUser(ssn, new User("same", "443908Rr", dob, ssn)).isPresent()));
+        }
+        int added = 0;
+        for (Future<Boolean> result : results) {
+            added += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        assertThat(added, is(1));
+        assertThat(userRepository.size(), is(1));
+    }
+}
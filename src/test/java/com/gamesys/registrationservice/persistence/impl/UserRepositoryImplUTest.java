@@ -1,29 +1,58 @@
 package com.gamesys.registrationservice.persistence.impl;
 
+import com.gamesys.registrationservice.api.ErrorEnum;
 import com.gamesys.registrationservice.api.UserDTO;
+import com.gamesys.registrationservice.api.exception.BadRequestException;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.Page;
 import com.gamesys.registrationservice.domain.User;
 import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.log.FsyncPolicy;
+import com.gamesys.registrationservice.persistence.log.Mutation;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import com.gamesys.registrationservice.persistence.log.WriteAheadLog;
+import com.gamesys.registrationservice.persistence.ring.WriteRing;
+import com.gamesys.registrationservice.persistence.snapshot.SnapshotStore;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(SpringRunner.class)
 public class UserRepositoryImplUTest {
 
     DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private UserRepository userRepository;
 
     @Before
@@ -149,4 +178,299 @@ public class UserRepositoryImplUTest {
         assertThat(users.size(),is(greaterThan(2)));
     }
 
+    @Test
+    public void testPackedAndPlainSsnKeysAreKeptApart() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        User plain = new User("username35", "443908Rr", dateTime, "123456789");
+        User dashed = new User("username36", "443908Rr", dateTime, "123-45-6789");
+        User other = new User("username37", "443908Rr", dateTime, "ssn123");
+        assertTrue(userRepository.addUser(plain.getSsn(), plain).isPresent());
+        assertTrue(userRepository.addUser(dashed.getSsn(), dashed).isPresent());
+        assertTrue(userRepository.addUser(other.getSsn(), other).isPresent());
+        assertFalse(userRepository.addUser(plain.getSsn(), dashed).isPresent());
+
+        assertThat(userRepository.getUser("123456789").get().getUsername(), is("username35"));
+        assertThat(userRepository.getUser("123-45-6789").get().getUsername(), is("username36"));
+        assertThat(userRepository.getAllUser().size(), is(3));
+
+        assertTrue(userRepository.removeUser("123-45-6789"));
+        assertFalse(userRepository.getUser("123-45-6789").isPresent());
+        assertTrue(userRepository.getUser("123456789").isPresent());
+    }
+
+    @Test
+    public void testUserPagesCoverPackedAndOtherKeysExactlyOnce() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        for (int i = 0; i < 250; i++) {
+            String ssn = i % 5 == 0 ? "ssn" + i : String.format("200-00-%04d", i);
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", dateTime, ssn));
+        }
+
+        Set<String> seen = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page<User> page = userRepository.getUserPage(cursor, 7);
+            assertTrue(page.getItems().size() <= 7);
+            page.getItems().forEach(user -> assertTrue(seen.add(user.getSsn())));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(seen.size(), is(250));
+        assertThat(pages, is(36));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testIfCursorIsNotIssuedByRepositoryThenGetUserPageFail() throws Exception {
+        userRepository.getUserPage("not a cursor", 10);
+    }
+
+    @Test
+    public void testStreamAllUserReadsEveryUserAcrossPages() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        for (int i = 0; i < 3_000; i++) {
+            String ssn = String.format("300-00-%04d", i);
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", dateTime, ssn));
+        }
+
+        try (Stream<User> users = userRepository.streamAllUser()) {
+            assertThat(users.map(User::getSsn).distinct().count(), is(3_000L));
+        }
+    }
+
+    @Test
+    public void testUsernameIsUniqueAndFollowsReplaceAndRemove() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        User user = new User("UserName40", "443908Rr", dateTime, "400-00-0001");
+        assertTrue(userRepository.addUser(user.getSsn(), user).isPresent());
+        assertFalse(userRepository.addUser("ssn401", new User("username40", "443908Rr", dateTime, "ssn401")).isPresent());
+        assertThat(userRepository.getUserByUsername("USERNAME40").get().getSsn(), is("400-00-0001"));
+
+        assertTrue(userRepository.replaceUser(user.getSsn(), new User("username41", "443908Rr", dateTime, user.getSsn())).isPresent());
+        assertFalse(userRepository.getUserByUsername("username40").isPresent());
+        assertTrue(userRepository.addUser("ssn401", new User("username40", "443908Rr", dateTime, "ssn401")).isPresent());
+        assertFalse(userRepository.replaceUser("ssn401", new User("username41", "443908Rr", dateTime, "ssn401")).isPresent());
+
+        assertTrue(userRepository.removeUser(user.getSsn()));
+        assertFalse(userRepository.getUserByUsername("username41").isPresent());
+        assertThat(userRepository.getUserByUsername("username40").get().getSsn(), is("ssn401"));
+    }
+
+    @Test
+    public void testConcurrentAddsCannotRegisterTheSameUsernameTwice() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            int id = thread;
+            futures.add(executor.submit(() -> {
+                int added = 0;
+                for (int i = 0; i < 1_000; i++) {
+                    String ssn = String.format("5%02d-00-%04d", id, i);
+                    if (userRepository.addUser(ssn, new User("shared" + i, "443908Rr", dateTime, ssn)).isPresent()) {
+                        added++;
+                    }
+                }
+                return added;
+            }));
+        }
+        int added = 0;
+        for (Future<Integer> future : futures) {
+            added += future.get();
+        }
+        executor.shutdown();
+
+        assertThat(added, is(1_000));
+        assertThat(userRepository.getAllUser().size(), is(1_000));
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(userRepository.getUserByUsername("shared" + i).isPresent());
+        }
+    }
+
+    @Test
+    public void testUsersByDobReturnsOnlyTheRangeInBirthDateOrderAcrossPages() throws Exception {
+
+        LocalDate first = LocalDate.parse("2000-01-01", formatter);
+        for (int i = 0; i < 100; i++) {
+            String ssn = i % 3 == 0 ? "ssn" + i : String.format("600-00-%04d", i);
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", first.plusDays(i % 50), ssn));
+        }
+        userRepository.replaceUser("600-00-0011", new User("username11", "443908Rr", first.minusDays(1), "600-00-0011"));
+        userRepository.removeUser("600-00-0010");
+
+        List<User> users = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<User> page = userRepository.getUsersByDob(first.plusDays(10), first.plusDays(19), cursor, 3);
+            assertTrue(page.getItems().size() <= 3);
+            users.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(users.size(), is(18));
+        for (int i = 1; i < users.size(); i++) {
+            assertFalse(users.get(i).getDob().isBefore(users.get(i - 1).getDob()));
+        }
+        assertThat(users.get(0).getDob(), is(first.plusDays(10)));
+        assertThat(users.get(users.size() - 1).getDob(), is(first.plusDays(19)));
+        assertThat(userRepository.getUsersByDob(first.minusDays(1), first.minusDays(1), null, 10).getItems().get(0).getSsn(),
+                is("600-00-0011"));
+    }
+
+    @Test
+    public void testRingWritesFromConcurrentThreadsAreBatchedAndDurable() throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        int threads = 8;
+        int added = 0;
+        try (MutationLog log = new WriteAheadLog(folder.getRoot().toPath(), FsyncPolicy.PER_WRITE, 10)) {
+            UserRepositoryImpl ringRepository = new UserRepositoryImpl(log, SnapshotStore.NONE, 1024);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int id = thread;
+                futures.add(executor.submit(() -> {
+                    int count = 0;
+                    for (int i = 0; i < 250; i++) {
+                        String ssn = String.format("7%02d-00-%04d", id, i);
+                        if (ringRepository.addUser(ssn, new User("shared" + i, "443908Rr", dateTime, ssn)).isPresent()) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                added += future.get();
+            }
+            executor.shutdown();
+            String renamed = ringRepository.getUserByUsername("shared0").get().getSsn();
+            assertTrue(ringRepository.replaceUser(renamed, new User("renamed", "443908Rr", dateTime, renamed)).isPresent());
+
+            WriteRing ring = ringRepository.getWriteRing().get();
+            assertThat(ring.writes(), is(2_001L));
+            assertThat(ring.batches(), lessThan(ring.writes()));
+            ringRepository.close();
+        }
+
+        assertThat(added, is(250));
+        try (MutationLog log = new WriteAheadLog(folder.getRoot().toPath(), FsyncPolicy.PER_WRITE, 10)) {
+            UserRepository recovered = new UserRepositoryImpl(log);
+            assertThat(recovered.getAllUser().size(), is(250));
+            assertTrue(recovered.getUserByUsername("renamed").isPresent());
+            for (int i = 1; i < 250; i++) {
+                assertTrue(recovered.getUserByUsername("shared" + i).isPresent());
+            }
+        }
+    }
+
+    @Test
+    public void testAddUsersRefusesTakenSsnsAndUsernamesInBothWriteModes() throws Exception {
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        for (int ringSize : new int[]{0, 16}) {
+            try (MutationLog log = new WriteAheadLog(folder.newFolder().toPath(), FsyncPolicy.PER_WRITE, 10)) {
+                UserRepositoryImpl batchRepository = new UserRepositoryImpl(log, SnapshotStore.NONE, ringSize);
+                batchRepository.addUser("ssn0", new User("username0", "443908Rr", dateTime, "ssn0"));
+                List<User> users = new ArrayList<>();
+                for (int i = 0; i < 100; i++) {
+                    users.add(new User("username" + i, "443908Rr", dateTime, "ssn" + i));
+                }
+                users.add(new User("username50", "443908Rr", dateTime, "ssn100"));
+
+                List<User> refused = batchRepository.addUsers(users);
+
+                assertThat(refused.size(), is(2));
+                assertThat(refused.get(0).getSsn(), is("ssn0"));
+                assertThat(refused.get(1).getSsn(), is("ssn100"));
+                assertThat(batchRepository.getAllUser().size(), is(100));
+                assertThat(log.lastLsn(), is(100L));
+                batchRepository.close();
+            }
+        }
+    }
+
+    @Test
+    public void testWriteIsNotReadableUntilDurableAndDroppedWhenTheLogFails() throws Exception {
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        for (int ringSize : new int[]{0, 16}) {
+            StallingLog log = new StallingLog();
+            UserRepositoryImpl durableRepository = new UserRepositoryImpl(log, SnapshotStore.NONE, ringSize);
+            durableRepository.addUser("ssn0", new User("username0", "443908Rr", dateTime, "ssn0"));
+            log.failing = true;
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<Optional<User>> replaced = executor.submit(() ->
+                    durableRepository.replaceUser("ssn0", new User("renamed", "443908Rr", dateTime, "ssn0")));
+            assertTrue(log.waiting.await(5, TimeUnit.SECONDS));
+
+            assertThat(durableRepository.getUser("ssn0").get().getUsername(), is("username0"));
+            assertFalse(durableRepository.getUserByUsername("renamed").isPresent());
+            if (ringSize == 0) {
+                assertFalse(durableRepository.addUser("ssn2", new User("renamed", "443908Rr", dateTime, "ssn2")).isPresent());
+            }
+            log.release.countDown();
+            try {
+                replaced.get(5, TimeUnit.SECONDS);
+                fail("A write the log failed must not succeed");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause().getMessage(), is("WAL failure : disk gone"));
+            }
+            executor.shutdown();
+
+            log.failing = false;
+            assertThat(durableRepository.getUser("ssn0").get().getUsername(), is("username0"));
+            assertTrue(durableRepository.getUserByUsername("username0").isPresent());
+            assertTrue(durableRepository.addUser("ssn2", new User("renamed", "443908Rr", dateTime, "ssn2")).isPresent());
+            durableRepository.close();
+        }
+    }
+
+    /**
+     * Log whose awaitDurable, once failing, blocks until released and then throws.
+     */
+    private static final class StallingLog implements MutationLog {
+
+        private final AtomicLong lsn = new AtomicLong();
+        private final CountDownLatch waiting = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean failing;
+
+        @Override
+        public long append(Mutation mutation) {
+            return lsn.incrementAndGet();
+        }
+
+        @Override
+        public void awaitDurable(long lsn) {
+            if (!failing) {
+                return;
+            }
+            waiting.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new ServerException("WAL failure : disk gone", ErrorEnum.STORAGE_EXCEPTION);
+        }
+
+        @Override
+        public void replay(long afterLsn, Consumer<Mutation> consumer) {
+        }
+
+        @Override
+        public long lastLsn() {
+            return lsn.get();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
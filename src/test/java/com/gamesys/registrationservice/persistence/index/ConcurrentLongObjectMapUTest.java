@@ -0,0 +1,82 @@
+package com.gamesys.registrationservice.persistence.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ConcurrentLongObjectMapUTest {
+
+    @Test
+    public void testSsnCodecRoundTripsBothSpellings() throws Exception {
+        assertThat(SsnCodec.decode(SsnCodec.encode("123456789")), is("123456789"));
+        assertThat(SsnCodec.decode(SsnCodec.encode("001-02-0003")), is("001-02-0003"));
+        assertThat(SsnCodec.encode("123-45-6789") == SsnCodec.encode("123456789"), is(false));
+        assertThat(SsnCodec.encode("12345678"), is(SsnCodec.INVALID));
+        assertThat(SsnCodec.encode("12345678a"), is(SsnCodec.INVALID));
+        assertThat(SsnCodec.encode("123-456-789"), is(SsnCodec.INVALID));
+        assertThat(SsnCodec.encode("ssn110"), is(SsnCodec.INVALID));
+    }
+
+    @Test
+    public void testPutReplaceRemoveAcrossRebuilds() throws Exception {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>(4);
+        for (long key = 0; key < 10_000; key++) {
+            assertThat(map.putIfAbsent(key, "v" + key), is(nullValue()));
+        }
+        assertThat(map.putIfAbsent(7, "other"), is("v7"));
+        assertThat(map.replace(7, "seven"), is("v7"));
+        assertThat(map.replace(10_000, "absent"), is(nullValue()));
+        for (long key = 0; key < 10_000; key += 2) {
+            assertThat(map.remove(key), is("v" + key));
+        }
+        assertThat(map.size(), is(5_000));
+        assertThat(map.get(7), is("seven"));
+        assertThat(map.get(8), is(nullValue()));
+        assertThat(map.putIfAbsent(8, "eight"), is(nullValue()));
+
+        Set<Long> keys = new HashSet<>();
+        map.forEach((key, value) -> keys.add(key));
+        List<String> values = new ArrayList<>();
+        map.entries((key, value) -> value).forEach(values::add);
+        assertThat(keys.size(), is(5_001));
+        assertThat(values.size(), is(5_001));
+    }
+
+    @Test
+    public void testConcurrentInsertsClaimEachKeyOnce() throws Exception {
+        ConcurrentLongObjectMap<Integer> map = new ConcurrentLongObjectMap<>(8);
+        AtomicInteger wins = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            int id = thread;
+            futures.add(executor.submit(() -> {
+                for (long key = 0; key < 20_000; key++) {
+                    if (map.putIfAbsent(key, id) == null) {
+                        wins.incrementAndGet();
+                    }
+                    assertThat(map.get(key) != null, is(true));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        assertThat(wins.get(), is(20_000));
+        assertThat(map.size(), is(20_000));
+    }
+}
@@ -0,0 +1,96 @@
+package com.gamesys.registrationservice.persistence.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PersistentHashMapUTest {
+
+    @Test
+    public void testRandomPutAndRemoveMatchHashMapAndKeepOldVersions() throws Exception {
+        Random random = new Random(42);
+        Map<String, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer> map = PersistentHashMap.empty();
+        PersistentHashMap<Integer> halfway = null;
+        Map<String, Integer> expectedHalfway = null;
+        for (int i = 0; i < 50_000; i++) {
+            String key = "key" + random.nextInt(20_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+            if (i == 25_000) {
+                halfway = map;
+                expectedHalfway = new HashMap<>(expected);
+            }
+        }
+        assertMatches(map, expected);
+        assertMatches(halfway, expectedHalfway);
+        assertThat(map.get("absent"), is(nullValue()));
+    }
+
+    @Test
+    public void testKeysWithEqualHashCodeShareCollisionNode() throws Exception {
+        String[] keys = {"AaAa", "AaBB", "BBAa", "BBBB"};
+        PersistentHashMap<String> map = PersistentHashMap.empty();
+        for (String key : keys) {
+            map = map.put(key, key.toLowerCase());
+        }
+        assertThat(map.size(), is(4));
+        assertThat(map.get("BBAa"), is("bbaa"));
+        assertThat(map.put("BBAa", "bbaa") == map, is(false));
+        assertThat(map.remove("absent") == map, is(true));
+
+        List<String> visited = new ArrayList<>();
+        map.scan("AaBB", entry -> visited.add(entry.getKey()));
+        assertThat(visited.toString(), is("[BBAa, BBBB]"));
+
+        for (String key : keys) {
+            map = map.remove(key);
+        }
+        assertThat(map.size(), is(0));
+        assertThat(map.iterator().hasNext(), is(false));
+    }
+
+    @Test
+    public void testScanResumesAfterKeyInLaterVersion() throws Exception {
+        PersistentHashMap<Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 1000; i++) {
+            map = map.put("key" + i, i);
+        }
+        List<String> order = new ArrayList<>();
+        map.forEach(entry -> order.add(entry.getKey()));
+        assertThat(order.size(), is(1000));
+
+        String after = order.get(499);
+        PersistentHashMap<Integer> later = map.remove(after).remove(order.get(500));
+        List<String> resumed = new ArrayList<>();
+        later.scan(after, entry -> resumed.add(entry.getKey()));
+        assertThat(resumed, is(order.subList(501, 1000)));
+
+        List<String> firstTen = new ArrayList<>();
+        assertThat(map.scan(null, entry -> firstTen.add(entry.getKey()) && firstTen.size() < 10), is(false));
+        assertThat(firstTen, is(order.subList(0, 10)));
+    }
+
+    private static void assertMatches(PersistentHashMap<Integer> map, Map<String, Integer> expected) {
+        assertThat(map.size(), is(expected.size()));
+        Map<String, Integer> iterated = new HashMap<>();
+        map.forEach(entry -> iterated.put(entry.getKey(), entry.getValue()));
+        assertThat(iterated, is(expected));
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertThat(map.get(entry.getKey()), is(entry.getValue()));
+        }
+    }
+}
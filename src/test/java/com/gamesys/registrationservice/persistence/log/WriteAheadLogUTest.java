@@ -0,0 +1,159 @@
+package com.gamesys.registrationservice.persistence.log;
+
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class WriteAheadLogUTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    @Test
+    public void testIfMutationsAreLoggedThenRestartRecoversRepository() throws Exception {
+        Path dir = folder.getRoot().toPath();
+
+        try (MutationLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10)) {
+            UserRepository userRepository = new UserRepositoryImpl(log);
+            userRepository.addUser("ssn110", new User("username22", "443908Rr", dob, "ssn110"));
+            userRepository.addUser("ssn111", new User("username23", "443908Rr", dob, "ssn111"));
+            userRepository.replaceUser("ssn110", new User("username99", "443908Rr", dob, "ssn110"));
+            userRepository.removeUser("ssn111");
+        }
+
+        try (MutationLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10)) {
+            UserRepository userRepository = new UserRepositoryImpl(log);
+            assertThat(userRepository.getUser("ssn110").get().getUsername(), is("username99"));
+            assertFalse(userRepository.getUser("ssn111").isPresent());
+            assertThat(userRepository.getAllUser().size(), is(1));
+            assertThat(userRepository.getUserByUsername("username99").get().getSsn(), is("ssn110"));
+            assertFalse(userRepository.getUserByUsername("username22").isPresent());
+        }
+    }
+
+    @Test
+    public void testIfConcurrentWritersUsePerWritePolicyThenAllMutationsAreDurable() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        int threads = 8;
+        int perThread = 500;
+
+        try (MutationLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10)) {
+            UserRepository userRepository = new UserRepositoryImpl(log);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * perThread;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < offset + perThread; i++) {
+                        userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            assertThat(((WriteAheadLog) log).getDurableLsn(), is((long) threads * perThread));
+        }
+
+        try (MutationLog log = new WriteAheadLog(dir, FsyncPolicy.NONE, 10)) {
+            assertThat(new UserRepositoryImpl(log).getAllUser().size(), is(threads * perThread));
+        }
+    }
+
+    @Test
+    public void testIfLogTailIsTornThenRecoveryKeepsIntactRecords() throws Exception {
+        Path dir = folder.getRoot().toPath();
+
+        try (MutationLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10)) {
+            UserRepository userRepository = new UserRepositoryImpl(log);
+            userRepository.addUser("ssn110", new User("username22", "443908Rr", dob, "ssn110"));
+            userRepository.addUser("ssn111", new User("username23", "443908Rr", dob, "ssn111"));
+        }
+
+        List<Path> segments;
+        try (WriteAheadLog log = new WriteAheadLog(dir, FsyncPolicy.NONE, 10)) {
+            segments = log.segments();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segments.get(segments.size() - 1).toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        try (MutationLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10)) {
+            UserRepository userRepository = new UserRepositoryImpl(log);
+            assertTrue(userRepository.getUser("ssn110").isPresent());
+            assertFalse(userRepository.getUser("ssn111").isPresent());
+            assertTrue(userRepository.addUser("ssn112", new User("username24", "443908Rr", dob, "ssn112")).isPresent());
+        }
+    }
+
+    @Test
+    public void testIfSegmentIsFullThenLogRollsAndReplaysAcrossSegments() throws Exception {
+        Path dir = folder.getRoot().toPath();
+
+        try (WriteAheadLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10, 256)) {
+            UserRepository userRepository = new UserRepositoryImpl(log);
+            for (int i = 0; i < 50; i++) {
+                userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+            }
+            assertThat(log.segments().size(), is(greaterThan(1)));
+        }
+
+        try (MutationLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10, 256)) {
+            assertThat(new UserRepositoryImpl(log).getAllUser().size(), is(50));
+            assertThat(log.lastLsn(), is(50L));
+        }
+    }
+
+    @Test
+    public void testIfAnOlderSegmentIsCorruptedThenReplayFails() throws Exception {
+        Path dir = folder.getRoot().toPath();
+
+        List<Path> segments;
+        try (WriteAheadLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10, 256)) {
+            UserRepository userRepository = new UserRepositoryImpl(log);
+            for (int i = 0; i < 50; i++) {
+                userRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+            }
+            segments = log.segments();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segments.get(0).toFile(), "rw")) {
+            file.seek(file.length() / 2);
+            int value = file.read();
+            file.seek(file.length() / 2);
+            file.write(~value);
+        }
+
+        try (MutationLog log = new WriteAheadLog(dir, FsyncPolicy.PER_WRITE, 10, 256)) {
+            new UserRepositoryImpl(log);
+            fail("Replay must not skip the records after a corrupted segment");
+        } catch (ServerException e) {
+            assertThat(e.getLogMessage().contains(segments.get(0).toString()), is(true));
+        }
+    }
+}
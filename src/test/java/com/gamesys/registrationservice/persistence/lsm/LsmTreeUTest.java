@@ -0,0 +1,114 @@
+package com.gamesys.registrationservice.persistence.lsm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class LsmTreeUTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LsmTree.Options options = new LsmTree.Options(16 << 10, 2, 64 << 10, 16 << 10, 10);
+
+    @Test
+    public void testIfWritesFlushAndCompactThenReadsAndScansMatchSortedMap() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Random random = new Random(7);
+        TreeMap<String, String> expected = new TreeMap<>();
+        try (LsmTree tree = new LsmTree(dir, options, lsn -> { })) {
+            for (int i = 0; i < 30_000; i++) {
+                String key = String.format("key%05d", random.nextInt(10_000));
+                if (random.nextInt(4) == 0) {
+                    expected.remove(key);
+                    tree.put(key, null, i);
+                } else {
+                    expected.put(key, "value" + i);
+                    tree.put(key, bytes("value" + i), i);
+                }
+            }
+            tree.flush();
+            assertMatches(tree, expected);
+
+            LsmStatistics statistics = tree.statistics();
+            assertThat(statistics.getCompactedWrittenBytes(), greaterThan(0L));
+            assertThat(statistics.getWriteAmplification(), greaterThan(1.0));
+        }
+
+        try (LsmTree tree = new LsmTree(dir, options, lsn -> { })) {
+            assertThat(tree.flushedLsn(), is(29_999L));
+            assertMatches(tree, expected);
+        }
+    }
+
+    @Test
+    public void testIfKeysAreAbsentThenBloomFiltersSkipMostTables() throws Exception {
+        try (LsmTree tree = new LsmTree(folder.getRoot().toPath(), options, lsn -> { })) {
+            for (int i = 0; i < 5_000; i++) {
+                tree.put(String.format("present%05d", i), bytes("v"), i);
+            }
+            tree.flush();
+            LsmStatistics before = tree.statistics();
+            for (int i = 0; i < 5_000; i++) {
+                assertThat(tree.get(String.format("present%05dx", i)), is(nullValue()));
+            }
+            LsmStatistics after = tree.statistics();
+            long blockReads = after.getBlockReads() - before.getBlockReads();
+            long skips = after.getBloomSkips() - before.getBloomSkips();
+            assertThat(skips, greaterThan(0L));
+            assertThat(blockReads * 20, lessThan(skips));
+        }
+    }
+
+    @Test
+    public void testIfABatchOutgrowsTheMemtableThenItIsFlushedInOneTable() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        LsmTree.Options small = new LsmTree.Options(1 << 10, 100, 64 << 10, 16 << 10, 10);
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            batch.put(String.format("key%05d", i), bytes("value with some length to outgrow the memtable " + i));
+        }
+        List<Long> flushed = new ArrayList<>();
+        try (LsmTree tree = new LsmTree(dir, small, flushed::add)) {
+            tree.putAll(batch, 1);
+            tree.flush();
+            assertThat(tree.statistics().getTablesPerLevel()[0], is(1));
+        }
+
+        assertThat(flushed.get(0), is(1L));
+        try (LsmTree tree = new LsmTree(dir, small, lsn -> { })) {
+            assertThat(tree.flushedLsn(), is(1L));
+            batch.keySet().forEach(key -> assertThat(tree.get(key), is(batch.get(key))));
+        }
+    }
+
+    private static void assertMatches(LsmTree tree, TreeMap<String, String> expected) {
+        for (int i = 0; i < 10_000; i++) {
+            String key = String.format("key%05d", i);
+            byte[] value = tree.get(key);
+            assertThat(value == null ? null : new String(value, StandardCharsets.UTF_8), is(expected.get(key)));
+        }
+        List<String> scanned = new ArrayList<>();
+        tree.scan("key02000", "key04000", entry -> scanned.add(entry.getKey()));
+        assertThat(scanned, is(new ArrayList<>(expected.subMap("key02000", "key04000").keySet())));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,124 @@
+package com.gamesys.registrationservice.persistence.replication;
+
+import com.gamesys.registrationservice.api.exception.ForbiddenException;
+import com.gamesys.registrationservice.domain.ReplicationStatus;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import com.gamesys.registrationservice.persistence.log.MutationLog;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class ReplicationUTest {
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+    private final List<AutoCloseable> nodes = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (AutoCloseable node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    public void testFollowersLoadTheSnapshotThenApplyLaterWritesAndRefuseTheirOwn() throws Exception {
+        ReplicationLog log = new ReplicationLog(MutationLog.NONE, ReplicationLog.AckMode.ASYNC, 1, 1000);
+        UserRepositoryImpl leaderRepository = new UserRepositoryImpl(log);
+        for (int i = 0; i < 500; i++) {
+            leaderRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+        ReplicationLeader leader = start(new ReplicationLeader(0, log, leaderRepository, 100, 10_000));
+        UserRepositoryImpl[] replicas = {new UserRepositoryImpl(ReplicationFollower.READ_ONLY),
+                new UserRepositoryImpl(ReplicationFollower.READ_ONLY)};
+        List<ReplicationFollower> followers = new ArrayList<>();
+        for (UserRepositoryImpl replica : replicas) {
+            followers.add(start(new ReplicationFollower("localhost", leader.getPort(), replica, 100, 50)));
+        }
+
+        for (int i = 500; i < 1_000; i++) {
+            leaderRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+        }
+        leaderRepository.replaceUser("ssn1", new User("renamed", "443908Rr", dob, "ssn1"));
+        leaderRepository.removeUser("ssn2");
+        for (ReplicationFollower follower : followers) {
+            awaitCaughtUp(follower, log.lastLsn());
+        }
+
+        for (UserRepositoryImpl replica : replicas) {
+            assertThat(replica.getAllUser().size(), is(999));
+            assertThat(replica.getUserByUsername("renamed").get().getSsn(), is("ssn1"));
+            assertFalse(replica.getUser("ssn2").isPresent());
+            assertTrue(replica.getUser("ssn999").isPresent());
+            try {
+                replica.addUser("ssn2", new User("username2", "443908Rr", dob, "ssn2"));
+                fail();
+            } catch (ForbiddenException e) {
+                assertFalse(replica.getUser("ssn2").isPresent());
+            }
+        }
+        awaitSynced(leader);
+        ReplicationStatus status = leader.getStatus();
+        assertThat(status.getFollowers().size(), is(2));
+        assertThat(status.getFollowers().get(1).getLag(), is(0L));
+        assertThat(followers.get(0).getStatus().getLsn(), is(log.lastLsn()));
+    }
+
+    @Test
+    public void testSyncAckMakesEveryWriteVisibleOnTheFollowerWhenItReturns() throws Exception {
+        ReplicationLog log = new ReplicationLog(MutationLog.NONE, ReplicationLog.AckMode.SYNC, 1, 5_000);
+        UserRepositoryImpl leaderRepository = new UserRepositoryImpl(log);
+        ReplicationLeader leader = start(new ReplicationLeader(0, log, leaderRepository, 100, 10_000));
+        UserRepositoryImpl replica = new UserRepositoryImpl(ReplicationFollower.READ_ONLY);
+        ReplicationFollower follower = start(new ReplicationFollower("localhost", leader.getPort(), replica, 100, 50));
+        awaitCaughtUp(follower, 0);
+        awaitSynced(leader);
+
+        for (int i = 0; i < 100; i++) {
+            leaderRepository.addUser("ssn" + i, new User("username" + i, "443908Rr", dob, "ssn" + i));
+            assertTrue(replica.getUser("ssn" + i).isPresent());
+        }
+        assertThat(log.syncTimeouts(), is(0L));
+    }
+
+    private <T extends AutoCloseable> T start(T node) {
+        nodes.add(0, node);
+        return node;
+    }
+
+    /**
+     * Waits until the leader has the acknowledgement of every follower for its last mutation.
+     */
+    private static void awaitSynced(ReplicationLeader leader) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!leader.getStatus().getFollowers().stream().allMatch(follower -> follower.isSynced() && follower.getLag() == 0)) {
+            if (System.nanoTime() > deadline) {
+                fail("Followers not synced");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitCaughtUp(ReplicationFollower follower, long lsn) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!follower.isCaughtUp(lsn)) {
+            if (System.nanoTime() > deadline) {
+                fail("Follower still at " + follower.getStatus().getLsn() + " of " + lsn);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
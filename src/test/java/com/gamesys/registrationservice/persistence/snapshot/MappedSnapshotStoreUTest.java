@@ -0,0 +1,80 @@
+package com.gamesys.registrationservice.persistence.snapshot;
+
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.UserRepository;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import com.gamesys.registrationservice.persistence.log.FsyncPolicy;
+import com.gamesys.registrationservice.persistence.log.WriteAheadLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+public class MappedSnapshotStoreUTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LocalDate dob = LocalDate.of(1986, 5, 26);
+
+    @Test
+    public void testIfSnapshotIsWrittenThenLoadReturnsSameUsersAndLsn() throws Exception {
+        SnapshotStore snapshotStore = new MappedSnapshotStore(folder.getRoot().toPath());
+        User user1 = new User("username22", "443908Rr", dob, "ssn110");
+        User user2 = new User("username23", "443908Rr", dob, "ssn111");
+
+        snapshotStore.write(42, Arrays.asList(
+                new AbstractMap.SimpleEntry<>("ssn110", user1),
+                new AbstractMap.SimpleEntry<>("otherKey", user2)));
+
+        Map<String, User> loaded = new HashMap<>();
+        long lsn = snapshotStore.load(loaded::put);
+
+        assertThat(lsn, is(42L));
+        assertThat(loaded.size(), is(2));
+        assertThat(loaded.get("ssn110").getUsername(), is("username22"));
+        assertThat(loaded.get("otherKey").getSsn(), is("ssn111"));
+        assertThat(loaded.get("otherKey").getDob(), is(dob));
+    }
+
+    @Test
+    public void testIfCheckpointIsTakenThenRestartReplaysOnlyLogTailAndOldSegmentsAreDeleted() throws Exception {
+        Path walDir = folder.newFolder("wal").toPath();
+        Path snapshotDir = folder.newFolder("snapshot").toPath();
+
+        try (WriteAheadLog log = new WriteAheadLog(walDir, FsyncPolicy.PER_WRITE, 10, 256)) {
+            UserRepositoryImpl userRepository = new UserRepositoryImpl(log, new MappedSnapshotStore(snapshotDir));
+            for (int i = 0; i < 40; i++) {
+                String ssn = i % 2 == 0 ? "ssn" + i : String.format("100-00-%04d", i);
+                userRepository.addUser(ssn, new User("username" + i, "443908Rr", dob, ssn));
+            }
+            int segmentsBefore = log.segments().size();
+            assertThat(userRepository.checkpoint(), is(40L));
+            assertThat(log.segments().size() < segmentsBefore, is(true));
+
+            userRepository.removeUser("ssn0");
+            userRepository.replaceUser("100-00-0001", new User("renamed", "443908Rr", dob, "100-00-0001"));
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(walDir, FsyncPolicy.PER_WRITE, 10, 256)) {
+            UserRepository userRepository = new UserRepositoryImpl(log, new MappedSnapshotStore(snapshotDir));
+            assertThat(userRepository.getAllUser().size(), is(39));
+            assertFalse(userRepository.getUser("ssn0").isPresent());
+            assertThat(userRepository.getUser("100-00-0001").get().getUsername(), is("renamed"));
+            assertThat(log.lastLsn(), is(42L));
+        }
+    }
+}
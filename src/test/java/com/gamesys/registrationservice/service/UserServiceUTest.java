@@ -1,9 +1,13 @@
 package com.gamesys.registrationservice.service;
 
+import com.gamesys.registrationservice.api.ErrorEnum;
 import com.gamesys.registrationservice.api.UserDTO;
+import com.gamesys.registrationservice.api.exception.ExclusionUnavailableException;
 import com.gamesys.registrationservice.api.exception.NotFoundException;
 import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.exception.ValidatorUserAlreadyExistException;
 import com.gamesys.registrationservice.exception.ValidatorUserBlackListedException;
+import com.gamesys.registrationservice.persistence.AsyncUserRepository;
 import com.gamesys.registrationservice.persistence.UserRepository;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -19,10 +23,13 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -41,6 +48,9 @@ public class UserServiceUTest {
     @Mock
     protected ExclusionService exclusionService;
 
+    @Mock
+    protected AsyncUserRepository asyncUserRepository;
+
     @Test(expected = NotFoundException.class)
     public void testGivenUserSSNIsNotExistThenGetUserThrowException()
             throws Exception {
@@ -102,6 +112,27 @@ public class UserServiceUTest {
         userService.addUser(user);
     }
 
+    @Test
+    public void testGivenExclusionServiceUnavailableThenAddUserOnlyWhenItFailsOpen()
+            throws Exception {
+
+        User user = new User("username22", "443908Rr", LocalDate.of(1986, 5, 26), "ssn110");
+        when(userRepository.addUser(user.getSsn(), user)).thenReturn(Optional.of(user));
+
+        when(exclusionService.validate(Mockito.anyString(), Mockito.anyString()))
+                .thenThrow(new ExclusionUnavailableException("circuit breaker open", true));
+        assertEquals(user, userService.addUser(user));
+
+        doThrow(new ExclusionUnavailableException("circuit breaker open", false))
+                .when(exclusionService).validate(Mockito.anyString(), Mockito.anyString());
+        try {
+            userService.addUser(user);
+            fail("A fail closed exclusion client must refuse the registration");
+        } catch (ExclusionUnavailableException e) {
+            verify(userRepository, times(1)).addUser(user.getSsn(), user);
+        }
+    }
+
 
     @Test
     public void testGivenUserExistAndNotInBlackListedThenUpdateUserSuccess()
@@ -238,4 +269,45 @@ public class UserServiceUTest {
         method.invoke(userService, user);
     }
 
+
+    @Test
+    public void testGivenUsernameTakenByAnotherUserThenAddUserFailWithUsernameError()
+            throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        User user = new User("username22", "443908Rr", dateTime, "ssn110");
+
+        when(exclusionService.validate(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        when(userRepository.addUser(user.getSsn(), user)).thenReturn(Optional.empty());
+        when(userRepository.getUser(user.getSsn())).thenReturn(Optional.empty());
+
+        try {
+            userService.addUser(user);
+            fail();
+        } catch (ValidatorUserAlreadyExistException e) {
+            assertEquals(ErrorEnum.API_ERROR_USERNAME_ALREADY_EXIST, e.getApiError());
+        }
+    }
+
+    @Test
+    public void testGivenUsernameTakenByAnotherUserThenAddUserAsyncFailWithUsernameError()
+            throws Exception {
+
+        LocalDate dateTime = LocalDate.parse("1986-05-26", formatter);
+        User user = new User("username22", "443908Rr", dateTime, "ssn110");
+        userService.blockingExecutor = Runnable::run;
+
+        when(exclusionService.validate(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        when(asyncUserRepository.addUser(user.getSsn(), user)).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+        when(asyncUserRepository.getUser(user.getSsn())).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        try {
+            userService.addUserAsync(user).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(ErrorEnum.API_ERROR_USERNAME_ALREADY_EXIST, ((ValidatorUserAlreadyExistException) e.getCause()).getApiError());
+        }
+        verify(userRepository, times(0)).addUser(anyString(), Mockito.any());
+    }
+
 }
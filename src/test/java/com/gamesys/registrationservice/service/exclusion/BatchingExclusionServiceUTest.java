@@ -0,0 +1,119 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.api.exception.ServerException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class BatchingExclusionServiceUTest {
+
+    private StubExclusionServer server;
+    private BatchingExclusionService exclusionService;
+    private final ExecutorService registrations = Executors.newFixedThreadPool(200);
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubExclusionServer(20, 8);
+    }
+
+    @After
+    public void tearDown() {
+        registrations.shutdownNow();
+        if (exclusionService != null) {
+            exclusionService.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void testConcurrentChecksAreSentInBulkAndEachCallerGetsItsAnswer() throws Exception {
+        exclusionService = new BatchingExclusionService(remote(), 1_000, 64, 2, 5_000);
+
+        List<Future<Boolean>> checks = concurrently(200, i -> exclusionService.validate(i % 2 == 0 ? "1998-01-02" : "1986-05-26",
+                String.format("%09d", i)));
+        for (int i = 0; i < checks.size(); i++) {
+            assertThat(checks.get(i).get(10, TimeUnit.SECONDS), is(i % 2 != 0));
+        }
+
+        assertThat(server.checks(), is(200));
+        assertThat(server.calls(), is(both(greaterThanOrEqualTo(4)).and(lessThan(50))));
+        assertThat(exclusionService.batches(), is((long) server.calls()));
+        assertThat(exclusionService.checks(), is(200L));
+    }
+
+    @Test
+    public void testIdenticalPairsOfABatchAreCheckedOnceAndFailuresReachEveryCaller() throws Exception {
+        exclusionService = new BatchingExclusionService(remote(), 500_000, 64, 2, 1_000);
+
+        for (Future<Boolean> check : concurrently(10, i -> exclusionService.validate("1986-05-26", "123456789"))) {
+            assertThat(check.get(10, TimeUnit.SECONDS), is(true));
+        }
+        assertThat(server.calls(), is(1));
+        assertThat(server.checks(), is(1));
+
+        server.setFailing(true);
+        for (Future<Boolean> check : concurrently(3, i -> exclusionService.validate("1986-05-26", "00000000" + i))) {
+            assertFailed(check, "failed on 3 checks");
+        }
+        server.setFailing(false);
+        server.setLatencyMillis(1_500);
+        assertFailed(registrations.submit(() -> exclusionService.validate("1986-05-26", "123456789")), "timed out");
+    }
+
+    private List<Future<Boolean>> concurrently(int count, Check check) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> checks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            Callable<Boolean> call = () -> {
+                start.await();
+                return check.validate(index);
+            };
+            checks.add(registrations.submit(call));
+        }
+        start.countDown();
+        return checks;
+    }
+
+    private static void assertFailed(Future<Boolean> check, String message) throws Exception {
+        try {
+            check.get(10, TimeUnit.SECONDS);
+            fail("A failed check must not let the registration through");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(ServerException.class)));
+            assertThat(((ServerException) e.getCause()).getLogMessage(), containsString(message));
+        }
+    }
+
+    private RemoteExclusionService remote() {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(2_000);
+        requestFactory.setReadTimeout(2_000);
+        return new RemoteExclusionService(server.url(), new RestTemplate(requestFactory));
+    }
+
+    private interface Check {
+
+        boolean validate(int index);
+    }
+}
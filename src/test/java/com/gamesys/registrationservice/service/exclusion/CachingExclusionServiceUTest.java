@@ -0,0 +1,155 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.ExclusionCacheStatistics;
+import com.gamesys.registrationservice.service.ExclusionService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class CachingExclusionServiceUTest {
+
+    private StubExclusionServer server;
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final ExclusionService counting = (dob, ssn) -> {
+        calls.incrementAndGet();
+        return !dob.startsWith("1998");
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubExclusionServer(0, 32);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testPassingAndFailingAnswersExpireAfterTheirOwnTtl() {
+        CachingExclusionService exclusionService = new CachingExclusionService(counting, 100, 1_000, 5_000, 4, clock::get);
+
+        assertTrue(exclusionService.validate("1986-05-26", "123456789"));
+        assertFalse(exclusionService.validate("1998-05-26", "123456789"));
+        advance(999);
+        assertTrue(exclusionService.validate("1986-05-26", "123456789"));
+        assertFalse(exclusionService.validate("1998-05-26", "123456789"));
+        assertThat(calls.get(), is(2));
+
+        advance(1);
+        assertTrue(exclusionService.validate("1986-05-26", "123456789"));
+        assertFalse(exclusionService.validate("1998-05-26", "123456789"));
+        assertThat(calls.get(), is(3));
+        advance(4_000);
+        assertFalse(exclusionService.validate("1998-05-26", "123456789"));
+        assertThat(calls.get(), is(4));
+
+        ExclusionCacheStatistics statistics = exclusionService.getStatistics();
+        assertThat(statistics.getHits(), is(3L));
+        assertThat(statistics.getMisses(), is(4L));
+        assertThat(statistics.getExpirations(), is(2L));
+        assertThat(statistics.getEntries(), is(2));
+        assertThat(statistics.getHitRate(), is(closeTo(3 / 7.0, 0.001)));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAnswersAreEvictedPastMaxEntries() {
+        CachingExclusionService exclusionService = new CachingExclusionService(counting, 2, 60_000, 60_000, 1, clock::get);
+
+        exclusionService.validate("1986-05-26", "000000001");
+        exclusionService.validate("1986-05-26", "000000002");
+        exclusionService.validate("1986-05-26", "000000001");
+        exclusionService.validate("1986-05-26", "000000003");
+        assertThat(calls.get(), is(3));
+
+        exclusionService.validate("1986-05-26", "000000001");
+        exclusionService.validate("1986-05-26", "000000003");
+        assertThat(calls.get(), is(3));
+        exclusionService.validate("1986-05-26", "000000002");
+        assertThat(calls.get(), is(4));
+
+        ExclusionCacheStatistics statistics = exclusionService.getStatistics();
+        assertThat(statistics.getEvictions(), is(2L));
+        assertThat(statistics.getEntries(), is(2));
+        assertThat(statistics.getMaxEntries(), is(2));
+    }
+
+    @Test
+    public void testConcurrentChecksOfOnePairMakeOneRemoteCallAndFailuresAreNotCached() throws Exception {
+        CachingExclusionService exclusionService = new CachingExclusionService(remote(), 100, 60_000, 60_000, 4);
+        server.setLatencyMillis(300);
+
+        ExecutorService registrations = Executors.newFixedThreadPool(16);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> checks = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                checks.add(registrations.submit(() -> {
+                    start.await();
+                    return exclusionService.validate("1998-01-02", "123456789");
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> check : checks) {
+                assertFalse(check.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            registrations.shutdownNow();
+        }
+        assertThat(server.calls(), is(1));
+        ExclusionCacheStatistics statistics = exclusionService.getStatistics();
+        assertThat(statistics.getMisses(), is(1L));
+        assertThat(statistics.getHits() + statistics.getCoalesced(), is(15L));
+        assertThat(statistics.getAverageCallMicros(), is(greaterThanOrEqualTo(300_000L)));
+
+        server.setLatencyMillis(0);
+        server.setFailing(true);
+        for (int i = 0; i < 2; i++) {
+            try {
+                exclusionService.validate("1986-05-26", "123456789");
+                fail("A failed check must not let the registration through");
+            } catch (ServerException e) {
+                assertThat(e.getLogMessage(), containsString(server.url()));
+            }
+        }
+        server.setFailing(false);
+        assertTrue(exclusionService.validate("1986-05-26", "123456789"));
+        assertThat(server.calls(), is(4));
+        assertThat(exclusionService.getStatistics().getFailures(), is(2L));
+    }
+
+    private RemoteExclusionService remote() {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(2_000);
+        requestFactory.setReadTimeout(2_000);
+        return new RemoteExclusionService(server.url(), new RestTemplate(requestFactory));
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,102 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+public class ExclusionListUTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoadedPairsAreListedWhateverTheSsnFormatting() throws IOException {
+        Path file = folder.newFile("blacklist.csv").toPath();
+        Files.write(file, ("dob,ssn\n"
+                + "1986-05-26,123-45-6789\r\n"
+                + " 1990-01-02 , 987654321\n"
+                + "1990-01-02,987654321\n"
+                + "\n"
+                + "1998-02-29,111223333\n"
+                + "1986-05-26,ssn110\n"
+                + "2000-02-29,111 22 3333").getBytes(StandardCharsets.US_ASCII));
+
+        ExclusionList exclusionList = ExclusionList.load(file, 10);
+
+        assertThat(exclusionList.size(), is(3));
+        assertThat(exclusionList.skipped(), is(3L));
+        assertThat(exclusionList.isListed("1986-05-26", "123456789"), is(true));
+        assertThat(exclusionList.isListed("1990-01-02", "987-65-4321"), is(true));
+        assertThat(exclusionList.isListed("2000-02-29", "111-22-3333"), is(true));
+        assertThat(exclusionList.isListed("1986-05-27", "123-45-6789"), is(false));
+        assertThat(exclusionList.isListed("1986-05-26", "123-45-6780"), is(false));
+        assertThat(exclusionList.isListed("1986-05-26", "ssn110"), is(false));
+        assertThat(exclusionList.bytes(), is(3L * Long.BYTES + exclusionList.filterBytes()));
+    }
+
+    @Test
+    public void testKeysOrderPairsByDateThenSsnAndRejectWhatCantBeListed() {
+        Random random = new Random(11);
+        long previous = Long.MIN_VALUE;
+        for (LocalDate date = LocalDate.of(1850, 1, 1); date.isBefore(LocalDate.of(2150, 1, 1)); date = date.plusDays(1 + random.nextInt(5))) {
+            long first = ExclusionList.pack(date.toString(), "000000000");
+            long last = ExclusionList.pack(date.toString(), "999-99-9999");
+            assertThat(first >> 30, is(date.toEpochDay()));
+            assertThat(first, greaterThan(previous));
+            assertThat(last - first, is(999999999L));
+            previous = last;
+        }
+        assertThat(ExclusionList.pack("1999-02-29", "123456789"), is(ExclusionList.NOT_LISTABLE));
+        assertThat(ExclusionList.pack("1986-5-26", "123456789"), is(ExclusionList.NOT_LISTABLE));
+        assertThat(ExclusionList.pack("1986-05-26", "12345678"), is(ExclusionList.NOT_LISTABLE));
+        assertThat(ExclusionList.pack("1986-05-26", "1234567890"), is(ExclusionList.NOT_LISTABLE));
+        assertThat(ExclusionList.pack("1986-05-26", "12345678x"), is(ExclusionList.NOT_LISTABLE));
+    }
+
+    @Test
+    public void testListedPairsAreAlwaysFoundAndFewOthersReachTheExactSet() {
+        Random random = new Random(7);
+        int count = 200_000;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = key(random);
+        }
+        long[] listed = keys.clone();
+        ExclusionList exclusionList = ExclusionList.of(keys, count, 10);
+        BlockedBloomFilter filter = BlockedBloomFilter.create(count, 10);
+        for (long key : listed) {
+            filter.add(key);
+        }
+
+        for (long key : listed) {
+            assertThat(exclusionList.contains(key), is(true));
+        }
+        int falsePositives = 0;
+        int probes = 1_000_000;
+        for (int i = 0; i < probes; i++) {
+            long key = key(random);
+            if (filter.mightContain(key) && !exclusionList.contains(key)) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes, lessThan(0.02));
+    }
+
+    private static long key(Random random) {
+        return ExclusionList.pack(LocalDate.ofEpochDay(-25_000 + random.nextInt(40_000)).toString(),
+                String.format("%09d", random.nextInt(1_000_000_000)));
+    }
+}
@@ -0,0 +1,154 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.domain.ExclusionStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+public class FileExclusionServiceUTest {
+
+    private static final long VERSION = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private Path indexDirectory;
+    private final List<FileExclusionService> services = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.getRoot().toPath().resolve("blacklist.csv");
+        indexDirectory = folder.getRoot().toPath().resolve("index");
+        publish(VERSION, 1000, 0);
+    }
+
+    @After
+    public void tearDown() {
+        services.forEach(FileExclusionService::close);
+    }
+
+    @Test
+    public void testNewVersionsAreSwappedInWhileLookupsGoOn() throws Exception {
+        FileExclusionService exclusionService = start();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong lookups = new AtomicLong();
+        AtomicLong missed = new AtomicLong();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                if (exclusionService.validate("1986-05-26", ssn(0))) {
+                    missed.incrementAndGet();
+                }
+                lookups.incrementAndGet();
+            }
+        });
+        reader.start();
+
+        for (int version = 1; version <= 3; version++) {
+            publish(VERSION + version, 1000 + version * 100, 0);
+            assertThat(exclusionService.reload(), is(true));
+        }
+        assertThat(exclusionService.reload(), is(false));
+        running.set(false);
+        reader.join();
+
+        assertThat(lookups.get(), greaterThan(0L));
+        assertThat(missed.get(), is(0L));
+        assertThat(exclusionService.validate("1986-05-26", ssn(1299)), is(false));
+        assertThat(exclusionService.validate("1986-05-26", ssn(1300)), is(true));
+        ExclusionStatus status = exclusionService.getStatus();
+        assertThat(status.getVersion(), is(VERSION + 3));
+        assertThat(status.getEntries(), is(1300L));
+        assertThat(status.getReloads(), is(3L));
+        assertThat(status.getFailedReloads(), is(0L));
+        assertThat(status.getBuildMillis(), greaterThanOrEqualTo(0L));
+        assertThat(Paths.get(status.getIndexFile()).getParent(), is(indexDirectory.toAbsolutePath()));
+        assertThat(indexDirectory.toFile().list().length, is(2));
+    }
+
+    @Test
+    public void testUnreadableOrShrunkVersionsAreRefusedAndTheCurrentOneKept() throws Exception {
+        FileExclusionService exclusionService = start();
+
+        publish(VERSION + 1, 1000, 100);
+        assertThat(exclusionService.reload(), is(false));
+        assertThat(exclusionService.reload(), is(false));
+        publish(VERSION + 2, 400, 0);
+        assertThat(exclusionService.reload(), is(false));
+
+        ExclusionStatus status = exclusionService.getStatus();
+        assertThat(status.getVersion(), is(VERSION));
+        assertThat(status.getEntries(), is(1000L));
+        assertThat(status.getFailedReloads(), is(2L));
+        assertThat(status.getLastFailure(), is("400 entries against 1000 in use"));
+        assertThat(exclusionService.validate("1986-05-26", ssn(999)), is(false));
+        assertThat(indexDirectory.toFile().list().length, is(1));
+
+        publish(VERSION + 3, 600, 0);
+        assertThat(exclusionService.reload(), is(true));
+        assertThat(exclusionService.getStatus().getEntries(), is(600L));
+    }
+
+    @Test
+    public void testRestartMapsTheIndexOfAnUnchangedFileAndRebuildsACorruptedOne() throws Exception {
+        ExclusionStatus built = start().getStatus();
+
+        ExclusionStatus mapped = start().getStatus();
+
+        assertThat(mapped.getIndexFile(), is(built.getIndexFile()));
+        assertThat(mapped.getChecksum(), is(built.getChecksum()));
+        assertThat(mapped.getBuildMillis(), is(0L));
+        try (RandomAccessFile index = new RandomAccessFile(built.getIndexFile(), "rw")) {
+            index.seek(index.length() - 1);
+            index.write(index.read() ^ 1);
+        }
+        FileExclusionService rebuilt = start();
+        assertThat(rebuilt.getStatus().getChecksum(), is(built.getChecksum()));
+        assertThat(rebuilt.validate("1986-05-26", ssn(999)), is(false));
+    }
+
+    private FileExclusionService start() {
+        FileExclusionService exclusionService = new FileExclusionService(file, indexDirectory, 10, 0, 0.01, 0.5);
+        services.add(exclusionService);
+        return exclusionService;
+    }
+
+    /**
+     * Writes a version listing the first entries SSNs for 1986-05-26 followed by unreadable lines.
+     */
+    private void publish(long version, int entries, int unreadable) throws IOException {
+        StringBuilder lines = new StringBuilder("dob,ssn\n");
+        for (int i = 0; i < entries; i++) {
+            lines.append("1986-05-26,").append(ssn(i)).append('\n');
+        }
+        for (int i = 0; i < unreadable; i++) {
+            lines.append("1986-05-26;").append(ssn(i)).append('\n');
+        }
+        Files.write(file, lines.toString().getBytes(StandardCharsets.US_ASCII));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(version));
+    }
+
+    private static String ssn(int i) {
+        return String.format("123-45-%04d", i);
+    }
+}
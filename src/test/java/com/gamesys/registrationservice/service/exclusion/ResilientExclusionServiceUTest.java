@@ -0,0 +1,200 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.gamesys.registrationservice.api.exception.ExclusionUnavailableException;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.domain.ExclusionClientStatus;
+import com.gamesys.registrationservice.service.ExclusionService;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class ResilientExclusionServiceUTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final List<ResilientExclusionService> services = new ArrayList<>();
+    private final ExecutorService registrations = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        registrations.shutdownNow();
+        services.forEach(ResilientExclusionService::close);
+    }
+
+    @Test
+    public void testSlowCallsAreHedgedAndCallersNeverWaitPastTheirDeadline() {
+        ResilientExclusionService exclusionService = start((dob, ssn) -> {
+            sleep(calls.incrementAndGet() == 1 ? 2_000 : 0);
+            return !dob.startsWith("1998");
+        }, 1_000, true, ResilientExclusionService.Fallback.FAIL_CLOSED);
+
+        long started = System.nanoTime();
+        assertTrue(exclusionService.validate("1986-05-26", "123456789"));
+        assertThat(millisSince(started), is(lessThan(500L)));
+        ExclusionClientStatus status = exclusionService.getStatus();
+        assertThat(status.getHedged(), is(1L));
+        assertThat(status.getHedgeWins(), is(1L));
+        assertThat(status.getHedgeDelayMicros(), is(20_000L));
+
+        ResilientExclusionService unhedged = start((dob, ssn) -> {
+            sleep(300);
+            return true;
+        }, 50, false, ResilientExclusionService.Fallback.FAIL_CLOSED);
+        started = System.nanoTime();
+        try {
+            unhedged.validate("1986-05-26", "123456789");
+            fail("A check past its deadline must not let the registration through");
+        } catch (ServerException e) {
+            assertThat(e.getLogMessage(), containsString("50 ms deadline"));
+        }
+        assertThat(millisSince(started), is(lessThan(250L)));
+        assertThat(unhedged.getStatus().getTimeouts(), is(1L));
+    }
+
+    @Test
+    public void testBreakerOpensOnFailuresAndClosesAfterASuccessfulTrial() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        ResilientExclusionService exclusionService = start((dob, ssn) -> {
+            calls.incrementAndGet();
+            if (failing.get()) {
+                throw new ServerException("Exclusion service down", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+            }
+            return true;
+        }, 1_000, false, ResilientExclusionService.Fallback.FAIL_CLOSED);
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                exclusionService.validate("1986-05-26", "123456789");
+                fail("A failed check must not let the registration through");
+            } catch (ExclusionUnavailableException e) {
+                fail("The service was asked");
+            } catch (ServerException e) {
+                assertThat(e.getLogMessage(), is("Exclusion service down"));
+            }
+        }
+        assertThat(exclusionService.getStatus().getBreakerState(), is("OPEN"));
+        try {
+            exclusionService.validate("1986-05-26", "123456789");
+            fail("An open breaker must not let the registration through when failing closed");
+        } catch (ExclusionUnavailableException e) {
+            assertFalse(e.isFailOpen());
+        }
+        assertThat(calls.get(), is(4));
+
+        sleep(250);
+        failing.set(false);
+        assertTrue(exclusionService.validate("1986-05-26", "123456789"));
+        ExclusionClientStatus status = exclusionService.getStatus();
+        assertThat(status.getBreakerState(), is("CLOSED"));
+        assertThat(status.getBreakerOpened(), is(1L));
+        assertThat(status.getShortCircuited(), is(1L));
+        assertThat(status.getFailures(), is(4L));
+    }
+
+    @Test
+    public void testInterruptedTrialDoesNotLeaveTheBreakerHalfOpen() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        ResilientExclusionService exclusionService = start((dob, ssn) -> {
+            if (failing.get()) {
+                throw new ServerException("Exclusion service down", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+            }
+            sleep(50);
+            return true;
+        }, 1_000, false, ResilientExclusionService.Fallback.FAIL_CLOSED);
+        for (int i = 0; i < 4; i++) {
+            try {
+                exclusionService.validate("1986-05-26", "123456789");
+            } catch (ServerException e) {
+                assertThat(e.getLogMessage(), is("Exclusion service down"));
+            }
+        }
+        assertThat(exclusionService.getStatus().getBreakerState(), is("OPEN"));
+
+        sleep(250);
+        failing.set(false);
+        Thread.currentThread().interrupt();
+        try {
+            exclusionService.validate("1986-05-26", "123456789");
+            fail("An interrupted check must not let the registration through");
+        } catch (ServerException e) {
+            assertThat(e.getLogMessage(), is("Exclusion check interrupted"));
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertThat(exclusionService.getStatus().getBreakerState(), is("OPEN"));
+
+        assertTrue(exclusionService.validate("1986-05-26", "123456789"));
+        assertThat(exclusionService.getStatus().getBreakerState(), is("CLOSED"));
+    }
+
+    @Test
+    public void testCallsPastTheBulkheadAreAnsweredByTheFallbackPolicy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ResilientExclusionService exclusionService = start((dob, ssn) -> {
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }, 5_000, false, ResilientExclusionService.Fallback.FAIL_OPEN);
+
+        List<Future<Boolean>> held = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            held.add(registrations.submit(() -> exclusionService.validate("1986-05-26", "123456789")));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (exclusionService.getStatus().getInFlight() < 2 && System.nanoTime() < deadline) {
+            sleep(5);
+        }
+        try {
+            exclusionService.validate("1986-05-26", "123456789");
+            fail("A full bulkhead must not queue more callers");
+        } catch (ExclusionUnavailableException e) {
+            assertTrue(e.isFailOpen());
+        }
+        release.countDown();
+        for (Future<Boolean> check : held) {
+            assertTrue(check.get(5, TimeUnit.SECONDS));
+        }
+        assertThat(exclusionService.getStatus().getRejected(), is(1L));
+    }
+
+    private ResilientExclusionService start(ExclusionService delegate, long deadlineMillis, boolean hedging,
+                                            ResilientExclusionService.Fallback fallback) {
+        ResilientExclusionService exclusionService = new ResilientExclusionService(delegate, deadlineMillis, 2, 0, hedging,
+                20, 4, 4, 0.5, 200, fallback);
+        services.add(exclusionService);
+        return exclusionService;
+    }
+
+    private static long millisSince(long started) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
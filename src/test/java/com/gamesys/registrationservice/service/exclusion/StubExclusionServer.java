@@ -0,0 +1,164 @@
+package com.gamesys.registrationservice.service.exclusion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gamesys.registrationservice.api.ExclusionCheckDTO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exclusion service on a free local port for the remote client tests and benchmarks. Like the stub
+ * service any 1998 dob is excluded, and every request, single GET or bulk POST, is answered after
+ * the configured latency, or with a 503 while failing. A share of the requests can be made slow to
+ * give the latency a tail.
+ */
+public class StubExclusionServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String NO_DELAY = "sun.net.httpserver.nodelay";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger checks = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile boolean failing;
+    private volatile double slowRatio;
+    private volatile long slowMillis;
+
+    public StubExclusionServer(long latencyMillis, int threads) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = withNoDelay(() -> HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024));
+        this.server.setExecutor(executor);
+        this.server.createContext("/exclusions", this::handle);
+        this.server.start();
+    }
+
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public int calls() {
+        return calls.get();
+    }
+
+    /**
+     * @return the pairs checked, a bulk request counting each of its pairs
+     */
+    public int checks() {
+        return checks.get();
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * Answers the given share of the requests after slowMillis instead of the latency.
+     */
+    public void setSlow(double slowRatio, long slowMillis) {
+        this.slowRatio = slowRatio;
+        this.slowMillis = slowMillis;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Answers are written as headers then body, without TCP_NODELAY the body waits on the client's
+     * delayed ack, about 40 ms. The JDK server reads the setting once, when its first server is
+     * created, so it is only set around the creation and restored right after.
+     */
+    private static HttpServer withNoDelay(ServerFactory factory) throws IOException {
+        String previous = System.getProperty(NO_DELAY);
+        System.setProperty(NO_DELAY, "true");
+        try {
+            return factory.create();
+        } finally {
+            if (previous == null) {
+                System.clearProperty(NO_DELAY);
+            } else {
+                System.setProperty(NO_DELAY, previous);
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        calls.incrementAndGet();
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextDouble() < slowRatio ? slowMillis : latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failing) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        if (exchange.getRequestMethod().equals("POST")) {
+            ExclusionCheckDTO[] bulk = MAPPER.readValue(exchange.getRequestBody(), ExclusionCheckDTO[].class);
+            checks.addAndGet(bulk.length);
+            StringBuilder answers = new StringBuilder("[");
+            for (ExclusionCheckDTO check : bulk) {
+                answers.append(answers.length() > 1 ? "," : "").append(check(check.getDob(), check.getSsn()));
+            }
+            respond(exchange, answers.append(']').toString());
+            return;
+        }
+        checks.incrementAndGet();
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        respond(exchange, check(query.get("dob"), query.get("ssn")));
+    }
+
+    private static String check(String dob, String ssn) {
+        return "{\"dob\":\"" + dob + "\",\"ssn\":\"" + ssn + "\",\"valid\":" + !dob.startsWith("1998") + "}";
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    query.put(parameter.substring(0, equals), URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return query;
+    }
+
+    private interface ServerFactory {
+
+        HttpServer create() throws IOException;
+    }
+}
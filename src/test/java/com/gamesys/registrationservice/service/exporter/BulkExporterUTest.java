@@ -0,0 +1,155 @@
+package com.gamesys.registrationservice.service.exporter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gamesys.registrationservice.api.exception.NotFoundException;
+import com.gamesys.registrationservice.domain.ExportSegment;
+import com.gamesys.registrationservice.domain.ExportStatus;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.codec.UserCodec;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class BulkExporterUTest {
+
+    private static final int USERS = 2500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BulkExporter bulkExporter;
+    private UserRepositoryImpl userRepository;
+
+    @Before
+    public void setUp() {
+        userRepository = new UserRepositoryImpl();
+        for (int i = 0; i < USERS; i++) {
+            String ssn = "ssn" + i;
+            userRepository.addUser(ssn, new User("username" + i, "443908Rr", LocalDate.of(1986, 5, 26), ssn));
+        }
+        userRepository.addUser("ssn\"é", new User("user\\\"name\u0001€😀", "443908Rr", LocalDate.of(1990, 1, 2), "ssn\"é"));
+        bulkExporter = new BulkExporter();
+        bulkExporter.userRepository = userRepository;
+        bulkExporter.directory = folder.getRoot().getPath();
+        bulkExporter.segmentUsers = 1000;
+    }
+
+    @Test
+    public void testGzipSegmentsHoldEveryUserAsNdjson() throws IOException {
+        bulkExporter.format = ExportFormat.GZIP;
+
+        ExportStatus status = bulkExporter.run();
+
+        assertThat(status.getState(), is("COMPLETED"));
+        assertThat(status.getUsers(), is(USERS + 1L));
+        assertThat(status.getSegments().size(), is(3));
+        assertThat(status.getSegments().get(0).getName(), is("users-00000.ndjson.gz"));
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, User> exported = new HashMap<>();
+        long bytes = 0;
+        for (ExportSegment segment : status.getSegments()) {
+            Path file = bulkExporter.segment(status.getId(), segment.getName());
+            bytes += Files.size(file);
+            long lines = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    JsonNode node = mapper.readTree(line);
+                    exported.put(node.get("ssn").asText(), new User(node.get("username").asText(),
+                            node.get("password").asText(), LocalDate.parse(node.get("dob").asText()), node.get("ssn").asText()));
+                    lines++;
+                }
+            }
+            assertThat(lines, is(segment.getUsers()));
+        }
+        assertThat(bytes, is(status.getBytes()));
+        assertExported(exported);
+    }
+
+    @Test
+    public void testBinarySegmentsDecodeWithTheUserCodec() throws IOException {
+        bulkExporter.format = ExportFormat.BINARY;
+
+        ExportStatus status = bulkExporter.run();
+
+        assertThat(status.getState(), is("COMPLETED"));
+        assertThat(status.getSegments().size(), is(3));
+        Map<String, User> exported = new HashMap<>();
+        for (ExportSegment segment : status.getSegments()) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(bulkExporter.segment(status.getId(), segment.getName())));
+            assertThat(buffer.getInt(), is(ExportFormat.BINARY_MAGIC));
+            assertThat(buffer.getInt(), is(ExportFormat.BINARY_VERSION));
+            assertThat(buffer.getLong(), is(segment.getUsers()));
+            for (long i = 0; i < segment.getUsers(); i++) {
+                User user = UserCodec.decode(buffer);
+                exported.put(user.getSsn(), user);
+            }
+            assertThat(buffer.remaining(), is(0));
+        }
+        assertExported(exported);
+    }
+
+    @Test
+    public void testOnlyTheLastTwoExportsAreKept() {
+        bulkExporter.format = ExportFormat.BINARY;
+        ExportStatus first = bulkExporter.run();
+        waitNextMillisecond();
+        ExportStatus second = bulkExporter.run();
+        waitNextMillisecond();
+        ExportStatus third = bulkExporter.run();
+
+        assertThat(folder.getRoot().list(), arrayContainingInAnyOrder(second.getId(), third.getId()));
+        assertThat(Files.exists(bulkExporter.segment(second.getId(), "users-00000.users")), is(true));
+        try {
+            bulkExporter.segment(first.getId(), "users-00000.users");
+            fail("First export should be gone");
+        } catch (NotFoundException e) {
+            assertThat(e.getMessage(), containsString(first.getId()));
+        }
+        try {
+            bulkExporter.segment(third.getId(), "../../etc/passwd");
+            fail("Only listed segments should be served");
+        } catch (NotFoundException e) {
+            assertThat(e.getMessage(), containsString("not found"));
+        }
+    }
+
+    private void assertExported(Map<String, User> exported) {
+        assertThat(exported.size(), is(USERS + 1));
+        for (String ssn : new String[]{"ssn1234", "ssn\"é"}) {
+            User user = userRepository.getUser(ssn).get();
+            assertThat(exported.get(ssn).getUsername(), is(user.getUsername()));
+            assertThat(exported.get(ssn).getPassword(), is(user.getPassword()));
+            assertThat(exported.get(ssn).getDob(), is(user.getDob()));
+        }
+    }
+
+    private static void waitNextMillisecond() {
+        long now = System.currentTimeMillis();
+        while (System.currentTimeMillis() == now) {
+            Thread.yield();
+        }
+    }
+}
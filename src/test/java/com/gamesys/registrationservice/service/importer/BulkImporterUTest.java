@@ -0,0 +1,158 @@
+package com.gamesys.registrationservice.service.importer;
+
+import com.gamesys.registrationservice.api.ErrorEnum;
+import com.gamesys.registrationservice.api.exception.ExclusionUnavailableException;
+import com.gamesys.registrationservice.api.exception.ServerException;
+import com.gamesys.registrationservice.domain.ImportStatus;
+import com.gamesys.registrationservice.domain.User;
+import com.gamesys.registrationservice.persistence.impl.UserRepositoryImpl;
+import com.gamesys.registrationservice.service.ExclusionServiceImpl;
+import com.gamesys.registrationservice.service.UserValidator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+public class BulkImporterUTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BulkImporter bulkImporter;
+    private UserRepositoryImpl userRepository;
+
+    @Before
+    public void setUp() {
+        userRepository = new UserRepositoryImpl();
+        bulkImporter = new BulkImporter();
+        bulkImporter.userRepository = userRepository;
+        bulkImporter.userValidator = new UserValidator();
+        bulkImporter.exclusionService = new ExclusionServiceImpl();
+        bulkImporter.directory = folder.getRoot().getPath();
+        bulkImporter.parallelism = 4;
+        bulkImporter.chunkBytes = 100;
+        bulkImporter.batchSize = 7;
+        bulkImporter.progressSeconds = 1;
+    }
+
+    @Test
+    public void testEveryCsvRecordIsImportedOrReportedAcrossChunkBoundaries() throws IOException {
+        userRepository.addUser("ssn9000", new User("existing", "443908Rr", LocalDate.of(1986, 5, 26), "ssn9000"));
+        userRepository.addUser("ssn9001", new User("taken", "443908Rr", LocalDate.of(1986, 5, 26), "ssn9001"));
+        List<String> lines = new ArrayList<>();
+        lines.add("username,password,dob,ssn");
+        for (int i = 0; i < 500; i++) {
+            lines.add("username" + i + ",443908Rr,1986-05-26,ssn" + i);
+        }
+        lines.add("username500,password,1986-05-26,ssn500");
+        lines.add("username501,443908Rr,1998-05-26,ssn501");
+        lines.add("username502,443908Rr,1986-05-26,ssn9000");
+        lines.add("taken,443908Rr,1986-05-26,ssn503");
+        lines.add("username504,443908Rr\r");
+        lines.add("");
+        Path file = write("partner.csv", lines);
+
+        ImportStatus status = bulkImporter.run(file);
+
+        assertThat(status.getState(), is("COMPLETED"));
+        assertThat(status.getRecords(), is(505L));
+        assertThat(status.getImported(), is(500L));
+        assertThat(status.getRejected(), is(5L));
+        assertThat(status.getBytesRead(), is(Files.size(file)));
+        assertThat(userRepository.getAllUser().size(), is(502));
+        assertThat(userRepository.getUser("ssn499").get().getUsername(), is("username499"));
+        List<String> report = Files.readAllLines(Paths.get(status.getRejectedReport()), StandardCharsets.UTF_8);
+        assertThat(report.size(), is(6));
+        assertThat(report.get(1), startsWith("502,A0004,"));
+        assertThat(report.get(2), startsWith("503,A0002,"));
+        assertThat(report.get(3), startsWith("504,A0007,"));
+        assertThat(report.get(4), startsWith("505,A0014,"));
+        assertThat(report.get(5), startsWith("506,A0009,"));
+    }
+
+    @Test
+    public void testNdjsonFileOfTheImportDirectoryIsImportedInTheBackground() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            lines.add("{\"username\":\"username" + i + "\",\"password\":\"443908Rr\",\"dob\":\"1986-05-26\",\"ssn\":\"ssn" + i + "\"}");
+        }
+        lines.add("{\"username\":\"username300\",");
+        write("partner.ndjson", lines);
+
+        bulkImporter.start("partner.ndjson");
+        while (bulkImporter.getStatus().get().getState().equals("RUNNING")) {
+            Thread.sleep(10);
+        }
+
+        ImportStatus status = bulkImporter.getStatus().get();
+        assertThat(status.getImported(), is(300L));
+        assertThat(status.getRejected(), is(1L));
+        assertThat(userRepository.getUserByUsername("username299").get().getSsn(), is("ssn299"));
+        assertTrue(Files.readAllLines(Paths.get(status.getRejectedReport())).get(1).startsWith("301,A0009,"));
+        try {
+            bulkImporter.start("../partner.ndjson");
+            fail();
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), containsString("is not a file of"));
+        }
+    }
+
+    @Test
+    public void testRecordsWhoseExclusionCheckFailsAreRejectedWithoutFailingTheImport() throws IOException {
+        bulkImporter.exclusionService = (dob, ssn) -> {
+            if (ssn.equals("ssn1")) {
+                throw new ServerException("Exclusion service down", ErrorEnum.EXCLUSION_SERVICE_EXCEPTION);
+            }
+            if (ssn.equals("ssn2")) {
+                throw new ExclusionUnavailableException("Exclusion service not asked", false);
+            }
+            return true;
+        };
+        List<String> lines = new ArrayList<>();
+        lines.add("username,password,dob,ssn");
+        for (int i = 0; i < 4; i++) {
+            lines.add("username" + i + ",443908Rr,1986-05-26,ssn" + i);
+        }
+        Path file = write("partner.csv", lines);
+
+        ImportStatus status = bulkImporter.run(file);
+
+        assertThat(status.getState(), is("COMPLETED"));
+        assertThat(status.getImported(), is(2L));
+        assertThat(status.getRejected(), is(2L));
+        List<String> report = Files.readAllLines(Paths.get(status.getRejectedReport()), StandardCharsets.UTF_8);
+        assertThat(report.get(1), startsWith("3,M0007,"));
+        assertThat(report.get(2), startsWith("4,M0007,"));
+
+        bulkImporter.exclusionService = (dob, ssn) -> {
+            throw new ExclusionUnavailableException("Exclusion service not asked", true);
+        };
+        status = bulkImporter.run(write("open.csv", Arrays.asList("username,password,dob,ssn", "username9,443908Rr,1998-05-26,ssn9")));
+        assertThat(status.getImported(), is(1L));
+    }
+
+    private Path write(String name, List<String> lines) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+}